@@ -2,6 +2,10 @@ DROP DATABASE IF EXISTS biblioteca;
 CREATE DATABASE biblioteca CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci;
 USE biblioteca;
 
+-- Schema completo per un'installazione nuova. I database creati con versioni precedenti di questo file
+-- vengono aggiornati all'avvio da it.biblioteca.dao.db.SchemaMigrations, che aggiunge anche gli indici
+-- secondari; le migrazioni si possono ripetere, quindi su questo schema aggiungono solo quello che manca.
+
 CREATE TABLE IF NOT EXISTS utenti (
   id BIGINT AUTO_INCREMENT PRIMARY KEY,
   tessera INT NOT NULL UNIQUE,
@@ -10,7 +14,8 @@ CREATE TABLE IF NOT EXISTS utenti (
   email VARCHAR(150),
   telefono VARCHAR(50),
   data_attivazione DATE NULL,
-  data_scadenza DATE NULL
+  data_scadenza DATE NULL,
+  FULLTEXT KEY ft_utenti_nominativo (nome, cognome, email)
 );
 
 CREATE TABLE IF NOT EXISTS libri (
@@ -21,7 +26,9 @@ CREATE TABLE IF NOT EXISTS libri (
   data_pubblicazione DATE NOT NULL,
   casa_editrice VARCHAR(100) NOT NULL,
   attivo TINYINT(1) NOT NULL DEFAULT 1,
-  copie INT NOT NULL DEFAULT 1
+  copie INT NOT NULL DEFAULT 1,
+  copie_disponibili INT NOT NULL DEFAULT 1,
+  FULLTEXT KEY ft_libri_testo (titolo, autore, casa_editrice)
 );
 
 CREATE TABLE IF NOT EXISTS prestiti (
@@ -37,6 +44,7 @@ CREATE TABLE IF NOT EXISTS prestiti (
   utente_nome_snapshot VARCHAR(100),
   utente_cognome_snapshot VARCHAR(100),
   utente_snapshot TEXT NULL,
+  FULLTEXT KEY ft_prestiti_snapshot (libro_titolo_snapshot, utente_descrizione),
   CONSTRAINT fk_prestiti_libro FOREIGN KEY (libro_id) REFERENCES libri(id) ON DELETE SET NULL ON UPDATE CASCADE,
   CONSTRAINT fk_prestiti_utente FOREIGN KEY (utente_id) REFERENCES utenti(id) ON DELETE SET NULL ON UPDATE CASCADE
 );
@@ -104,13 +112,13 @@ VALUES
 (1004, 'Davide',   'Rossi',     'davide.rossi@example.com',     '3334444444', CURDATE(), DATE_ADD(CURDATE(), INTERVAL 2 YEAR)),
 (1005, 'Elena',    'Galli',     'elena.galli@example.com',      '3335555555', CURDATE(), DATE_ADD(CURDATE(), INTERVAL 2 YEAR));
 
-INSERT INTO libri (isbn, titolo, autore, data_pubblicazione, casa_editrice, attivo, copie)
+INSERT INTO libri (isbn, titolo, autore, data_pubblicazione, casa_editrice, attivo, copie, copie_disponibili)
 VALUES
-('9788800000001', 'Programmazione Java Base',            'Mario Rossi',       '2021-03-15', 'TechPress',   1, 3),
-('9788800000002', 'Strutture Dati e Algoritmi',          'Luca Bianchi',      '2020-10-01', 'UniBooks',    1, 2),
-('9788800000003', 'Database Relazionali',                'Anna Verdi',        '2019-05-20', 'DBEditrice',  1, 4),
-('9788800000004', 'Reti di Calcolatori',                 'Paolo Neri',        '2022-01-12', 'NetHouse',    1, 1),
-('9788800000005', 'Intelligenza Artificiale: Introduzione','Chiara Gallo',   '2023-07-05', 'AI Labs',     1, 2);
+('9788800000001', 'Programmazione Java Base',            'Mario Rossi',       '2021-03-15', 'TechPress',   1, 3, 3),
+('9788800000002', 'Strutture Dati e Algoritmi',          'Luca Bianchi',      '2020-10-01', 'UniBooks',    1, 2, 2),
+('9788800000003', 'Database Relazionali',                'Anna Verdi',        '2019-05-20', 'DBEditrice',  1, 4, 4),
+('9788800000004', 'Reti di Calcolatori',                 'Paolo Neri',        '2022-01-12', 'NetHouse',    1, 1, 1),
+('9788800000005', 'Intelligenza Artificiale: Introduzione','Chiara Gallo',   '2023-07-05', 'AI Labs',     1, 2, 2);
 
 DELIMITER $$
 DROP FUNCTION IF EXISTS biblioteca.set_app_tessera $$
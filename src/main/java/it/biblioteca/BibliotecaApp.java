@@ -3,13 +3,18 @@ package it.biblioteca;
 import it.biblioteca.dao.ConnectionProvider;
 import it.biblioteca.dao.DatabaseConnectionProvider;
 import it.biblioteca.dao.DaoFactory;
+import it.biblioteca.dao.bin.BinaryDaoFactory;
 import it.biblioteca.dao.db.DbDaoFactory;
 import it.biblioteca.dao.json.JsonDaoFactory;
+import it.biblioteca.dao.json.JsonDurability;
+import it.biblioteca.events.EventBus;
 import it.biblioteca.security.AuthService;
 import it.biblioteca.security.SessionContext;
 import it.biblioteca.service.AppContext;
+import it.biblioteca.service.AvailabilityReconciler;
 import it.biblioteca.ui.ContentManager;
 import it.biblioteca.ui.facade.UiFacade;
+import it.biblioteca.util.StringPool;
 import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.scene.control.ChoiceDialog;
@@ -20,21 +25,29 @@ import javafx.stage.Stage;
 import java.io.File;
 import java.util.List;
 import java.util.Optional;
+import java.util.logging.Logger;
 
 public class BibliotecaApp extends Application {
 
-    enum Backend { DB, FILE }
+    private static final Logger LOGGER = Logger.getLogger(BibliotecaApp.class.getName());
+
+    enum Backend { DB, FILE, BINARIO }
+
+    private DaoFactory factory;
+    private AvailabilityReconciler reconciler;
 
     @Override
     public void start(Stage stage) {
         BorderPane root = new BorderPane();
 
         Backend backend = askBackend();
-        DaoFactory factory;
 
         if (backend == Backend.FILE) {
-            File dir = askJsonDirectory(stage);
-            factory = new JsonDaoFactory(dir);
+            File dir = askDataDirectory(stage);
+            factory = new JsonDaoFactory(dir, JsonDurability.fromSystemProperty());
+        } else if (backend == Backend.BINARIO) {
+            File dir = askDataDirectory(stage);
+            factory = new BinaryDaoFactory(dir);
         } else {
             ConnectionProvider cp = new DatabaseConnectionProvider();
             factory = new DbDaoFactory(cp);
@@ -45,6 +58,7 @@ public class BibliotecaApp extends Application {
 
         AppContext ctx = new AppContext(factory);
         UiFacade ui = UiFacade.from(ctx);
+        reconciler = AvailabilityReconciler.fromSystemProperty(ctx.loans());
 
         ContentManager contentManager = new ContentManager(ui);
         contentManager.inizializzaContenuto(root);
@@ -55,18 +69,26 @@ public class BibliotecaApp extends Application {
         stage.show();
     }
 
+    @Override
+    public void stop() throws Exception {
+        if (reconciler != null) reconciler.close();
+        if (factory instanceof AutoCloseable closeable) closeable.close();
+        LOGGER.info(StringPool.getDefault()::toString);
+        LOGGER.info(EventBus.getDefault()::toString);
+    }
+
     private Backend askBackend() {
-        ChoiceDialog<Backend> dialog = new ChoiceDialog<>(Backend.DB, List.of(Backend.DB, Backend.FILE));
+        ChoiceDialog<Backend> dialog = new ChoiceDialog<>(Backend.DB, List.of(Backend.DB, Backend.FILE, Backend.BINARIO));
         dialog.setTitle("Seleziona backend");
         dialog.setHeaderText("Scegli il backend dati");
-        dialog.setContentText("Usare DB o File JSON?");
+        dialog.setContentText("Usare DB, File JSON o File binario?");
         Optional<Backend> res = dialog.showAndWait();
         return res.orElse(Backend.DB);
     }
 
-    private File askJsonDirectory(Stage owner) {
+    private File askDataDirectory(Stage owner) {
         DirectoryChooser dc = new DirectoryChooser();
-        dc.setTitle("Scegli cartella dati JSON");
+        dc.setTitle("Scegli cartella dati");
         File dir = dc.showDialog(owner);
         if (dir == null) {
             dir = new File("data");
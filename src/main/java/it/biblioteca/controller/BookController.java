@@ -1,10 +1,13 @@
 package it.biblioteca.controller;
 
 import it.biblioteca.bean.BookBean;
+import it.biblioteca.dao.EsitoBatch;
+import it.biblioteca.dao.Ordinamento;
 import it.biblioteca.entity.Book;
 import it.biblioteca.service.BookService;
 
 import java.util.List;
+import java.util.function.Predicate;
 
 public class BookController {
     private final BookService service;
@@ -14,7 +17,11 @@ public class BookController {
     }
 
     public List<Book> trovaTutti() { return service.findAll(); }
+    public void scorriTutti(Predicate<Book> azione) { service.forEach(azione); }
+    public List<Book> trovaPagina(Book dopo, int limite, Ordinamento ordine) { return service.findPage(dopo, limite, ordine); }
+    public List<Book> cerca(String testo, int limite) { return service.search(testo, limite); }
     public boolean aggiungiLibro(BookBean bean) { return service.add(bean); }
+    public EsitoBatch importaLibri(EsitoBatch.Sorgente<BookBean> sorgente) { return service.importAll(sorgente); }
     public boolean aggiornaLibro(BookBean bean) { return service.update(bean); }
     public boolean rimuoviLibro(Long id) { return service.remove(id); }
 }
\ No newline at end of file
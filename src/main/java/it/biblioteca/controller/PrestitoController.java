@@ -1,14 +1,17 @@
 package it.biblioteca.controller;
 
 import it.biblioteca.bean.PrestitoBean;
+import it.biblioteca.dao.Ordinamento;
 import it.biblioteca.entity.Prestito;
 import it.biblioteca.service.PrestitoService;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 
 public class PrestitoController {
-    public enum Esito { OK, UTENTE_INATTIVO, ERRORE_INSERIMENTO }
+    public enum Esito { OK, UTENTE_INATTIVO, NESSUNA_COPIA, ERRORE_INSERIMENTO }
 
     private final PrestitoService service;
 
@@ -17,7 +20,13 @@ public class PrestitoController {
     }
 
     public List<Prestito> trovaTutti() { return service.findAll(); }
+    public void scorriTutti(Predicate<Prestito> azione) { service.forEach(azione); }
+    public List<Prestito> trovaPagina(Prestito dopo, int limite, Ordinamento ordine) { return service.findPage(dopo, limite, ordine); }
+    public List<Prestito> cerca(String testo, int limite) { return service.search(testo, limite); }
+    public List<Prestito> trovaPerUtente(Long utenteId, Prestito dopo, int limite) { return service.findByUser(utenteId, dopo, limite); }
+    public void scorriPerUtente(Long utenteId, Predicate<Prestito> azione) { service.forEachOfUser(utenteId, azione); }
     public List<Prestito> trovaPrestitiAttivi() { return service.findActive(); }
+    public Map<Long, Integer> contaPrestitiAttiviPerLibro() { return service.activeLoanCountsByBook(); }
     public Esito registraPrestito(PrestitoBean bean) { return service.registerLoan(bean); }
     public boolean registraRestituzione(Long prestitoId, LocalDate data) { return service.registerReturn(prestitoId, data); }
 }
\ No newline at end of file
@@ -1,11 +1,14 @@
 package it.biblioteca.controller;
 
 import it.biblioteca.bean.UtenteBean;
+import it.biblioteca.dao.EsitoBatch;
+import it.biblioteca.dao.Ordinamento;
 import it.biblioteca.entity.Utente;
 import it.biblioteca.service.UtenteService;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Predicate;
 
 public class UtenteController {
     private final UtenteService service;
@@ -15,8 +18,13 @@ public class UtenteController {
     }
 
     public List<Utente> trovaTutti() { return service.findAll(); }
+    public void scorriTutti(Predicate<Utente> azione) { service.forEach(azione); }
+    public List<Utente> trovaPagina(Utente dopo, int limite, Ordinamento ordine) { return service.findPage(dopo, limite, ordine); }
+    public List<Utente> cerca(String testo, int limite) { return service.search(testo, limite); }
     public List<Utente> trovaAttivi() { return service.findActive(); }
+    public Utente trovaPerTessera(Integer tessera) { return service.findByTessera(tessera); }
     public boolean aggiungi(UtenteBean b) { return service.add(b); }
+    public EsitoBatch importa(EsitoBatch.Sorgente<UtenteBean> sorgente) { return service.importAll(sorgente); }
     public boolean aggiorna(UtenteBean b) { return service.update(b); }
     public boolean elimina(Long id) { return service.delete(id); }
     public boolean creaCredenziali(Long utenteId, String username, String passwordPlain) { return service.createCredentials(utenteId, username, passwordPlain); }
@@ -3,6 +3,9 @@ package it.biblioteca.dao;
 import it.biblioteca.entity.Book;
 
 import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Predicate;
 
 public interface BookDAO {
 
@@ -10,4 +13,48 @@ public interface BookDAO {
     void aggiornaLibro(Book book);
     void eliminaLibro(Long id);
     List<Book> trovaTutti();
+    List<Book> trovaPagina(Book dopo, int limite, Ordinamento ordine);
+    List<Book> cerca(String testo, int limite);
+
+    /** Il libro con quell'id, o null; i backend lo leggono direttamente, qui c'è solo una scansione di riserva. */
+    default Book trovaPerId(Long id) {
+        if (id == null) return null;
+        Book[] trovato = {null};
+        scorri(b -> {
+            if (id.equals(b.getId())) trovato[0] = b;
+            return trovato[0] == null;
+        });
+        return trovato[0];
+    }
+
+    /**
+     * Passa i libri ad {@code azione} uno alla volta, nell'ordine di {@link #trovaPagina}, senza caricarli
+     * tutti in memoria; si ferma appena {@code azione} restituisce {@code false}.
+     */
+    default void scorri(Predicate<Book> azione) {
+        Book dopo = null;
+        List<Book> pagina;
+        do {
+            pagina = trovaPagina(dopo, 1000, Ordinamento.ASC);
+            for (Book b : pagina) {
+                if (!azione.test(b)) return;
+            }
+            if (!pagina.isEmpty()) dopo = pagina.getLast();
+        } while (pagina.size() == 1000);
+    }
+
+    /** Salva molti libri insieme; una riga non valida viene riportata nell'esito senza fermare le altre. */
+    default EsitoBatch salvaLibri(List<Book> libri) {
+        SortedMap<Integer, String> errori = new TreeMap<>();
+        int inseriti = 0;
+        for (int i = 0; i < libri.size(); i++) {
+            try {
+                salvaLibro(libri.get(i));
+                inseriti++;
+            } catch (RuntimeException e) {
+                errori.put(i, e.getMessage());
+            }
+        }
+        return new EsitoBatch(inseriti, errori);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+package it.biblioteca.dao;
+
+import java.util.Map;
+
+/**
+ * Copie disponibili dei libri nei backend in memoria (JSON, binario): il DAO dei prestiti comunica a quello
+ * dei libri ogni prestito e ogni restituzione, come fa il DB aggiornando {@code libri.copie_disponibili},
+ * e gli chiede le copie del libro prima di prestarlo.
+ */
+public interface ContatoreCopie {
+
+    ContatoreCopie NESSUNO = new ContatoreCopie() {
+        @Override
+        public void varia(Long libroId, int delta) {
+            // nessun contatore collegato
+        }
+
+        @Override
+        public int copie(Long libroId) {
+            return 0;
+        }
+
+        @Override
+        public Map<Long, Integer> riallinea(Map<Long, Integer> attiviPerLibro) {
+            return Map.of();
+        }
+    };
+
+    void varia(Long libroId, int delta);
+
+    /** Copie totali del libro, 0 se non esiste. */
+    int copie(Long libroId);
+
+    /**
+     * Riporta ogni libro a copie meno prestiti attivi.
+     *
+     * @return per ogni libro corretto, lo scarto trovato (contatore meno valore atteso)
+     */
+    Map<Long, Integer> riallinea(Map<Long, Integer> attiviPerLibro);
+}
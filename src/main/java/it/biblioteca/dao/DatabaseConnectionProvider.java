@@ -5,10 +5,35 @@ import it.biblioteca.db.DatabaseConfig;
 import java.sql.Connection;
 import java.sql.SQLException;
 
-public class DatabaseConnectionProvider implements ConnectionProvider {
+public class DatabaseConnectionProvider implements ConnectionProvider, AutoCloseable {
+
+    private final PooledConnectionProvider pool;
+    private long credentialsVersion = DatabaseConfig.credentialsVersion();
+
+    public DatabaseConnectionProvider() {
+        this(PooledConnectionProvider.Settings.defaults());
+    }
+
+    public DatabaseConnectionProvider(PooledConnectionProvider.Settings settings) {
+        this.pool = new PooledConnectionProvider(DatabaseConfig::getConnection, settings);
+    }
 
     @Override
     public Connection getConnection() throws SQLException {
-        return DatabaseConfig.getConnection();
+        syncCredentials();
+        return pool.getConnection();
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    private synchronized void syncCredentials() {
+        long current = DatabaseConfig.credentialsVersion();
+        if (current != credentialsVersion) {
+            credentialsVersion = current;
+            pool.invalidateAll();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,31 @@
+package it.biblioteca.dao;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Risultato di un inserimento massivo: quante righe sono state salvate e, per ogni riga scartata,
+ * la sua posizione nella lista di partenza con il motivo.
+ */
+public record EsitoBatch(int inseriti, SortedMap<Integer, String> errori) {
+
+    /**
+     * Origine di un import che decide da sé come e quando scrivere: riceve la funzione che salva un blocco
+     * e la chiama per ogni blocco pronto, nell'ordine. Le posizioni degli errori le stabilisce la sorgente.
+     */
+    @FunctionalInterface
+    public interface Sorgente<T> {
+        EsitoBatch scriviTutto(Function<List<T>, EsitoBatch> scrivi);
+    }
+
+    public EsitoBatch {
+        errori = Collections.unmodifiableSortedMap(new TreeMap<>(errori));
+    }
+
+    public int falliti() {
+        return errori.size();
+    }
+}
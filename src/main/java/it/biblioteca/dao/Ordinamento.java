@@ -0,0 +1,13 @@
+package it.biblioteca.dao;
+
+public enum Ordinamento {
+    ASC, DESC;
+
+    public String sql() {
+        return name();
+    }
+
+    public String operatoreDopo() {
+        return this == ASC ? ">" : "<";
+    }
+}
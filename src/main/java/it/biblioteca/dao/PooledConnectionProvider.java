@@ -0,0 +1,284 @@
+package it.biblioteca.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool di connessioni limitato costruito sopra un altro {@link ConnectionProvider}.
+ * Le connessioni restituite sono proxy: {@code close()} le rimette nel pool invece di chiuderle.
+ */
+public class PooledConnectionProvider implements ConnectionProvider, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(PooledConnectionProvider.class.getName());
+
+    public record Settings(
+            int maxSize,
+            Duration maxWait,
+            Duration idleTimeout,
+            Duration leakThreshold,
+            int validationTimeoutSeconds
+    ) {
+        public Settings {
+            if (maxSize <= 0) throw new IllegalArgumentException("maxSize deve essere positivo");
+        }
+
+        public static Settings defaults() {
+            return new Settings(8, Duration.ofSeconds(10), Duration.ofMinutes(5), Duration.ofMinutes(2), 2);
+        }
+    }
+
+    private record IdleConnection(Connection raw, long generation, long idleSinceNanos) {}
+
+    private static final class Lease {
+        final Connection raw;
+        final long generation;
+        final long borrowedAtNanos = System.nanoTime();
+        final Throwable origin = new Throwable("Connessione ottenuta qui");
+        final AtomicBoolean returned = new AtomicBoolean(false);
+        volatile boolean leakReported;
+
+        Lease(Connection raw, long generation) {
+            this.raw = raw;
+            this.generation = generation;
+        }
+    }
+
+    private final ConnectionProvider target;
+    private final Settings settings;
+    private final Semaphore permits;
+    private final Deque<IdleConnection> idle = new ArrayDeque<>();
+    private final Set<Lease> leased = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService housekeeper;
+
+    private volatile boolean closed;
+    private volatile long generation;
+
+    public PooledConnectionProvider(ConnectionProvider target) {
+        this(target, Settings.defaults());
+    }
+
+    public PooledConnectionProvider(ConnectionProvider target, Settings settings) {
+        if (target == null) throw new IllegalArgumentException("ConnectionProvider non può essere null");
+        this.target = target;
+        this.settings = settings != null ? settings : Settings.defaults();
+        this.permits = new Semaphore(this.settings.maxSize(), true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long periodMs = Math.max(1_000L, Math.min(
+                this.settings.idleTimeout().toMillis(), this.settings.leakThreshold().toMillis()) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeeping, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) throw new SQLException("Pool di connessioni chiuso");
+
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(settings.maxWait().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Attesa di una connessione interrotta", e);
+        }
+        if (!acquired) {
+            throw new SQLTimeoutException("Nessuna connessione disponibile entro " + settings.maxWait().toMillis() + " ms");
+        }
+
+        try {
+            long gen = generation;
+            Connection raw = takeValidIdle(gen);
+            if (raw == null) raw = target.getConnection();
+            return wrap(new Lease(raw, gen));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Scarta tutte le connessioni inattive e marca come obsolete quelle in uso,
+     * che verranno chiuse quando restituite (es. dopo un cambio di credenziali).
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        closeAll(drainIdle());
+    }
+
+    public int idleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    public int activeCount() {
+        return leased.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        closeAll(drainIdle());
+    }
+
+    private Connection takeValidIdle(long gen) {
+        while (true) {
+            IdleConnection c;
+            synchronized (idle) {
+                c = idle.pollFirst();
+            }
+            if (c == null) return null;
+            if (c.generation() == gen && !isExpired(c, System.nanoTime()) && isValid(c.raw())) {
+                return c.raw();
+            }
+            closeQuietly(c.raw());
+        }
+    }
+
+    private boolean isValid(Connection raw) {
+        try {
+            return !raw.isClosed() && raw.isValid(settings.validationTimeoutSeconds());
+        } catch (SQLException _) {
+            return false;
+        }
+    }
+
+    private boolean isExpired(IdleConnection c, long now) {
+        return now - c.idleSinceNanos() > settings.idleTimeout().toNanos();
+    }
+
+    private Connection wrap(Lease lease) {
+        leased.add(lease);
+        InvocationHandler handler = (proxy, method, args) -> invoke(proxy, lease, method, args);
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    private Object invoke(Object proxy, Lease lease, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "close" -> {
+                release(lease);
+                return null;
+            }
+            case "isClosed" -> {
+                return lease.returned.get() || lease.raw.isClosed();
+            }
+            case "toString" -> {
+                return "Pooled[" + lease.raw + "]";
+            }
+            case "hashCode" -> {
+                return System.identityHashCode(lease);
+            }
+            case "equals" -> {
+                return args != null && args.length == 1 && args[0] == proxy;
+            }
+            default -> {
+                if (lease.returned.get()) throw new SQLException("Connessione già restituita al pool");
+                try {
+                    return method.invoke(lease.raw, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+    }
+
+    private void release(Lease lease) {
+        if (!lease.returned.compareAndSet(false, true)) return;
+        leased.remove(lease);
+        try {
+            Connection raw = lease.raw;
+            if (closed || lease.generation != generation || raw.isClosed()) {
+                closeQuietly(raw);
+                return;
+            }
+            if (!raw.getAutoCommit()) {
+                raw.rollback();
+                raw.setAutoCommit(true);
+            }
+            synchronized (idle) {
+                idle.offerFirst(new IdleConnection(raw, lease.generation, System.nanoTime()));
+            }
+        } catch (SQLException _) {
+            closeQuietly(lease.raw);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void housekeeping() {
+        try {
+            evictIdle();
+            reportLeaks();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Errore durante la manutenzione del pool", e);
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        List<Connection> expired = new ArrayList<>();
+        synchronized (idle) {
+            while (!idle.isEmpty() && isExpired(idle.peekLast(), now)) {
+                expired.add(idle.pollLast().raw());
+            }
+        }
+        closeAll(expired);
+    }
+
+    private void reportLeaks() {
+        long threshold = settings.leakThreshold().toNanos();
+        long now = System.nanoTime();
+        for (Lease l : leased) {
+            if (!l.leakReported && now - l.borrowedAtNanos > threshold) {
+                l.leakReported = true;
+                LOGGER.log(Level.WARNING, "Possibile leak: connessione in uso da più di "
+                        + settings.leakThreshold().toSeconds() + " s", l.origin);
+            }
+        }
+    }
+
+    private List<Connection> drainIdle() {
+        List<Connection> out = new ArrayList<>();
+        synchronized (idle) {
+            for (IdleConnection c : idle) out.add(c.raw());
+            idle.clear();
+        }
+        return out;
+    }
+
+    private static void closeAll(List<Connection> connections) {
+        for (Connection c : connections) closeQuietly(c);
+    }
+
+    private static void closeQuietly(Connection c) {
+        try {
+            c.close();
+        } catch (SQLException _) {
+            // empty
+        }
+    }
+}
@@ -5,11 +5,55 @@ import it.biblioteca.entity.Prestito;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 
 public interface PrestitoDAO {
 
     List<Prestito> trovaTutti();
+    Prestito trovaPerId(Long id);
+    List<Prestito> trovaPagina(Prestito dopo, int limite, Ordinamento ordine);
+    List<Prestito> cerca(String testo, int limite);
+
+    /**
+     * Prestiti dell'utente dal più recente (data del prestito, poi id), a pagine: {@code dopo} è l'ultimo
+     * della pagina precedente, null per la prima.
+     */
+    List<Prestito> trovaPerUtente(Long utenteId, Prestito dopo, int limite);
     List<Prestito> trovaPrestitiAttivi();
+    Map<Long, Integer> contaPrestitiAttiviPerLibro();
+    /** In caso di successo l'id assegnato viene scritto in {@code bean}. */
     boolean inserisci(PrestitoBean bean);
+
+    /**
+     * Come {@link #inserisci}, ma solo se il libro ha ancora una copia libera: il conteggio dei prestiti attivi
+     * e l'inserimento sono atomici, quindi due registrazioni contemporanee non possono prestare la stessa copia.
+     * I backend in memoria leggono le copie dal {@link ContatoreCopie} collegato, dentro la sezione critica;
+     * il DB scala {@code libri.copie_disponibili} nella stessa transazione, solo se è ancora positivo.
+     *
+     * @return false se il libro non esiste o tutte le copie sono in prestito
+     */
+    boolean inserisciSeDisponibile(PrestitoBean bean);
     boolean chiudiPrestito(Long prestitoId, LocalDate dataRestituzione);
+
+    /**
+     * Controlla che le copie disponibili di ogni libro valgano copie meno prestiti attivi e corregge quelle
+     * che non tornano.
+     *
+     * @return per ogni libro corretto, lo scarto trovato (contatore meno valore atteso)
+     */
+    Map<Long, Integer> riconciliaCopieDisponibili();
+
+    /** Passa i prestiti ad {@code azione} dal più recente, a pagine; si ferma quando restituisce {@code false}. */
+    default void scorri(Predicate<Prestito> azione) {
+        Prestito dopo = null;
+        List<Prestito> pagina;
+        do {
+            pagina = trovaPagina(dopo, 1000, Ordinamento.DESC);
+            for (Prestito p : pagina) {
+                if (!azione.test(p)) return;
+            }
+            if (!pagina.isEmpty()) dopo = pagina.getLast();
+        } while (pagina.size() == 1000);
+    }
 }
\ No newline at end of file
@@ -4,15 +4,49 @@ import it.biblioteca.entity.Utente;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Predicate;
 
 public interface UtenteDAO {
 
     List<Utente> trovaTutti();
+    List<Utente> trovaPagina(Utente dopo, int limite, Ordinamento ordine);
+    List<Utente> cerca(String testo, int limite);
+
+    /** Passa gli utenti ad {@code azione} nell'ordine di {@link #trovaPagina}, a pagine; si ferma quando restituisce {@code false}. */
+    default void scorri(Predicate<Utente> azione) {
+        Utente dopo = null;
+        List<Utente> pagina;
+        do {
+            pagina = trovaPagina(dopo, 1000, Ordinamento.ASC);
+            for (Utente u : pagina) {
+                if (!azione.test(u)) return;
+            }
+            if (!pagina.isEmpty()) dopo = pagina.getLast();
+        } while (pagina.size() == 1000);
+    }
     Utente trovaPerId(Long id);
+    Utente trovaPerTessera(Integer tessera);
     boolean aggiungi(Utente u);
     boolean aggiorna(Utente u);
     boolean elimina(Long id);
 
+    /** Aggiunge molti utenti insieme; una riga rifiutata viene riportata nell'esito senza fermare le altre. */
+    default EsitoBatch aggiungiTutti(List<Utente> utenti) {
+        SortedMap<Integer, String> errori = new TreeMap<>();
+        int inseriti = 0;
+        for (int i = 0; i < utenti.size(); i++) {
+            try {
+                if (aggiungi(utenti.get(i))) inseriti++;
+                else errori.put(i, "Utente rifiutato (tessera già presente?)");
+            } catch (RuntimeException e) {
+                errori.put(i, e.getMessage());
+            }
+        }
+        return new EsitoBatch(inseriti, errori);
+    }
+
     boolean creaCredenziali(Long utenteId, String username, String passwordPlain);
     boolean aggiornaCredenziali(Long utenteId, String username, String passwordPlain);
     Optional<String> getUsernameForUserId(Long utenteId);
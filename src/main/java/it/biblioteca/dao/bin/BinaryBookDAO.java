@@ -0,0 +1,274 @@
+package it.biblioteca.dao.bin;
+
+import it.biblioteca.dao.BookDAO;
+import it.biblioteca.dao.ContatoreCopie;
+import it.biblioteca.dao.EsitoBatch;
+import it.biblioteca.dao.Ordinamento;
+import it.biblioteca.dao.mem.MemorySupport;
+import it.biblioteca.dao.mem.SearchIndex;
+import it.biblioteca.entity.Book;
+import it.biblioteca.util.StringPool;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static it.biblioteca.dao.bin.BinaryStorageSupport.*;
+
+/**
+ * Libri in {@code books.bin}. All'avvio si costruiscono solo gli indici id → slot e ISBN → id;
+ * la lista ordinata e l'indice di ricerca vengono decodificati alla prima lettura che li richiede.
+ * Le copie disponibili non sono nel record: si tengono in memoria i prestiti attivi per libro,
+ * aggiornati da {@link BinaryPrestitoDAO}, e si sottraggono alle copie in lettura.
+ */
+public class BinaryBookDAO implements BookDAO, ContatoreCopie {
+
+    private static final Comparator<Book> PER_TITOLO = Comparator
+            .comparing(Book::getTitolo, Comparator.nullsFirst(String::compareToIgnoreCase))
+            .thenComparing(Book::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    // Capacità in byte UTF-8, circa il doppio delle colonne VARCHAR del database.
+    private static final int MAX_ISBN = 40;
+    private static final int MAX_TITOLO = 400;
+    private static final int MAX_AUTORE = 200;
+    private static final int MAX_CASA_EDITRICE = 200;
+
+    private static final int ISBN = 0;
+    private static final int TITOLO = ISBN + stringa(MAX_ISBN);
+    private static final int AUTORE = TITOLO + stringa(MAX_TITOLO);
+    private static final int CASA_EDITRICE = AUTORE + stringa(MAX_AUTORE);
+    private static final int DATA_PUBBLICAZIONE = CASA_EDITRICE + stringa(MAX_CASA_EDITRICE);
+    private static final int COPIE = DATA_PUBBLICAZIONE + DATA;
+    private static final int DIMENSIONE = COPIE + INT;
+
+    private record Pubblicati(List<Book> ordinati, SearchIndex indice, Map<Long, Book> perId) {}
+
+    private final BinaryRecordFile file;
+    private final Map<String, Long> perIsbn = new HashMap<>();
+    private final Map<Long, Integer> inPrestito = new HashMap<>();
+    private long nextId;
+    private volatile Pubblicati pubblicati;
+
+    public BinaryBookDAO(File baseDir) {
+        File dir = baseDir != null ? baseDir : new File("data");
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        this.file = new BinaryRecordFile(new File(dir, "books.bin"), DIMENSIONE);
+        file.perOgni((id, rec) -> {
+            String isbn = getString(rec, ISBN);
+            if (isbn != null) perIsbn.put(isbn, id);
+        });
+        this.nextId = file.maxId() + 1;
+    }
+
+    @Override
+    public synchronized void salvaLibro(Book book) {
+        if (book == null) return;
+
+        if (book.getId() == null) {
+            book.setId(nextId++);
+        }
+        Long existing = book.getIsbn() != null ? perIsbn.get(book.getIsbn()) : null;
+        Book copy = cloneBook(book);
+        if (existing != null) {
+            copy.setId(existing);
+            book.setId(existing); // chi salva vede l'id della riga che ha aggiornato
+        }
+        scrivi(copy);
+        book.setCopieDisponibili(conDisponibili(copy).getCopieDisponibili());
+    }
+
+    /** Come {@link it.biblioteca.dao.json.JsonBookDAO#salvaLibri}: un ISBN già presente è un errore della riga. */
+    @Override
+    public synchronized EsitoBatch salvaLibri(List<Book> libri) {
+        SortedMap<Integer, String> errori = new TreeMap<>();
+        int inseriti = 0;
+        for (int i = 0; i < libri.size(); i++) {
+            Book book = libri.get(i);
+            if (book == null) {
+                errori.put(i, "Libro mancante");
+            } else if (book.getIsbn() != null && perIsbn.containsKey(book.getIsbn())) {
+                errori.put(i, "ISBN " + book.getIsbn() + " già presente");
+            } else {
+                try {
+                    salvaLibro(book);
+                    inseriti++;
+                } catch (RuntimeException e) {
+                    errori.put(i, e.getMessage());
+                }
+            }
+        }
+        return new EsitoBatch(inseriti, errori);
+    }
+
+    @Override
+    public synchronized void aggiornaLibro(Book book) {
+        if (book == null || book.getId() == null || !file.contiene(book.getId())) return;
+
+        Long conIsbn = book.getIsbn() != null ? perIsbn.get(book.getIsbn()) : null;
+        if (conIsbn != null && !conIsbn.equals(book.getId())) {
+            throw new IllegalArgumentException("Errore aggiornaLibro: ISBN " + book.getIsbn() + " già presente");
+        }
+        scrivi(cloneBook(book));
+    }
+
+    @Override
+    public synchronized void eliminaLibro(Long id) {
+        if (id == null) return;
+        Book prima = trovaPerId(id);
+        if (prima == null) return;
+        file.elimina(id);
+        if (prima.getIsbn() != null) perIsbn.remove(prima.getIsbn(), id);
+        pubblicati = null;
+    }
+
+    @Override
+    public List<Book> trovaTutti() {
+        return pubblicati().ordinati();
+    }
+
+    @Override
+    public List<Book> trovaPagina(Book dopo, int limite, Ordinamento ordine) {
+        List<Book> ordinati = pubblicati().ordinati();
+        if (ordine == Ordinamento.DESC) {
+            return Collections.unmodifiableList(MemorySupport.pagina(ordinati.reversed(), PER_TITOLO.reversed(), dopo, limite));
+        }
+        return Collections.unmodifiableList(MemorySupport.pagina(ordinati, PER_TITOLO, dopo, limite));
+    }
+
+    @Override
+    public List<Book> cerca(String testo, int limite) {
+        if (testo == null || testo.isBlank()) return trovaPagina(null, limite, Ordinamento.ASC);
+
+        Pubblicati p = pubblicati();
+        List<Book> trovati = new ArrayList<>();
+        for (Long id : p.indice().search(testo)) {
+            Book b = p.perId().get(id);
+            if (b != null) trovati.add(b);
+        }
+        trovati.sort(PER_TITOLO);
+        return List.copyOf(trovati.subList(0, Math.min(trovati.size(), Math.max(1, limite))));
+    }
+
+    /** Lettura puntuale direttamente dal file mappato, senza passare dalla lista pubblicata. */
+    @Override
+    public synchronized Book trovaPerId(Long id) {
+        ByteBuffer rec = id != null ? file.leggi(id) : null;
+        return rec != null ? conDisponibili(decodifica(id, rec)) : null;
+    }
+
+    // la lista pubblicata si ricostruisce alla prossima lettura; le letture puntuali sono già aggiornate
+    @Override
+    public synchronized void varia(Long libroId, int delta) {
+        if (libroId == null || delta == 0) return;
+        inPrestito.merge(libroId, -delta, Integer::sum);
+        pubblicati = null;
+    }
+
+    @Override
+    public synchronized int copie(Long libroId) {
+        ByteBuffer rec = libroId != null ? file.leggi(libroId) : null;
+        return rec != null ? rec.getInt(COPIE) : 0;
+    }
+
+    @Override
+    public synchronized Map<Long, Integer> riallinea(Map<Long, Integer> attiviPerLibro) {
+        Map<Long, Integer> corretti = new HashMap<>();
+        file.perOgni((id, rec) -> {
+            int attivi = attiviPerLibro.getOrDefault(id, 0);
+            int contati = inPrestito.getOrDefault(id, 0);
+            if (attivi != contati) corretti.put(id, attivi - contati);
+        });
+        inPrestito.clear();
+        inPrestito.putAll(attiviPerLibro);
+        if (!corretti.isEmpty()) pubblicati = null;
+        return corretti;
+    }
+
+    /** Raggruppa le scritture di un'importazione massiva in un solo flush su disco. */
+    synchronized void inBlocco(Runnable scritture) {
+        file.inBlocco(scritture);
+    }
+
+    synchronized void close() {
+        file.close();
+    }
+
+    private void scrivi(Book b) {
+        Book prima = trovaPerId(b.getId());
+        file.scrivi(b.getId(), rec -> codifica(rec, b));
+        if (prima != null && prima.getIsbn() != null) perIsbn.remove(prima.getIsbn(), b.getId());
+        if (b.getIsbn() != null) perIsbn.put(b.getIsbn(), b.getId());
+        if (b.getId() >= nextId) nextId = b.getId() + 1;
+        pubblicati = null;
+    }
+
+    private Pubblicati pubblicati() {
+        Pubblicati v = pubblicati;
+        return v != null ? v : pubblica();
+    }
+
+    private synchronized Pubblicati pubblica() {
+        if (pubblicati == null) {
+            List<Book> ordinati = new ArrayList<>(file.size());
+            Map<Long, Book> perId = new HashMap<>();
+            SearchIndex indice = new SearchIndex();
+            file.perOgni((id, rec) -> {
+                Book b = conDisponibili(decodifica(id, rec));
+                ordinati.add(b);
+                perId.put(id, b);
+                indice.put(id, b.getIsbn(), b.getTitolo(), b.getAutore(), b.getCasaEditrice());
+            });
+            ordinati.sort(PER_TITOLO);
+            pubblicati = new Pubblicati(Collections.unmodifiableList(ordinati), indice, perId);
+        }
+        return pubblicati;
+    }
+
+    private Book conDisponibili(Book b) {
+        b.setCopieDisponibili(b.getCopie() - inPrestito.getOrDefault(b.getId(), 0));
+        return b;
+    }
+
+    private static void codifica(ByteBuffer rec, Book b) {
+        putString(rec, ISBN, MAX_ISBN, "isbn", b.getIsbn());
+        putString(rec, TITOLO, MAX_TITOLO, "titolo", b.getTitolo());
+        putString(rec, AUTORE, MAX_AUTORE, "autore", b.getAutore());
+        putString(rec, CASA_EDITRICE, MAX_CASA_EDITRICE, "casa editrice", b.getCasaEditrice());
+        putDate(rec, DATA_PUBBLICAZIONE, b.getDataPubblicazione());
+        rec.putInt(COPIE, b.getCopie());
+    }
+
+    private static Book decodifica(long id, ByteBuffer rec) {
+        Book b = new Book();
+        b.setId(id);
+        b.setIsbn(getString(rec, ISBN));
+        b.setTitolo(getString(rec, TITOLO));
+        b.setAutore(StringPool.getDefault().dedup(getString(rec, AUTORE)));
+        b.setCasaEditrice(StringPool.getDefault().dedup(getString(rec, CASA_EDITRICE)));
+        b.setDataPubblicazione(getDate(rec, DATA_PUBBLICAZIONE));
+        b.setCopie(rec.getInt(COPIE));
+        return b;
+    }
+
+    private static Book cloneBook(Book src) {
+        Book b = new Book();
+        b.setId(src.getId());
+        b.setIsbn(src.getIsbn());
+        b.setTitolo(src.getTitolo());
+        b.setAutore(src.getAutore());
+        b.setDataPubblicazione(src.getDataPubblicazione());
+        b.setCasaEditrice(src.getCasaEditrice());
+        b.setCopie(src.getCopie());
+        b.setCopieDisponibili(src.getCopieDisponibili());
+        return b;
+    }
+}
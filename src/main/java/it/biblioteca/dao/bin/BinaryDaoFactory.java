@@ -0,0 +1,128 @@
+package it.biblioteca.dao.bin;
+
+import it.biblioteca.dao.BookDAO;
+import it.biblioteca.dao.DaoFactory;
+import it.biblioteca.dao.PrestitoDAO;
+import it.biblioteca.dao.UtenteDAO;
+import it.biblioteca.dao.json.JsonDaoFactory;
+import it.biblioteca.entity.Book;
+import it.biblioteca.entity.Prestito;
+import it.biblioteca.entity.Utente;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Backend su file binari mappati in memoria. Alla prima apertura di una cartella senza file .bin
+ * i dati vengono importati dai file JSON presenti (o dagli utenti predefiniti del backend JSON).
+ * Durante l'importazione la cartella contiene un file marcatore: se all'apertura il marcatore c'è
+ * ancora l'importazione precedente si è interrotta, i file .bin parziali vengono cancellati e si riparte.
+ */
+public class BinaryDaoFactory implements DaoFactory, AutoCloseable {
+
+    private static final String[] FILE_BINARI = {"books.bin", "utenti.bin", "prestiti.bin"};
+    private static final String IMPORT_IN_CORSO = "importazione-json.incompleta";
+
+    private final BinaryBookDAO bookDAO;
+    private final BinaryUtenteDAO utenteDAO;
+    private final BinaryPrestitoDAO prestitoDAO;
+
+    public BinaryDaoFactory(File baseDir) {
+        File dir = baseDir != null ? baseDir : new File("data");
+        File marcatore = new File(dir, IMPORT_IN_CORSO);
+        boolean nuovo = true;
+        for (String nome : FILE_BINARI) {
+            if (new File(dir, nome).exists()) nuovo = false;
+        }
+        if (marcatore.exists()) {
+            for (String nome : FILE_BINARI) elimina(new File(dir, nome));
+            nuovo = true;
+        } else if (nuovo) {
+            creaMarcatore(marcatore);
+        }
+
+        BinaryBookDAO libri = null;
+        BinaryUtenteDAO utenti = null;
+        BinaryPrestitoDAO prestiti = null;
+        try {
+            libri = new BinaryBookDAO(dir);
+            utenti = new BinaryUtenteDAO(dir);
+            prestiti = new BinaryPrestitoDAO(dir);
+            if (nuovo) {
+                importaDaJson(dir, libri, utenti, prestiti);
+                elimina(marcatore);
+            }
+            prestiti.collega(libri);
+        } catch (RuntimeException e) {
+            // i file mappati restano aperti finché qualcuno non li chiude: qui nessuno avrebbe la factory
+            if (libri != null) libri.close();
+            if (utenti != null) utenti.close();
+            if (prestiti != null) prestiti.close();
+            throw e;
+        }
+        this.bookDAO = libri;
+        this.utenteDAO = utenti;
+        this.prestitoDAO = prestiti;
+    }
+
+    @Override
+    public BookDAO bookDAO() {
+        return bookDAO;
+    }
+
+    @Override
+    public UtenteDAO utenteDAO() {
+        return utenteDAO;
+    }
+
+    @Override
+    public PrestitoDAO prestitoDAO() {
+        return prestitoDAO;
+    }
+
+    @Override
+    public void close() {
+        bookDAO.close();
+        utenteDAO.close();
+        prestitoDAO.close();
+    }
+
+    private static void importaDaJson(File dir, BinaryBookDAO bookDAO, BinaryUtenteDAO utenteDAO,
+                                      BinaryPrestitoDAO prestitoDAO) {
+        try (JsonDaoFactory json = new JsonDaoFactory(dir)) {
+            bookDAO.inBlocco(() -> {
+                for (Book b : json.bookDAO().trovaTutti()) bookDAO.salvaLibro(b);
+            });
+            UtenteDAO utentiJson = json.utenteDAO();
+            utenteDAO.inBlocco(() -> {
+                for (Utente u : utentiJson.trovaTutti()) {
+                    var auth = utentiJson.getUsernameForUserId(u.getId()).flatMap(utentiJson::findAuthByUsername);
+                    utenteDAO.importa(u, auth.map(UtenteDAO.AuthData::username).orElse(null),
+                            auth.map(UtenteDAO.AuthData::passwordHash).orElse(null),
+                            auth.map(UtenteDAO.AuthData::role).orElse(null));
+                }
+            });
+            prestitoDAO.inBlocco(() -> {
+                for (Prestito p : json.prestitoDAO().trovaTutti()) prestitoDAO.importa(p);
+            });
+        }
+    }
+
+    private static void creaMarcatore(File marcatore) {
+        try {
+            Files.createDirectories(marcatore.toPath().getParent());
+            Files.createFile(marcatore.toPath());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Errore creazione " + marcatore.getName(), e);
+        }
+    }
+
+    private static void elimina(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Errore eliminazione " + file.getName(), e);
+        }
+    }
+}
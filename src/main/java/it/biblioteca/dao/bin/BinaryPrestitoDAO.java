@@ -0,0 +1,258 @@
+package it.biblioteca.dao.bin;
+
+import it.biblioteca.bean.PrestitoBean;
+import it.biblioteca.dao.ContatoreCopie;
+import it.biblioteca.dao.Ordinamento;
+import it.biblioteca.dao.PrestitoDAO;
+import it.biblioteca.dao.mem.MemorySupport;
+import it.biblioteca.dao.mem.SearchIndex;
+import it.biblioteca.entity.Prestito;
+import it.biblioteca.util.StringPool;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static it.biblioteca.dao.bin.BinaryStorageSupport.*;
+
+/** Prestiti in {@code prestiti.bin}; stessa organizzazione di {@link BinaryBookDAO}. */
+public class BinaryPrestitoDAO implements PrestitoDAO {
+
+    private static final Comparator<Prestito> PER_ID =
+            Comparator.comparing(Prestito::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+    private static final Comparator<Prestito> PIU_RECENTI = PER_ID.reversed();
+    private static final Comparator<Prestito> PIU_RECENTI_PER_DATA = Comparator
+            .comparing(Prestito::getDataPrestito, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(PER_ID)
+            .reversed();
+
+    private static final int MAX_UTENTE = 400;
+    private static final int MAX_TITOLO = 400;
+
+    private static final int LIBRO_ID = 0;
+    private static final int UTENTE_ID = LIBRO_ID + LONG;
+    private static final int DATA_PRESTITO = UTENTE_ID + LONG;
+    private static final int DATA_RESTITUZIONE = DATA_PRESTITO + DATA;
+    private static final int UTENTE = DATA_RESTITUZIONE + DATA;
+    private static final int TITOLO = UTENTE + stringa(MAX_UTENTE);
+    private static final int DIMENSIONE = TITOLO + stringa(MAX_TITOLO);
+
+    private record Pubblicati(List<Prestito> tutti, List<Prestito> attivi, Map<Long, Integer> attiviPerLibro,
+                              SearchIndex indice, Map<Long, Prestito> perId) {}
+
+    private final BinaryRecordFile file;
+    // aggiornata a ogni scrittura sotto il monitor, come in JsonPrestitoDAO: i controlli sulle copie
+    // non ricostruiscono la versione pubblicata
+    private final Map<Long, Integer> attiviPerLibro = new HashMap<>();
+    private long nextId;
+    private ContatoreCopie contatore = ContatoreCopie.NESSUNO;
+    private volatile Pubblicati pubblicati;
+
+    public BinaryPrestitoDAO(File baseDir) {
+        File dir = baseDir != null ? baseDir : new File("data");
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        this.file = new BinaryRecordFile(new File(dir, "prestiti.bin"), DIMENSIONE);
+        file.perOgni((id, rec) -> {
+            if (attivo(rec)) incrementaAttivi(getLong(rec, LIBRO_ID));
+        });
+        this.nextId = file.maxId() + 1;
+    }
+
+    @Override
+    public List<Prestito> trovaTutti() {
+        return pubblicati().tutti();
+    }
+
+    // letto dal file: non serve ricostruire la versione pubblicata dopo ogni scrittura
+    @Override
+    public synchronized Prestito trovaPerId(Long id) {
+        ByteBuffer rec = id != null ? file.leggi(id) : null;
+        return rec != null ? decodifica(id, rec) : null;
+    }
+
+    @Override
+    public List<Prestito> trovaPagina(Prestito dopo, int limite, Ordinamento ordine) {
+        List<Prestito> recenti = pubblicati().tutti();
+        if (ordine == Ordinamento.ASC) {
+            return Collections.unmodifiableList(MemorySupport.pagina(recenti.reversed(), PER_ID, dopo, limite));
+        }
+        return Collections.unmodifiableList(MemorySupport.pagina(recenti, PIU_RECENTI, dopo, limite));
+    }
+
+    // niente indice per utente: i prestiti di uno stesso utente sono pochi rispetto allo storico in memoria
+    @Override
+    public List<Prestito> trovaPerUtente(Long utenteId, Prestito dopo, int limite) {
+        if (utenteId == null) return new ArrayList<>();
+        List<Prestito> suoi = new ArrayList<>();
+        for (Prestito p : pubblicati().tutti()) {
+            if (utenteId.equals(p.getUtenteId())) suoi.add(p);
+        }
+        suoi.sort(PIU_RECENTI_PER_DATA);
+        return Collections.unmodifiableList(MemorySupport.pagina(suoi, PIU_RECENTI_PER_DATA, dopo, limite));
+    }
+
+    @Override
+    public List<Prestito> cerca(String testo, int limite) {
+        if (testo == null || testo.isBlank()) return trovaPagina(null, limite, Ordinamento.DESC);
+
+        Pubblicati p = pubblicati();
+        List<Prestito> trovati = new ArrayList<>();
+        for (Long id : p.indice().search(testo)) {
+            Prestito pr = p.perId().get(id);
+            if (pr != null) trovati.add(pr);
+        }
+        trovati.sort(PIU_RECENTI);
+        return List.copyOf(trovati.subList(0, Math.min(trovati.size(), Math.max(1, limite))));
+    }
+
+    @Override
+    public List<Prestito> trovaPrestitiAttivi() {
+        return pubblicati().attivi();
+    }
+
+    @Override
+    public Map<Long, Integer> contaPrestitiAttiviPerLibro() {
+        return pubblicati().attiviPerLibro();
+    }
+
+    @Override
+    public synchronized boolean inserisci(PrestitoBean bean) {
+        if (bean == null) return false;
+
+        Prestito p = new Prestito();
+        p.setId(nextId);
+        p.setLibroId(bean.getLibroId());
+        p.setUtenteId(bean.getUtenteId());
+        p.setUtente(bean.getUtenteSnapshot());
+        p.setLibroTitoloSnapshot(bean.getLibroTitoloSnapshot());
+        p.setDataPrestito(bean.getDataPrestito() != null ? bean.getDataPrestito() : LocalDate.now());
+        scrivi(p);
+        bean.setId(p.getId());
+        contatore.varia(p.getLibroId(), -1);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean inserisciSeDisponibile(PrestitoBean bean) {
+        if (bean == null || bean.getLibroId() == null) return false;
+        int attivi = attiviPerLibro.getOrDefault(bean.getLibroId(), 0);
+        return attivi < contatore.copie(bean.getLibroId()) && inserisci(bean);
+    }
+
+    @Override
+    public synchronized boolean chiudiPrestito(Long prestitoId, LocalDate dataRestituzione) {
+        if (prestitoId == null) return false;
+        ByteBuffer rec = file.leggi(prestitoId);
+        if (rec == null) return false;
+        Prestito p = decodifica(prestitoId, rec);
+        if (p.getDataRestituzione() != null) return false;
+
+        p.setDataRestituzione(dataRestituzione != null ? dataRestituzione : LocalDate.now());
+        scrivi(p);
+        contatore.varia(p.getLibroId(), 1);
+        return true;
+    }
+
+    @Override
+    public synchronized Map<Long, Integer> riconciliaCopieDisponibili() {
+        return contatore.riallinea(new HashMap<>(attiviPerLibro));
+    }
+
+    /** Come {@link it.biblioteca.dao.json.JsonPrestitoDAO#collega}. */
+    public synchronized void collega(ContatoreCopie contatore) {
+        this.contatore = contatore != null ? contatore : ContatoreCopie.NESSUNO;
+        this.contatore.riallinea(new HashMap<>(attiviPerLibro));
+    }
+
+    /** Copia un prestito esistente mantenendone l'id (importazione da un altro backend). */
+    synchronized void importa(Prestito p) {
+        if (p != null && p.getId() != null) scrivi(p);
+    }
+
+    /** Raggruppa le scritture di un'importazione massiva in un solo flush su disco. */
+    synchronized void inBlocco(Runnable scritture) {
+        file.inBlocco(scritture);
+    }
+
+    synchronized void close() {
+        file.close();
+    }
+
+    private void scrivi(Prestito p) {
+        ByteBuffer prima = file.leggi(p.getId());
+        if (prima != null && attivo(prima)) decrementaAttivi(getLong(prima, LIBRO_ID));
+        file.scrivi(p.getId(), rec -> codifica(rec, p));
+        if (p.getDataRestituzione() == null) incrementaAttivi(p.getLibroId());
+        if (p.getId() >= nextId) nextId = p.getId() + 1;
+        pubblicati = null;
+    }
+
+    private Pubblicati pubblicati() {
+        Pubblicati v = pubblicati;
+        return v != null ? v : pubblica();
+    }
+
+    private synchronized Pubblicati pubblica() {
+        if (pubblicati == null) {
+            List<Prestito> tutti = new ArrayList<>(file.size());
+            Map<Long, Prestito> perId = new HashMap<>();
+            SearchIndex indice = new SearchIndex();
+            file.perOgni((id, rec) -> {
+                Prestito p = decodifica(id, rec);
+                tutti.add(p);
+                perId.put(id, p);
+                indice.put(id, String.valueOf(id), p.getLibroTitoloSnapshot(), p.getUtente());
+            });
+            tutti.sort(PIU_RECENTI);
+
+            List<Prestito> attivi = new ArrayList<>();
+            for (Prestito p : tutti) {
+                if (p.getDataRestituzione() == null) attivi.add(p);
+            }
+            pubblicati = new Pubblicati(Collections.unmodifiableList(tutti), Collections.unmodifiableList(attivi),
+                    Map.copyOf(attiviPerLibro), indice, perId);
+        }
+        return pubblicati;
+    }
+
+    private void incrementaAttivi(Long libroId) {
+        if (libroId != null) attiviPerLibro.merge(libroId, 1, Integer::sum);
+    }
+
+    private void decrementaAttivi(Long libroId) {
+        if (libroId != null) attiviPerLibro.computeIfPresent(libroId, (k, n) -> n > 1 ? n - 1 : null);
+    }
+
+    private static boolean attivo(ByteBuffer rec) {
+        return getDate(rec, DATA_RESTITUZIONE) == null;
+    }
+
+    private static void codifica(ByteBuffer rec, Prestito p) {
+        putLong(rec, LIBRO_ID, p.getLibroId());
+        putLong(rec, UTENTE_ID, p.getUtenteId());
+        putDate(rec, DATA_PRESTITO, p.getDataPrestito());
+        putDate(rec, DATA_RESTITUZIONE, p.getDataRestituzione());
+        putString(rec, UTENTE, MAX_UTENTE, "utente", p.getUtente());
+        putString(rec, TITOLO, MAX_TITOLO, "titolo", p.getLibroTitoloSnapshot());
+    }
+
+    private static Prestito decodifica(long id, ByteBuffer rec) {
+        Prestito p = new Prestito();
+        p.setId(id);
+        p.setLibroId(getLong(rec, LIBRO_ID));
+        p.setUtenteId(getLong(rec, UTENTE_ID));
+        p.setDataPrestito(getDate(rec, DATA_PRESTITO));
+        p.setDataRestituzione(getDate(rec, DATA_RESTITUZIONE));
+        p.setUtente(StringPool.getDefault().dedup(getString(rec, UTENTE)));
+        p.setLibroTitoloSnapshot(StringPool.getDefault().dedup(getString(rec, TITOLO)));
+        return p;
+    }
+}
@@ -0,0 +1,241 @@
+package it.biblioteca.dao.bin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * File di record a dimensione fissa letto e scritto tramite {@link MappedByteBuffer}.
+ * <pre>
+ * intestazione (64 byte): magic, versione, dimensione dati, slot usati, sequenza
+ * slot:                   stato (1 byte) | id (8) | sequenza (8) | dati (dimensione fissa)
+ * </pre>
+ * All'apertura si leggono solo stato, id e sequenza di ogni slot per costruire l'indice id → slot:
+ * nessun parsing dei dati. Le scritture non sovrascrivono mai un record valido: il nuovo contenuto
+ * va in uno slot libero, viene forzato su disco e solo dopo il vecchio slot torna libero.
+ * Dopo un crash fra i due passi restano due copie dello stesso id e vince quella con sequenza maggiore.
+ * Si usa {@code MappedByteBuffer} e non {@code MemorySegment} perché i DAO leggono e scrivono i record
+ * attraverso viste {@link ByteBuffer}; i file restano ben sotto i 2 GB di una singola mappatura.
+ * Non è thread-safe: la sincronizzazione spetta al DAO.
+ */
+final class BinaryRecordFile implements AutoCloseable {
+
+    private static final int MAGIC = 0x42494231; // "BIB1"
+    private static final int VERSIONE = 1;
+    private static final int INTESTAZIONE = 64;
+    private static final int POS_SLOT_USATI = 12;
+    private static final int POS_SEQUENZA = 16;
+    private static final int TESTA_SLOT = 17;
+    private static final int SLOT_INIZIALI = 256;
+
+    private static final byte LIBERO = 0;
+    private static final byte USATO = 1;
+
+    private final File file;
+    private final int dimensioneDati;
+    private final int dimensioneSlot;
+    private final FileChannel channel;
+    private MappedByteBuffer map;
+    private int capacita;
+    private int slotUsati;
+    private long sequenza;
+    private boolean inBlocco;
+
+    private final Map<Long, Integer> slotPerId = new HashMap<>();
+    private final Deque<Integer> liberi = new ArrayDeque<>();
+
+    BinaryRecordFile(File file, int dimensioneDati) {
+        this.file = file;
+        this.dimensioneDati = dimensioneDati;
+        this.dimensioneSlot = TESTA_SLOT + dimensioneDati;
+        try {
+            this.channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() == 0) {
+                mappa(SLOT_INIZIALI);
+                map.putInt(0, MAGIC);
+                map.putInt(4, VERSIONE);
+                map.putInt(8, dimensioneDati);
+                map.force();
+            } else {
+                mappa((int) ((channel.size() - INTESTAZIONE) / dimensioneSlot));
+                verificaIntestazione();
+                caricaIndice();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Errore apertura " + file.getName(), e);
+        }
+    }
+
+    boolean contiene(long id) {
+        return slotPerId.containsKey(id);
+    }
+
+    int size() {
+        return slotPerId.size();
+    }
+
+    long maxId() {
+        long max = 0L;
+        for (Long id : slotPerId.keySet()) max = Math.max(max, id);
+        return max;
+    }
+
+    /** Vista in sola lettura dei dati del record {@code id}, o null se non esiste. */
+    ByteBuffer leggi(long id) {
+        Integer slot = slotPerId.get(id);
+        return slot != null ? dati(slot).asReadOnlyBuffer() : null;
+    }
+
+    /** Visita i record nell'ordine degli slot. */
+    void perOgni(BiConsumer<Long, ByteBuffer> visitor) {
+        for (int slot = 0; slot < slotUsati; slot++) {
+            int base = offset(slot);
+            if (map.get(base) != USATO) continue;
+            long id = map.getLong(base + 1);
+            Integer corrente = slotPerId.get(id);
+            if (corrente != null && corrente == slot) visitor.accept(id, dati(slot).asReadOnlyBuffer());
+        }
+    }
+
+    /** Inserisce o sostituisce il record {@code id}; {@code scrittore} riempie i dati a partire dalla posizione 0. */
+    void scrivi(long id, Consumer<ByteBuffer> scrittore) {
+        Integer vecchio = slotPerId.get(id);
+        int slot = alloca();
+        int base = offset(slot);
+        try {
+            ByteBuffer dati = dati(slot);
+            for (int i = 0; i < dimensioneDati; i++) dati.put(i, (byte) 0);
+            scrittore.accept(dati);
+        } catch (RuntimeException e) {
+            liberi.push(slot);
+            throw e;
+        }
+        map.putLong(base + 1, id);
+        map.putLong(base + 9, ++sequenza);
+        map.putLong(POS_SEQUENZA, sequenza);
+        forza(base, dimensioneSlot);
+        forza(0, INTESTAZIONE);
+
+        map.put(base, USATO);
+        forza(base, 1);
+        slotPerId.put(id, slot);
+        if (vecchio != null) libera(vecchio);
+    }
+
+    /**
+     * Esegue molte scritture con un solo flush finale, per le importazioni massive.
+     * Un crash a metà può lasciare il file in uno stato intermedio: usarlo solo su archivi rigenerabili.
+     */
+    void inBlocco(Runnable scritture) {
+        inBlocco = true;
+        try {
+            scritture.run();
+        } finally {
+            inBlocco = false;
+            map.force();
+        }
+    }
+
+    boolean elimina(long id) {
+        Integer slot = slotPerId.remove(id);
+        if (slot == null) return false;
+        libera(slot);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        try {
+            map.force();
+            channel.close();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Errore chiusura " + file.getName(), e);
+        }
+    }
+
+    private void verificaIntestazione() throws IOException {
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSIONE) {
+            throw new IOException(file.getName() + " non è un archivio binario valido");
+        }
+        if (map.getInt(8) != dimensioneDati) {
+            throw new IOException(file.getName() + ": dimensione dei record " + map.getInt(8)
+                    + " diversa da quella attesa " + dimensioneDati);
+        }
+        slotUsati = Math.min(map.getInt(POS_SLOT_USATI), capacita);
+        sequenza = map.getLong(POS_SEQUENZA);
+    }
+
+    private void caricaIndice() {
+        Map<Long, Long> sequenzaPerId = new HashMap<>();
+        for (int slot = 0; slot < slotUsati; slot++) {
+            int base = offset(slot);
+            if (map.get(base) != USATO) {
+                liberi.push(slot);
+                continue;
+            }
+            long id = map.getLong(base + 1);
+            long seq = map.getLong(base + 9);
+            sequenza = Math.max(sequenza, seq);
+            Integer altro = slotPerId.get(id);
+            if (altro == null || seq > sequenzaPerId.get(id)) {
+                slotPerId.put(id, slot);
+                sequenzaPerId.put(id, seq);
+                if (altro != null) libera(altro);
+            } else {
+                libera(slot);
+            }
+        }
+    }
+
+    private int alloca() {
+        if (!liberi.isEmpty()) return liberi.pop();
+        if (slotUsati == capacita) {
+            try {
+                mappa(capacita * 2);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Errore scrittura " + file.getName(), e);
+            }
+        }
+        map.putInt(POS_SLOT_USATI, slotUsati + 1);
+        return slotUsati++;
+    }
+
+    private void libera(int slot) {
+        int base = offset(slot);
+        map.put(base, LIBERO);
+        forza(base, 1);
+        liberi.push(slot);
+    }
+
+    private void forza(int posizione, int lunghezza) {
+        if (!inBlocco) map.force(posizione, lunghezza);
+    }
+
+    // Rimappa l'intero file; le viste già restituite restano valide perché puntano alle stesse pagine.
+    private void mappa(int slot) throws IOException {
+        capacita = Math.max(slot, SLOT_INIZIALI);
+        long dimensione = INTESTAZIONE + (long) capacita * dimensioneSlot;
+        if (dimensione > Integer.MAX_VALUE) {
+            throw new IOException(file.getName() + " ha raggiunto la dimensione massima");
+        }
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, dimensione);
+    }
+
+    private int offset(int slot) {
+        return INTESTAZIONE + slot * dimensioneSlot;
+    }
+
+    private ByteBuffer dati(int slot) {
+        return map.slice(offset(slot) + TESTA_SLOT, dimensioneDati);
+    }
+}
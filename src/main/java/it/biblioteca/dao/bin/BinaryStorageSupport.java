@@ -0,0 +1,77 @@
+package it.biblioteca.dao.bin;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Codifica dei campi nei record a layout fisso. Le stringhe occupano {@code 2 + capacità} byte
+ * (lunghezza UTF-8, -1 per null); date, Long e Integer null usano il valore minimo del tipo.
+ */
+final class BinaryStorageSupport {
+
+    private static final long NULL_LONG = Long.MIN_VALUE;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+
+    static final int LONG = 8;
+    static final int INT = 4;
+    static final int DATA = 8;
+
+    private BinaryStorageSupport() {
+        // utility class, niente istanze
+    }
+
+    /** Byte occupati da una stringa di al più {@code capacita} byte UTF-8. */
+    static int stringa(int capacita) {
+        return 2 + capacita;
+    }
+
+    static void putString(ByteBuffer b, int pos, int capacita, String campo, String s) {
+        if (s == null) {
+            b.putShort(pos, (short) -1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > capacita) {
+            throw new IllegalArgumentException("Errore: " + campo + " troppo lungo (" + bytes.length
+                    + " byte, massimo " + capacita + ")");
+        }
+        b.putShort(pos, (short) bytes.length);
+        b.put(pos + 2, bytes);
+    }
+
+    static String getString(ByteBuffer b, int pos) {
+        int len = b.getShort(pos);
+        if (len < 0) return null;
+        byte[] bytes = new byte[len];
+        b.get(pos + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void putLong(ByteBuffer b, int pos, Long v) {
+        b.putLong(pos, v != null ? v : NULL_LONG);
+    }
+
+    static Long getLong(ByteBuffer b, int pos) {
+        long v = b.getLong(pos);
+        return v != NULL_LONG ? v : null;
+    }
+
+    static void putInt(ByteBuffer b, int pos, Integer v) {
+        b.putInt(pos, v != null ? v : NULL_INT);
+    }
+
+    static Integer getInt(ByteBuffer b, int pos) {
+        int v = b.getInt(pos);
+        return v != NULL_INT ? v : null;
+    }
+
+    static void putDate(ByteBuffer b, int pos, LocalDate d) {
+        b.putLong(pos, d != null ? d.toEpochDay() : NULL_LONG);
+    }
+
+    static LocalDate getDate(ByteBuffer b, int pos) {
+        long v = b.getLong(pos);
+        return v != NULL_LONG ? LocalDate.ofEpochDay(v) : null;
+    }
+}
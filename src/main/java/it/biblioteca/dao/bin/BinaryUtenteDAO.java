@@ -0,0 +1,305 @@
+package it.biblioteca.dao.bin;
+
+import it.biblioteca.dao.Ordinamento;
+import it.biblioteca.dao.UtenteDAO;
+import it.biblioteca.dao.mem.MemorySupport;
+import it.biblioteca.dao.mem.SearchIndex;
+import it.biblioteca.entity.Utente;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import static it.biblioteca.dao.bin.BinaryStorageSupport.*;
+
+/**
+ * Utenti e credenziali in {@code utenti.bin}, un record per utente come in utenti.json.
+ * All'avvio si leggono solo tessera e username per gli indici univoci.
+ */
+public class BinaryUtenteDAO implements UtenteDAO {
+
+    private static final String UTENTE = "UTENTE";
+    private static final Comparator<Utente> PER_NOME = Comparator
+            .comparing(Utente::getCognome, Comparator.nullsFirst(String::compareToIgnoreCase))
+            .thenComparing(Utente::getNome, Comparator.nullsFirst(String::compareToIgnoreCase))
+            .thenComparing(Utente::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private static final int MAX_NOME = 200;
+    private static final int MAX_COGNOME = 200;
+    private static final int MAX_EMAIL = 300;
+    private static final int MAX_TELEFONO = 100;
+    private static final int MAX_USERNAME = 200;
+    private static final int MAX_HASH = 128;
+    private static final int MAX_RUOLO = 32;
+
+    private static final int TESSERA = 0;
+    private static final int DATA_ATTIVAZIONE = TESSERA + INT;
+    private static final int DATA_SCADENZA = DATA_ATTIVAZIONE + DATA;
+    private static final int NOME = DATA_SCADENZA + DATA;
+    private static final int COGNOME = NOME + stringa(MAX_NOME);
+    private static final int EMAIL = COGNOME + stringa(MAX_COGNOME);
+    private static final int TELEFONO = EMAIL + stringa(MAX_EMAIL);
+    private static final int USERNAME = TELEFONO + stringa(MAX_TELEFONO);
+    private static final int HASH = USERNAME + stringa(MAX_USERNAME);
+    private static final int RUOLO = HASH + stringa(MAX_HASH);
+    private static final int DIMENSIONE = RUOLO + stringa(MAX_RUOLO);
+
+    private record Credenziali(String username, String passwordHash, String role) {}
+
+    private record Pubblicati(List<Utente> ordinati, SearchIndex indice, Map<Long, Utente> perId) {}
+
+    private final BinaryRecordFile file;
+    private final Map<Integer, Long> perTessera = new HashMap<>();
+    private final Map<String, Long> perUsername = new HashMap<>();
+    private long userSeq;
+    private volatile Pubblicati pubblicati;
+
+    public BinaryUtenteDAO(File baseDir) {
+        File dir = baseDir != null ? baseDir : new File("data");
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        this.file = new BinaryRecordFile(new File(dir, "utenti.bin"), DIMENSIONE);
+        file.perOgni((id, rec) -> {
+            Integer tessera = getInt(rec, TESSERA);
+            String username = getString(rec, USERNAME);
+            if (tessera != null) perTessera.put(tessera, id);
+            if (username != null) perUsername.put(chiaveUsername(username), id);
+        });
+        this.userSeq = file.maxId();
+    }
+
+    @Override
+    public List<Utente> trovaTutti() {
+        return pubblicati().ordinati();
+    }
+
+    @Override
+    public List<Utente> trovaPagina(Utente dopo, int limite, Ordinamento ordine) {
+        List<Utente> ordinati = pubblicati().ordinati();
+        if (ordine == Ordinamento.DESC) {
+            return MemorySupport.pagina(ordinati.reversed(), PER_NOME.reversed(), dopo, limite);
+        }
+        return MemorySupport.pagina(ordinati, PER_NOME, dopo, limite);
+    }
+
+    @Override
+    public List<Utente> cerca(String testo, int limite) {
+        if (testo == null || testo.isBlank()) return trovaPagina(null, limite, Ordinamento.ASC);
+
+        Pubblicati p = pubblicati();
+        List<Utente> trovati = new ArrayList<>();
+        for (Long id : p.indice().search(testo)) {
+            Utente u = p.perId().get(id);
+            if (u != null) trovati.add(u);
+        }
+        trovati.sort(PER_NOME);
+        return new ArrayList<>(trovati.subList(0, Math.min(trovati.size(), Math.max(1, limite))));
+    }
+
+    @Override
+    public synchronized Utente trovaPerId(Long id) {
+        ByteBuffer rec = id != null ? file.leggi(id) : null;
+        return rec != null ? decodifica(id, rec) : null;
+    }
+
+    @Override
+    public synchronized Utente trovaPerTessera(Integer tessera) {
+        Long id = tessera != null ? perTessera.get(tessera) : null;
+        return id != null ? trovaPerId(id) : null;
+    }
+
+    @Override
+    public synchronized boolean aggiungi(Utente u) {
+        if (u == null) return false;
+        if (u.getTessera() != null && perTessera.containsKey(u.getTessera())) {
+            return false; // tessera già assegnata
+        }
+        if (u.getId() == null) {
+            u.setId(++userSeq);
+        } else if (file.contiene(u.getId())) {
+            return false; // già esiste
+        }
+        scrivi(u, null);
+        userSeq = Math.max(userSeq, u.getId());
+        return true;
+    }
+
+    @Override
+    public synchronized boolean aggiorna(Utente u) {
+        if (u == null || u.getId() == null || !file.contiene(u.getId())) return false;
+        Long conTessera = u.getTessera() != null ? perTessera.get(u.getTessera()) : null;
+        if (conTessera != null && !conTessera.equals(u.getId())) return false;
+        scrivi(u, credenziali(u.getId()));
+        return true;
+    }
+
+    @Override
+    public synchronized boolean elimina(Long id) {
+        if (id == null) return false;
+        ByteBuffer rec = file.leggi(id);
+        if (rec == null) return false;
+        Integer tessera = getInt(rec, TESSERA);
+        String username = getString(rec, USERNAME);
+        file.elimina(id);
+        if (tessera != null) perTessera.remove(tessera, id);
+        if (username != null) perUsername.remove(chiaveUsername(username), id);
+        pubblicati = null;
+        return true;
+    }
+
+    @Override
+    public synchronized boolean creaCredenziali(Long utenteId, String username, String passwordPlain) {
+        if (utenteId == null || isBlank(username) || isBlank(passwordPlain)) return false;
+        if (!file.contiene(utenteId) || credenziali(utenteId) != null || usernameOccupato(username, utenteId)) {
+            return false;
+        }
+        scrivi(trovaPerId(utenteId), new Credenziali(username, sha256Hex(passwordPlain), UTENTE));
+        return true;
+    }
+
+    @Override
+    public synchronized boolean aggiornaCredenziali(Long utenteId, String username, String passwordPlain) {
+        if (utenteId == null || isBlank(username) || isBlank(passwordPlain)) return false;
+        if (!file.contiene(utenteId) || usernameOccupato(username, utenteId)) return false;
+
+        Credenziali esistenti = credenziali(utenteId);
+        String ruolo = esistenti != null ? esistenti.role() : UTENTE;
+        scrivi(trovaPerId(utenteId), new Credenziali(username, sha256Hex(passwordPlain), ruolo));
+        return true;
+    }
+
+    @Override
+    public synchronized Optional<String> getUsernameForUserId(Long utenteId) {
+        return Optional.ofNullable(utenteId != null ? credenziali(utenteId) : null).map(Credenziali::username);
+    }
+
+    @Override
+    public synchronized Optional<AuthData> findAuthByUsername(String username) {
+        if (isBlank(username)) return Optional.empty();
+        Long id = perUsername.get(chiaveUsername(username));
+        if (id == null) return Optional.empty();
+
+        ByteBuffer rec = file.leggi(id);
+        return Optional.of(new AuthData(getString(rec, USERNAME), getString(rec, HASH), getString(rec, RUOLO),
+                id, getInt(rec, TESSERA)));
+    }
+
+    /** Copia un utente con le sue credenziali già cifrate (importazione da un altro backend). */
+    synchronized void importa(Utente u, String username, String passwordHash, String role) {
+        if (u == null || u.getId() == null) return;
+        scrivi(u, username != null ? new Credenziali(username, passwordHash, role) : null);
+        userSeq = Math.max(userSeq, u.getId());
+    }
+
+    /** Raggruppa le scritture di un'importazione massiva in un solo flush su disco. */
+    synchronized void inBlocco(Runnable scritture) {
+        file.inBlocco(scritture);
+    }
+
+    synchronized void close() {
+        file.close();
+    }
+
+    private void scrivi(Utente u, Credenziali c) {
+        ByteBuffer prima = file.leggi(u.getId());
+        Integer tesseraPrima = prima != null ? getInt(prima, TESSERA) : null;
+        String usernamePrima = prima != null ? getString(prima, USERNAME) : null;
+
+        file.scrivi(u.getId(), rec -> codifica(rec, u, c));
+
+        if (tesseraPrima != null) perTessera.remove(tesseraPrima, u.getId());
+        if (usernamePrima != null) perUsername.remove(chiaveUsername(usernamePrima), u.getId());
+        if (u.getTessera() != null) perTessera.put(u.getTessera(), u.getId());
+        if (c != null && c.username() != null) perUsername.put(chiaveUsername(c.username()), u.getId());
+        pubblicati = null;
+    }
+
+    private Credenziali credenziali(long id) {
+        ByteBuffer rec = file.leggi(id);
+        if (rec == null) return null;
+        String username = getString(rec, USERNAME);
+        return username != null ? new Credenziali(username, getString(rec, HASH), getString(rec, RUOLO)) : null;
+    }
+
+    private boolean usernameOccupato(String username, Long utenteId) {
+        Long id = perUsername.get(chiaveUsername(username));
+        return id != null && !id.equals(utenteId);
+    }
+
+    private Pubblicati pubblicati() {
+        Pubblicati v = pubblicati;
+        return v != null ? v : pubblica();
+    }
+
+    private synchronized Pubblicati pubblica() {
+        if (pubblicati == null) {
+            List<Utente> ordinati = new ArrayList<>(file.size());
+            Map<Long, Utente> perId = new HashMap<>();
+            SearchIndex indice = new SearchIndex();
+            file.perOgni((id, rec) -> {
+                Utente u = decodifica(id, rec);
+                ordinati.add(u);
+                perId.put(id, u);
+                indice.put(id, u.getNome(), u.getCognome(), u.getEmail(),
+                        u.getTessera() != null ? String.valueOf(u.getTessera()) : null);
+            });
+            ordinati.sort(PER_NOME);
+            pubblicati = new Pubblicati(Collections.unmodifiableList(ordinati), indice, perId);
+        }
+        return pubblicati;
+    }
+
+    private static void codifica(ByteBuffer rec, Utente u, Credenziali c) {
+        putInt(rec, TESSERA, u.getTessera());
+        putDate(rec, DATA_ATTIVAZIONE, u.getDataAttivazione());
+        putDate(rec, DATA_SCADENZA, u.getDataScadenza());
+        putString(rec, NOME, MAX_NOME, "nome", u.getNome());
+        putString(rec, COGNOME, MAX_COGNOME, "cognome", u.getCognome());
+        putString(rec, EMAIL, MAX_EMAIL, "email", u.getEmail());
+        putString(rec, TELEFONO, MAX_TELEFONO, "telefono", u.getTelefono());
+        putString(rec, USERNAME, MAX_USERNAME, "username", c != null ? c.username() : null);
+        putString(rec, HASH, MAX_HASH, "password", c != null ? c.passwordHash() : null);
+        putString(rec, RUOLO, MAX_RUOLO, "ruolo", c != null ? c.role() : null);
+    }
+
+    private static Utente decodifica(long id, ByteBuffer rec) {
+        Utente u = new Utente();
+        u.setId(id);
+        u.setTessera(getInt(rec, TESSERA));
+        u.setDataAttivazione(getDate(rec, DATA_ATTIVAZIONE));
+        u.setDataScadenza(getDate(rec, DATA_SCADENZA));
+        u.setNome(getString(rec, NOME));
+        u.setCognome(getString(rec, COGNOME));
+        u.setEmail(getString(rec, EMAIL));
+        u.setTelefono(getString(rec, TELEFONO));
+        return u;
+    }
+
+    private static String chiaveUsername(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+
+    private static String sha256Hex(String rawPassword) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(rawPassword.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("SHA-256 non disponibile", e);
+        }
+    }
+}
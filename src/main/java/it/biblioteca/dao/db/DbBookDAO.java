@@ -2,7 +2,13 @@ package it.biblioteca.dao.db;
 
 import it.biblioteca.dao.BookDAO;
 import it.biblioteca.dao.ConnectionProvider;
+import it.biblioteca.dao.EsitoBatch;
+import it.biblioteca.dao.Ordinamento;
+import it.biblioteca.dao.jdbc.FullTextSupport;
+import it.biblioteca.dao.jdbc.JdbcBatch;
+import it.biblioteca.dao.jdbc.JdbcCursor;
 import it.biblioteca.entity.Book;
+import it.biblioteca.util.StringPool;
 
 import java.sql.Connection;
 import java.sql.Date;
@@ -12,6 +18,7 @@ import java.sql.Statement;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
 
 public class DbBookDAO implements BookDAO {
 
@@ -24,8 +31,8 @@ public class DbBookDAO implements BookDAO {
     @Override
     public void salvaLibro(Book book) {
         final String sql = """
-                INSERT INTO libri(isbn,titolo,autore,data_pubblicazione,casa_editrice,attivo,copie)
-                VALUES (?,?,?,?,?,?,?)
+                INSERT INTO libri(isbn,titolo,autore,data_pubblicazione,casa_editrice,attivo,copie,copie_disponibili)
+                VALUES (?,?,?,?,?,?,?,?)
                 """;
 
         try (Connection conn = cp.getConnection();
@@ -46,8 +53,10 @@ public class DbBookDAO implements BookDAO {
             ps.setBoolean(6, true);
 
             ps.setInt(7, book.getCopie());
+            ps.setInt(8, book.getCopie());
 
             ps.executeUpdate();
+            book.setCopieDisponibili(book.getCopie());
 
             try (ResultSet rs = ps.getGeneratedKeys()) {
                 if (rs.next()) {
@@ -60,11 +69,37 @@ public class DbBookDAO implements BookDAO {
         }
     }
 
+    @Override
+    public EsitoBatch salvaLibri(List<Book> libri) {
+        final String sql = """
+                INSERT INTO libri(isbn,titolo,autore,data_pubblicazione,casa_editrice,attivo,copie,copie_disponibili)
+                VALUES (?,?,?,?,?,?,?,?)
+                """;
+        try {
+            return JdbcBatch.inserisci(cp, sql, libri, (ps, book) -> {
+                ps.setString(1, book.getIsbn());
+                ps.setString(2, book.getTitolo());
+                ps.setString(3, book.getAutore());
+                ps.setDate(4, book.getDataPubblicazione() != null ? Date.valueOf(book.getDataPubblicazione()) : null);
+                ps.setString(5, book.getCasaEditrice());
+                ps.setBoolean(6, true);
+                ps.setInt(7, book.getCopie());
+                ps.setInt(8, book.getCopie());
+                book.setCopieDisponibili(book.getCopie());
+            }, Book::setId);
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore salvaLibri", e);
+        }
+    }
+
+    /** Le copie aggiunte o tolte si riportano su {@code copie_disponibili}, che non viene sovrascritta. */
     @Override
     public void aggiornaLibro(Book book) {
+        // MariaDB assegna da sinistra a destra: copie_disponibili vede ancora il vecchio valore di copie
         final String sql = """
                 UPDATE libri
-                SET isbn=?, titolo=?, autore=?, data_pubblicazione=?, casa_editrice=?, attivo=?, copie=?
+                SET isbn=?, titolo=?, autore=?, data_pubblicazione=?, casa_editrice=?, attivo=?,
+                    copie_disponibili = copie_disponibili + ? - copie, copie=?
                 WHERE id=?
                 """;
 
@@ -86,8 +121,9 @@ public class DbBookDAO implements BookDAO {
             ps.setBoolean(6, true);
 
             ps.setInt(7, book.getCopie());
+            ps.setInt(8, book.getCopie());
 
-            ps.setLong(8, book.getId() != null ? book.getId() : -1L);
+            ps.setLong(9, book.getId() != null ? book.getId() : -1L);
 
             ps.executeUpdate();
         } catch (SQLException e) {
@@ -108,10 +144,31 @@ public class DbBookDAO implements BookDAO {
         }
     }
 
+    @Override
+    public Book trovaPerId(Long id) {
+        if (id == null) return null;
+        final String sql = """
+                SELECT id,isbn,titolo,autore,data_pubblicazione,casa_editrice,attivo,copie,copie_disponibili
+                FROM libri
+                WHERE id = ?
+                """;
+
+        try (Connection conn = cp.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setLong(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? mapRow(rs) : null;
+            }
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore trovaPerId libro", e);
+        }
+    }
+
     @Override
     public List<Book> trovaTutti() {
         final String sql = """
-                SELECT id,isbn,titolo,autore,data_pubblicazione,casa_editrice,attivo,copie
+                SELECT id,isbn,titolo,autore,data_pubblicazione,casa_editrice,attivo,copie,copie_disponibili
                 FROM libri
                 ORDER BY titolo
                 """;
@@ -131,6 +188,103 @@ public class DbBookDAO implements BookDAO {
         return out;
     }
 
+    /** Un'unica query letta in streaming: nessuna lista intermedia, a differenza di {@link #trovaTutti}. */
+    @Override
+    public void scorri(Predicate<Book> azione) {
+        final String sql = """
+                SELECT id,isbn,titolo,autore,data_pubblicazione,casa_editrice,attivo,copie,copie_disponibili
+                FROM libri
+                ORDER BY titolo, id
+                """;
+        try {
+            JdbcCursor.scorri(cp, sql, this::mapRow, azione);
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore scorri libri", e);
+        }
+    }
+
+    @Override
+    public List<Book> trovaPagina(Book dopo, int limite, Ordinamento ordine) {
+        Ordinamento o = ordine != null ? ordine : Ordinamento.ASC;
+        boolean conCursore = dopo != null && dopo.getTitolo() != null && dopo.getId() != null;
+        String op = o.operatoreDopo();
+        String where = conCursore ? "WHERE titolo " + op + " ? OR (titolo = ? AND id " + op + " ?)\n" : "";
+        final String sql = """
+                SELECT id,isbn,titolo,autore,data_pubblicazione,casa_editrice,attivo,copie,copie_disponibili
+                FROM libri
+                """ + where + "ORDER BY titolo " + o.sql() + ", id " + o.sql() + "\nLIMIT ?";
+
+        List<Book> out = new ArrayList<>();
+
+        try (Connection conn = cp.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            int i = 1;
+            if (conCursore) {
+                ps.setString(i++, dopo.getTitolo());
+                ps.setString(i++, dopo.getTitolo());
+                ps.setLong(i++, dopo.getId());
+            }
+            ps.setInt(i, Math.max(1, limite));
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    out.add(mapRow(rs));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore trovaPagina libri", e);
+        }
+
+        return out;
+    }
+
+    @Override
+    public List<Book> cerca(String testo, int limite) {
+        if (testo == null || testo.isBlank()) return trovaPagina(null, limite, Ordinamento.ASC);
+
+        String ft = FullTextSupport.booleanQuery(testo);
+        final String select = """
+                SELECT id,isbn,titolo,autore,data_pubblicazione,casa_editrice,attivo,copie,copie_disponibili
+                FROM libri
+                """;
+        // MATCH in OR con un'altra condizione non usa l'indice FULLTEXT: i due rami sono query separate
+        final String sql = (ft != null
+                ? "(" + select + "WHERE MATCH(titolo, autore, casa_editrice) AGAINST (? IN BOOLEAN MODE))\n"
+                        + "UNION\n(" + select + "WHERE isbn LIKE ?)\n"
+                : select + "WHERE titolo LIKE ? OR autore LIKE ? OR isbn LIKE ?\n") + """
+                ORDER BY titolo, id
+                LIMIT ?
+                """;
+
+        List<Book> out = new ArrayList<>();
+        String prefix = FullTextSupport.likePrefix(testo);
+
+        try (Connection conn = cp.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            int i = 1;
+            if (ft != null) {
+                ps.setString(i++, ft);
+            } else {
+                ps.setString(i++, prefix);
+                ps.setString(i++, prefix);
+            }
+            ps.setString(i++, prefix);
+            ps.setInt(i, Math.max(1, limite));
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    out.add(mapRow(rs));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore cerca libri", e);
+        }
+
+        return out;
+    }
+
     private Book mapRow(ResultSet rs) throws SQLException {
         Book b = new Book();
 
@@ -141,16 +295,17 @@ public class DbBookDAO implements BookDAO {
 
         b.setIsbn(rs.getString("isbn"));
         b.setTitolo(rs.getString("titolo"));
-        b.setAutore(rs.getString("autore"));
+        b.setAutore(StringPool.getDefault().dedup(rs.getString("autore")));
 
         Date d = rs.getDate("data_pubblicazione");
         b.setDataPubblicazione(d != null ? d.toLocalDate() : null);
 
-        b.setCasaEditrice(rs.getString("casa_editrice"));
+        b.setCasaEditrice(StringPool.getDefault().dedup(rs.getString("casa_editrice")));
         b.setAttivo();
 
         int copieDb = rs.getInt("copie");
         b.setCopie(copieDb);
+        b.setCopieDisponibili(rs.getInt("copie_disponibili"));
 
         return b;
     }
@@ -6,16 +6,27 @@ import it.biblioteca.dao.DaoFactory;
 import it.biblioteca.dao.PrestitoDAO;
 import it.biblioteca.dao.UtenteDAO;
 
-public class DbDaoFactory implements DaoFactory {
+import java.util.logging.Logger;
 
+/**
+ * All'apertura porta lo schema all'ultima versione con {@link SchemaMigrations}; se non ci riesce
+ * l'apertura fallisce, perché i DAO leggono colonne aggiunte dalle migrazioni (es. {@code copie_disponibili}).
+ */
+public class DbDaoFactory implements DaoFactory, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(DbDaoFactory.class.getName());
+
+    private final ConnectionProvider cp;
     private final BookDAO bookDAO;
     private final UtenteDAO utenteDAO;
     private final PrestitoDAO prestitoDAO;
 
     public DbDaoFactory(ConnectionProvider cp) {
+        this.cp = cp;
         this.bookDAO = new DbBookDAO(cp);
         this.utenteDAO = new DbUtenteDAO(cp);
         this.prestitoDAO = new DbPrestitoDAO(cp);
+        migraSchema();
     }
 
     @Override
@@ -26,4 +37,14 @@ public class DbDaoFactory implements DaoFactory {
 
     @Override
     public PrestitoDAO prestitoDAO() { return prestitoDAO; }
-}
\ No newline at end of file
+
+    private void migraSchema() {
+        int versione = SchemaMigrations.applica(cp);
+        LOGGER.fine(() -> "Schema del database alla versione " + versione);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (cp instanceof AutoCloseable closeable) closeable.close();
+    }
+}
@@ -2,8 +2,12 @@ package it.biblioteca.dao.db;
 
 import it.biblioteca.bean.PrestitoBean;
 import it.biblioteca.dao.ConnectionProvider;
+import it.biblioteca.dao.Ordinamento;
+import it.biblioteca.dao.jdbc.FullTextSupport;
+import it.biblioteca.dao.jdbc.JdbcCursor;
 import it.biblioteca.dao.PrestitoDAO;
 import it.biblioteca.entity.Prestito;
+import it.biblioteca.util.StringPool;
 
 import java.sql.Connection;
 import java.sql.Date;
@@ -14,7 +18,10 @@ import java.sql.SQLException;
 import java.sql.Types;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 
 public class DbPrestitoDAO implements PrestitoDAO {
 
@@ -54,6 +61,191 @@ public class DbPrestitoDAO implements PrestitoDAO {
         return out;
     }
 
+    @Override
+    public Prestito trovaPerId(Long id) {
+        if (id == null) return null;
+        final String sql = """
+                SELECT id,
+                       libro_id,
+                       utente_id,
+                       utente_descrizione,
+                       data_prestito,
+                       data_restituzione,
+                       libro_titolo_snapshot
+                FROM prestiti
+                WHERE id = ?
+                """;
+
+        try (Connection conn = cp.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setLong(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? mapRow(rs) : null;
+            }
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore trovaPerId prestito", e);
+        }
+    }
+
+    /** Lo storico completo in streaming, dal prestito più recente. */
+    @Override
+    public void scorri(Predicate<Prestito> azione) {
+        final String sql = """
+                SELECT id,
+                       libro_id,
+                       utente_id,
+                       utente_descrizione,
+                       data_prestito,
+                       data_restituzione,
+                       libro_titolo_snapshot
+                FROM prestiti
+                ORDER BY id DESC
+                """;
+        try {
+            JdbcCursor.scorri(cp, sql, this::mapRow, azione);
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore scorri prestiti", e);
+        }
+    }
+
+    @Override
+    public List<Prestito> trovaPagina(Prestito dopo, int limite, Ordinamento ordine) {
+        Ordinamento o = ordine != null ? ordine : Ordinamento.DESC;
+        boolean conCursore = dopo != null && dopo.getId() != null;
+        String where = conCursore ? "WHERE id " + o.operatoreDopo() + " ?\n" : "";
+        final String sql = """
+                SELECT id,
+                       libro_id,
+                       utente_id,
+                       utente_descrizione,
+                       data_prestito,
+                       data_restituzione,
+                       libro_titolo_snapshot
+                FROM prestiti
+                """ + where + "ORDER BY id " + o.sql() + "\nLIMIT ?";
+
+        List<Prestito> out = new ArrayList<>();
+
+        try (Connection conn = cp.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            int i = 1;
+            if (conCursore) ps.setLong(i++, dopo.getId());
+            ps.setInt(i, Math.max(1, limite));
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    out.add(mapRow(rs));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore trovaPagina prestiti", e);
+        }
+
+        return out;
+    }
+
+    // idx_prestiti_utente_data (utente_id, data_prestito, e l'id che InnoDB aggiunge) dà già l'ordine
+    @Override
+    public List<Prestito> trovaPerUtente(Long utenteId, Prestito dopo, int limite) {
+        if (utenteId == null) return new ArrayList<>();
+        boolean conCursore = dopo != null && dopo.getId() != null && dopo.getDataPrestito() != null;
+        String cursore = conCursore ? "AND (data_prestito < ? OR (data_prestito = ? AND id < ?))\n" : "";
+        final String sql = """
+                SELECT id,
+                       libro_id,
+                       utente_id,
+                       utente_descrizione,
+                       data_prestito,
+                       data_restituzione,
+                       libro_titolo_snapshot
+                FROM prestiti
+                WHERE utente_id = ?
+                """ + cursore + """
+                ORDER BY data_prestito DESC, id DESC
+                LIMIT ?
+                """;
+
+        List<Prestito> out = new ArrayList<>();
+
+        try (Connection conn = cp.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            int i = 1;
+            ps.setLong(i++, utenteId);
+            if (conCursore) {
+                Date data = Date.valueOf(dopo.getDataPrestito());
+                ps.setDate(i++, data);
+                ps.setDate(i++, data);
+                ps.setLong(i++, dopo.getId());
+            }
+            ps.setInt(i, Math.max(1, limite));
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    out.add(mapRow(rs));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore trovaPerUtente prestiti", e);
+        }
+
+        return out;
+    }
+
+    @Override
+    public List<Prestito> cerca(String testo, int limite) {
+        if (testo == null || testo.isBlank()) return trovaPagina(null, limite, Ordinamento.DESC);
+
+        String ft = FullTextSupport.booleanQuery(testo);
+        final String select = """
+                SELECT id,
+                       libro_id,
+                       utente_id,
+                       utente_descrizione,
+                       data_prestito,
+                       data_restituzione,
+                       libro_titolo_snapshot
+                FROM prestiti
+                """;
+        // MATCH in OR con un'altra condizione non usa l'indice FULLTEXT: i due rami sono query separate
+        final String sql = (ft != null
+                ? "(" + select + "WHERE MATCH(libro_titolo_snapshot, utente_descrizione) AGAINST (? IN BOOLEAN MODE))\n"
+                        + "UNION\n(" + select + "WHERE id = ?)\n"
+                : select + "WHERE libro_titolo_snapshot LIKE ? OR utente_descrizione LIKE ? OR id = ?\n") + """
+                ORDER BY id DESC
+                LIMIT ?
+                """;
+
+        List<Prestito> out = new ArrayList<>();
+
+        try (Connection conn = cp.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            int i = 1;
+            if (ft != null) {
+                ps.setString(i++, ft);
+            } else {
+                String prefix = FullTextSupport.likePrefix(testo);
+                ps.setString(i++, prefix);
+                ps.setString(i++, prefix);
+            }
+            ps.setLong(i++, FullTextSupport.asNumberOr(testo, -1L));
+            ps.setInt(i, Math.max(1, limite));
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    out.add(mapRow(rs));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore cerca prestiti", e);
+        }
+
+        return out;
+    }
+
     @Override
     public List<Prestito> trovaPrestitiAttivi() {
         final String sql = """
@@ -85,8 +277,141 @@ public class DbPrestitoDAO implements PrestitoDAO {
         return out;
     }
 
+    @Override
+    public Map<Long, Integer> contaPrestitiAttiviPerLibro() {
+        final String sql = """
+                SELECT libro_id, COUNT(*) AS attivi
+                FROM prestiti
+                WHERE data_restituzione IS NULL AND libro_id IS NOT NULL
+                GROUP BY libro_id
+                """;
+
+        Map<Long, Integer> out = new HashMap<>();
+
+        try (Connection conn = cp.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+
+            while (rs.next()) {
+                out.put(rs.getLong("libro_id"), rs.getInt("attivi"));
+            }
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore contaPrestitiAttiviPerLibro", e);
+        }
+
+        return out;
+    }
+
+    /** Inserimento e decremento di {@code libri.copie_disponibili} nella stessa transazione. */
     @Override
     public boolean inserisci(PrestitoBean bean) {
+        try (Connection conn = cp.getConnection()) {
+            return inTransazione(conn, () -> {
+                boolean ok = inserisci(conn, bean);
+                if (ok) variaDisponibili(conn, bean.getLibroId(), -1);
+                return ok;
+            });
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore inserisci prestito", e);
+        }
+    }
+
+    /**
+     * Una sola transazione: un {@code UPDATE} condizionato prenota la copia su {@code libri.copie_disponibili}
+     * (lock sulla riga del libro fino al commit) e solo se è riuscito si inserisce il prestito.
+     * Una registrazione concorrente sullo stesso libro aspetta il lock e trova il contatore già scalato.
+     */
+    @Override
+    public boolean inserisciSeDisponibile(PrestitoBean bean) {
+        try (Connection conn = cp.getConnection()) {
+            return inTransazione(conn, () -> prenotaCopia(conn, bean.getLibroId()) && inserisci(conn, bean));
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore inserisci prestito", e);
+        }
+    }
+
+    /**
+     * Riporta {@code copie_disponibili} a copie meno prestiti attivi dove non coincide. Ogni riga si corregge
+     * solo se il contatore vale ancora quanto letto: se nel frattempo un prestito l'ha mosso, il libro si
+     * ricontrolla al giro successivo.
+     */
+    @Override
+    public Map<Long, Integer> riconciliaCopieDisponibili() {
+        final String sql = """
+                SELECT l.id, l.copie_disponibili, l.copie - COUNT(p.id) AS attese
+                FROM libri l
+                LEFT JOIN prestiti p ON p.libro_id = l.id AND p.data_restituzione IS NULL
+                GROUP BY l.id, l.copie_disponibili, l.copie
+                HAVING l.copie_disponibili <> attese
+                """;
+        final String correggi = "UPDATE libri SET copie_disponibili = ? WHERE id = ? AND copie_disponibili = ?";
+
+        Map<Long, Integer> corretti = new HashMap<>();
+
+        try (Connection conn = cp.getConnection()) {
+            List<long[]> scarti = new ArrayList<>();
+            try (PreparedStatement ps = conn.prepareStatement(sql);
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    scarti.add(new long[]{rs.getLong(1), rs.getInt(2), rs.getInt(3)});
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(correggi)) {
+                for (long[] r : scarti) {
+                    ps.setInt(1, (int) r[2]);
+                    ps.setLong(2, r[0]);
+                    ps.setInt(3, (int) r[1]);
+                    if (ps.executeUpdate() > 0) corretti.put(r[0], (int) (r[1] - r[2]));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore riconciliaCopieDisponibili", e);
+        }
+
+        return corretti;
+    }
+
+    private interface Lavoro {
+        boolean esegui() throws SQLException;
+    }
+
+    // commit se il lavoro restituisce true, altrimenti rollback
+    private static boolean inTransazione(Connection conn, Lavoro lavoro) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            boolean ok = lavoro.esegui();
+            if (ok) conn.commit();
+            else conn.rollback();
+            return ok;
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static boolean prenotaCopia(Connection conn, Long libroId) throws SQLException {
+        if (libroId == null) return false;
+        final String sql = "UPDATE libri SET copie_disponibili = copie_disponibili - 1 WHERE id = ? AND copie_disponibili > 0";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, libroId);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
+    private static void variaDisponibili(Connection conn, Long libroId, int delta) throws SQLException {
+        if (libroId == null) return;
+        final String sql = "UPDATE libri SET copie_disponibili = copie_disponibili + ? WHERE id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, delta);
+            ps.setLong(2, libroId);
+            ps.executeUpdate();
+        }
+    }
+
+    private static boolean inserisci(Connection conn, PrestitoBean bean) throws SQLException {
         final String sql = """
                 INSERT INTO prestiti(
                     libro_id,
@@ -104,8 +429,7 @@ public class DbPrestitoDAO implements PrestitoDAO {
                 VALUES (?,?,?,?,?,?,?,?,?,?,?)
                 """;
 
-        try (Connection conn = cp.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             if (bean.getLibroId() != null) ps.setLong(1, bean.getLibroId());
             else ps.setNull(1, Types.BIGINT);
@@ -133,21 +457,40 @@ public class DbPrestitoDAO implements PrestitoDAO {
             ps.setString(11, bean.getUtenteSnapshot());
 
             int rows = ps.executeUpdate();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (rs.next()) bean.setId(rs.getLong(1));
+            }
             return rows > 0;
-        } catch (SQLException e) {
-            throw new IllegalArgumentException("Errore inserisci prestito", e);
         }
     }
 
+    /**
+     * Chiude solo un prestito ancora aperto e, nella stessa transazione, restituisce la copia al libro:
+     * chiudere due volte lo stesso prestito non conta la copia due volte. Senza data vale oggi, come nei
+     * backend su file: una data nulla lascerebbe il prestito aperto con la copia già restituita.
+     */
     @Override
     public boolean chiudiPrestito(Long prestitoId, LocalDate dataRestituzione) {
-        final String sql = "UPDATE prestiti SET data_restituzione=? WHERE id=?";
-        try (Connection conn = cp.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setDate(1, dataRestituzione != null ? Date.valueOf(dataRestituzione) : null);
-            ps.setLong(2, prestitoId != null ? prestitoId : -1L);
-            return ps.executeUpdate() > 0;
+        final String sql = "UPDATE prestiti SET data_restituzione=? WHERE id=? AND data_restituzione IS NULL";
+        final String copia = """
+                UPDATE libri SET copie_disponibili = copie_disponibili + 1
+                WHERE id = (SELECT libro_id FROM prestiti WHERE id = ?)
+                """;
+        long id = prestitoId != null ? prestitoId : -1L;
+        LocalDate data = dataRestituzione != null ? dataRestituzione : LocalDate.now();
+        try (Connection conn = cp.getConnection()) {
+            return inTransazione(conn, () -> {
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    ps.setDate(1, Date.valueOf(data));
+                    ps.setLong(2, id);
+                    if (ps.executeUpdate() == 0) return false;
+                }
+                try (PreparedStatement ps = conn.prepareStatement(copia)) {
+                    ps.setLong(1, id);
+                    ps.executeUpdate();
+                }
+                return true;
+            });
         } catch (SQLException e) {
             throw new IllegalArgumentException("Errore chiudiPrestito", e);
         }
@@ -165,7 +508,7 @@ public class DbPrestitoDAO implements PrestitoDAO {
         Object utenteIdObj = rs.getObject("utente_id");
         if (utenteIdObj instanceof Number nUt) p.setUtenteId(nUt.longValue());
 
-        p.setUtente(rs.getString("utente_descrizione"));
+        p.setUtente(StringPool.getDefault().dedup(rs.getString("utente_descrizione")));
 
         Date dp = rs.getDate("data_prestito");
         p.setDataPrestito(dp != null ? dp.toLocalDate() : null);
@@ -173,7 +516,7 @@ public class DbPrestitoDAO implements PrestitoDAO {
         Date dr = rs.getDate("data_restituzione");
         p.setDataRestituzione(dr != null ? dr.toLocalDate() : null);
 
-        p.setLibroTitoloSnapshot(rs.getString("libro_titolo_snapshot"));
+        p.setLibroTitoloSnapshot(StringPool.getDefault().dedup(rs.getString("libro_titolo_snapshot")));
 
         return p;
     }
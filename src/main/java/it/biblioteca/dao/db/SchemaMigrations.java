@@ -0,0 +1,139 @@
+package it.biblioteca.dao.db;
+
+import it.biblioteca.dao.ConnectionProvider;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Modifiche allo schema in ordine di versione, applicate all'avvio: portano allo schema corrente i database
+ * creati con versioni precedenti di {@code DB/BibliotecaDB.sql} e aggiungono gli indici secondari.
+ * La versione raggiunta è in {@code schema_versione}, una riga per migrazione applicata.
+ * In MariaDB il DDL fa commit da sé, quindi una migrazione non è atomica: ogni istruzione è scritta in modo
+ * da poter essere ripetuta ({@code IF NOT EXISTS}), e una migrazione interrotta si riapplica per intero al
+ * prossimo avvio. Un lock con nome evita che due istanze migrino insieme.
+ */
+public final class SchemaMigrations {
+
+    record Migrazione(int versione, String descrizione, List<String> sql) {}
+
+    private static final String LOCK = "biblioteca_schema";
+    private static final int ATTESA_LOCK_SECONDI = 60;
+
+    private static final List<Migrazione> MIGRAZIONI = List.of(
+            new Migrazione(1, "copie disponibili per libro", List.of(
+                    "ALTER TABLE libri ADD COLUMN IF NOT EXISTS copie_disponibili INT NOT NULL DEFAULT 1",
+                    """
+                    UPDATE libri l
+                    SET copie_disponibili = l.copie - (SELECT COUNT(*) FROM prestiti p
+                                                       WHERE p.libro_id = l.id AND p.data_restituzione IS NULL)
+                    """)),
+            // MariaDB non ha indici parziali: per i prestiti aperti si indicizza data_restituzione, e InnoDB
+            // aggiunge la chiave primaria in coda a ogni indice secondario, quindi (data_restituzione) dà già
+            // i prestiti aperti in ordine di id e (titolo) / (cognome, nome) coprono il keyset con l'id.
+            new Migrazione(2, "indici secondari", List.of(
+                    "CREATE INDEX IF NOT EXISTS idx_prestiti_aperti ON prestiti (data_restituzione)",
+                    "CREATE INDEX IF NOT EXISTS idx_prestiti_libro_aperti ON prestiti (libro_id, data_restituzione)",
+                    "CREATE INDEX IF NOT EXISTS idx_prestiti_utente_data ON prestiti (utente_id, data_prestito)",
+                    "CREATE INDEX IF NOT EXISTS idx_utenti_nominativo ON utenti (cognome, nome)",
+                    "CREATE INDEX IF NOT EXISTS idx_libri_titolo ON libri (titolo)")),
+            // cerca() usa MATCH ... AGAINST, che senza questi indici viene rifiutato
+            new Migrazione(3, "indici FULLTEXT per la ricerca", List.of(
+                    "ALTER TABLE libri ADD FULLTEXT INDEX IF NOT EXISTS ft_libri_testo (titolo, autore, casa_editrice)",
+                    "ALTER TABLE utenti ADD FULLTEXT INDEX IF NOT EXISTS ft_utenti_nominativo (nome, cognome, email)",
+                    "ALTER TABLE prestiti ADD FULLTEXT INDEX IF NOT EXISTS ft_prestiti_snapshot "
+                            + "(libro_titolo_snapshot, utente_descrizione)")));
+
+    private SchemaMigrations() {
+    }
+
+    public static int ultimaVersione() {
+        return MIGRAZIONI.getLast().versione();
+    }
+
+    /**
+     * Porta lo schema all'ultima versione.
+     *
+     * @return la versione dello schema dopo le migrazioni
+     */
+    public static int applica(ConnectionProvider cp) {
+        try (Connection conn = cp.getConnection()) {
+            creaTabellaVersioni(conn);
+            if (!prendiLock(conn)) {
+                throw new IllegalArgumentException("Errore migrazione schema: lock " + LOCK + " non ottenuto");
+            }
+            try {
+                int versione = versioneCorrente(conn);
+                for (Migrazione m : MIGRAZIONI) {
+                    if (m.versione() > versione) {
+                        applica(conn, m);
+                        versione = m.versione();
+                    }
+                }
+                return versione;
+            } finally {
+                rilasciaLock(conn);
+            }
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore migrazione schema", e);
+        }
+    }
+
+    /** 0 se non è mai stata applicata nessuna migrazione. */
+    public static int versioneCorrente(Connection conn) throws SQLException {
+        creaTabellaVersioni(conn);
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(versione), 0) FROM schema_versione")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void applica(Connection conn, Migrazione m) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            for (String sql : m.sql()) {
+                st.execute(sql);
+            }
+        } catch (SQLException e) {
+            throw new SQLException("Migrazione " + m.versione() + " (" + m.descrizione() + ") non riuscita", e);
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO schema_versione(versione, descrizione) VALUES (?,?)")) {
+            ps.setInt(1, m.versione());
+            ps.setString(2, m.descrizione());
+            ps.executeUpdate();
+        }
+    }
+
+    private static void creaTabellaVersioni(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("""
+                    CREATE TABLE IF NOT EXISTS schema_versione (
+                      versione INT PRIMARY KEY,
+                      descrizione VARCHAR(200) NOT NULL,
+                      applicata_il TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                    )
+                    """);
+        }
+    }
+
+    private static boolean prendiLock(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            ps.setString(1, LOCK);
+            ps.setInt(2, ATTESA_LOCK_SECONDI);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static void rilasciaLock(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            ps.setString(1, LOCK);
+            ps.executeQuery().close();
+        }
+    }
+}
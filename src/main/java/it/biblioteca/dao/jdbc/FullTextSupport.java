@@ -0,0 +1,39 @@
+package it.biblioteca.dao.jdbc;
+
+import java.util.Locale;
+
+public final class FullTextSupport {
+
+    /** Lunghezza minima delle parole indicizzate da InnoDB (innodb_ft_min_token_size). */
+    private static final int MIN_TOKEN = 3;
+
+    private FullTextSupport() {}
+
+    /**
+     * Converte il testo libero in una query MATCH ... AGAINST in BOOLEAN MODE, con ogni parola
+     * obbligatoria e cercata per prefisso. Restituisce null se nessuna parola è indicizzabile.
+     */
+    public static String booleanQuery(String testo) {
+        if (testo == null) return null;
+        StringBuilder sb = new StringBuilder();
+        for (String t : testo.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (t.length() < MIN_TOKEN) continue;
+            if (!sb.isEmpty()) sb.append(' ');
+            sb.append('+').append(t).append('*');
+        }
+        return sb.isEmpty() ? null : sb.toString();
+    }
+
+    public static String likePrefix(String testo) {
+        String t = testo == null ? "" : testo.trim();
+        return t.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    public static long asNumberOr(String testo, long fallback) {
+        try {
+            return Long.parseLong(testo == null ? "" : testo.trim());
+        } catch (NumberFormatException _) {
+            return fallback;
+        }
+    }
+}
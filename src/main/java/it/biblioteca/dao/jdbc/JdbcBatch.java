@@ -0,0 +1,130 @@
+package it.biblioteca.dao.jdbc;
+
+import it.biblioteca.dao.ConnectionProvider;
+import it.biblioteca.dao.EsitoBatch;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Inserimenti massivi su una sola connessione e in una sola transazione, a blocchi di {@value #BLOCCO} righe
+ * con {@code addBatch}/{@code executeBatch}. Se un blocco fallisce (es. chiave duplicata) si torna al savepoint
+ * e si reinseriscono quelle righe una alla volta, così l'errore viene attribuito alla riga giusta e
+ * le altre vengono comunque salvate.
+ */
+public final class JdbcBatch {
+
+    static final int BLOCCO = 1000;
+
+    @FunctionalInterface
+    public interface Binder<T> {
+        void bind(PreparedStatement ps, T riga) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface KeySetter<T> {
+        void set(T riga, long id);
+    }
+
+    private JdbcBatch() {
+    }
+
+    public static <T> EsitoBatch inserisci(ConnectionProvider cp, String sql, List<T> righe,
+                                           Binder<T> binder, KeySetter<T> chiave) throws SQLException {
+        SortedMap<Integer, String> errori = new TreeMap<>();
+        int inseriti = 0;
+        try (Connection c = cp.getConnection()) {
+            boolean autoCommit = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                for (int da = 0; da < righe.size(); da += BLOCCO) {
+                    int a = Math.min(righe.size(), da + BLOCCO);
+                    inseriti += blocco(c, ps, righe, da, a, binder, chiave, errori);
+                }
+                c.commit();
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(autoCommit);
+            }
+        }
+        return new EsitoBatch(inseriti, errori);
+    }
+
+    private static <T> int blocco(Connection c, PreparedStatement ps, List<T> righe, int da, int a,
+                                  Binder<T> binder, KeySetter<T> chiave,
+                                  SortedMap<Integer, String> errori) throws SQLException {
+        Savepoint inizio = c.setSavepoint();
+        int accodate = 0;
+        for (int i = da; i < a; i++) {
+            try {
+                binder.bind(ps, righe.get(i));
+                ps.addBatch();
+                accodate++;
+            } catch (SQLException | RuntimeException e) {
+                ps.clearParameters();
+                errori.put(i, messaggio(e));
+            }
+        }
+        if (accodate == 0) return 0;
+
+        try {
+            ps.executeBatch();
+            assegnaChiavi(ps, righe, da, a, errori, chiave);
+            c.releaseSavepoint(inizio);
+            return accodate;
+        } catch (BatchUpdateException _) {
+            ps.clearBatch();
+            c.rollback(inizio);
+        }
+        return unaAllaVolta(c, ps, righe, da, a, binder, chiave, errori);
+    }
+
+    private static <T> int unaAllaVolta(Connection c, PreparedStatement ps, List<T> righe, int da, int a,
+                                        Binder<T> binder, KeySetter<T> chiave,
+                                        SortedMap<Integer, String> errori) throws SQLException {
+        int inseriti = 0;
+        for (int i = da; i < a; i++) {
+            if (errori.containsKey(i)) continue;
+            Savepoint sp = c.setSavepoint();
+            try {
+                binder.bind(ps, righe.get(i));
+                ps.executeUpdate();
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    if (rs.next()) chiave.set(righe.get(i), rs.getLong(1));
+                }
+                c.releaseSavepoint(sp);
+                inseriti++;
+            } catch (SQLException e) {
+                c.rollback(sp);
+                errori.put(i, messaggio(e));
+            }
+        }
+        return inseriti;
+    }
+
+    // Le chiavi generate arrivano nell'ordine delle righe accodate; se il driver non le restituisce tutte si lasciano stare.
+    private static <T> void assegnaChiavi(PreparedStatement ps, List<T> righe, int da, int a,
+                                          SortedMap<Integer, String> errori, KeySetter<T> chiave) throws SQLException {
+        try (ResultSet rs = ps.getGeneratedKeys()) {
+            for (int i = da; i < a; i++) {
+                if (errori.containsKey(i)) continue;
+                if (!rs.next()) return;
+                chiave.set(righe.get(i), rs.getLong(1));
+            }
+        }
+    }
+
+    private static String messaggio(Exception e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+}
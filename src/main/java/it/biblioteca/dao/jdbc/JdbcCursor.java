@@ -0,0 +1,54 @@
+package it.biblioteca.dao.jdbc;
+
+import it.biblioteca.dao.ConnectionProvider;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.Predicate;
+
+/**
+ * Lettura di una query riga per riga con un cursore forward-only: con un fetch size positivo il driver
+ * MariaDB scarica le righe a gruppi di {@value #FETCH_SIZE} invece di tenere in memoria tutto il risultato.
+ * Finché il cursore è aperto la connessione non può eseguire altro, quindi chi riceve le righe non deve
+ * fare query sulla stessa connessione.
+ */
+public final class JdbcCursor {
+
+    static final int FETCH_SIZE = 1000;
+
+    @FunctionalInterface
+    public interface Mapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    private JdbcCursor() {
+    }
+
+    /** Passa ogni riga ad {@code azione}; se restituisce {@code false} la query viene interrotta. */
+    public static <T> void scorri(ConnectionProvider cp, String sql, Mapper<T> mapper, Predicate<T> azione)
+            throws SQLException {
+        try (Connection c = cp.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (!azione.test(mapper.map(rs))) {
+                        annulla(ps);
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    // chiudendo un risultato in streaming il driver leggerebbe comunque le righe rimaste
+    private static void annulla(PreparedStatement ps) {
+        try {
+            ps.cancel();
+        } catch (SQLException _) {
+            // al peggio la chiusura scarica le righe residue
+        }
+    }
+}
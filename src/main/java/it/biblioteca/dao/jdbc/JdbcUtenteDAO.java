@@ -1,6 +1,8 @@
 package it.biblioteca.dao.jdbc;
 
 import it.biblioteca.dao.ConnectionProvider;
+import it.biblioteca.dao.EsitoBatch;
+import it.biblioteca.dao.Ordinamento;
 import it.biblioteca.dao.UtenteDAO;
 import it.biblioteca.entity.Utente;
 
@@ -10,6 +12,7 @@ import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Predicate;
 
 public class JdbcUtenteDAO extends JdbcSupport implements UtenteDAO {
     public JdbcUtenteDAO(ConnectionProvider cp) {
@@ -26,6 +29,73 @@ public class JdbcUtenteDAO extends JdbcSupport implements UtenteDAO {
         }
     }
 
+    @Override
+    public void scorri(Predicate<Utente> azione) {
+        String sql = "SELECT id,tessera,nome,cognome,email,telefono,data_attivazione,data_scadenza FROM utenti ORDER BY cognome,nome,id";
+        try {
+            JdbcCursor.scorri(cp, sql, this::map, azione);
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore scorri utenti", e);
+        }
+    }
+
+    @Override
+    public List<Utente> trovaPagina(Utente dopo, int limite, Ordinamento ordine) {
+        Ordinamento o = ordine != null ? ordine : Ordinamento.ASC;
+        boolean conCursore = dopo != null && dopo.getCognome() != null && dopo.getNome() != null && dopo.getId() != null;
+        String op = o.operatoreDopo();
+        String where = conCursore
+                ? " WHERE cognome " + op + " ? OR (cognome = ? AND (nome " + op + " ? OR (nome = ? AND id " + op + " ?)))"
+                : "";
+        String sql = "SELECT id,tessera,nome,cognome,email,telefono,data_attivazione,data_scadenza FROM utenti" + where
+                + " ORDER BY cognome " + o.sql() + ",nome " + o.sql() + ",id " + o.sql() + " LIMIT ?";
+        try {
+            return query(sql, ps -> {
+                int i = 1;
+                if (conCursore) {
+                    ps.setString(i++, dopo.getCognome());
+                    ps.setString(i++, dopo.getCognome());
+                    ps.setString(i++, dopo.getNome());
+                    ps.setString(i++, dopo.getNome());
+                    ps.setLong(i++, dopo.getId());
+                }
+                ps.setInt(i, Math.max(1, limite));
+            }, this::map);
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore trovaPagina utenti", e);
+        }
+    }
+
+    @Override
+    public List<Utente> cerca(String testo, int limite) {
+        if (testo == null || testo.isBlank()) return trovaPagina(null, limite, Ordinamento.ASC);
+
+        String ft = FullTextSupport.booleanQuery(testo);
+        String select = "SELECT id,tessera,nome,cognome,email,telefono,data_attivazione,data_scadenza FROM utenti";
+        // MATCH in OR con un'altra condizione non usa l'indice FULLTEXT: i due rami sono query separate
+        String sql = (ft != null
+                ? "(" + select + " WHERE MATCH(nome,cognome,email) AGAINST (? IN BOOLEAN MODE))"
+                        + " UNION (" + select + " WHERE tessera=?)"
+                : select + " WHERE cognome LIKE ? OR nome LIKE ? OR tessera=?")
+                + " ORDER BY cognome,nome,id LIMIT ?";
+        try {
+            return query(sql, ps -> {
+                int i = 1;
+                if (ft != null) {
+                    ps.setString(i++, ft);
+                } else {
+                    String prefix = FullTextSupport.likePrefix(testo);
+                    ps.setString(i++, prefix);
+                    ps.setString(i++, prefix);
+                }
+                ps.setLong(i++, FullTextSupport.asNumberOr(testo, -1L));
+                ps.setInt(i, Math.max(1, limite));
+            }, this::map);
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore cerca utenti", e);
+        }
+    }
+
     @Override
     public Utente trovaPerId(Long id) {
         String sql = "SELECT id,tessera,nome,cognome,email,telefono,data_attivazione,data_scadenza FROM utenti WHERE id=?";
@@ -36,6 +106,17 @@ public class JdbcUtenteDAO extends JdbcSupport implements UtenteDAO {
         }
     }
 
+    @Override
+    public Utente trovaPerTessera(Integer tessera) {
+        if (tessera == null) return null;
+        String sql = "SELECT id,tessera,nome,cognome,email,telefono,data_attivazione,data_scadenza FROM utenti WHERE tessera=?";
+        try {
+            return queryOne(sql, ps -> ps.setInt(1, tessera), this::map);
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore trovaPerTessera utente", e);
+        }
+    }
+
     @Override
     public boolean aggiungi(Utente u) {
         String sql = "INSERT INTO utenti(tessera,nome,cognome,email,telefono,data_attivazione,data_scadenza) VALUES (?,?,?,?,?,?,?)";
@@ -58,6 +139,26 @@ public class JdbcUtenteDAO extends JdbcSupport implements UtenteDAO {
         }
     }
 
+    @Override
+    public EsitoBatch aggiungiTutti(List<Utente> utenti) {
+        String sql = "INSERT INTO utenti(tessera,nome,cognome,email,telefono,data_attivazione,data_scadenza) VALUES (?,?,?,?,?,?,?)";
+        try {
+            return JdbcBatch.inserisci(cp, sql, utenti, (ps, u) -> {
+                ps.setInt(1, u.getTessera());
+                ps.setString(2, u.getNome());
+                ps.setString(3, u.getCognome());
+                ps.setString(4, u.getEmail());
+                ps.setString(5, u.getTelefono());
+                LocalDate da = u.getDataAttivazione();
+                LocalDate ds = u.getDataScadenza();
+                ps.setDate(6, da != null ? Date.valueOf(da) : null);
+                ps.setDate(7, ds != null ? Date.valueOf(ds) : null);
+            }, Utente::setId);
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Errore aggiungiTutti utenti", e);
+        }
+    }
+
     @Override
     public boolean aggiorna(Utente u) {
         String sql = "UPDATE utenti SET tessera=?,nome=?,cognome=?,email=?,telefono=?,data_attivazione=?,data_scadenza=? WHERE id=?";
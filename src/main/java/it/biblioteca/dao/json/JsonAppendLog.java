@@ -0,0 +1,213 @@
+package it.biblioteca.dao.json;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Log append-only delle modifiche di un archivio JSON.
+ * Ogni record è {@code <op> <lunghezza>:<payload>\n}, con op {@code P} (inserimento/aggiornamento
+ * dell'oggetto JSON nel payload) o {@code D} (cancellazione dell'id nel payload).
+ * I record sono idempotenti, quindi rigiocare il log sopra uno snapshot già compattato è innocuo.
+ * Gli errori di scrittura vengono rilanciati come {@link IllegalArgumentException}.
+ */
+final class JsonAppendLog implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(JsonAppendLog.class.getName());
+    private static final int SOGLIA_COMPATTAZIONE = 500;
+
+    private static final ScheduledExecutorService GROUP_COMMIT = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "json-group-commit");
+        t.setDaemon(true);
+        return t;
+    });
+
+    interface Replay {
+        void put(String obj);
+
+        void delete(Long id);
+    }
+
+    private final File file;
+    private final JsonDurability durability;
+    private FileChannel channel;
+    private ScheduledFuture<?> groupCommit;
+    private boolean dirty;
+    private IOException syncFailure;
+    private int records;
+
+    JsonAppendLog(File file, JsonDurability durability) {
+        this.file = file;
+        this.durability = durability != null ? durability : JsonDurability.everyWrite();
+    }
+
+    /** Vero quando conviene riscrivere lo snapshot e svuotare il log. */
+    synchronized boolean needsCompaction() {
+        return records >= SOGLIA_COMPATTAZIONE;
+    }
+
+    void appendPut(String obj) {
+        append('P', obj);
+    }
+
+    void appendDelete(Long id) {
+        append('D', String.valueOf(id));
+    }
+
+    /** Accoda più record con una sola scrittura e, in modalità EVERY_WRITE, un solo fsync. */
+    synchronized void appendPuts(List<String> objs) {
+        if (objs.isEmpty()) return;
+        StringBuilder sb = new StringBuilder();
+        for (String obj : objs) sb.append("P ").append(obj.length()).append(':').append(obj).append('\n');
+        write(StandardCharsets.UTF_8.encode(sb.toString()), objs.size());
+    }
+
+    /**
+     * Applica i record presenti nel log. Un record finale incompleto (scrittura interrotta)
+     * viene scartato e troncato, così le scritture successive non finiscono dietro a dati rotti.
+     */
+    synchronized void replay(Replay target) {
+        records = 0;
+        if (!file.exists()) return;
+
+        String content = JsonStorageSupport.readWholeFile(file);
+        int pos = 0;
+        while (pos < content.length()) {
+            int next = readRecord(content, pos, target);
+            if (next < 0) break;
+            pos = next;
+            records++;
+        }
+        if (pos < content.length()) {
+            LOGGER.warning("Record incompleto in coda a " + file.getName() + ", scartato.");
+            truncate(content.substring(0, pos).getBytes(StandardCharsets.UTF_8).length);
+        }
+    }
+
+    /** Svuota il log: va chiamato dopo aver riscritto lo snapshot completo. */
+    synchronized void reset() {
+        truncate(0);
+        records = 0;
+    }
+
+    /** Forza su disco le scritture ancora in sospeso e chiude il file. */
+    @Override
+    public synchronized void close() {
+        if (groupCommit != null) {
+            groupCommit.cancel(false);
+            groupCommit = null;
+        }
+        if (channel == null) return;
+        try {
+            sync();
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Errore durante la chiusura di " + file.getName(), e);
+        } finally {
+            channel = null;
+        }
+    }
+
+    private int readRecord(String s, int pos, Replay target) {
+        if (pos + 2 >= s.length() || s.charAt(pos + 1) != ' ') return -1;
+        char op = s.charAt(pos);
+        int colon = s.indexOf(':', pos + 2);
+        if (colon < 0) return -1;
+
+        int len;
+        try {
+            len = Integer.parseInt(s, pos + 2, colon, 10);
+        } catch (NumberFormatException _) {
+            return -1;
+        }
+        int end = colon + 1 + len;
+        if (len < 0 || end >= s.length() || s.charAt(end) != '\n') return -1;
+
+        String payload = s.substring(colon + 1, end);
+        try {
+            switch (op) {
+                case 'P' -> target.put(payload);
+                case 'D' -> target.delete(Long.valueOf(payload.trim()));
+                default -> {
+                    return -1;
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Record non valido in " + file.getName() + ", ignorato.", e);
+        }
+        return end + 1;
+    }
+
+    private synchronized void append(char op, String payload) {
+        write(StandardCharsets.UTF_8.encode(op + " " + payload.length() + ":" + payload + "\n"), 1);
+    }
+
+    private void write(ByteBuffer buf, int n) {
+        if (syncFailure != null) {
+            throw new IllegalArgumentException("Errore scrittura " + file.getName(), syncFailure);
+        }
+        try {
+            FileChannel ch = channel();
+            while (buf.hasRemaining()) ch.write(buf);
+            if (durability.mode() == JsonDurability.Mode.EVERY_WRITE) {
+                ch.force(false);
+            } else {
+                dirty = true;
+            }
+            records += n;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Errore scrittura " + file.getName(), e);
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            if (durability.mode() == JsonDurability.Mode.GROUP_COMMIT) {
+                long ms = durability.interval().toMillis();
+                groupCommit = GROUP_COMMIT.scheduleWithFixedDelay(this::groupSync, ms, ms, TimeUnit.MILLISECONDS);
+            }
+        }
+        return channel;
+    }
+
+    private void sync() throws IOException {
+        if (dirty && channel != null) {
+            channel.force(false);
+            dirty = false;
+        }
+    }
+
+    // Un fsync fallito in background viene rilanciato alla scrittura successiva.
+    private synchronized void groupSync() {
+        try {
+            sync();
+        } catch (IOException e) {
+            syncFailure = e;
+            LOGGER.log(Level.SEVERE, "Errore durante il group commit di " + file.getName(), e);
+        }
+    }
+
+    private void truncate(long size) {
+        if (!file.exists()) return;
+        try {
+            FileChannel ch = channel();
+            ch.truncate(size);
+            ch.force(false);
+            dirty = false;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Errore troncamento " + file.getName(), e);
+        }
+    }
+}
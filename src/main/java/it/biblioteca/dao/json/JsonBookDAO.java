@@ -1,26 +1,67 @@
 package it.biblioteca.dao.json;
 
 import it.biblioteca.dao.BookDAO;
+import it.biblioteca.dao.ContatoreCopie;
+import it.biblioteca.dao.EsitoBatch;
+import it.biblioteca.dao.Ordinamento;
+import it.biblioteca.dao.mem.MemorySupport;
+import it.biblioteca.dao.mem.SearchIndex;
 import it.biblioteca.entity.Book;
+import it.biblioteca.util.StringPool;
 
 import java.io.File;
-import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-public class JsonBookDAO implements BookDAO {
+/**
+ * Le scritture sono serializzate dal monitor dell'oggetto e fanno l'I/O su disco (log, compattazione)
+ * prima di prendere {@code lock} in scrittura, solo per aggiornare le strutture in memoria.
+ * I lettori non aspettano mai il disco: le liste usano la versione pubblicata, le ricerche il lock in lettura.
+ * Le copie disponibili non vanno su disco: partono da {@code copie} e le aggiorna {@link JsonPrestitoDAO}.
+ */
+public class JsonBookDAO implements BookDAO, ContatoreCopie {
+
+    private static final Logger LOGGER = Logger.getLogger(JsonBookDAO.class.getName());
+    private static final Comparator<Book> PER_TITOLO = Comparator
+            .comparing(Book::getTitolo, Comparator.nullsFirst(String::compareToIgnoreCase))
+            .thenComparing(Book::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
 
     private final File storageFile;
-    private final List<Book> cache = new ArrayList<>();
+    private final JsonAppendLog log;
+    // Indice primario per id (in ordine di inserimento, come nello snapshot) e indice univoco per ISBN.
+    private final Map<Long, Book> cache = new LinkedHashMap<>();
+    private final Map<String, Book> perIsbn = new HashMap<>();
+    private final SearchIndex indice = new SearchIndex();
+    private final StampedLock lock = new StampedLock();
     private long nextId = 1L;
+    // Versione pubblicata per le letture: copie ordinate per titolo, immutabili e condivise fra i lettori.
+    // Ogni modifica la invalida e la prima lettura successiva ne costruisce una nuova.
+    private volatile List<Book> pubblicati;
 
     public JsonBookDAO(File baseDir) {
+        this(baseDir, JsonDurability.everyWrite());
+    }
+
+    public JsonBookDAO(File baseDir, JsonDurability durability) {
         File dir = baseDir != null ? baseDir : new File("data");
         if (!dir.exists()) {
             dir.mkdirs();
         }
         this.storageFile = new File(dir, "books.json");
+        this.log = new JsonAppendLog(new File(dir, "books.log"), durability);
         loadFromDisk();
     }
 
@@ -32,67 +73,247 @@ public class JsonBookDAO implements BookDAO {
             book.setId(nextId++);
         }
 
-        Book existing = findByIsbn(book.getIsbn());
+        Book existing = book.getIsbn() != null ? perIsbn.get(book.getIsbn()) : null;
+        Book copy = cloneBook(book);
         if (existing != null) {
-            existing.setTitolo(book.getTitolo());
-            existing.setAutore(book.getAutore());
-            existing.setDataPubblicazione(book.getDataPubblicazione());
-            existing.setCasaEditrice(book.getCasaEditrice());
-            existing.setCopie(book.getCopie());
-        } else {
-            cache.add(cloneBook(book));
+            copy.setId(existing.getId());
+            book.setId(existing.getId()); // chi salva vede l'id della riga che ha aggiornato
+        }
+        // Prima il log, poi la cache: se la scrittura fallisce la cache resta com'era.
+        log.appendPut(bookToJson(copy));
+
+        JsonStorageSupport.inScrittura(lock, () -> {
+            if (existing != null) {
+                existing.setCopieDisponibili(existing.getCopieDisponibili() + book.getCopie() - existing.getCopie());
+                existing.setTitolo(book.getTitolo());
+                existing.setAutore(book.getAutore());
+                existing.setDataPubblicazione(book.getDataPubblicazione());
+                existing.setCasaEditrice(book.getCasaEditrice());
+                existing.setCopie(book.getCopie());
+                indicizza(existing);
+            } else {
+                copy.setCopieDisponibili(copy.getCopie());
+                inserisci(copy);
+            }
+            book.setCopieDisponibili(existing != null ? existing.getCopieDisponibili() : copy.getCopieDisponibili());
+            pubblicati = null;
+        });
+        compattaSeServe();
+    }
+
+    /**
+     * Inserisce i libri con un solo accodamento al log e un solo fsync. Come nel DB, una riga con un ISBN
+     * già presente, o già visto più su nello stesso blocco, non aggiorna niente: finisce fra gli errori.
+     */
+    @Override
+    public synchronized EsitoBatch salvaLibri(List<Book> libri) {
+        SortedMap<Integer, String> errori = new TreeMap<>();
+        List<Book> copie = new ArrayList<>(libri.size());
+        List<String> righe = new ArrayList<>(libri.size());
+        Set<String> nuoviIsbn = new HashSet<>();
+        long primoId = nextId;
+        for (int i = 0; i < libri.size(); i++) {
+            Book book = libri.get(i);
+            if (book == null) {
+                errori.put(i, "Libro mancante");
+                continue;
+            }
+            String isbn = book.getIsbn();
+            if (isbn != null && (perIsbn.containsKey(isbn) || !nuoviIsbn.add(isbn))) {
+                errori.put(i, "ISBN " + isbn + " già presente");
+                continue;
+            }
+            if (book.getId() == null) book.setId(nextId++);
+
+            Book copy = cloneBook(book);
+            copy.setCopieDisponibili(copy.getCopie());
+            copie.add(copy);
+            righe.add(bookToJson(copy));
         }
 
-        saveToDisk();
+        try {
+            log.appendPuts(righe);
+        } catch (IllegalArgumentException e) {
+            nextId = primoId;
+            throw e;
+        }
+        JsonStorageSupport.inScrittura(lock, () -> {
+            for (Book copy : copie) inserisci(copy);
+            pubblicati = null;
+        });
+        compattaSeServe();
+        return new EsitoBatch(copie.size(), errori);
     }
 
     @Override
     public synchronized void aggiornaLibro(Book book) {
         if (book == null || book.getId() == null) return;
 
-        Book target = findById(book.getId());
+        Book target = cache.get(book.getId());
         if (target != null) {
-            target.setIsbn(book.getIsbn());
-            target.setTitolo(book.getTitolo());
-            target.setAutore(book.getAutore());
-            target.setDataPubblicazione(book.getDataPubblicazione());
-            target.setCasaEditrice(book.getCasaEditrice());
-            target.setCopie(book.getCopie());
-            saveToDisk();
+            Book conIsbn = book.getIsbn() != null ? perIsbn.get(book.getIsbn()) : null;
+            if (conIsbn != null && conIsbn != target) {
+                throw new IllegalArgumentException("Errore aggiornaLibro: ISBN " + book.getIsbn() + " già presente");
+            }
+            log.appendPut(bookToJson(book));
+            JsonStorageSupport.inScrittura(lock, () -> {
+                rimuoviIsbn(target);
+                target.setIsbn(book.getIsbn());
+                target.setTitolo(book.getTitolo());
+                target.setAutore(book.getAutore());
+                target.setDataPubblicazione(book.getDataPubblicazione());
+                target.setCasaEditrice(book.getCasaEditrice());
+                target.setCopieDisponibili(target.getCopieDisponibili() + book.getCopie() - target.getCopie());
+                target.setCopie(book.getCopie());
+                if (target.getIsbn() != null) perIsbn.put(target.getIsbn(), target);
+                indicizza(target);
+                pubblicati = null;
+            });
+            compattaSeServe();
         }
     }
 
     @Override
     public synchronized void eliminaLibro(Long id) {
-        if (id == null) return;
-        boolean removed = cache.removeIf(b -> id.equals(b.getId()));
-        if (removed) {
-            saveToDisk();
-        }
+        if (id == null || !cache.containsKey(id)) return;
+        log.appendDelete(id);
+        JsonStorageSupport.inScrittura(lock, () -> {
+            rimuoviIsbn(cache.remove(id));
+            indice.remove(id);
+            pubblicati = null;
+        });
+        compattaSeServe();
     }
 
     @Override
-    public synchronized List<Book> trovaTutti() {
-        List<Book> result = new ArrayList<>();
-        for (Book b : cache) {
-            result.add(cloneBook(b));
-        }
-        return Collections.unmodifiableList(result);
+    public Book trovaPerId(Long id) {
+        if (id == null) return null;
+        return JsonStorageSupport.inLettura(lock, () -> {
+            Book b = cache.get(id);
+            return b != null ? cloneBook(b) : null;
+        });
+    }
+
+    @Override
+    public List<Book> trovaTutti() {
+        return pubblicati();
     }
 
-    private Book findById(Long id) {
-        for (Book b : cache) {
-            if (id.equals(b.getId())) return b;
+    // la fotografia pubblicata è immutabile: si scorre così com'è, senza pagine né copie
+    @Override
+    public void scorri(Predicate<Book> azione) {
+        for (Book b : pubblicati()) {
+            if (!azione.test(b)) return;
         }
-        return null;
     }
 
-    private Book findByIsbn(String isbn) {
-        if (isbn == null) return null;
-        for (Book b : cache) {
-            if (isbn.equals(b.getIsbn())) return b;
+    @Override
+    public List<Book> trovaPagina(Book dopo, int limite, Ordinamento ordine) {
+        List<Book> ordinati = pubblicati();
+        if (ordine == Ordinamento.DESC) {
+            return Collections.unmodifiableList(MemorySupport.pagina(ordinati.reversed(), PER_TITOLO.reversed(), dopo, limite));
         }
-        return null;
+        return Collections.unmodifiableList(MemorySupport.pagina(ordinati, PER_TITOLO, dopo, limite));
+    }
+
+    @Override
+    public List<Book> cerca(String testo, int limite) {
+        if (testo == null || testo.isBlank()) return trovaPagina(null, limite, Ordinamento.ASC);
+
+        return JsonStorageSupport.inLettura(lock, () -> {
+            Set<Long> ids = indice.search(testo);
+            List<Book> trovati = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                Book b = cache.get(id);
+                if (b != null) trovati.add(b);
+            }
+            trovati.sort(PER_TITOLO);
+
+            List<Book> result = new ArrayList<>();
+            for (Book b : trovati.subList(0, Math.min(trovati.size(), Math.max(1, limite)))) {
+                result.add(cloneBook(b));
+            }
+            return Collections.unmodifiableList(result);
+        });
+    }
+
+    private List<Book> pubblicati() {
+        List<Book> v = pubblicati;
+        return v != null ? v : pubblica();
+    }
+
+    // Col lock in lettura nessuna modifica può invalidare la versione mentre la si costruisce;
+    // due lettori che la ricostruiscono insieme producono lo stesso contenuto.
+    private List<Book> pubblica() {
+        return JsonStorageSupport.inLettura(lock, () -> {
+            List<Book> v = pubblicati;
+            if (v == null) {
+                List<Book> copie = new ArrayList<>(cache.size());
+                for (Book b : cache.values()) {
+                    copie.add(cloneBook(b));
+                }
+                copie.sort(PER_TITOLO);
+                v = Collections.unmodifiableList(copie);
+                pubblicati = v;
+            }
+            return v;
+        });
+    }
+
+    /** Un prestito o una restituzione: si sostituisce solo il libro nella versione pubblicata. */
+    @Override
+    public synchronized void varia(Long libroId, int delta) {
+        Book b = libroId != null ? cache.get(libroId) : null;
+        if (b == null || delta == 0) return;
+        JsonStorageSupport.inScrittura(lock, () -> {
+            b.setCopieDisponibili(b.getCopieDisponibili() + delta);
+            List<Book> v = pubblicati;
+            if (v != null) pubblicati = MemorySupport.sostituisci(v, PER_TITOLO, cloneBook(b));
+        });
+    }
+
+    @Override
+    public int copie(Long libroId) {
+        if (libroId == null) return 0;
+        return JsonStorageSupport.inLettura(lock, () -> {
+            Book b = cache.get(libroId);
+            return b != null ? b.getCopie() : 0;
+        });
+    }
+
+    @Override
+    public synchronized Map<Long, Integer> riallinea(Map<Long, Integer> attiviPerLibro) {
+        Map<Long, Integer> corretti = new HashMap<>();
+        JsonStorageSupport.inScrittura(lock, () -> {
+            for (Book b : cache.values()) {
+                int attese = b.getCopie() - attiviPerLibro.getOrDefault(b.getId(), 0);
+                if (b.getCopieDisponibili() != attese) {
+                    corretti.put(b.getId(), b.getCopieDisponibili() - attese);
+                    b.setCopieDisponibili(attese);
+                }
+            }
+            if (!corretti.isEmpty()) pubblicati = null;
+        });
+        return corretti;
+    }
+
+    private void indicizza(Book b) {
+        indice.put(b.getId(), b.getIsbn(), b.getTitolo(), b.getAutore(), b.getCasaEditrice());
+    }
+
+    void close() {
+        log.close();
+    }
+
+    private void inserisci(Book b) {
+        Book prima = cache.put(b.getId(), b);
+        if (prima != null) rimuoviIsbn(prima);
+        if (b.getIsbn() != null) perIsbn.put(b.getIsbn(), b);
+        indicizza(b);
+    }
+
+    private void rimuoviIsbn(Book b) {
+        if (b != null && b.getIsbn() != null) perIsbn.remove(b.getIsbn(), b);
     }
 
     private Book cloneBook(Book src) {
@@ -104,37 +325,44 @@ public class JsonBookDAO implements BookDAO {
         b.setDataPubblicazione(src.getDataPubblicazione());
         b.setCasaEditrice(src.getCasaEditrice());
         b.setCopie(src.getCopie());
+        b.setCopieDisponibili(src.getCopieDisponibili());
         return b;
     }
 
+    // Una compattazione fallita non annulla la modifica, già nel log: si riproverà alla prossima.
+    private void compattaSeServe() {
+        if (!log.needsCompaction()) return;
+        try {
+            saveToDisk();
+            log.reset();
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Compattazione non riuscita", e);
+        }
+    }
+
     private void loadFromDisk() {
         cache.clear();
+        perIsbn.clear();
+        indice.clear();
+        pubblicati = null;
         nextId = 1L;
 
-        if (!storageFile.exists()) {
-            return;
-        }
-
-        String json = JsonStorageSupport.readWholeFile(storageFile).trim();
-        for (String obj : JsonStorageSupport.splitTopLevelObjects(json)) {
-            try {
-                Book b = parseBook(obj);
-                if (b.getId() != null && b.getId() >= nextId) {
-                    nextId = b.getId() + 1;
-                }
-                cache.add(b);
-            } catch (Exception _) {
-                // empty
+        for (Book b : JsonStorageSupport.loadSnapshotAndLog(storageFile, log, Book::new, JsonBookDAO::campoLibro, Book::getId)) {
+            if (b.getId() != null && b.getId() >= nextId) {
+                nextId = b.getId() + 1;
             }
+            b.setCopieDisponibili(b.getCopie());
+            inserisci(b);
         }
     }
 
     private void saveToDisk() {
         StringBuilder out = new StringBuilder();
         out.append('[').append('\n');
-        for (int i = 0; i < cache.size(); i++) {
-            out.append("  ").append(bookToJson(cache.get(i)));
-            if (i < cache.size() - 1) out.append(',');
+        int i = 0;
+        for (Book b : cache.values()) {
+            out.append("  ").append(bookToJson(b));
+            if (++i < cache.size()) out.append(',');
             out.append('\n');
         }
         out.append(']').append('\n');
@@ -154,42 +382,20 @@ public class JsonBookDAO implements BookDAO {
                 + '}';
     }
 
-    private static Book parseBook(String obj) {
-        Book b = new Book();
-
-        Long idVal = getLongField(obj);
-        if (idVal != null) b.setId(idVal);
-
-        b.setIsbn(getStringField(obj, "isbn"));
-        b.setTitolo(getStringField(obj, "titolo"));
-        b.setAutore(getStringField(obj, "autore"));
-        b.setDataPubblicazione(getDateField(obj));
-        b.setCasaEditrice(getStringField(obj, "casaEditrice"));
-
-        Integer copieVal = getIntField(obj);
-        if (copieVal != null) b.setCopie(copieVal);
-
-        return b;
-    }
-
-    private static String getStringField(String obj, String field) {
-        return JsonStorageSupport.extractRawValue(obj, field);
-    }
-
-    private static Integer getIntField(String obj) {
-        String raw = JsonStorageSupport.extractRawValue(obj, "copie");
-        if (raw == null || raw.isEmpty() || "null".equals(raw)) return null;
-        return Integer.valueOf(raw);
-    }
-
-    private static Long getLongField(String obj) {
-        String raw = JsonStorageSupport.extractRawValue(obj, "id");
-        if (raw == null || raw.isEmpty() || "null".equals(raw)) return null;
-        return Long.valueOf(raw);
-    }
-
-    private static LocalDate getDateField(String obj) {
-        String raw = JsonStorageSupport.extractRawValue(obj, "dataPubblicazione");
-        return JsonStorageSupport.parseDate(raw);
+    private static void campoLibro(Book b, String campo, String v) {
+        switch (campo) {
+            case "id" -> b.setId(JsonStorageSupport.parseLong(v));
+            case "isbn" -> b.setIsbn(v);
+            case "titolo" -> b.setTitolo(v);
+            case "autore" -> b.setAutore(StringPool.getDefault().dedup(v));
+            case "dataPubblicazione" -> b.setDataPubblicazione(JsonStorageSupport.parseDate(v));
+            case "casaEditrice" -> b.setCasaEditrice(StringPool.getDefault().dedup(v));
+            case "copie" -> {
+                if (v != null && !v.isBlank()) b.setCopie(Integer.parseInt(v.trim()));
+            }
+            default -> {
+                // campo sconosciuto: ignorato
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -7,16 +7,21 @@ import it.biblioteca.dao.UtenteDAO;
 
 import java.io.File;
 
-public class JsonDaoFactory implements DaoFactory {
+public class JsonDaoFactory implements DaoFactory, AutoCloseable {
 
-    private final BookDAO bookDAO;
-    private final UtenteDAO utenteDAO;
-    private final PrestitoDAO prestitoDAO;
+    private final JsonBookDAO bookDAO;
+    private final JsonUtenteDAO utenteDAO;
+    private final JsonPrestitoDAO prestitoDAO;
 
     public JsonDaoFactory(File baseDir) {
-        this.bookDAO = new JsonBookDAO(baseDir);
-        this.utenteDAO = new JsonUtenteDAO(baseDir);
-        this.prestitoDAO = new JsonPrestitoDAO(baseDir);
+        this(baseDir, JsonDurability.everyWrite());
+    }
+
+    public JsonDaoFactory(File baseDir, JsonDurability durability) {
+        this.bookDAO = new JsonBookDAO(baseDir, durability);
+        this.utenteDAO = new JsonUtenteDAO(baseDir, durability);
+        this.prestitoDAO = new JsonPrestitoDAO(baseDir, durability);
+        prestitoDAO.collega(bookDAO);
     }
 
     @Override
@@ -33,4 +38,12 @@ public class JsonDaoFactory implements DaoFactory {
     public PrestitoDAO prestitoDAO() {
         return prestitoDAO;
     }
-}
\ No newline at end of file
+
+    /** Forza su disco le modifiche ancora in attesa del group commit. */
+    @Override
+    public void close() {
+        bookDAO.close();
+        utenteDAO.close();
+        prestitoDAO.close();
+    }
+}
@@ -0,0 +1,50 @@
+package it.biblioteca.dao.json;
+
+import java.time.Duration;
+
+/**
+ * Quanto spesso i log dell'archivio JSON vengono forzati su disco ({@code fsync}).
+ * <ul>
+ *     <li>{@link Mode#EVERY_WRITE}: ogni modifica è su disco prima che il DAO ritorni;</li>
+ *     <li>{@link Mode#GROUP_COMMIT}: le modifiche vengono forzate insieme ogni {@code interval};
+ *     un crash del processo non perde nulla, un crash della macchina al più l'ultimo intervallo.</li>
+ * </ul>
+ * Gli snapshot completi (compattazione) sono sempre scritti in modo atomico e forzati.
+ */
+public record JsonDurability(Mode mode, Duration interval) {
+
+    public enum Mode { EVERY_WRITE, GROUP_COMMIT }
+
+    public static final String PROPERTY = "biblioteca.json.durability";
+
+    public JsonDurability {
+        if (mode == null) throw new IllegalArgumentException("mode non può essere null");
+        if (mode == Mode.GROUP_COMMIT && (interval == null || interval.isNegative() || interval.isZero())) {
+            throw new IllegalArgumentException("intervallo di group commit non valido");
+        }
+    }
+
+    public static JsonDurability everyWrite() {
+        return new JsonDurability(Mode.EVERY_WRITE, Duration.ZERO);
+    }
+
+    public static JsonDurability groupCommit(Duration interval) {
+        return new JsonDurability(Mode.GROUP_COMMIT, interval);
+    }
+
+    /**
+     * Legge la modalità dalla proprietà di sistema {@value #PROPERTY}: {@code every-write} (default)
+     * oppure {@code group:<ms>}, es. {@code -Dbiblioteca.json.durability=group:50}.
+     */
+    public static JsonDurability fromSystemProperty() {
+        String v = System.getProperty(PROPERTY, "").trim();
+        if (v.startsWith("group:")) {
+            try {
+                return groupCommit(Duration.ofMillis(Long.parseLong(v.substring("group:".length()).trim())));
+            } catch (IllegalArgumentException _) {
+                return everyWrite();
+            }
+        }
+        return everyWrite();
+    }
+}
@@ -1,48 +1,142 @@
 package it.biblioteca.dao.json;
 
 import it.biblioteca.bean.PrestitoBean;
+import it.biblioteca.dao.ContatoreCopie;
+import it.biblioteca.dao.Ordinamento;
 import it.biblioteca.dao.PrestitoDAO;
+import it.biblioteca.dao.mem.MemorySupport;
+import it.biblioteca.dao.mem.SearchIndex;
 import it.biblioteca.entity.Prestito;
+import it.biblioteca.util.StringPool;
 
 import java.io.File;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+/** Stesso schema di concorrenza di {@link JsonBookDAO}: i lettori non aspettano mai il disco. */
 public class JsonPrestitoDAO implements PrestitoDAO {
 
+    private static final Logger LOGGER = Logger.getLogger(JsonPrestitoDAO.class.getName());
+    private static final Comparator<Prestito> PER_ID =
+            Comparator.comparing(Prestito::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+    private static final Comparator<Prestito> PIU_RECENTI = PER_ID.reversed();
+    private static final Comparator<Prestito> PIU_RECENTI_PER_DATA = Comparator
+            .comparing(Prestito::getDataPrestito, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(PER_ID)
+            .reversed();
+
     private final File storageFile;
-    private final List<Prestito> cache = new ArrayList<>();
+    private final JsonAppendLog log;
+    // Indice primario per id, in ordine di inserimento come nello snapshot.
+    private final Map<Long, Prestito> cache = new LinkedHashMap<>();
+    private final Map<Long, Integer> attiviPerLibro = new HashMap<>();
+    private final SearchIndex indice = new SearchIndex();
+    private final StampedLock lock = new StampedLock();
     private long nextId = 1L;
+    private ContatoreCopie contatore = ContatoreCopie.NESSUNO;
+
+    // Versione pubblicata per le letture, dal più recente: immutabile e condivisa fra i lettori.
+    // Chi scrive ne pubblica una copia con il solo prestito cambiato; da capo si costruisce solo dopo il caricamento.
+    private record Pubblicati(List<Prestito> tutti, List<Prestito> attivi, Map<Long, Integer> attiviPerLibro) {}
+
+    private volatile Pubblicati pubblicati;
 
     public JsonPrestitoDAO(File baseDir) {
+        this(baseDir, JsonDurability.everyWrite());
+    }
+
+    public JsonPrestitoDAO(File baseDir, JsonDurability durability) {
         File dir = baseDir != null ? baseDir : new File("data");
         if (!dir.exists()) {
             dir.mkdirs();
         }
         this.storageFile = new File(dir, "prestiti.json");
+        this.log = new JsonAppendLog(new File(dir, "prestiti.log"), durability);
         loadFromDisk();
     }
 
     @Override
-    public synchronized List<Prestito> trovaTutti() {
-        List<Prestito> result = new ArrayList<>();
-        for (Prestito p : cache) {
-            result.add(clonePrestito(p));
+    public List<Prestito> trovaTutti() {
+        return pubblicati().tutti();
+    }
+
+    @Override
+    public Prestito trovaPerId(Long id) {
+        if (id == null) return null;
+        return JsonStorageSupport.inLettura(lock, () -> {
+            Prestito p = cache.get(id);
+            return p != null ? clonePrestito(p) : null;
+        });
+    }
+
+    @Override
+    public void scorri(Predicate<Prestito> azione) {
+        for (Prestito p : pubblicati().tutti()) {
+            if (!azione.test(p)) return;
+        }
+    }
+
+    @Override
+    public List<Prestito> trovaPagina(Prestito dopo, int limite, Ordinamento ordine) {
+        List<Prestito> recenti = pubblicati().tutti();
+        if (ordine == Ordinamento.ASC) {
+            return Collections.unmodifiableList(MemorySupport.pagina(recenti.reversed(), PER_ID, dopo, limite));
+        }
+        return Collections.unmodifiableList(MemorySupport.pagina(recenti, PIU_RECENTI, dopo, limite));
+    }
+
+    // niente indice per utente: i prestiti di uno stesso utente sono pochi rispetto allo storico in memoria
+    @Override
+    public List<Prestito> trovaPerUtente(Long utenteId, Prestito dopo, int limite) {
+        if (utenteId == null) return new ArrayList<>();
+        List<Prestito> suoi = new ArrayList<>();
+        for (Prestito p : pubblicati().tutti()) {
+            if (utenteId.equals(p.getUtenteId())) suoi.add(p);
         }
-        return Collections.unmodifiableList(result);
+        suoi.sort(PIU_RECENTI_PER_DATA);
+        return Collections.unmodifiableList(MemorySupport.pagina(suoi, PIU_RECENTI_PER_DATA, dopo, limite));
     }
 
     @Override
-    public synchronized List<Prestito> trovaPrestitiAttivi() {
-        List<Prestito> result = new ArrayList<>();
-        for (Prestito p : cache) {
-            if (p.getDataRestituzione() == null) {
+    public List<Prestito> cerca(String testo, int limite) {
+        if (testo == null || testo.isBlank()) return trovaPagina(null, limite, Ordinamento.DESC);
+
+        return JsonStorageSupport.inLettura(lock, () -> {
+            Set<Long> ids = indice.search(testo);
+            List<Prestito> trovati = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                Prestito p = cache.get(id);
+                if (p != null) trovati.add(p);
+            }
+            trovati.sort(PIU_RECENTI);
+
+            List<Prestito> result = new ArrayList<>();
+            for (Prestito p : trovati.subList(0, Math.min(trovati.size(), Math.max(1, limite)))) {
                 result.add(clonePrestito(p));
             }
-        }
-        return Collections.unmodifiableList(result);
+            return Collections.unmodifiableList(result);
+        });
+    }
+
+    @Override
+    public List<Prestito> trovaPrestitiAttivi() {
+        return pubblicati().attivi();
+    }
+
+    @Override
+    public Map<Long, Integer> contaPrestitiAttiviPerLibro() {
+        return pubblicati().attiviPerLibro();
     }
 
     @Override
@@ -50,7 +144,7 @@ public class JsonPrestitoDAO implements PrestitoDAO {
         if (bean == null) return false;
 
         Prestito p = new Prestito();
-        p.setId(nextId++);
+        p.setId(nextId);
         p.setLibroId(bean.getLibroId());
         p.setUtenteId(bean.getUtenteId());
         p.setUtente(bean.getUtenteSnapshot());
@@ -59,33 +153,117 @@ public class JsonPrestitoDAO implements PrestitoDAO {
         LocalDate dp = bean.getDataPrestito() != null ? bean.getDataPrestito() : LocalDate.now();
         p.setDataPrestito(dp);
         p.setDataRestituzione(null);
+        // Prima il log, poi la cache: se la scrittura fallisce la cache resta com'era.
+        log.appendPut(prestitoToJson(p));
+        nextId++;
+        bean.setId(p.getId());
 
-        cache.add(p);
-        saveToDisk();
+        JsonStorageSupport.inScrittura(lock, () -> {
+            cache.put(p.getId(), p);
+            incrementaAttivi(p.getLibroId());
+            indicizza(p);
+            Pubblicati v = pubblicati;
+            if (v != null) {
+                Prestito nuovo = clonePrestito(p);
+                pubblicati = new Pubblicati(MemorySupport.aggiungi(v.tutti(), PIU_RECENTI, nuovo),
+                        MemorySupport.aggiungi(v.attivi(), PIU_RECENTI, nuovo), Map.copyOf(attiviPerLibro));
+            }
+        });
+        contatore.varia(p.getLibroId(), -1);
+        compattaSeServe();
         return true;
     }
 
+    // tutte le scritture passano dal monitor: fra il conteggio e l'inserimento nessuno cambia gli attivi
+    @Override
+    public synchronized boolean inserisciSeDisponibile(PrestitoBean bean) {
+        if (bean == null || bean.getLibroId() == null) return false;
+        int attivi = attiviPerLibro.getOrDefault(bean.getLibroId(), 0);
+        return attivi < contatore.copie(bean.getLibroId()) && inserisci(bean);
+    }
+
     @Override
     public synchronized boolean chiudiPrestito(Long prestitoId, LocalDate dataRestituzione) {
         if (prestitoId == null) return false;
-        Prestito p = findById(prestitoId);
+        Prestito p = cache.get(prestitoId);
         if (p == null) return false;
         if (p.getDataRestituzione() != null) return false;
 
-        p.setDataRestituzione(dataRestituzione != null ? dataRestituzione : LocalDate.now());
-        saveToDisk();
+        Prestito chiuso = clonePrestito(p);
+        chiuso.setDataRestituzione(dataRestituzione != null ? dataRestituzione : LocalDate.now());
+        log.appendPut(prestitoToJson(chiuso));
+
+        JsonStorageSupport.inScrittura(lock, () -> {
+            p.setDataRestituzione(chiuso.getDataRestituzione());
+            decrementaAttivi(p.getLibroId());
+            Pubblicati v = pubblicati;
+            if (v != null) {
+                List<Prestito> tutti = MemorySupport.sostituisci(v.tutti(), PIU_RECENTI, chiuso);
+                pubblicati = tutti == null ? null : new Pubblicati(tutti,
+                        MemorySupport.togli(v.attivi(), PIU_RECENTI, chiuso), Map.copyOf(attiviPerLibro));
+            }
+        });
+        contatore.varia(p.getLibroId(), 1);
+        compattaSeServe();
         return true;
     }
 
+    @Override
+    public synchronized Map<Long, Integer> riconciliaCopieDisponibili() {
+        return contatore.riallinea(new HashMap<>(attiviPerLibro));
+    }
+
+    /**
+     * Da qui in poi prestiti e restituzioni aggiornano le copie disponibili di {@code contatore}, che parte
+     * allineato ai prestiti attivi già presenti, e {@link #inserisciSeDisponibile} ne legge le copie del libro:
+     * finché non è collegato nessun contatore non si presta niente. Si prende prima questo monitor e poi
+     * quello del contatore.
+     */
+    public synchronized void collega(ContatoreCopie contatore) {
+        this.contatore = contatore != null ? contatore : ContatoreCopie.NESSUNO;
+        this.contatore.riallinea(new HashMap<>(attiviPerLibro));
+    }
+
     // ======================================================
     //                    SUPPORTO INTERNO
     // ======================================================
 
-    private Prestito findById(Long id) {
-        for (Prestito p : cache) {
-            if (id.equals(p.getId())) return p;
-        }
-        return null;
+    private Pubblicati pubblicati() {
+        Pubblicati v = pubblicati;
+        return v != null ? v : pubblica();
+    }
+
+    private Pubblicati pubblica() {
+        return JsonStorageSupport.inLettura(lock, () -> {
+            Pubblicati v = pubblicati;
+            if (v == null) {
+                List<Prestito> tutti = new ArrayList<>(cache.size());
+                List<Prestito> attivi = new ArrayList<>();
+                for (Prestito p : cache.values()) {
+                    tutti.add(clonePrestito(p));
+                }
+                tutti.sort(PIU_RECENTI);
+                for (Prestito p : tutti) {
+                    if (p.getDataRestituzione() == null) attivi.add(p);
+                }
+                v = new Pubblicati(Collections.unmodifiableList(tutti),
+                        Collections.unmodifiableList(attivi), Map.copyOf(attiviPerLibro));
+                pubblicati = v;
+            }
+            return v;
+        });
+    }
+
+    private void indicizza(Prestito p) {
+        indice.put(p.getId(), String.valueOf(p.getId()), p.getLibroTitoloSnapshot(), p.getUtente());
+    }
+
+    private void incrementaAttivi(Long libroId) {
+        if (libroId != null) attiviPerLibro.merge(libroId, 1, Integer::sum);
+    }
+
+    private void decrementaAttivi(Long libroId) {
+        if (libroId != null) attiviPerLibro.computeIfPresent(libroId, (k, n) -> n > 1 ? n - 1 : null);
     }
 
     private Prestito clonePrestito(Prestito src) {
@@ -100,34 +278,45 @@ public class JsonPrestitoDAO implements PrestitoDAO {
         return p;
     }
 
+    void close() {
+        log.close();
+    }
+
+    // Una compattazione fallita non annulla la modifica, già nel log: si riproverà alla prossima.
+    private void compattaSeServe() {
+        if (!log.needsCompaction()) return;
+        try {
+            saveToDisk();
+            log.reset();
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Compattazione non riuscita", e);
+        }
+    }
+
     private void loadFromDisk() {
         cache.clear();
+        attiviPerLibro.clear();
+        indice.clear();
+        pubblicati = null;
         nextId = 1L;
 
-        if (!storageFile.exists()) {
-            return;
-        }
-
-        String json = JsonStorageSupport.readWholeFile(storageFile).trim();
-        for (String obj : JsonStorageSupport.splitTopLevelObjects(json)) {
-            try {
-                Prestito p = parsePrestito(obj);
-                if (p.getId() != null && p.getId() >= nextId) {
-                    nextId = p.getId() + 1;
-                }
-                cache.add(p);
-            } catch (Exception _) {
-                // empty
+        for (Prestito p : JsonStorageSupport.loadSnapshotAndLog(storageFile, log, Prestito::new, JsonPrestitoDAO::campoPrestito, Prestito::getId)) {
+            cache.put(p.getId(), p);
+            if (p.getId() != null && p.getId() >= nextId) {
+                nextId = p.getId() + 1;
             }
+            if (p.getDataRestituzione() == null) incrementaAttivi(p.getLibroId());
+            indicizza(p);
         }
     }
 
     private void saveToDisk() {
         StringBuilder out = new StringBuilder();
         out.append('[').append('\n');
-        for (int i = 0; i < cache.size(); i++) {
-            out.append("  ").append(prestitoToJson(cache.get(i)));
-            if (i < cache.size() - 1) out.append(',');
+        int i = 0;
+        for (Prestito p : cache.values()) {
+            out.append("  ").append(prestitoToJson(p));
+            if (++i < cache.size()) out.append(',');
             out.append('\n');
         }
         out.append(']').append('\n');
@@ -147,38 +336,18 @@ public class JsonPrestitoDAO implements PrestitoDAO {
                 + '}';
     }
 
-    private static Prestito parsePrestito(String obj) {
-        Prestito p = new Prestito();
-
-        Long idVal = getLongField(obj, "id");
-        if (idVal != null) p.setId(idVal);
-
-        Long libroId = getLongField(obj, "libroId");
-        if (libroId != null) p.setLibroId(libroId);
-
-        Long utenteId = getLongField(obj, "utenteId");
-        if (utenteId != null) p.setUtenteId(utenteId);
-
-        p.setUtente(getStringField(obj, "utente"));
-        p.setDataPrestito(getDateField(obj, "dataPrestito"));
-        p.setDataRestituzione(getDateField(obj, "dataRestituzione"));
-        p.setLibroTitoloSnapshot(getStringField(obj, "libroTitoloSnapshot"));
-
-        return p;
-    }
-
-    private static String getStringField(String obj, String field) {
-        return JsonStorageSupport.extractRawValue(obj, field);
-    }
-
-    private static Long getLongField(String obj, String field) {
-        String raw = JsonStorageSupport.extractRawValue(obj, field);
-        if (raw == null || raw.isEmpty() || "null".equals(raw)) return null;
-        return Long.valueOf(raw);
-    }
-
-    private static LocalDate getDateField(String obj, String field) {
-        String raw = JsonStorageSupport.extractRawValue(obj, field);
-        return JsonStorageSupport.parseDate(raw);
+    private static void campoPrestito(Prestito p, String campo, String v) {
+        switch (campo) {
+            case "id" -> p.setId(JsonStorageSupport.parseLong(v));
+            case "libroId" -> p.setLibroId(JsonStorageSupport.parseLong(v));
+            case "utenteId" -> p.setUtenteId(JsonStorageSupport.parseLong(v));
+            case "utente" -> p.setUtente(StringPool.getDefault().dedup(v));
+            case "dataPrestito" -> p.setDataPrestito(JsonStorageSupport.parseDate(v));
+            case "dataRestituzione" -> p.setDataRestituzione(JsonStorageSupport.parseDate(v));
+            case "libroTitoloSnapshot" -> p.setLibroTitoloSnapshot(StringPool.getDefault().dedup(v));
+            default -> {
+                // campo sconosciuto: ignorato
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,207 @@
+package it.biblioteca.dao.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Lettore JSON a passata singola per gli archivi del backend file: scorre un array di oggetti
+ * piatti direttamente da un {@link Reader} e passa ogni campo all'entità, senza creare
+ * sottostringhe per oggetto né cercare i campi uno a uno. Oggetti e array annidati vengono saltati.
+ */
+final class JsonReader {
+
+    @FunctionalInterface
+    interface FieldSetter<T> {
+        /** {@code value} è il testo della stringa (già senza escape), il letterale per numeri e booleani, null per {@code null}. */
+        void set(T target, String name, String value);
+    }
+
+    private final Reader in;
+    private final char[] buf = new char[8192];
+    private final StringBuilder sb = new StringBuilder(64);
+    private int pos;
+    private int limit;
+    private long offset;
+
+    JsonReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Legge un array di oggetti (un input vuoto vale come array vuoto). Gli oggetti per cui
+     * {@code setter} lancia un'eccezione vengono saltati; un errore di sintassi interrompe la lettura.
+     */
+    <T> List<T> readArray(Supplier<T> factory, FieldSetter<T> setter) throws IOException {
+        List<T> out = new ArrayList<>();
+        int c = peekNonWs();
+        if (c < 0) return out;
+        expect('[');
+        if (peekNonWs() == ']') {
+            read();
+            return out;
+        }
+        while (true) {
+            try {
+                out.add(readObject(factory, setter));
+            } catch (RuntimeException _) {
+                // oggetto non valido: saltato, il lettore è già oltre la '}'
+            }
+            c = readNonWs();
+            if (c == ']') return out;
+            if (c != ',') throw syntax("',' o ']' attesi");
+        }
+    }
+
+    /** Legge un singolo oggetto; un errore del {@code setter} viene rilanciato dopo aver consumato l'oggetto. */
+    <T> T readObject(Supplier<T> factory, FieldSetter<T> setter) throws IOException {
+        expect('{');
+        T target = factory.get();
+        RuntimeException failure = null;
+        if (peekNonWs() == '}') {
+            read();
+            return target;
+        }
+        while (true) {
+            if (peekNonWs() != '"') throw syntax("nome di campo atteso");
+            read();
+            String name = readStringBody();
+            expect(':');
+            String value = readValue();
+            if (failure == null) {
+                try {
+                    setter.set(target, name, value);
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+            int c = readNonWs();
+            if (c == '}') break;
+            if (c != ',') throw syntax("',' o '}' attesi");
+        }
+        if (failure != null) throw failure;
+        return target;
+    }
+
+    private String readValue() throws IOException {
+        int c = peekNonWs();
+        switch (c) {
+            case '"' -> {
+                read();
+                return readStringBody();
+            }
+            case '{', '[' -> {
+                skipNested();
+                return null;
+            }
+            case -1 -> throw syntax("valore atteso");
+            default -> {
+                sb.setLength(0);
+                while ((c = peek()) >= 0 && c != ',' && c != '}' && c != ']' && !isWhitespace(c)) {
+                    sb.append((char) read());
+                }
+                if (sb.isEmpty()) throw syntax("valore atteso");
+                return "null".contentEquals(sb) ? null : sb.toString();
+            }
+        }
+    }
+
+    private String readStringBody() throws IOException {
+        sb.setLength(0);
+        while (true) {
+            // Copia in blocco i tratti senza escape già presenti nel buffer.
+            int start = pos;
+            while (pos < limit && buf[pos] != '"' && buf[pos] != '\\') pos++;
+            if (pos > start) sb.append(buf, start, pos - start);
+
+            int c = read();
+            if (c < 0) throw syntax("stringa non terminata");
+            if (c == '"') return sb.toString();
+            if (c != '\\') {
+                sb.append((char) c);
+                continue;
+            }
+            int e = read();
+            switch (e) {
+                case 'n' -> sb.append('\n');
+                case 't' -> sb.append('\t');
+                case 'r' -> sb.append('\r');
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'u' -> sb.append(readUnicodeEscape());
+                case -1 -> throw syntax("stringa non terminata");
+                default -> sb.append((char) e);
+            }
+        }
+    }
+
+    private char readUnicodeEscape() throws IOException {
+        int v = 0;
+        for (int i = 0; i < 4; i++) {
+            int d = Character.digit(read(), 16);
+            if (d < 0) throw syntax("escape \\u non valido");
+            v = (v << 4) | d;
+        }
+        return (char) v;
+    }
+
+    private void skipNested() throws IOException {
+        int depth = 0;
+        do {
+            int c = read();
+            if (c < 0) throw syntax("struttura non terminata");
+            if (c == '"') {
+                readStringBody();
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+        } while (depth > 0);
+    }
+
+    private void expect(char expected) throws IOException {
+        if (readNonWs() != expected) throw syntax("'" + expected + "' atteso");
+    }
+
+    private int readNonWs() throws IOException {
+        int c = peekNonWs();
+        if (c >= 0) pos++;
+        return c;
+    }
+
+    private int peekNonWs() throws IOException {
+        int c;
+        while ((c = peek()) >= 0 && isWhitespace(c)) pos++;
+        return c;
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c >= 0) pos++;
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit) {
+            offset += limit;
+            pos = 0;
+            limit = in.read(buf, 0, buf.length);
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buf[pos];
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private IOException syntax(String msg) {
+        return new IOException("JSON non valido alla posizione " + (offset + pos) + ": " + msg);
+    }
+}
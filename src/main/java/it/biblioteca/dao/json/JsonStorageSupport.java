@@ -2,11 +2,25 @@ package it.biblioteca.dao.json;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 final class JsonStorageSupport {
 
@@ -14,150 +28,113 @@ final class JsonStorageSupport {
         // utility class, niente istanze
     }
 
+    // Un file illeggibile non va scambiato per un archivio vuoto: la compattazione lo sovrascriverebbe.
     static String readWholeFile(File file) {
+        if (!file.exists()) return "";
         try {
             return Files.readString(file.toPath(), StandardCharsets.UTF_8);
-        } catch (IOException _) {
-            return "";
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Errore lettura " + file.getName(), e);
         }
     }
 
+    /**
+     * Sostituisce {@code file} in modo atomico: scrive un file temporaneo nella stessa cartella,
+     * lo forza su disco e lo rinomina sopra l'originale. Un crash lascia o il vecchio o il nuovo contenuto.
+     */
     static void writeWholeFile(File file, String content) {
+        Path target = file.toPath();
+        Path tmp = target.resolveSibling(file.getName() + ".tmp");
         try {
-            Files.writeString(
-                    file.toPath(),
-                    content,
-                    StandardCharsets.UTF_8
-            );
-        } catch (IOException _) {
-            // empty
-        }
-    }
-
-    static List<String> splitTopLevelObjects(String jsonArray) {
-        List<String> objs = new ArrayList<>();
-        if (jsonArray == null) return objs;
-
-        String trimmed = jsonArray.trim();
-        if (trimmed.length() < 2 || "[]".equals(trimmed)) return objs;
-
-        if (trimmed.charAt(0) == '[' && trimmed.charAt(trimmed.length() - 1) == ']') {
-            trimmed = trimmed.substring(1, trimmed.length() - 1).trim();
-        }
-
-        final int len = trimmed.length();
-        int i = 0;
-        while (i < len) {
-            char ch = trimmed.charAt(i);
-            if (ch == '{') {
-                int end = findObjectEnd(trimmed, i);
-                if (end < 0) break;
-                objs.add(trimmed.substring(i, end + 1).trim());
-                i = end + 1;
-            } else {
-                i++;
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buf = StandardCharsets.UTF_8.encode(content);
+                while (buf.hasRemaining()) ch.write(buf);
+                ch.force(true);
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException _) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
             }
+            syncDirectory(target.toAbsolutePath().getParent());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Errore scrittura " + file.getName(), e);
         }
-        return objs;
     }
 
-    static String extractRawValue(String obj, String field) {
-        if (obj == null || field == null) return null;
-
-        String key = "\"" + field + "\"";
-        int k = obj.indexOf(key);
-        if (k < 0) return null;
-
-        int afterKey = k + key.length();
-        int colon = findNextColon(obj, afterKey);
-        if (colon < 0) return null;
-
-        int vStart = skipWs(obj, colon + 1);
-        if (vStart >= obj.length()) return null;
-
-        char first = obj.charAt(vStart);
-        if (first == '"') {
-            Read r = readJsonString(obj, vStart);
-            return r.value;
+    // Rende persistente la rinomina; non tutti i sistemi permettono di aprire una cartella.
+    private static void syncDirectory(Path dir) {
+        if (dir == null) return;
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException _) {
+            // empty
         }
-
-        int vEnd = findBareValueEnd(obj, vStart);
-        return obj.substring(vStart, vEnd).trim();
     }
 
-    private static int findObjectEnd(CharSequence s, int startBrace) {
-        int depth = 1;
-        boolean inStr = false;
-        boolean esc = false;
-        for (int i = startBrace + 1; i < s.length(); i++) {
-            char ch = s.charAt(i);
-            if (inStr) {
-                if (esc) {
-                    esc = false;
-                } else if (ch == '\\') {
-                    esc = true;
-                } else if (ch == '\"') {
-                    inStr = false;
+    /**
+     * Legge lo snapshot {@code snapshot} in streaming e vi applica i record di {@code log}, restituendo
+     * gli oggetti nell'ordine dello snapshot (i nuovi in coda). Gli oggetti non validi vengono saltati,
+     * un file sintatticamente rotto invece è un errore: meglio non partire che compattarci sopra.
+     */
+    static <T> List<T> loadSnapshotAndLog(File snapshot, JsonAppendLog log, Supplier<T> factory,
+                                          JsonReader.FieldSetter<T> setter, Function<T, Long> idOf) {
+        Map<Long, T> byId = new LinkedHashMap<>();
+        if (snapshot.exists()) {
+            try (Reader in = new InputStreamReader(Files.newInputStream(snapshot.toPath()), StandardCharsets.UTF_8)) {
+                for (T item : new JsonReader(in).readArray(factory, setter)) {
+                    byId.put(idOf.apply(item), item);
                 }
-                continue;
-            }
-            if (ch == '\"') {
-                inStr = true;
-            } else if (ch == '{') {
-                depth++;
-            } else if (ch == '}') {
-                depth--;
-                if (depth == 0) return i;
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Errore lettura " + snapshot.getName(), e);
             }
         }
-        return -1;
-    }
+        log.replay(new JsonAppendLog.Replay() {
+            @Override
+            public void put(String obj) {
+                T item = parseObject(obj, factory, setter);
+                byId.put(idOf.apply(item), item);
+            }
 
-    private static int skipWs(CharSequence s, int i) {
-        int len = s.length();
-        while (i < len && Character.isWhitespace(s.charAt(i))) i++;
-        return i;
+            @Override
+            public void delete(Long id) {
+                byId.remove(id);
+            }
+        });
+        return new ArrayList<>(byId.values());
     }
 
-    private static int findNextColon(CharSequence s, int from) {
-        for (int i = from; i < s.length(); i++) {
-            if (s.charAt(i) == ':') return i;
+    static <T> T parseObject(String obj, Supplier<T> factory, JsonReader.FieldSetter<T> setter) {
+        try {
+            return new JsonReader(new StringReader(obj)).readObject(factory, setter);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
         }
-        return -1;
     }
 
-    private static int findBareValueEnd(CharSequence s, int from) {
-        for (int i = from; i < s.length(); i++) {
-            char ch = s.charAt(i);
-            if (ch == ',' || ch == '}') return i;
+    /** Esegue {@code op} col lock in lettura: i lettori procedono in parallelo fra loro. */
+    static <R> R inLettura(StampedLock lock, Supplier<R> op) {
+        long stamp = lock.readLock();
+        try {
+            return op.get();
+        } finally {
+            lock.unlockRead(stamp);
         }
-        return s.length();
     }
 
-    private static Read readJsonString(CharSequence s, int quotePos) {
-        StringBuilder sb = new StringBuilder(32);
-        boolean esc = false;
-        int i = quotePos + 1;
-        for (; i < s.length(); i++) {
-            char c = s.charAt(i);
-            if (esc) {
-                sb.append(c);
-                esc = false;
-            } else if (c == '\\') {
-                esc = true;
-            } else if (c == '\"') {
-                break;
-            } else {
-                sb.append(c);
-            }
+    /** Esegue {@code op} col lock in scrittura: solo aggiornamenti in memoria, mai I/O su disco. */
+    static void inScrittura(StampedLock lock, Runnable op) {
+        long stamp = lock.writeLock();
+        try {
+            op.run();
+        } finally {
+            lock.unlockWrite(stamp);
         }
-        return new Read(sb.toString(), i);
     }
 
-    private static final class Read {
-        final String value;
-        final int endPos;
-        Read(String v, int e) { this.value = v; this.endPos = e; }
+    static Long parseLong(String v) {
+        return (v == null || v.isBlank()) ? null : Long.valueOf(v.trim());
     }
 
     static String quote(String s) {
@@ -1,6 +1,9 @@
 package it.biblioteca.dao.json;
 
+import it.biblioteca.dao.Ordinamento;
 import it.biblioteca.dao.UtenteDAO;
+import it.biblioteca.dao.mem.MemorySupport;
+import it.biblioteca.dao.mem.SearchIndex;
 import it.biblioteca.entity.Utente;
 
 import java.io.File;
@@ -10,20 +13,39 @@ import java.nio.file.Files;
 import java.security.MessageDigest;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Stesso schema di concorrenza di {@link JsonBookDAO}: le scritture sono serializzate dal monitor
+ * e fanno I/O fuori da {@code lock}, così {@link #findAuthByUsername} non aspetta mai il disco.
+ */
 public class JsonUtenteDAO implements UtenteDAO {
 
     private static final Logger LOGGER = Logger.getLogger(JsonUtenteDAO.class.getName());
     private static final String UTENTE = "UTENTE";
+    private static final Comparator<Utente> PER_NOME = Comparator.comparing(Utente::getCognome, nullSafeString())
+            .thenComparing(Utente::getNome, nullSafeString())
+            .thenComparing(Utente::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
 
     private final File usersFile;
-
-    private final List<Utente> utenti = new ArrayList<>();
-    private final List<CredRow> credenziali = new ArrayList<>();
+    private final JsonAppendLog log;
+
+    // Indice primario per id (in ordine di inserimento, come nello snapshot) e indici univoci
+    // per tessera, id utente delle credenziali e username (senza distinzione di maiuscole).
+    private final Map<Long, Utente> utenti = new LinkedHashMap<>();
+    private final Map<Integer, Utente> perTessera = new HashMap<>();
+    private final Map<Long, CredRow> credPerUtente = new HashMap<>();
+    private final Map<String, CredRow> credPerUsername = new HashMap<>();
+    private final SearchIndex indice = new SearchIndex();
+    private final StampedLock lock = new StampedLock();
+    // Versione pubblicata per le letture: copie ordinate per cognome e nome, immutabili e condivise
+    // fra i lettori. Ogni modifica la invalida e la prima lettura successiva ne costruisce una nuova.
+    private volatile List<Utente> pubblicati;
 
     private long userSeq = 0L;
 
@@ -42,140 +64,289 @@ public class JsonUtenteDAO implements UtenteDAO {
     }
 
     public JsonUtenteDAO(File baseDir) {
+        this(baseDir, JsonDurability.everyWrite());
+    }
+
+    public JsonUtenteDAO(File baseDir, JsonDurability durability) {
         this.usersFile = new File(baseDir, "utenti.json");
+        this.log = new JsonAppendLog(new File(baseDir, "utenti.log"), durability);
         loadFromFile();
+        for (Utente u : utenti.values()) {
+            indicizza(u);
+        }
+    }
+
+    @Override
+    public List<Utente> trovaTutti() {
+        return pubblicati();
     }
 
     @Override
-    public synchronized List<Utente> trovaTutti() {
-        List<Utente> copy = new ArrayList<>();
-        for (Utente u : utenti) {
-            copy.add(cloneUtente(u));
+    public void scorri(Predicate<Utente> azione) {
+        for (Utente u : pubblicati()) {
+            if (!azione.test(u)) return;
         }
-        copy.sort(
-                Comparator.comparing(Utente::getCognome, nullSafeString())
-                        .thenComparing(Utente::getNome, nullSafeString())
-        );
-        return copy;
     }
 
     @Override
-    public synchronized Utente trovaPerId(Long id) {
-        if (id == null) return null;
-        for (Utente u : utenti) {
-            if (id.equals(u.getId())) {
-                return cloneUtente(u);
-            }
+    public List<Utente> trovaPagina(Utente dopo, int limite, Ordinamento ordine) {
+        List<Utente> ordinati = pubblicati();
+        if (ordine == Ordinamento.DESC) {
+            return MemorySupport.pagina(ordinati.reversed(), PER_NOME.reversed(), dopo, limite);
         }
-        return null;
+        return MemorySupport.pagina(ordinati, PER_NOME, dopo, limite);
+    }
+
+    @Override
+    public List<Utente> cerca(String testo, int limite) {
+        if (testo == null || testo.isBlank()) return trovaPagina(null, limite, Ordinamento.ASC);
+
+        return JsonStorageSupport.inLettura(lock, () -> {
+            Set<Long> ids = indice.search(testo);
+            List<Utente> trovati = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                Utente u = utenti.get(id);
+                if (u != null) trovati.add(u);
+            }
+            trovati.sort(PER_NOME);
+
+            List<Utente> result = new ArrayList<>();
+            for (Utente u : trovati.subList(0, Math.min(trovati.size(), Math.max(1, limite)))) {
+                result.add(cloneUtente(u));
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public Utente trovaPerId(Long id) {
+        if (id == null) return null;
+        return JsonStorageSupport.inLettura(lock, () -> cloneUtente(utenti.get(id)));
+    }
+
+    @Override
+    public Utente trovaPerTessera(Integer tessera) {
+        if (tessera == null) return null;
+        return JsonStorageSupport.inLettura(lock, () -> cloneUtente(perTessera.get(tessera)));
     }
 
     @Override
     public synchronized boolean aggiungi(Utente u) {
         if (u == null) return false;
+        if (u.getTessera() != null && perTessera.containsKey(u.getTessera())) {
+            return false; // tessera già assegnata
+        }
         if (u.getId() == null) {
             userSeq++;
             u.setId(userSeq);
         } else {
-            if (findIndexById(u.getId()) != -1) {
+            if (utenti.containsKey(u.getId())) {
                 return false; // già esiste
             }
             if (u.getId() > userSeq) {
                 userSeq = u.getId();
             }
         }
-        utenti.add(cloneUtente(u));
-        saveToFile();
+        Utente copy = cloneUtente(u);
+        log.appendPut(utenteToJson(copy, credPerUtente.get(copy.getId())));
+        JsonStorageSupport.inScrittura(lock, () -> {
+            mettiUtente(copy);
+            indicizza(copy);
+            pubblicati = null;
+        });
+        compattaSeServe();
         return true;
     }
 
     @Override
     public synchronized boolean aggiorna(Utente u) {
         if (u == null || u.getId() == null) return false;
-        int idx = findIndexById(u.getId());
-        if (idx == -1) return false;
-        utenti.set(idx, cloneUtente(u));
-        saveToFile();
+        if (!utenti.containsKey(u.getId()) || tesseraOccupata(u.getTessera(), u.getId())) return false;
+        Utente copy = cloneUtente(u);
+        log.appendPut(utenteToJson(copy, credPerUtente.get(copy.getId())));
+        JsonStorageSupport.inScrittura(lock, () -> {
+            mettiUtente(copy);
+            indicizza(copy);
+            pubblicati = null;
+        });
+        compattaSeServe();
         return true;
     }
 
     @Override
     public synchronized boolean elimina(Long id) {
-        if (id == null) return false;
-        boolean removed = utenti.removeIf(u -> id.equals(u.getId()));
-        if (removed) {
-            credenziali.removeIf(c -> id.equals(c.userId));
-            saveToFile();
-        }
-        return removed;
+        if (id == null || !utenti.containsKey(id)) return false;
+        log.appendDelete(id);
+        JsonStorageSupport.inScrittura(lock, () -> {
+            togliUtente(id);
+            indice.remove(id);
+            pubblicati = null;
+        });
+        compattaSeServe();
+        return true;
     }
 
     @Override
     public synchronized boolean creaCredenziali(Long utenteId, String username, String passwordPlain) {
         if (utenteId == null || isBlank(username) || isBlank(passwordPlain)) return false;
-        Optional<CredRow> existing = findCredRowByUserId(utenteId);
-        if (existing.isPresent()) {
+        if (credPerUtente.containsKey(utenteId) || usernameOccupato(username, utenteId)) {
             return false;
         }
-        String hash = sha256Hex(passwordPlain);
-        credenziali.add(new CredRow(utenteId, username, hash, UTENTE));
-        saveToFile();
+        CredRow row = new CredRow(utenteId, username, sha256Hex(passwordPlain), UTENTE);
+        registraCredenziali(row);
+        JsonStorageSupport.inScrittura(lock, () -> mettiCredenziali(row));
+        compattaSeServe();
         return true;
     }
 
     @Override
     public synchronized boolean aggiornaCredenziali(Long utenteId, String username, String passwordPlain) {
         if (utenteId == null || isBlank(username) || isBlank(passwordPlain)) return false;
+        if (usernameOccupato(username, utenteId)) return false;
         String hash = sha256Hex(passwordPlain);
 
-        Optional<CredRow> existing = findCredRowByUserId(utenteId);
-        if (existing.isPresent()) {
-            CredRow row = existing.get();
-            row.username = username;
-            row.passwordHash = hash;
-        } else {
-            credenziali.add(new CredRow(utenteId, username, hash, UTENTE));
-        }
+        CredRow existing = credPerUtente.get(utenteId);
+        CredRow row = new CredRow(utenteId, username, hash, existing != null ? existing.role : UTENTE);
+        registraCredenziali(row);
+        JsonStorageSupport.inScrittura(lock, () -> mettiCredenziali(row));
 
-        saveToFile();
+        compattaSeServe();
         return true;
     }
 
     @Override
-    public synchronized Optional<String> getUsernameForUserId(Long utenteId) {
-        Optional<CredRow> cr = findCredRowByUserId(utenteId);
-        return cr.map(c -> c.username);
+    public Optional<String> getUsernameForUserId(Long utenteId) {
+        return JsonStorageSupport.inLettura(lock,
+                () -> Optional.ofNullable(credPerUtente.get(utenteId)).map(c -> c.username));
     }
 
     @Override
-    public synchronized Optional<AuthData> findAuthByUsername(String username) {
+    public Optional<AuthData> findAuthByUsername(String username) {
         if (isBlank(username)) return Optional.empty();
 
-        Optional<CredRow> crOpt = findCredRowByUsername(username);
-        if (crOpt.isEmpty()) return Optional.empty();
+        return JsonStorageSupport.inLettura(lock, () -> {
+            CredRow cr = credPerUsername.get(chiaveUsername(username));
+            if (cr == null) return Optional.empty();
 
-        CredRow cr = crOpt.get();
-        Utente ut = findUserByIdInternal(cr.userId);
-        if (ut == null) return Optional.empty();
+            Utente ut = utenti.get(cr.userId);
+            if (ut == null) return Optional.empty();
 
-        UtenteDAO.AuthData authData = new UtenteDAO.AuthData(
-                cr.username,
-                cr.passwordHash,
-                cr.role,
-                ut.getId(),
-                ut.getTessera()
-        );
-        return Optional.of(authData);
+            UtenteDAO.AuthData authData = new UtenteDAO.AuthData(
+                    cr.username,
+                    cr.passwordHash,
+                    cr.role,
+                    ut.getId(),
+                    ut.getTessera()
+            );
+            return Optional.of(authData);
+        });
     }
 
-    private synchronized void loadFromFile() {
+    private List<Utente> pubblicati() {
+        List<Utente> v = pubblicati;
+        return v != null ? v : pubblica();
+    }
+
+    private List<Utente> pubblica() {
+        return JsonStorageSupport.inLettura(lock, () -> {
+            List<Utente> v = pubblicati;
+            if (v == null) {
+                List<Utente> copie = new ArrayList<>(utenti.size());
+                for (Utente u : utenti.values()) {
+                    copie.add(cloneUtente(u));
+                }
+                copie.sort(PER_NOME);
+                v = Collections.unmodifiableList(copie);
+                pubblicati = v;
+            }
+            return v;
+        });
+    }
+
+    private void indicizza(Utente u) {
+        indice.put(u.getId(), u.getNome(), u.getCognome(), u.getEmail(),
+                u.getTessera() != null ? String.valueOf(u.getTessera()) : null);
+    }
+
+    // Le credenziali viaggiano nello stesso oggetto dell'utente, quindi nel log si riscrive l'utente intero.
+    // Come nello snapshot, le credenziali di un utente inesistente non vengono salvate.
+    private void registraCredenziali(CredRow row) {
+        Utente u = utenti.get(row.userId);
+        if (u != null) log.appendPut(utenteToJson(u, row));
+    }
+
+    // Gli indici secondari vanno aggiornati solo da qui, così restano allineati a quello primario.
+    private void mettiUtente(Utente u) {
+        Utente prima = utenti.put(u.getId(), u);
+        if (prima != null && prima.getTessera() != null) perTessera.remove(prima.getTessera(), prima);
+        if (u.getTessera() != null) perTessera.put(u.getTessera(), u);
+    }
+
+    private void togliUtente(Long id) {
+        Utente u = utenti.remove(id);
+        if (u != null && u.getTessera() != null) perTessera.remove(u.getTessera(), u);
+        togliCredenziali(id);
+    }
+
+    private void mettiCredenziali(CredRow row) {
+        togliCredenziali(row.userId);
+        credPerUtente.put(row.userId, row);
+        if (row.username != null) credPerUsername.put(chiaveUsername(row.username), row);
+    }
+
+    private void togliCredenziali(Long userId) {
+        CredRow c = credPerUtente.remove(userId);
+        if (c != null && c.username != null) credPerUsername.remove(chiaveUsername(c.username), c);
+    }
+
+    private void svuotaIndici() {
+        pubblicati = null;
         utenti.clear();
-        credenziali.clear();
+        perTessera.clear();
+        credPerUtente.clear();
+        credPerUsername.clear();
+    }
+
+    private boolean tesseraOccupata(Integer tessera, Long utenteId) {
+        Utente u = tessera != null ? perTessera.get(tessera) : null;
+        return u != null && !Objects.equals(u.getId(), utenteId);
+    }
+
+    private boolean usernameOccupato(String username, Long utenteId) {
+        CredRow c = credPerUsername.get(chiaveUsername(username));
+        return c != null && !Objects.equals(c.userId, utenteId);
+    }
+
+    private static String chiaveUsername(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    void close() {
+        log.close();
+    }
+
+    // Una compattazione fallita non annulla la modifica, già nel log: si riproverà alla prossima.
+    private void compattaSeServe() {
+        if (!log.needsCompaction()) return;
+        try {
+            compatta();
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Compattazione di utenti.json non riuscita", e);
+        }
+    }
+
+    private void compatta() {
+        saveToFile();
+        log.reset();
+    }
+
+    private synchronized void loadFromFile() {
+        svuotaIndici();
         userSeq = 0L;
 
         if (!usersFile.exists()) {
             seedDefaults();
-            saveToFile();
+            compatta();
             return;
         }
 
@@ -185,13 +356,26 @@ public class JsonUtenteDAO implements UtenteDAO {
         } catch (IOException e) {
             LOGGER.log(Level.WARNING, "Impossibile leggere utenti.json, uso valori di default.", e);
             seedDefaults();
-            saveToFile();
+            compatta();
             return;
         }
 
         parseUsersArray(json);
+        log.replay(new JsonAppendLog.Replay() {
+            @Override
+            public void put(String obj) {
+                Riga r = parseUtente(obj);
+                mettiUtente(r.utente());
+                mettiCredenziali(r.cred());
+            }
 
-        for (Utente u : utenti) {
+            @Override
+            public void delete(Long id) {
+                togliUtente(id);
+            }
+        });
+
+        for (Utente u : utenti.values()) {
             if (u.getId() != null && u.getId() > userSeq) {
                 userSeq = u.getId();
             }
@@ -200,13 +384,12 @@ public class JsonUtenteDAO implements UtenteDAO {
         if (utenti.isEmpty()) {
             LOGGER.warning("utenti.json vuoto o malformato, ricreo dati di default.");
             seedDefaults();
-            saveToFile();
+            compatta();
         }
     }
 
     private void seedDefaults() {
-        utenti.clear();
-        credenziali.clear();
+        svuotaIndici();
 
         LocalDate oggi = LocalDate.now();
 
@@ -269,8 +452,8 @@ public class JsonUtenteDAO implements UtenteDAO {
     }
 
     private void addSeedUser(Utente u, String username, String passwordHash, String role) {
-        utenti.add(u);
-        credenziali.add(new CredRow(u.getId(), username, passwordHash, role));
+        mettiUtente(u);
+        mettiCredenziali(new CredRow(u.getId(), username, passwordHash, role));
     }
 
     private void parseUsersArray(String json) {
@@ -280,64 +463,70 @@ public class JsonUtenteDAO implements UtenteDAO {
 
         List<String> objs = splitTopLevelObjects(trimmed);
         for (String obj : objs) {
-            Long id = extractLongField(obj);
-            Integer tess = extractIntField(obj);
-            String nome = extractStringField(obj, "nome");
-            String cognome = extractStringField(obj, "cognome");
-            String email = extractStringField(obj, "email");
-            String telefono = extractStringField(obj, "telefono");
-            LocalDate att = parseDate(extractStringField(obj, "dataAttivazione"));
-            LocalDate scad = parseDate(extractStringField(obj, "dataScadenza"));
-            String username = extractStringField(obj, "username");
-            String passHash = extractStringField(obj, "passwordHash");
-            String role = extractStringField(obj, "role");
-
-            Utente u = newUtente(id, tess, nome, cognome, email, telefono, att);
-            u.setDataScadenza(scad);
-
-            utenti.add(u);
-            credenziali.add(new CredRow(id, username, passHash, role));
+            Riga r = parseUtente(obj);
+            mettiUtente(r.utente());
+            mettiCredenziali(r.cred());
         }
     }
 
+    private record Riga(Utente utente, CredRow cred) {}
+
+    private static Riga parseUtente(String obj) {
+        Long id = extractLongField(obj);
+        Integer tess = extractIntField(obj);
+        String nome = extractStringField(obj, "nome");
+        String cognome = extractStringField(obj, "cognome");
+        String email = extractStringField(obj, "email");
+        String telefono = extractStringField(obj, "telefono");
+        LocalDate att = parseDate(extractStringField(obj, "dataAttivazione"));
+        LocalDate scad = parseDate(extractStringField(obj, "dataScadenza"));
+        String username = extractStringField(obj, "username");
+        String passHash = extractStringField(obj, "passwordHash");
+        String role = extractStringField(obj, "role");
+
+        Utente u = newUtente(id, tess, nome, cognome, email, telefono, att);
+        u.setDataScadenza(scad);
+        return new Riga(u, new CredRow(id, username, passHash, role));
+    }
+
     private synchronized void saveToFile() {
         StringBuilder sb = new StringBuilder();
         sb.append("[\n");
-        for (int idx = 0; idx < utenti.size(); idx++) {
-            Utente u = utenti.get(idx);
-            CredRow c = findCredRowByUserIdInternal(u.getId());
-
-            sb.append("  {\n");
-            sb.append("    \"id\": ").append(u.getId() == null ? "null" : u.getId()).append(",\n");
-            sb.append("    \"tessera\": ").append(u.getTessera() == null ? "null" : u.getTessera()).append(",\n");
-            sb.append("    \"nome\": ").append(toJsonString(u.getNome())).append(",\n");
-            sb.append("    \"cognome\": ").append(toJsonString(u.getCognome())).append(",\n");
-            sb.append("    \"email\": ").append(toJsonString(u.getEmail())).append(",\n");
-            sb.append("    \"telefono\": ").append(toJsonString(u.getTelefono())).append(",\n");
-            sb.append("    \"dataAttivazione\": ").append(toJsonString(u.getDataAttivazione() != null ? u.getDataAttivazione().toString() : null)).append(",\n");
-            sb.append("    \"dataScadenza\": ").append(toJsonString(u.getDataScadenza() != null ? u.getDataScadenza().toString() : null)).append(",\n");
-
-            if (c != null) {
-                sb.append("    \"username\": ").append(toJsonString(c.username)).append(",\n");
-                sb.append("    \"passwordHash\": ").append(toJsonString(c.passwordHash)).append(",\n");
-                sb.append("    \"role\": ").append(toJsonString(c.role)).append("\n");
-            } else {
-                sb.append("    \"username\": null,\n");
-                sb.append("    \"passwordHash\": null,\n");
-                sb.append("    \"role\": null\n");
-            }
-
-            sb.append("  }");
-            if (idx < utenti.size() - 1) sb.append(",");
+        int idx = 0;
+        for (Utente u : utenti.values()) {
+            sb.append(utenteToJson(u, credPerUtente.get(u.getId())));
+            if (++idx < utenti.size()) sb.append(",");
             sb.append("\n");
         }
         sb.append("]");
 
-        try {
-            Files.writeString(usersFile.toPath(), sb.toString(), StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Errore durante il salvataggio di utenti.json", e);
+        JsonStorageSupport.writeWholeFile(usersFile, sb.toString());
+    }
+
+    private static String utenteToJson(Utente u, CredRow c) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("  {\n");
+        sb.append("    \"id\": ").append(u.getId() == null ? "null" : u.getId()).append(",\n");
+        sb.append("    \"tessera\": ").append(u.getTessera() == null ? "null" : u.getTessera()).append(",\n");
+        sb.append("    \"nome\": ").append(toJsonString(u.getNome())).append(",\n");
+        sb.append("    \"cognome\": ").append(toJsonString(u.getCognome())).append(",\n");
+        sb.append("    \"email\": ").append(toJsonString(u.getEmail())).append(",\n");
+        sb.append("    \"telefono\": ").append(toJsonString(u.getTelefono())).append(",\n");
+        sb.append("    \"dataAttivazione\": ").append(toJsonString(u.getDataAttivazione() != null ? u.getDataAttivazione().toString() : null)).append(",\n");
+        sb.append("    \"dataScadenza\": ").append(toJsonString(u.getDataScadenza() != null ? u.getDataScadenza().toString() : null)).append(",\n");
+
+        if (c != null) {
+            sb.append("    \"username\": ").append(toJsonString(c.username)).append(",\n");
+            sb.append("    \"passwordHash\": ").append(toJsonString(c.passwordHash)).append(",\n");
+            sb.append("    \"role\": ").append(toJsonString(c.role)).append("\n");
+        } else {
+            sb.append("    \"username\": null,\n");
+            sb.append("    \"passwordHash\": null,\n");
+            sb.append("    \"role\": null\n");
         }
+
+        sb.append("  }");
+        return sb.toString();
     }
 
     private static String stripArrayBrackets(String json) {
@@ -494,44 +683,6 @@ public class JsonUtenteDAO implements UtenteDAO {
         return Comparator.nullsFirst(String::compareToIgnoreCase);
     }
 
-    private int findIndexById(Long id) {
-        for (int i = 0; i < utenti.size(); i++) {
-            Utente u = utenti.get(i);
-            if (Objects.equals(id, u.getId())) return i;
-        }
-        return -1;
-    }
-
-    private Utente findUserByIdInternal(Long id) {
-        if (id == null) return null;
-        for (Utente u : utenti) {
-            if (Objects.equals(id, u.getId())) return u;
-        }
-        return null;
-    }
-
-    private Optional<CredRow> findCredRowByUserId(Long userId) {
-        return Optional.ofNullable(findCredRowByUserIdInternal(userId));
-    }
-
-    private CredRow findCredRowByUserIdInternal(Long userId) {
-        for (CredRow c : credenziali) {
-            if (Objects.equals(userId, c.userId)) {
-                return c;
-            }
-        }
-        return null;
-    }
-
-    private Optional<CredRow> findCredRowByUsername(String username) {
-        for (CredRow c : credenziali) {
-            if (c.username != null && c.username.equalsIgnoreCase(username)) {
-                return Optional.of(c);
-            }
-        }
-        return Optional.empty();
-    }
-
     private static boolean isBlank(String s) {
         return s == null || s.isBlank();
     }
@@ -0,0 +1,321 @@
+package it.biblioteca.dao.mem;
+
+import it.biblioteca.dao.BookDAO;
+import it.biblioteca.dao.Ordinamento;
+import it.biblioteca.entity.Book;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Catalogo libri a colonne: una riga per libro distribuita su array primitivi (id, copie, data come
+ * epoch day) e autore/casa editrice codificati in un dizionario condiviso. I {@link Book} vengono
+ * creati solo per le righe effettivamente restituite.
+ * <p>
+ * Le righe non vengono mai riusate: un libro eliminato esce solo dall'ordinamento, così le liste
+ * già restituite non puntano mai a un libro diverso. L'ordinamento (titolo, id) è copy-on-write.
+ */
+public final class ColumnarCatalogue {
+
+    private static final int NESSUNA_DATA = Integer.MIN_VALUE;
+    private static final int NESSUNA_VOCE = -1;
+    private static final int BLOCCO_CARICAMENTO = 1000;
+
+    private long[] ids = new long[16];
+    private String[] isbn = new String[16];
+    private String[] titoli = new String[16];
+    private int[] autori = new int[16];
+    private int[] editori = new int[16];
+    private int[] date = new int[16];
+    private int[] copie = new int[16];
+    private int[] disponibili = new int[16];
+    private int righe;
+
+    private final List<String> dizionario = new ArrayList<>();
+    private final Map<String, Integer> codici = new HashMap<>();
+
+    private volatile int[] ordine = new int[0];
+
+    /** Carica tutto il catalogo dal DAO a blocchi, senza tenere in memoria tutti i {@link Book} insieme. */
+    public static ColumnarCatalogue load(BookDAO dao) {
+        ColumnarCatalogue c = new ColumnarCatalogue();
+        List<Integer> caricate = new ArrayList<>();
+        Book dopo = null;
+        List<Book> blocco;
+        do {
+            blocco = dao.trovaPagina(dopo, BLOCCO_CARICAMENTO, Ordinamento.ASC);
+            for (Book b : blocco) {
+                if (b.getId() != null) caricate.add(c.aggiungiRiga(b));
+            }
+            if (!blocco.isEmpty()) dopo = blocco.getLast();
+        } while (blocco.size() == BLOCCO_CARICAMENTO);
+
+        int[] ordinate = caricate.stream().mapToInt(Integer::intValue).toArray();
+        c.ordine = c.ordina(ordinate);
+        return c;
+    }
+
+    public int size() {
+        return ordine.length;
+    }
+
+    /** Vista ordinata per titolo dell'intero catalogo; ogni elemento è creato al momento dell'accesso. */
+    public List<Book> all() {
+        int[] o = ordine;
+        return new Vista(o, 0, o.length, false);
+    }
+
+    public List<Book> page(Book after, int limit, Ordinamento order) {
+        int[] o = ordine;
+        int n = Math.max(0, limit);
+        if (order == Ordinamento.DESC) {
+            int fine = after == null ? o.length : primaNonMinore(o, after);
+            return List.copyOf(new Vista(o, Math.max(0, fine - n), fine, true));
+        }
+        int inizio = after == null ? 0 : primaMaggiore(o, after);
+        return List.copyOf(new Vista(o, inizio, Math.min(o.length, inizio + n), false));
+    }
+
+    /** Stessa semantica di {@link SearchIndex}: ogni parola cercata è prefisso di una parola dei campi. */
+    public List<Book> search(String query, int limit) {
+        List<String> parole = SearchIndex.tokens(query);
+        if (parole.isEmpty()) return page(null, limit, Ordinamento.ASC);
+
+        int max = Math.max(1, limit);
+        List<Book> out = new ArrayList<>();
+        synchronized (this) {
+            boolean[][] vociOk = new boolean[parole.size()][];
+            for (int p = 0; p < parole.size(); p++) {
+                vociOk[p] = new boolean[dizionario.size()];
+                for (int v = 0; v < dizionario.size(); v++) {
+                    vociOk[p][v] = contieneParola(dizionario.get(v), parole.get(p));
+                }
+            }
+            for (int r : ordine) {
+                if (corrisponde(r, parole, vociOk)) {
+                    out.add(materializza(r));
+                    if (out.size() == max) break;
+                }
+            }
+        }
+        return List.copyOf(out);
+    }
+
+    /** Inserisce o aggiorna un libro; un ISBN già presente aggiorna quella riga, come fanno i DAO su file. */
+    public synchronized void put(Book b) {
+        if (b == null || b.getId() == null) return;
+        int[] o = ordine;
+        int riga = rigaPerId(o, b.getId());
+        if (riga < 0 && b.getIsbn() != null) riga = rigaPerIsbn(o, b.getIsbn());
+
+        if (riga < 0) {
+            riga = aggiungiRiga(b);
+        } else {
+            o = senza(o, riga);
+            scriviRiga(riga, ids[riga], b);
+        }
+        ordine = con(o, riga);
+    }
+
+    public synchronized void remove(Long id) {
+        if (id == null) return;
+        int riga = rigaPerId(ordine, id);
+        if (riga >= 0) ordine = senza(ordine, riga);
+    }
+
+    private int aggiungiRiga(Book b) {
+        if (righe == ids.length) {
+            int cap = righe * 2;
+            ids = Arrays.copyOf(ids, cap);
+            isbn = Arrays.copyOf(isbn, cap);
+            titoli = Arrays.copyOf(titoli, cap);
+            autori = Arrays.copyOf(autori, cap);
+            editori = Arrays.copyOf(editori, cap);
+            date = Arrays.copyOf(date, cap);
+            copie = Arrays.copyOf(copie, cap);
+            disponibili = Arrays.copyOf(disponibili, cap);
+        }
+        scriviRiga(righe, b.getId(), b);
+        return righe++;
+    }
+
+    private void scriviRiga(int r, long id, Book b) {
+        ids[r] = id;
+        isbn[r] = b.getIsbn();
+        titoli[r] = b.getTitolo();
+        autori[r] = codifica(b.getAutore());
+        editori[r] = codifica(b.getCasaEditrice());
+        date[r] = b.getDataPubblicazione() != null ? (int) b.getDataPubblicazione().toEpochDay() : NESSUNA_DATA;
+        copie[r] = b.getCopie();
+        disponibili[r] = b.getCopieDisponibili();
+    }
+
+    private synchronized Book materializza(int r) {
+        Book b = new Book();
+        b.setId(ids[r]);
+        b.setIsbn(isbn[r]);
+        b.setTitolo(titoli[r]);
+        b.setAutore(decodifica(autori[r]));
+        b.setCasaEditrice(decodifica(editori[r]));
+        b.setDataPubblicazione(date[r] != NESSUNA_DATA ? LocalDate.ofEpochDay(date[r]) : null);
+        b.setCopie(copie[r]);
+        b.setCopieDisponibili(disponibili[r]);
+        return b;
+    }
+
+    private int codifica(String s) {
+        if (s == null) return NESSUNA_VOCE;
+        Integer c = codici.get(s);
+        if (c == null) {
+            c = dizionario.size();
+            dizionario.add(s);
+            codici.put(s, c);
+        }
+        return c;
+    }
+
+    private String decodifica(int c) {
+        return c != NESSUNA_VOCE ? dizionario.get(c) : null;
+    }
+
+    private boolean corrisponde(int r, List<String> parole, boolean[][] vociOk) {
+        for (int p = 0; p < parole.size(); p++) {
+            String parola = parole.get(p);
+            boolean ok = contieneParola(titoli[r], parola) || contieneParola(isbn[r], parola)
+                    || (autori[r] != NESSUNA_VOCE && vociOk[p][autori[r]])
+                    || (editori[r] != NESSUNA_VOCE && vociOk[p][editori[r]]);
+            if (!ok) return false;
+        }
+        return true;
+    }
+
+    // parola (già minuscola, solo lettere e cifre) all'inizio di una parola del campo, senza allocare
+    private static boolean contieneParola(String campo, String parola) {
+        if (campo == null) return false;
+        int ultimo = campo.length() - parola.length();
+        for (int i = 0; i <= ultimo; i++) {
+            if ((i == 0 || !Character.isLetterOrDigit(campo.charAt(i - 1)))
+                    && campo.regionMatches(true, i, parola, 0, parola.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int confronta(int r, String titolo, long id) {
+        int c = confrontaTitoli(titoli[r], titolo);
+        return c != 0 ? c : Long.compare(ids[r], id);
+    }
+
+    private static int confrontaTitoli(String a, String b) {
+        if (a == null) return b == null ? 0 : -1;
+        if (b == null) return 1;
+        return a.compareToIgnoreCase(b);
+    }
+
+    private int[] ordina(int[] righeDaOrdinare) {
+        return Arrays.stream(righeDaOrdinare).boxed()
+                .sorted((a, b) -> confronta(a, titoli[b], ids[b]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    // prima posizione con riga > dopo
+    private int primaMaggiore(int[] o, Book dopo) {
+        long id = dopo.getId() != null ? dopo.getId() : Long.MIN_VALUE;
+        synchronized (this) {
+            int lo = 0;
+            int hi = o.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (confronta(o[mid], dopo.getTitolo(), id) <= 0) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    // prima posizione con riga >= prima
+    private int primaNonMinore(int[] o, Book prima) {
+        long id = prima.getId() != null ? prima.getId() : Long.MAX_VALUE;
+        synchronized (this) {
+            int lo = 0;
+            int hi = o.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (confronta(o[mid], prima.getTitolo(), id) < 0) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    private int rigaPerId(int[] o, long id) {
+        for (int r : o) {
+            if (ids[r] == id) return r;
+        }
+        return -1;
+    }
+
+    private int rigaPerIsbn(int[] o, String valore) {
+        for (int r : o) {
+            if (valore.equals(isbn[r])) return r;
+        }
+        return -1;
+    }
+
+    private int[] senza(int[] o, int riga) {
+        int pos = primaNonMinore(o, chiave(riga));
+        int[] nuovo = new int[o.length - 1];
+        System.arraycopy(o, 0, nuovo, 0, pos);
+        System.arraycopy(o, pos + 1, nuovo, pos, o.length - pos - 1);
+        return nuovo;
+    }
+
+    private int[] con(int[] o, int riga) {
+        int pos = primaMaggiore(o, chiave(riga));
+        int[] nuovo = new int[o.length + 1];
+        System.arraycopy(o, 0, nuovo, 0, pos);
+        nuovo[pos] = riga;
+        System.arraycopy(o, pos, nuovo, pos + 1, o.length - pos);
+        return nuovo;
+    }
+
+    private Book chiave(int riga) {
+        Book b = new Book();
+        b.setId(ids[riga]);
+        b.setTitolo(titoli[riga]);
+        return b;
+    }
+
+    private final class Vista extends AbstractList<Book> implements RandomAccess {
+        private final int[] o;
+        private final int da;
+        private final int a;
+        private final boolean inverso;
+
+        Vista(int[] o, int da, int a, boolean inverso) {
+            this.o = o;
+            this.da = da;
+            this.a = a;
+            this.inverso = inverso;
+        }
+
+        @Override
+        public Book get(int i) {
+            if (i < 0 || i >= size()) throw new IndexOutOfBoundsException(i);
+            return materializza(o[inverso ? a - 1 - i : da + i]);
+        }
+
+        @Override
+        public int size() {
+            return a - da;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package it.biblioteca.dao.mem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/** Supporto comune ai backend che tengono i dati in memoria (JSON, binario). */
+public final class MemorySupport {
+
+    private MemorySupport() {
+        // utility class, niente istanze
+    }
+
+    /**
+     * Keyset paging su una lista già ordinata con {@code cmp}: restituisce fino a {@code limite}
+     * elementi strettamente successivi a {@code dopo} (dall'inizio se {@code dopo} è null).
+     */
+    public static <T> List<T> pagina(List<T> ordinati, Comparator<? super T> cmp, T dopo, int limite) {
+        int start = 0;
+        if (dopo != null) {
+            int idx = Collections.binarySearch(ordinati, dopo, cmp);
+            start = idx >= 0 ? idx + 1 : -idx - 1;
+        }
+        int end = Math.min(ordinati.size(), start + Math.max(1, limite));
+        return start >= end ? new ArrayList<>() : new ArrayList<>(ordinati.subList(start, end));
+    }
+
+    /**
+     * Copia di {@code ordinati} con {@code nuovo} al posto dell'elemento con la stessa chiave di ordinamento;
+     * {@code null} se non c'è, e allora chi chiama ricostruisce la lista da capo.
+     */
+    public static <T> List<T> sostituisci(List<T> ordinati, Comparator<? super T> cmp, T nuovo) {
+        int idx = Collections.binarySearch(ordinati, nuovo, cmp);
+        if (idx < 0) return null;
+        List<T> copia = new ArrayList<>(ordinati);
+        copia.set(idx, nuovo);
+        return Collections.unmodifiableList(copia);
+    }
+
+    /** Copia di {@code ordinati} con {@code nuovo} inserito al suo posto nell'ordine di {@code cmp}. */
+    public static <T> List<T> aggiungi(List<T> ordinati, Comparator<? super T> cmp, T nuovo) {
+        int idx = Collections.binarySearch(ordinati, nuovo, cmp);
+        List<T> copia = new ArrayList<>(ordinati.size() + 1);
+        copia.addAll(ordinati);
+        copia.add(idx >= 0 ? idx : -idx - 1, nuovo);
+        return Collections.unmodifiableList(copia);
+    }
+
+    /** Copia di {@code ordinati} senza l'elemento con la stessa chiave di {@code vecchio}; la lista stessa se non c'è. */
+    public static <T> List<T> togli(List<T> ordinati, Comparator<? super T> cmp, T vecchio) {
+        int idx = Collections.binarySearch(ordinati, vecchio, cmp);
+        if (idx < 0) return ordinati;
+        List<T> copia = new ArrayList<>(ordinati);
+        copia.remove(idx);
+        return Collections.unmodifiableList(copia);
+    }
+}
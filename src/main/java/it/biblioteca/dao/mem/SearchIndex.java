@@ -0,0 +1,70 @@
+package it.biblioteca.dao.mem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Indice invertito in memoria (parola -> id) usato dai backend su file per la ricerca testuale.
+ * Ogni parola della query deve comparire come prefisso di almeno una parola indicizzata.
+ */
+public final class SearchIndex {
+
+    private final NavigableMap<String, Set<Long>> postings = new TreeMap<>();
+    private final Map<Long, Set<String>> termsById = new HashMap<>();
+
+    public void put(Long id, String... fields) {
+        if (id == null) return;
+        remove(id);
+        Set<String> terms = new HashSet<>();
+        for (String f : fields) terms.addAll(tokens(f));
+        for (String t : terms) postings.computeIfAbsent(t, k -> new HashSet<>()).add(id);
+        termsById.put(id, terms);
+    }
+
+    public void remove(Long id) {
+        Set<String> old = termsById.remove(id);
+        if (old == null) return;
+        for (String t : old) {
+            Set<Long> ids = postings.get(t);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) postings.remove(t);
+            }
+        }
+    }
+
+    public void clear() {
+        postings.clear();
+        termsById.clear();
+    }
+
+    public Set<Long> search(String query) {
+        Set<Long> result = null;
+        for (String q : tokens(query)) {
+            Set<Long> match = new HashSet<>();
+            for (Set<Long> ids : postings.subMap(q, true, q + Character.MAX_VALUE, false).values()) {
+                match.addAll(ids);
+            }
+            if (result == null) result = match;
+            else result.retainAll(match);
+            if (result.isEmpty()) break;
+        }
+        return result != null ? result : Set.of();
+    }
+
+    public static List<String> tokens(String s) {
+        List<String> out = new ArrayList<>();
+        if (s == null || s.isBlank()) return out;
+        for (String t : s.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!t.isEmpty()) out.add(t);
+        }
+        return out;
+    }
+}
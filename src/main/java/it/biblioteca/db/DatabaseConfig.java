@@ -5,6 +5,7 @@ import it.biblioteca.ui.StartupResult;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Objects;
 
 public final class DatabaseConfig {
     private static final String DEFAULT_HOST = "localhost";
@@ -13,17 +14,28 @@ public final class DatabaseConfig {
 
     private static volatile String username;
     private static volatile String password;
+    private static volatile long credentialsVersion;
 
     private DatabaseConfig() {}
 
+    // useBulkStmts: Connector/J 3.x invia gli executeBatch() come un solo comando bulk
     public static String buildJdbcUrl() {
-        return "jdbc:mariadb://" + DEFAULT_HOST + ":" + DEFAULT_PORT + "/" + DEFAULT_DATABASE;
+        return "jdbc:mariadb://" + DEFAULT_HOST + ":" + DEFAULT_PORT + "/" + DEFAULT_DATABASE + "?useBulkStmts=true";
     }
 
-    public static void apply(StartupResult res) {
+    public static synchronized void apply(StartupResult res) {
         if (res == null) return;
-        username = res.getUsername();
-        password = res.getPassword();
+        String newUser = res.getUsername();
+        String newPass = res.getPassword();
+        if (!Objects.equals(newUser, username) || !Objects.equals(newPass, password)) {
+            username = newUser;
+            password = newPass;
+            credentialsVersion++;
+        }
+    }
+
+    public static long credentialsVersion() {
+        return credentialsVersion;
     }
 
     public static boolean isConfigured() {
@@ -10,6 +10,8 @@ public class Book {
     private LocalDate dataPubblicazione;
     private String casaEditrice;
     private int copie = 1;
+    // copie meno prestiti attivi: la mantengono i DAO, chi crea un libro non la imposta
+    private int copieDisponibili = 1;
 
     public Book() { // Constructor (non fa nulla)
         }
@@ -38,4 +40,7 @@ public class Book {
 
     public int getCopie() { return copie; }
     public void setCopie(int copie) { this.copie = copie; }
+
+    public int getCopieDisponibili() { return copieDisponibili; }
+    public void setCopieDisponibili(int copieDisponibili) { this.copieDisponibili = copieDisponibili; }
 }
\ No newline at end of file
@@ -1,49 +1,250 @@
 package it.biblioteca.events;
 
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+/**
+ * Bus degli eventi applicativi.
+ * <ul>
+ *   <li>I sottoscrittori sono indicizzati per tipo: {@link #publish} trova i destinatari con una sola lettura
+ *       da mappa, senza scorrere tutti i sottoscrittori.</li>
+ *   <li>La consegna è asincrona sull'executor indicato: chi pubblica non aspetta i sottoscrittori. Ogni
+ *       sottoscrittore ha una propria coda e riceve gli eventi uno alla volta, nell'ordine di pubblicazione.</li>
+ *   <li>Con {@link #subscribeCoalesced} gli eventi che arrivano entro una finestra vengono consegnati insieme
+ *       in una sola chiamata: una raffica di modifiche produce un solo aggiornamento.</li>
+ * </ul>
+ * Per ogni tipo di evento si tengono conteggi e latenze (dalla pubblicazione alla fine della consegna),
+ * leggibili con {@link #statistiche()}.
+ */
 public final class EventBus {
 
-    private EventBus() {
-
-    }
+    private static final Logger LOGGER = Logger.getLogger(EventBus.class.getName());
 
     private static class Holder {
-        private static final EventBus INSTANCE = new EventBus();
+        private static final EventBus INSTANCE = new EventBus(Executors.newVirtualThreadPerTaskExecutor());
     }
 
     public static EventBus getDefault() {
         return Holder.INSTANCE;
     }
 
-    private static final class Subscriber<T extends AppEvent> {
-        final Class<T> type;
-        final Consumer<T> consumer;
-
-        Subscriber(Class<T> type, Consumer<T> consumer) {
-            this.type = type;
-            this.consumer = consumer;
-        }
+    /** Contatori di un tipo di evento; latenze in millisecondi. */
+    public record Statistiche(long pubblicati, long consegnati, long chiamate, long errori,
+                              double latenzaMediaMs, double latenzaMassimaMs, double eventiAlSecondo) {
     }
 
-    private final CopyOnWriteArrayList<Subscriber<?>> subscribers = new CopyOnWriteArrayList<>();
+    private final Executor executor;
+    private final long creato = System.nanoTime();
+    private final Map<Class<?>, CopyOnWriteArrayList<Subscriber<?>>> perTipo = new ConcurrentHashMap<>();
+    private final Map<Class<?>, List<Subscriber<?>>> destinatari = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Metriche> metriche = new ConcurrentHashMap<>();
+    private volatile ScheduledExecutorService timer;
+
+    /** @param executor dove girano le consegne; {@code Runnable::run} le rende sincrone (utile nei test) */
+    public EventBus(Executor executor) {
+        this.executor = executor;
+    }
 
     public <T extends AppEvent> void subscribe(Class<T> type, Consumer<T> consumer) {
-        Subscriber<T> s = new Subscriber<>(type, consumer);
-        subscribers.add(s);
+        aggiungi(new Subscriber<>(type, consumer, null, 0));
+    }
+
+    /**
+     * Come {@link #subscribe}, ma il primo evento apre una finestra lunga {@code finestra} e tutti quelli
+     * arrivati nel frattempo vengono consegnati insieme, nell'ordine di pubblicazione, alla sua chiusura.
+     */
+    public <T extends AppEvent> void subscribeCoalesced(Class<T> type, Duration finestra, Consumer<List<T>> consumer) {
+        aggiungi(new Subscriber<>(type, null, consumer, Math.max(1, finestra.toNanos())));
     }
 
     public void publish(AppEvent event) {
-        for (Subscriber<?> s : subscribers) {
-            if (s.type.isInstance(event)) {
-                notifySubscriber(s, event);
+        long t0 = System.nanoTime();
+        Class<?> tipo = event.getClass();
+        metriche(tipo).pubblicati.increment();
+        for (Subscriber<?> s : destinatari.computeIfAbsent(tipo, this::risolvi)) {
+            s.accoda(event, t0);
+        }
+    }
+
+    /** Fotografia delle metriche, per tipo di evento. */
+    public Map<Class<?>, Statistiche> statistiche() {
+        double secondi = Math.max(1e-9, (System.nanoTime() - creato) / 1e9);
+        Map<Class<?>, Statistiche> out = new LinkedHashMap<>();
+        metriche.forEach((tipo, m) -> {
+            long consegnati = m.consegnati.sum();
+            long pubblicati = m.pubblicati.sum();
+            out.put(tipo, new Statistiche(pubblicati, consegnati, m.chiamate.sum(), m.errori.sum(),
+                    consegnati > 0 ? m.latenzaTotale.sum() / 1e6 / consegnati : 0,
+                    m.latenzaMassima.get() / 1e6, pubblicati / secondi));
+        });
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("EventBus[");
+        statistiche().forEach((tipo, s) -> sb.append(String.format(
+                "%n  %s: pubblicati=%d, consegnati=%d in %d chiamate, errori=%d, latenza media=%.2f ms, max=%.2f ms, %.1f/s",
+                tipo.getSimpleName(), s.pubblicati(), s.consegnati(), s.chiamate(), s.errori(),
+                s.latenzaMediaMs(), s.latenzaMassimaMs(), s.eventiAlSecondo())));
+        return sb.append(']').toString();
+    }
+
+    private void aggiungi(Subscriber<?> s) {
+        perTipo.computeIfAbsent(s.type, k -> new CopyOnWriteArrayList<>()).add(s);
+        destinatari.clear(); // le risoluzioni si ricalcolano al prossimo publish
+    }
+
+    // sottoscrittori del tipo stesso e di tutti i suoi supertipi (classi e interfacce)
+    private List<Subscriber<?>> risolvi(Class<?> tipo) {
+        List<Subscriber<?>> out = new ArrayList<>();
+        Deque<Class<?>> daVisitare = new ArrayDeque<>(List.of(tipo));
+        Set<Class<?>> visti = new HashSet<>();
+        while (!daVisitare.isEmpty()) {
+            Class<?> c = daVisitare.poll();
+            if (c == null || !visti.add(c)) continue;
+            List<Subscriber<?>> diretti = perTipo.get(c);
+            if (diretti != null) out.addAll(diretti);
+            if (c.getSuperclass() != null) daVisitare.add(c.getSuperclass());
+            daVisitare.addAll(List.of(c.getInterfaces()));
+        }
+        return List.copyOf(out);
+    }
+
+    private Metriche metriche(Class<?> tipo) {
+        return metriche.computeIfAbsent(tipo, k -> new Metriche());
+    }
+
+    private ScheduledExecutorService timer() {
+        ScheduledExecutorService t = timer;
+        if (t == null) {
+            synchronized (this) {
+                t = timer;
+                if (t == null) {
+                    t = Executors.newSingleThreadScheduledExecutor(
+                            Thread.ofPlatform().daemon().name("eventbus-finestre").factory());
+                    timer = t;
+                }
             }
         }
+        return t;
     }
 
-    private static <T extends AppEvent> void notifySubscriber(Subscriber<?> raw, AppEvent event) {
-        Subscriber<T> s = (Subscriber<T>) raw;
-        s.consumer.accept((T) event);
+    private static final class Metriche {
+        final LongAdder pubblicati = new LongAdder();
+        final LongAdder consegnati = new LongAdder();
+        final LongAdder chiamate = new LongAdder();
+        final LongAdder errori = new LongAdder();
+        final LongAdder latenzaTotale = new LongAdder();
+        final LongAccumulator latenzaMassima = new LongAccumulator(Math::max, 0);
+
+        void consegnato(long t0, long fine) {
+            consegnati.increment();
+            latenzaTotale.add(fine - t0);
+            latenzaMassima.accumulate(fine - t0);
+        }
+    }
+
+    private record InCoda(AppEvent evento, long t0) {
+    }
+
+    /**
+     * Un sottoscrittore con la sua coda. {@code programmato} garantisce che ci sia al più uno svuotamento
+     * alla volta, quindi il consumer non viene mai chiamato in parallelo con se stesso.
+     */
+    private final class Subscriber<T extends AppEvent> {
+        final Class<T> type;
+        final Consumer<T> singolo;
+        final Consumer<List<T>> aFinestra;
+        final long finestraNanos;
+        final ConcurrentLinkedQueue<InCoda> coda = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean programmato = new AtomicBoolean();
+
+        Subscriber(Class<T> type, Consumer<T> singolo, Consumer<List<T>> aFinestra, long finestraNanos) {
+            this.type = type;
+            this.singolo = singolo;
+            this.aFinestra = aFinestra;
+            this.finestraNanos = finestraNanos;
+        }
+
+        void accoda(AppEvent evento, long t0) {
+            coda.add(new InCoda(evento, t0));
+            programma();
+        }
+
+        private void programma() {
+            if (!programmato.compareAndSet(false, true)) return;
+            if (aFinestra != null) {
+                timer().schedule(() -> executor.execute(this::svuota), finestraNanos, TimeUnit.NANOSECONDS);
+            } else {
+                executor.execute(this::svuota);
+            }
+        }
+
+        private void svuota() {
+            try {
+                if (aFinestra != null) consegnaInsieme();
+                else consegnaUnoAllaVolta();
+            } finally {
+                programmato.set(false);
+                // eventi arrivati mentre si consegnava: nuovo giro (per i coalescenti, nuova finestra)
+                if (!coda.isEmpty()) programma();
+            }
+        }
+
+        private void consegnaUnoAllaVolta() {
+            InCoda c;
+            while ((c = coda.poll()) != null) {
+                Metriche m = metriche(c.evento().getClass());
+                m.chiamate.increment();
+                try {
+                    singolo.accept(type.cast(c.evento()));
+                } catch (RuntimeException e) {
+                    m.errori.increment();
+                    LOGGER.log(Level.WARNING, e, () -> "Errore nel sottoscrittore di " + type.getSimpleName());
+                }
+                m.consegnato(c.t0(), System.nanoTime());
+            }
+        }
+
+        private void consegnaInsieme() {
+            List<InCoda> presi = new ArrayList<>();
+            InCoda c;
+            while ((c = coda.poll()) != null) presi.add(c);
+            if (presi.isEmpty()) return;
+
+            List<T> eventi = new ArrayList<>(presi.size());
+            for (InCoda p : presi) eventi.add(type.cast(p.evento()));
+            Metriche prima = metriche(presi.getFirst().evento().getClass());
+            prima.chiamate.increment();
+            try {
+                aFinestra.accept(List.copyOf(eventi));
+            } catch (RuntimeException e) {
+                prima.errori.increment();
+                LOGGER.log(Level.WARNING, e, () -> "Errore nel sottoscrittore di " + type.getSimpleName());
+            }
+            long fine = System.nanoTime();
+            for (InCoda p : presi) metriche(p.evento().getClass()).consegnato(p.t0(), fine);
+        }
     }
-}
\ No newline at end of file
+}
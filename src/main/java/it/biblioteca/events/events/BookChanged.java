@@ -1,10 +1,14 @@
 package it.biblioteca.events.events;
 
+import it.biblioteca.entity.Book;
 import it.biblioteca.events.AppEvent;
 
+/** {@code book} è il libro come salvato (ADDED, UPDATED), da trattare in sola lettura; null per REMOVED e IMPORTED. */
 public final class BookChanged implements AppEvent {
-    public enum Action { ADDED, UPDATED, REMOVED }
+    public enum Action { ADDED, UPDATED, REMOVED, IMPORTED }
     public final Action action;
     public final Long bookId;
-    public BookChanged(Action action, Long bookId) { this.action = action; this.bookId = bookId; }
-}
\ No newline at end of file
+    public final Book book;
+    public BookChanged(Action action, Long bookId) { this(action, bookId, null); }
+    public BookChanged(Action action, Long bookId, Book book) { this.action = action; this.bookId = bookId; this.book = book; }
+}
@@ -1,10 +1,13 @@
 package it.biblioteca.events.events;
 
+import it.biblioteca.entity.Prestito;
 import it.biblioteca.events.AppEvent;
 
+/** {@code prestito} è il prestito dopo la modifica, riletto dal DAO, da trattare in sola lettura; null se non è stato possibile rileggerlo. */
 public final class PrestitoChanged implements AppEvent {
     public enum Action { REGISTERED, RETURNED }
     public final Action action;
     public final Long prestitoId;
-    public PrestitoChanged(Action action, Long prestitoId) { this.action = action; this.prestitoId = prestitoId; }
-}
\ No newline at end of file
+    public final Prestito prestito;
+    public PrestitoChanged(Action action, Long prestitoId, Prestito prestito) { this.action = action; this.prestitoId = prestitoId; this.prestito = prestito; }
+}
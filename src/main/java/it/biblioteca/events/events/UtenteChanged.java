@@ -1,10 +1,14 @@
 package it.biblioteca.events.events;
 
+import it.biblioteca.entity.Utente;
 import it.biblioteca.events.AppEvent;
 
+/** {@code utente} è l'utente come salvato (ADDED, UPDATED), da trattare in sola lettura; null per gli altri casi. */
 public final class UtenteChanged implements AppEvent {
-    public enum Action { ADDED, UPDATED, DELETED, CREDENTIALS_CHANGED }
+    public enum Action { ADDED, UPDATED, DELETED, CREDENTIALS_CHANGED, IMPORTED }
     public final Action action;
     public final Long utenteId;
-    public UtenteChanged(Action action, Long utenteId) { this.action = action; this.utenteId = utenteId; }
-}
\ No newline at end of file
+    public final Utente utente;
+    public UtenteChanged(Action action, Long utenteId) { this(action, utenteId, null); }
+    public UtenteChanged(Action action, Long utenteId, Utente utente) { this.action = action; this.utenteId = utenteId; this.utente = utente; }
+}
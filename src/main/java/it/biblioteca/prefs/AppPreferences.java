@@ -12,6 +12,7 @@ public final class AppPreferences {
     private static final String KEY_THEME = "theme";
     private static final String KEY_LAST_TAB = "lastTab";
     private static final String KEY_LAST_DIR = "lastDir";
+    private static final String KEY_SEARCH_DEBOUNCE_MS = "searchDebounceMs";
 
     private static final String KEY_STAGE_X = "stageX";
     private static final String KEY_STAGE_Y = "stageY";
@@ -47,6 +48,10 @@ public final class AppPreferences {
         }
     }
 
+    public static long loadSearchDebounceMillis() {
+        return Math.max(0L, prefs().getLong(KEY_SEARCH_DEBOUNCE_MS, 250L));
+    }
+
     public static File loadLastDirectoryOrNull() {
         String path = prefs().get(KEY_LAST_DIR, null);
         if (path == null || path.isBlank()) return null;
@@ -20,8 +20,8 @@ public class AppContext {
         PrestitoDAO prestitoDAO = daoFactory.prestitoDAO();
         UtenteDAO utenteDAO = daoFactory.utenteDAO();
 
-        this.bookService = new BookService(bookDAO);
-        this.prestitoService = new PrestitoService(prestitoDAO, bookDAO, utenteDAO);
+        this.bookService = new BookService(bookDAO, Boolean.getBoolean(BookService.COLUMNAR_PROPERTY));
+        this.prestitoService = new PrestitoService(prestitoDAO, utenteDAO, bookService);
         this.utenteService = new UtenteService(utenteDAO);
     }
 
@@ -0,0 +1,60 @@
+package it.biblioteca.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controllo periodico delle copie disponibili: le rimette a copie meno prestiti attivi dove non coincidono
+ * (modifiche fatte a mano sul database, file scritti da versioni precedenti) e registra nel log cosa ha corretto.
+ * Il primo controllo parte subito, i successivi ogni {@code periodo}.
+ */
+public final class AvailabilityReconciler implements AutoCloseable {
+
+    /** Minuti fra due controlli, es. {@code -Dbiblioteca.copie.riconciliazione.minuti=5}; 0 lo disattiva. */
+    public static final String PERIOD_PROPERTY = "biblioteca.copie.riconciliazione.minuti";
+
+    private static final Logger LOGGER = Logger.getLogger(AvailabilityReconciler.class.getName());
+    private static final long DEFAULT_MINUTES = 15;
+
+    private final PrestitoService loans;
+    private final ScheduledExecutorService timer;
+
+    public AvailabilityReconciler(PrestitoService loans, Duration periodo) {
+        this.loans = loans;
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon().name("riconciliazione-copie").factory());
+        long ms = Math.max(1, periodo.toMillis());
+        timer.scheduleWithFixedDelay(this::runOnce, 0, ms, TimeUnit.MILLISECONDS);
+    }
+
+    /** Il controllo col periodo di {@link #PERIOD_PROPERTY}; null se è disattivato. */
+    public static AvailabilityReconciler fromSystemProperty(PrestitoService loans) {
+        long minuti = Long.getLong(PERIOD_PROPERTY, DEFAULT_MINUTES);
+        return minuti > 0 ? new AvailabilityReconciler(loans, Duration.ofMinutes(minuti)) : null;
+    }
+
+    /** Un controllo subito, sul thread chiamante. */
+    public Map<Long, Integer> runOnce() {
+        try {
+            Map<Long, Integer> corretti = loans.reconcileAvailability();
+            if (!corretti.isEmpty()) {
+                LOGGER.warning(() -> "Copie disponibili corrette (libro=scarto): " + corretti);
+            }
+            return corretti;
+        } catch (RuntimeException e) {
+            // un errore non deve fermare i controlli successivi
+            LOGGER.log(Level.WARNING, "Riconciliazione delle copie disponibili non riuscita", e);
+            return Map.of();
+        }
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+}
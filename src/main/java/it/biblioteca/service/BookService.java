@@ -2,39 +2,94 @@ package it.biblioteca.service;
 
 import it.biblioteca.bean.BookBean;
 import it.biblioteca.dao.BookDAO;
+import it.biblioteca.dao.EsitoBatch;
+import it.biblioteca.dao.Ordinamento;
+import it.biblioteca.dao.mem.ColumnarCatalogue;
 import it.biblioteca.entity.Book;
 import it.biblioteca.events.EventBus;
 import it.biblioteca.events.events.BookChanged;
 
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class BookService {
+    /** Con {@code -Dbiblioteca.catalogo.colonnare=true} letture e ricerche passano dal catalogo a colonne. */
+    public static final String COLUMNAR_PROPERTY = "biblioteca.catalogo.colonnare";
+
     private final BookDAO bookDAO;
+    private final boolean columnar;
+    private volatile ColumnarCatalogue catalogue;
 
     public BookService(BookDAO bookDAO) {
+        this(bookDAO, false);
+    }
+
+    public BookService(BookDAO bookDAO, boolean columnar) {
         this.bookDAO = bookDAO;
+        this.columnar = columnar;
     }
 
     public List<Book> findAll() {
-        return bookDAO.trovaTutti();
+        ColumnarCatalogue c = catalogue();
+        return c != null ? c.all() : bookDAO.trovaTutti();
+    }
+
+    /** Tutti i libri uno alla volta, direttamente dal DAO; si ferma quando {@code action} restituisce false. */
+    public void forEach(Predicate<Book> action) {
+        bookDAO.scorri(action);
+    }
+
+    public List<Book> findPage(Book after, int limit, Ordinamento order) {
+        ColumnarCatalogue c = catalogue();
+        return c != null ? c.page(after, limit, order) : bookDAO.trovaPagina(after, limit, order);
+    }
+
+    public List<Book> search(String query, int limit) {
+        ColumnarCatalogue c = catalogue();
+        return c != null ? c.search(query, limit) : bookDAO.cerca(query, limit);
     }
 
     public boolean add(BookBean bean) {
         try {
             Book b = toEntity(bean);
             bookDAO.salvaLibro(b);
-            EventBus.getDefault().publish(new BookChanged(BookChanged.Action.ADDED, b.getId()));
+            patchCatalogue(c -> c.put(b));
+            EventBus.getDefault().publish(new BookChanged(BookChanged.Action.ADDED, b.getId(), b));
             return true;
         } catch (Exception _) {
             return false;
         }
     }
 
+    /**
+     * Import guidato dalla sorgente, che salva i blocchi quando sono pronti. L'evento {@code IMPORTED}
+     * parte una volta sola, anche se la sorgente si interrompe dopo aver già salvato qualche blocco.
+     */
+    public EsitoBatch importAll(EsitoBatch.Sorgente<BookBean> sorgente) {
+        int[] inseriti = {0};
+        try {
+            return sorgente.scriviTutto(blocco -> {
+                EsitoBatch esito = bookDAO.salvaLibri(blocco.stream().map(this::toEntity).toList());
+                inseriti[0] += esito.inseriti();
+                return esito;
+            });
+        } finally {
+            if (inseriti[0] > 0) {
+                dropCatalogue();
+                EventBus.getDefault().publish(new BookChanged(BookChanged.Action.IMPORTED, null));
+            }
+        }
+    }
+
     public boolean update(BookBean bean) {
         try {
-            Book b = toEntity(bean);
-            bookDAO.aggiornaLibro(b);
-            EventBus.getDefault().publish(new BookChanged(BookChanged.Action.UPDATED, b.getId()));
+            Book modificato = toEntity(bean);
+            bookDAO.aggiornaLibro(modificato);
+            // le copie disponibili le calcola il DAO: l'evento porta la riga come è ora
+            Book b = riletto(modificato);
+            patchCatalogue(c -> c.put(b));
+            EventBus.getDefault().publish(new BookChanged(BookChanged.Action.UPDATED, b.getId(), b));
             return true;
         } catch (Exception _) {
             return false;
@@ -44,6 +99,7 @@ public class BookService {
     public boolean remove(Long id) {
         try {
             bookDAO.eliminaLibro(id);
+            patchCatalogue(c -> c.remove(id));
             EventBus.getDefault().publish(new BookChanged(BookChanged.Action.REMOVED, id));
             return true;
         } catch (Exception _) {
@@ -51,6 +107,47 @@ public class BookService {
         }
     }
 
+    /** Un prestito o una restituzione ha cambiato le copie disponibili del libro: riga e catalogo si aggiornano. */
+    public void availabilityChanged(Long bookId) {
+        Book b;
+        try {
+            b = bookId != null ? bookDAO.trovaPerId(bookId) : null;
+        } catch (RuntimeException _) {
+            return; // il prestito è già registrato: la riga si riallinea alla prossima ricarica
+        }
+        if (b == null) return;
+        patchCatalogue(c -> c.put(b));
+        EventBus.getDefault().publish(new BookChanged(BookChanged.Action.UPDATED, b.getId(), b));
+    }
+
+    private Book riletto(Book b) {
+        Book letto = bookDAO.trovaPerId(b.getId());
+        return letto != null ? letto : b;
+    }
+
+    // caricato alla prima lettura; null se il catalogo a colonne non è attivo
+    private ColumnarCatalogue catalogue() {
+        if (!columnar) return null;
+        ColumnarCatalogue c = catalogue;
+        if (c == null) {
+            synchronized (this) {
+                if (catalogue == null) catalogue = ColumnarCatalogue.load(bookDAO);
+                c = catalogue;
+            }
+        }
+        return c;
+    }
+
+    // sotto lo stesso lock del caricamento: una scrittura concorrente al caricamento non va persa
+    private synchronized void patchCatalogue(Consumer<ColumnarCatalogue> patch) {
+        if (catalogue != null) patch.accept(catalogue);
+    }
+
+    // dopo un import massivo conviene ricaricare il catalogo piuttosto che inserire le righe una a una
+    private synchronized void dropCatalogue() {
+        catalogue = null;
+    }
+
     private Book toEntity(BookBean bean) {
         Book b = new Book();
         b.setId(bean.getId());
@@ -3,6 +3,7 @@ package it.biblioteca.service;
 import it.biblioteca.bean.PrestitoBean;
 import it.biblioteca.controller.PrestitoController;
 import it.biblioteca.dao.BookDAO;
+import it.biblioteca.dao.Ordinamento;
 import it.biblioteca.dao.PrestitoDAO;
 import it.biblioteca.dao.UtenteDAO;
 import it.biblioteca.entity.Prestito;
@@ -12,26 +13,68 @@ import it.biblioteca.events.events.PrestitoChanged;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 
 public class PrestitoService {
     private final PrestitoDAO prestitoDAO;
-    private final BookDAO bookDAO;
     private final UtenteDAO utenteDAO;
+    private final BookService bookService;
 
     public PrestitoService(PrestitoDAO prestitoDAO, BookDAO bookDAO, UtenteDAO utenteDAO) {
+        this(prestitoDAO, utenteDAO, new BookService(bookDAO));
+    }
+
+    /** @param bookService avvisato dopo ogni prestito e restituzione, per le copie disponibili del libro */
+    public PrestitoService(PrestitoDAO prestitoDAO, UtenteDAO utenteDAO, BookService bookService) {
         this.prestitoDAO = prestitoDAO;
-        this.bookDAO = bookDAO;
         this.utenteDAO = utenteDAO;
+        this.bookService = bookService;
     }
 
     public List<Prestito> findAll() {
         return prestitoDAO.trovaTutti();
     }
 
+    /** Lo storico completo uno alla volta, senza caricarlo; si ferma quando {@code action} restituisce false. */
+    public void forEach(Predicate<Prestito> action) {
+        prestitoDAO.scorri(action);
+    }
+
+    public List<Prestito> findPage(Prestito after, int limit, Ordinamento order) {
+        return prestitoDAO.trovaPagina(after, limit, order);
+    }
+
+    public List<Prestito> search(String query, int limit) {
+        return prestitoDAO.cerca(query, limit);
+    }
+
+    /** Prestiti dell'utente dal più recente, a pagine (vedi {@link PrestitoDAO#trovaPerUtente}). */
+    public List<Prestito> findByUser(Long utenteId, Prestito after, int limit) {
+        return prestitoDAO.trovaPerUtente(utenteId, after, limit);
+    }
+
+    /** Come {@link #forEach}, per i soli prestiti dell'utente. */
+    public void forEachOfUser(Long utenteId, Predicate<Prestito> action) {
+        Prestito after = null;
+        List<Prestito> page;
+        do {
+            page = prestitoDAO.trovaPerUtente(utenteId, after, 1000);
+            for (Prestito p : page) {
+                if (!action.test(p)) return;
+            }
+            if (!page.isEmpty()) after = page.getLast();
+        } while (page.size() == 1000);
+    }
+
     public List<Prestito> findActive() {
         return prestitoDAO.trovaPrestitiAttivi();
     }
 
+    public Map<Long, Integer> activeLoanCountsByBook() {
+        return prestitoDAO.contaPrestitiAttiviPerLibro();
+    }
+
     public PrestitoController.Esito registerLoan(PrestitoBean bean) {
         try {
             if (bean == null || bean.getUtenteId() == null || bean.getLibroId() == null) return PrestitoController.Esito.ERRORE_INSERIMENTO;
@@ -39,9 +82,12 @@ public class PrestitoService {
             if (u == null) return PrestitoController.Esito.ERRORE_INSERIMENTO;
             LocalDate scad = u.getDataScadenza();
             if (scad != null && scad.isBefore(LocalDate.now())) return PrestitoController.Esito.UTENTE_INATTIVO;
-            boolean ok = prestitoDAO.inserisci(bean);
-            if (ok) EventBus.getDefault().publish(new PrestitoChanged(PrestitoChanged.Action.REGISTERED, null));
-            return ok ? PrestitoController.Esito.OK : PrestitoController.Esito.ERRORE_INSERIMENTO;
+            if (!prestitoDAO.inserisciSeDisponibile(bean)) {
+                return PrestitoController.Esito.NESSUNA_COPIA;
+            }
+            pubblica(PrestitoChanged.Action.REGISTERED, bean.getId());
+            bookService.availabilityChanged(bean.getLibroId());
+            return PrestitoController.Esito.OK;
         } catch (Exception _) {
             return PrestitoController.Esito.ERRORE_INSERIMENTO;
         }
@@ -49,7 +95,33 @@ public class PrestitoService {
 
     public boolean registerReturn(Long prestitoId, LocalDate data) {
         boolean ok = prestitoDAO.chiudiPrestito(prestitoId, data);
-        if (ok) EventBus.getDefault().publish(new PrestitoChanged(PrestitoChanged.Action.RETURNED, prestitoId));
+        if (ok) {
+            Prestito p = pubblica(PrestitoChanged.Action.RETURNED, prestitoId);
+            if (p != null) bookService.availabilityChanged(p.getLibroId());
+        }
         return ok;
     }
+
+    /**
+     * Corregge le copie disponibili che non tornano con i prestiti attivi e aggiorna i libri corretti.
+     *
+     * @return per ogni libro corretto, lo scarto trovato (contatore meno valore atteso)
+     */
+    public Map<Long, Integer> reconcileAvailability() {
+        Map<Long, Integer> corretti = prestitoDAO.riconciliaCopieDisponibili();
+        corretti.keySet().forEach(bookService::availabilityChanged);
+        return corretti;
+    }
+
+    // l'evento porta il prestito riletto, così l'interfaccia aggiorna una riga senza ricaricare lo storico
+    private Prestito pubblica(PrestitoChanged.Action action, Long prestitoId) {
+        Prestito p = null;
+        try {
+            p = prestitoDAO.trovaPerId(prestitoId);
+        } catch (RuntimeException _) {
+            // l'evento parte comunque: chi lo riceve ricarica
+        }
+        EventBus.getDefault().publish(new PrestitoChanged(action, prestitoId, p));
+        return p;
+    }
 }
\ No newline at end of file
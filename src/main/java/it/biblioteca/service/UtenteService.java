@@ -1,6 +1,8 @@
 package it.biblioteca.service;
 
 import it.biblioteca.bean.UtenteBean;
+import it.biblioteca.dao.EsitoBatch;
+import it.biblioteca.dao.Ordinamento;
 import it.biblioteca.dao.UtenteDAO;
 import it.biblioteca.entity.Utente;
 import it.biblioteca.events.EventBus;
@@ -9,6 +11,7 @@ import it.biblioteca.events.events.UtenteChanged;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Predicate;
 
 public class UtenteService {
     private final UtenteDAO utenteDAO;
@@ -25,6 +28,34 @@ public class UtenteService {
         }
     }
 
+    public void forEach(Predicate<Utente> action) {
+        utenteDAO.scorri(action);
+    }
+
+    public List<Utente> findPage(Utente after, int limit, Ordinamento order) {
+        try {
+            return utenteDAO.trovaPagina(after, limit, order);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    public List<Utente> search(String query, int limit) {
+        try {
+            return utenteDAO.cerca(query, limit);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    public Utente findByTessera(Integer tessera) {
+        try {
+            return utenteDAO.trovaPerTessera(tessera);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
     public List<Utente> findActive() {
         return findAll().stream().filter(this::isActive).toList();
     }
@@ -33,18 +64,32 @@ public class UtenteService {
         try {
             Utente u = toEntity(bean);
             boolean ok = utenteDAO.aggiungi(u);
-            if (ok) EventBus.getDefault().publish(new UtenteChanged(UtenteChanged.Action.ADDED, u.getId()));
+            if (ok) EventBus.getDefault().publish(new UtenteChanged(UtenteChanged.Action.ADDED, u.getId(), u));
             return ok;
         } catch (Exception _) {
             return false;
         }
     }
 
+    /** Import guidato dalla sorgente; un solo evento {@code IMPORTED} alla fine. */
+    public EsitoBatch importAll(EsitoBatch.Sorgente<UtenteBean> sorgente) {
+        int[] inseriti = {0};
+        try {
+            return sorgente.scriviTutto(blocco -> {
+                EsitoBatch esito = utenteDAO.aggiungiTutti(blocco.stream().map(this::toEntity).toList());
+                inseriti[0] += esito.inseriti();
+                return esito;
+            });
+        } finally {
+            if (inseriti[0] > 0) EventBus.getDefault().publish(new UtenteChanged(UtenteChanged.Action.IMPORTED, null));
+        }
+    }
+
     public boolean update(UtenteBean bean) {
         try {
             Utente u = toEntity(bean);
             boolean ok = utenteDAO.aggiorna(u);
-            if (ok) EventBus.getDefault().publish(new UtenteChanged(UtenteChanged.Action.UPDATED, u.getId()));
+            if (ok) EventBus.getDefault().publish(new UtenteChanged(UtenteChanged.Action.UPDATED, u.getId(), u));
             return ok;
         } catch (Exception _) {
             return false;
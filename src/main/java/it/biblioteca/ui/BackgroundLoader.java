@@ -0,0 +1,83 @@
+package it.biblioteca.ui;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.concurrent.Task;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Esegue i caricamenti delle tabelle fuori dal thread FX.
+ * Per ogni chiave c'è al massimo un caricamento in corso: le richieste che arrivano nel frattempo
+ * vengono fuse in un'unica ripetizione (vince l'ultima). Il risultato viene applicato sul thread FX
+ * in un colpo solo, così la tabella passa direttamente dai vecchi ai nuovi dati.
+ */
+public class BackgroundLoader {
+
+    private static final class Slot {
+        boolean running;
+        Runnable rerun;
+    }
+
+    private final Executor executor;
+    private final Map<String, Slot> slots = new HashMap<>();
+    private final ReadOnlyIntegerWrapper running = new ReadOnlyIntegerWrapper(0);
+
+    public BackgroundLoader(Executor executor) {
+        this.executor = executor;
+    }
+
+    /** Numero di caricamenti in corso (utile per mostrare un indicatore di attività). */
+    public ReadOnlyIntegerProperty runningProperty() {
+        return running.getReadOnlyProperty();
+    }
+
+    public <R> void submit(String key, Callable<R> load, Consumer<R> apply, Consumer<Throwable> onError) {
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> submit(key, load, apply, onError));
+            return;
+        }
+        Slot slot = slots.computeIfAbsent(key, k -> new Slot());
+        if (slot.running) {
+            slot.rerun = () -> submit(key, load, apply, onError);
+            return;
+        }
+        slot.running = true;
+        running.set(running.get() + 1);
+
+        Task<R> task = new Task<>() {
+            @Override
+            protected R call() throws Exception {
+                return load.call();
+            }
+        };
+        task.setOnSucceeded(e -> {
+            try {
+                apply.accept(task.getValue());
+            } finally {
+                done(slot);
+            }
+        });
+        task.setOnFailed(e -> {
+            try {
+                onError.accept(task.getException());
+            } finally {
+                done(slot);
+            }
+        });
+        executor.execute(task);
+    }
+
+    private void done(Slot slot) {
+        slot.running = false;
+        running.set(running.get() - 1);
+        Runnable rerun = slot.rerun;
+        slot.rerun = null;
+        if (rerun != null) rerun.run();
+    }
+}
@@ -1,6 +1,7 @@
 package it.biblioteca.ui;
 
 import it.biblioteca.controller.PrestitoController;
+import it.biblioteca.dao.EsitoBatch;
 import it.biblioteca.entity.Book;
 import it.biblioteca.entity.Prestito;
 import it.biblioteca.entity.Utente;
@@ -15,6 +16,7 @@ import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.collections.FXCollections;
+import javafx.concurrent.Task;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
 import javafx.collections.transformation.SortedList;
@@ -31,13 +33,17 @@ import javafx.scene.layout.VBox;
 import java.io.File;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Predicate;
 
 import it.biblioteca.ui.facade.UiFacade;
 import it.biblioteca.util.csv.CsvExporter;
+import it.biblioteca.util.csv.CsvImportPipeline;
 import it.biblioteca.prefs.AppPreferences;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 public class ContentManager {
 
@@ -45,6 +51,8 @@ public class ContentManager {
     private static final String MSG_NON_AUTORIZZATO  = "Non autorizzato.";
     private static final String STATUS_QUERY_SUFFIX  = " | query: \"";
     private static final String STATUS_RECORD_SUFFIX = " record.";
+    private static final int MAX_ERRORI_IMPORT       = 10;
+    private static final java.time.Duration FINESTRA_EVENTI = java.time.Duration.ofMillis(150);
 
     public enum Theme { COLORI, BIANCO_NERO }
 
@@ -58,8 +66,21 @@ public class ContentManager {
     private static final String ATTIVI = "Attivi";
     private static final String TUTTI = "Tutti";
     private static final String FILTRO = "Filtro:";
+    private static final int PAGE_SIZE = 200;
+    private static final int SEARCH_LIMIT = 500;
 
     private final UiFacade ui;
+    private final PagedLoader<Book> catalogLoader;
+    private final PagedLoader<Prestito> loansLoader;
+    private final PagedLoader<Prestito> myLoansLoader;
+    // utente della sessione, risolto dalla tessera a ogni aggiornamento della vista
+    private volatile Long myLoansUtenteId;
+    private final PagedLoader<Utente> usersLoader;
+    private final ExecutorService background = Executors.newVirtualThreadPerTaskExecutor();
+    private final BackgroundLoader refreshes = new BackgroundLoader(background);
+    private final DebouncedSearch<List<Book>> catalogSearch;
+    private final DebouncedSearch<List<Prestito>> loansSearch;
+    private final DebouncedSearch<List<Utente>> usersSearch;
 
     private BorderPane rootContainer;
     private TabPane tabPane;
@@ -74,7 +95,6 @@ public class ContentManager {
 
     private TableView<Book> catalogTable;
     private ObservableList<Book> catalogData;
-    private FilteredList<Book> catalogFiltered;
     private SortedList<Book> catalogSorted;
     private TextField txtSearchCatalog;
     private BorderPane catalogRoot;
@@ -109,6 +129,9 @@ public class ContentManager {
     // ===== StatusBar =====
     private HBox statusBar;
     private Label statusLabel;
+    private ProgressBar jobProgress;
+    private Label jobStatus;
+    private Button jobCancel;
 
     public ContentManager(UiFacade ui) {
         this.ui = ui;
@@ -116,6 +139,22 @@ public class ContentManager {
         this.loansData = FXCollections.observableArrayList();
         this.myLoansData = FXCollections.observableArrayList();
         this.usersData = FXCollections.observableArrayList();
+        this.catalogLoader = new PagedLoader<>(catalogData, PAGE_SIZE, ui::listBooksPage, Book::getId, background);
+        this.loansLoader = new PagedLoader<>(loansData, PAGE_SIZE, ui::listLoansPage, Prestito::getId, background);
+        this.myLoansLoader = new PagedLoader<>(myLoansData, PAGE_SIZE,
+                (after, limit) -> ui.listUserLoansPage(myLoansUtenteId, after, limit), Prestito::getId, background);
+        this.usersLoader = new PagedLoader<>(usersData, PAGE_SIZE, ui::listUsersPage, Utente::getId, background);
+
+        Duration debounce = Duration.millis(AppPreferences.loadSearchDebounceMillis());
+        this.catalogSearch = new DebouncedSearch<>(debounce, background,
+                q -> q.isBlank() ? catalogLoader.fetchFirstPage() : ui.searchBooks(q, SEARCH_LIMIT),
+                this::showCatalogSearch, e -> showError("Errore nella ricerca nel catalogo: " + e.getMessage()));
+        this.loansSearch = new DebouncedSearch<>(debounce, background,
+                q -> q.isBlank() ? loansLoader.fetchFirstPage() : ui.searchLoans(q, SEARCH_LIMIT),
+                this::showLoansSearch, e -> showError("Errore nella ricerca dei prestiti: " + e.getMessage()));
+        this.usersSearch = new DebouncedSearch<>(debounce, background,
+                q -> q.isBlank() ? usersLoader.fetchFirstPage() : ui.searchUsers(q, SEARCH_LIMIT),
+                this::showUsersSearch, e -> showError("Errore nella ricerca degli utenti: " + e.getMessage()));
 
         // Carica il tema di default dalle preferenze (verrà aggiornato poi dal login/Startup)
         try {
@@ -249,9 +288,67 @@ public class ContentManager {
 
     private void subscribeToEvents() {
         EventBus bus = EventBus.getDefault();
-        bus.subscribe(BookChanged.class, e -> Platform.runLater(this::aggiornaCatalogoLibri));
-        bus.subscribe(PrestitoChanged.class, e -> Platform.runLater(this::aggiornaPrestiti));
-        bus.subscribe(UtenteChanged.class, e -> Platform.runLater(this::aggiornaUtenti));
+        // le modifiche di una finestra arrivano insieme e si applicano alle righe già caricate
+        bus.subscribeCoalesced(BookChanged.class, FINESTRA_EVENTI, e -> Platform.runLater(() -> applicaLibri(e)));
+        bus.subscribeCoalesced(PrestitoChanged.class, FINESTRA_EVENTI, e -> Platform.runLater(() -> applicaPrestiti(e)));
+        bus.subscribeCoalesced(UtenteChanged.class, FINESTRA_EVENTI, e -> Platform.runLater(() -> applicaUtenti(e)));
+    }
+
+    // Un import, un evento senza entità o una raffica più lunga di una pagina: conviene ricaricare.
+    private static <E> boolean serveRicaricare(List<E> eventi, Predicate<E> senzaDelta) {
+        return eventi.size() > PAGE_SIZE || eventi.stream().anyMatch(senzaDelta);
+    }
+
+    private void applicaLibri(List<BookChanged> eventi) {
+        // durante una ricerca un libro nuovo potrebbe non corrispondere: si ripete la ricerca
+        boolean ricerca = !queryOf(txtSearchCatalog).isBlank();
+        if (serveRicaricare(eventi, e -> e.action == BookChanged.Action.IMPORTED
+                || (e.action != BookChanged.Action.REMOVED && e.book == null)
+                || (e.action == BookChanged.Action.ADDED && ricerca))) {
+            aggiornaCatalogoLibri();
+            return;
+        }
+        for (BookChanged e : eventi) {
+            switch (e.action) {
+                case ADDED -> catalogLoader.upsert(e.book, false);
+                case UPDATED -> catalogLoader.replace(e.book);
+                case REMOVED -> catalogLoader.remove(e.bookId);
+                case IMPORTED -> { /* gestito sopra */ }
+            }
+        }
+    }
+
+    private void applicaPrestiti(List<PrestitoChanged> eventi) {
+        boolean ricerca = !queryOf(txtSearchLoans).isBlank();
+        if (serveRicaricare(eventi, e -> e.prestito == null
+                || (e.action == PrestitoChanged.Action.REGISTERED && ricerca))) {
+            aggiornaPrestiti();
+            return;
+        }
+        // le copie disponibili arrivano col BookChanged del libro, pubblicato insieme
+        for (PrestitoChanged e : eventi) {
+            // i prestiti sono in ordine dal più recente: uno nuovo va in testa
+            if (e.action == PrestitoChanged.Action.REGISTERED) loansLoader.upsert(e.prestito, true);
+            else loansLoader.replace(e.prestito);
+        }
+    }
+
+    private void applicaUtenti(List<UtenteChanged> eventi) {
+        boolean ricerca = !queryOf(txtSearchUsers).isBlank();
+        if (serveRicaricare(eventi, e -> e.action == UtenteChanged.Action.IMPORTED
+                || ((e.action == UtenteChanged.Action.ADDED || e.action == UtenteChanged.Action.UPDATED) && e.utente == null)
+                || (e.action == UtenteChanged.Action.ADDED && ricerca))) {
+            aggiornaUtenti();
+            return;
+        }
+        for (UtenteChanged e : eventi) {
+            switch (e.action) {
+                case ADDED -> usersLoader.upsert(e.utente, false);
+                case UPDATED -> usersLoader.replace(e.utente);
+                case DELETED -> usersLoader.remove(e.utenteId);
+                case CREDENTIALS_CHANGED, IMPORTED -> { /* le credenziali non sono in tabella; import gestito sopra */ }
+            }
+        }
     }
 
     // ====== Sidebar ======
@@ -388,6 +485,7 @@ public class ContentManager {
         addCatalogColumns();
 
         catalogTable.setItems(catalogSorted);
+        catalogLoader.attach(catalogTable);
         attachCatalogListeners();
         attachCatalogActions();
 
@@ -416,8 +514,7 @@ public class ContentManager {
     private void initCatalogTable() {
         catalogTable = new TableView<>();
         catalogTable.setPlaceholder(new Label("Nessun libro da mostrare"));
-        catalogFiltered = new FilteredList<>(catalogData, b -> true);
-        catalogSorted = new SortedList<>(catalogFiltered);
+        catalogSorted = new SortedList<>(catalogData);
         catalogSorted.comparatorProperty().bind(catalogTable.comparatorProperty());
     }
 
@@ -455,11 +552,7 @@ public class ContentManager {
     }
 
     private void attachCatalogListeners() {
-        txtSearchCatalog.textProperty().addListener((obs, o, val) -> {
-            String q = val == null ? "" : val.trim().toLowerCase();
-            catalogFiltered.setPredicate(makeBookPredicate(q));
-            setStatus(q.isBlank() ? "Filtro catalogo rimosso." : "Filtro catalogo: \"" + q + "\"");
-        });
+        txtSearchCatalog.textProperty().addListener((obs, o, val) -> catalogSearch.submit(val));
 
         tabPane.getSelectionModel().selectedItemProperty().addListener((obs, o, n) -> saveCurrentTabPreference(n));
     }
@@ -484,7 +577,7 @@ public class ContentManager {
             Book selected = requireSelectedBook("Seleziona un libro da rimuovere.");
             if (selected == null) return;
             boolean ok = ui.removeBook(selected.getId());
-            if (ok) { aggiornaCatalogoLibri(); showInfo("Libro rimosso dal database."); setStatus("Libro rimosso."); }
+            if (ok) { showInfo("Libro rimosso dal database."); setStatus("Libro rimosso."); }
             else showError("Impossibile rimuovere il libro. Verifica che non abbia prestiti attivi o prenotazioni.");
         });
 
@@ -513,13 +606,13 @@ public class ContentManager {
 
     private void processBookAdd(it.biblioteca.bean.BookBean bean) {
         boolean ok = ui.addBook(bean);
-        if (ok) { aggiornaCatalogoLibri(); showInfo("Libro aggiunto."); setStatus("Libro aggiunto."); }
+        if (ok) { showInfo("Libro aggiunto."); setStatus("Libro aggiunto."); }
         else showError("Impossibile aggiungere il libro.");
     }
 
     private void processBookUpdate(it.biblioteca.bean.BookBean bean) {
         boolean ok = ui.updateBook(bean);
-        if (ok) { aggiornaCatalogoLibri(); showInfo("Libro aggiornato."); setStatus("Libro aggiornato."); }
+        if (ok) { showInfo("Libro aggiornato."); setStatus("Libro aggiornato."); }
         else showError("Impossibile aggiornare il libro.");
     }
 
@@ -528,28 +621,16 @@ public class ContentManager {
     }
 
     private int availableCopiesOf(Book b) {
-        int copies = copiesOf(b);
-        if (b == null || b.getId() == null) return copies;
-        long active = 0L;
-        try {
-            List<Prestito> attivi = ui.listActiveLoans();
-            active = attivi.stream().filter(p -> p.getLibroId() != null && b.getId().equals(p.getLibroId())).count();
-        } catch (Exception _) { // empty
-        }
-        return (int) Math.max(0, copies - active);
+        return b == null ? 0 : Math.max(0, b.getCopieDisponibili());
     }
 
-    private Predicate<Book> makeBookPredicate(String q) {
-        if (q == null || q.isBlank()) return b -> true;
-        return b -> {
-            String s = q.toLowerCase();
-            return (b.getIsbn() != null && b.getIsbn().toLowerCase().contains(s)) ||
-                    (b.getTitolo() != null && b.getTitolo().toLowerCase().contains(s)) ||
-                    (b.getAutore() != null && b.getAutore().toLowerCase().contains(s)) ||
-                    (b.getCasaEditrice() != null && b.getCasaEditrice().toLowerCase().contains(s)) ||
-                    (b.getDataPubblicazione() != null && b.getDataPubblicazione().toString().contains(s)) ||
-                    String.valueOf(b.getCopie()).contains(s);
-        };
+    private void showCatalogSearch(String q, List<Book> rows) {
+        int trovati = q.isBlank() ? catalogLoader.showFirstPage(rows) : catalogLoader.replaceWith(rows);
+        setStatus(q.isBlank() ? "Filtro catalogo rimosso." : "Filtro catalogo: \"" + q + "\" (" + trovati + " libri)");
+    }
+
+    private static String queryOf(TextField field) {
+        return (field != null && field.getText() != null) ? field.getText().trim() : "";
     }
 
     private void applyCatalogPermissions() {
@@ -561,14 +642,17 @@ public class ContentManager {
     }
 
     private void aggiornaCatalogoLibri() {
-        try {
-            List<Book> libri = ui.listBooks();
-            if (catalogData == null) catalogData = FXCollections.observableArrayList();
-            catalogData.setAll(libri);
-            setStatus("Catalogo aggiornato: " + libri.size() + " libri.");
-        } catch (Exception e) {
-            showError("Errore nell'aggiornamento del catalogo: " + e.getMessage());
-        }
+        String q = queryOf(txtSearchCatalog);
+        setStatus("Caricamento catalogo...");
+        refreshes.submit("catalogo",
+                () -> q.isBlank() ? catalogLoader.fetchFirstPage() : ui.searchBooks(q, SEARCH_LIMIT),
+                rows -> {
+                    // Se nel frattempo il testo è cambiato le righe arrivano dalla ricerca in corso.
+                    if (!q.equals(queryOf(txtSearchCatalog))) return;
+                    int caricati = q.isBlank() ? catalogLoader.showFirstPage(rows) : catalogLoader.replaceWith(rows);
+                    setStatus("Catalogo aggiornato: " + caricati + " libri.");
+                },
+                e -> showError("Errore nell'aggiornamento del catalogo: " + e.getMessage()));
     }
 
     public void mostraPrestiti() {
@@ -628,6 +712,7 @@ public class ContentManager {
         SortedList<Prestito> loansSorted = new SortedList<>(loansFiltered);
         loansSorted.comparatorProperty().bind(loansTable.comparatorProperty());
         loansTable.setItems(loansSorted);
+        loansLoader.attach(loansTable);
     }
 
     private List<TableColumn<Prestito, ?>> loanColumns() {
@@ -648,7 +733,7 @@ public class ContentManager {
 
     private void attachLoansListeners() {
         cmbLoanFilter.valueProperty().addListener((obs, o, v) -> applyLoansPredicate());
-        txtSearchLoans.textProperty().addListener((obs, o, v) -> applyLoansPredicate());
+        txtSearchLoans.textProperty().addListener((obs, o, v) -> loansSearch.submit(v));
 
         tabPane.getSelectionModel().selectedItemProperty().addListener((obs, o, n) -> saveCurrentTabPreference(n));
     }
@@ -672,17 +757,13 @@ public class ContentManager {
         Prestito sel = loansTable.getSelectionModel().getSelectedItem();
         if (sel == null) { showError("Seleziona un prestito da chiudere."); return; }
         boolean ok = ui.registerReturn(sel.getId(), java.time.LocalDate.now());
-        if (ok) { aggiornaPrestiti(); aggiornaCatalogoLibri(); showInfo("Restituzione registrata."); setStatus("Prestito chiuso."); }
+        if (ok) { showInfo("Restituzione registrata."); setStatus("Prestito chiuso."); }
         else showError("Impossibile registrare la restituzione.");
     }
 
     private List<Book> libriDisponibili() {
-        List<Book> tutti = ui.listBooks();
-        java.util.Map<Long, Long> attivi = ui.listActiveLoans().stream()
-                .filter(p -> p.getLibroId() != null)
-                .collect(java.util.stream.Collectors.groupingBy(Prestito::getLibroId, java.util.stream.Collectors.counting()));
-        return tutti.stream()
-                .filter(b -> b.getId() != null && attivi.getOrDefault(b.getId(), 0L) < b.getCopie())
+        return ui.listBooks().stream()
+                .filter(b -> b.getId() != null && b.getCopieDisponibili() > 0)
                 .toList();
     }
 
@@ -701,13 +782,13 @@ public class ContentManager {
         dlg.showAndWait().ifPresent(bean -> {
             PrestitoController.Esito esito = ui.registerLoan(bean);
             if (esito == PrestitoController.Esito.OK) {
-                aggiornaPrestiti();
-                aggiornaCatalogoLibri();
                 showInfo("Prestito registrato con successo.");
                 setStatus("Prestito registrato.");
                 tabPane.getSelectionModel().select(loansTab);
             } else if (esito == PrestitoController.Esito.UTENTE_INATTIVO) {
                 showError("Impossibile registrare il prestito: utente non attivo.");
+            } else if (esito == PrestitoController.Esito.NESSUNA_COPIA) {
+                showError("Impossibile registrare il prestito: nel frattempo tutte le copie sono andate in prestito.");
             } else {
                 showError("Impossibile registrare il prestito. Verifica il DB.");
             }
@@ -717,9 +798,8 @@ public class ContentManager {
     private void applyLoansPredicate() {
         if (loansFiltered == null) return;
         String filter = cmbLoanFilter != null ? cmbLoanFilter.getSelectionModel().getSelectedItem() : TUTTI;
-        String q = (txtSearchLoans != null && txtSearchLoans.getText() != null) ? txtSearchLoans.getText().trim().toLowerCase() : "";
-        loansFiltered.setPredicate(p -> matchesLoanFilter(p, filter) && matchesLoanQuery(p, q));
-        setStatus(withQuery("Filtro prestiti: " + filter, q));
+        loansFiltered.setPredicate(p -> matchesLoanFilter(p, filter));
+        setStatus(withQuery("Filtro prestiti: " + filter, queryOf(txtSearchLoans)));
     }
 
     private boolean matchesLoanFilter(Prestito p, String filter) {
@@ -729,26 +809,24 @@ public class ContentManager {
         return !isActive;
     }
 
-    private boolean matchesLoanQuery(Prestito p, String q) {
-        if (q.isBlank()) return true;
-        String idStr = p.getId() != null ? String.valueOf(p.getId()) : "";
-        String libro = p.getLibroTitoloSnapshot() != null ? p.getLibroTitoloSnapshot().toLowerCase() : "";
-        String utente = p.getUtente() != null ? p.getUtente().toLowerCase() : "";
-        String dp = p.getDataPrestito() != null ? p.getDataPrestito().toString() : "";
-        String dr = p.getDataRestituzione() != null ? p.getDataRestituzione().toString() : "";
-        return idStr.contains(q) || libro.contains(q) || utente.contains(q) || dp.contains(q) || dr.contains(q);
+    private void showLoansSearch(String q, List<Prestito> rows) {
+        int trovati = q.isBlank() ? loansLoader.showFirstPage(rows) : loansLoader.replaceWith(rows);
+        applyLoansPredicate();
+        setStatus(withQuery("Prestiti trovati: " + trovati + STATUS_RECORD_SUFFIX, q));
     }
 
     private void aggiornaPrestiti() {
-        try {
-            List<Prestito> prestiti = ui.listLoans();
-            if (loansData == null) loansData = FXCollections.observableArrayList();
-            loansData.setAll(prestiti);
-            applyLoansPredicate();
-            setStatus("Prestiti aggiornati: " + prestiti.size() + STATUS_RECORD_SUFFIX);
-        } catch (Exception e) {
-            showError("Errore nell'aggiornamento dei prestiti: " + e.getMessage());
-        }
+        String q = queryOf(txtSearchLoans);
+        setStatus("Caricamento prestiti...");
+        refreshes.submit("prestiti",
+                () -> q.isBlank() ? loansLoader.fetchFirstPage() : ui.searchLoans(q, SEARCH_LIMIT),
+                rows -> {
+                    if (!q.equals(queryOf(txtSearchLoans))) return;
+                    int caricati = q.isBlank() ? loansLoader.showFirstPage(rows) : loansLoader.replaceWith(rows);
+                    applyLoansPredicate();
+                    setStatus(withQuery("Prestiti aggiornati: " + caricati + STATUS_RECORD_SUFFIX, q));
+                },
+                e -> showError("Errore nell'aggiornamento dei prestiti: " + e.getMessage()));
     }
 
     public void mostraMieiPrestiti() {
@@ -792,6 +870,7 @@ public class ContentManager {
         dataRestituzioneCol.setCellValueFactory(new PropertyValueFactory<>("dataRestituzione"));
 
         myLoansTable.getColumns().addAll(idCol, libroCol, dataPrestitoCol, dataRestituzioneCol);
+        myLoansLoader.attach(myLoansTable);
 
         cmbMyLoanFilter.valueProperty().addListener((obs, o, v) -> applyMyLoansPredicate());
         txtSearchMyLoans.textProperty().addListener((obs, o, v) -> applyMyLoansPredicate());
@@ -830,39 +909,20 @@ public class ContentManager {
     }
 
     private void aggiornaMieiPrestiti() {
-        try {
-            Integer tess = SessionContext.getTessera();
-            Long utenteId = null;
-            if (tess != null) {
-                List<Utente> all = ui.listUsers();
-                for (Utente u : all) {
-                    if (u.getTessera() != null && u.getTessera().equals(tess)) {
-                        utenteId = u.getId();
-                        break;
-                    }
-                }
-            }
-
-            if (utenteId == null) {
-                if (myLoansData == null) myLoansData = FXCollections.observableArrayList();
-                myLoansData.clear();
-                applyMyLoansPredicate();
-                return;
-            }
-
-            List<Prestito> all = ui.listLoans();
-            Long finalUtenteId = utenteId;
-            List<Prestito> miei = all.stream()
-                    .filter(p -> p.getUtenteId() != null && p.getUtenteId().equals(finalUtenteId))
-                    .toList();
-
-            if (myLoansData == null) myLoansData = FXCollections.observableArrayList();
-            myLoansData.setAll(miei);
+        Integer tess = SessionContext.getTessera();
+        refreshes.submit("mieiPrestiti", () -> {
+            myLoansUtenteId = utenteIdDi(tess);
+            return myLoansLoader.fetchFirstPage();
+        }, miei -> {
+            int caricati = myLoansLoader.showFirstPage(miei);
             applyMyLoansPredicate();
-            setStatus("I tuoi prestiti aggiornati: " + miei.size() + STATUS_RECORD_SUFFIX);
-        } catch (Exception e) {
-            showError("Errore nell'aggiornamento dei tuoi prestiti: " + e.getMessage());
-        }
+            setStatus("I tuoi prestiti aggiornati: " + caricati + STATUS_RECORD_SUFFIX);
+        }, e -> showError("Errore nell'aggiornamento dei tuoi prestiti: " + e.getMessage()));
+    }
+
+    private Long utenteIdDi(Integer tess) {
+        Utente u = tess != null ? ui.findUserByTessera(tess) : null;
+        return u != null ? u.getId() : null;
     }
 
     public void mostraUtenti() {
@@ -939,6 +999,7 @@ public class ContentManager {
         SortedList<Utente> usersSorted = new SortedList<>(usersFiltered);
         usersSorted.comparatorProperty().bind(usersTable.comparatorProperty());
         usersTable.setItems(usersSorted);
+        usersLoader.attach(usersTable);
     }
 
     private void addBaseUserColumns() {
@@ -985,7 +1046,7 @@ public class ContentManager {
     }
 
     private void attachUserListeners() {
-        txtSearchUsers.textProperty().addListener((obs, o, v) -> applyUsersPredicate());
+        txtSearchUsers.textProperty().addListener((obs, o, v) -> usersSearch.submit(v));
         cmbUserFilter.valueProperty().addListener((obs, o, v) -> applyUsersPredicate());
 
         tabPane.getSelectionModel().selectedItemProperty().addListener((obs, o, n) -> saveCurrentTabPreference(n));
@@ -1002,7 +1063,7 @@ public class ContentManager {
         if (!SessionContext.isBibliotecario()) { showError("Solo il Bibliotecario può creare utenti."); return; }
         AddEditUserDialog dlg = new AddEditUserDialog(null);
         dlg.showAndWait().ifPresent(bean -> {
-            if (ui.addUser(bean)) { aggiornaUtenti(); showInfo("Utente aggiunto."); setStatus("Utente aggiunto."); }
+            if (ui.addUser(bean)) { showInfo("Utente aggiunto."); setStatus("Utente aggiunto."); }
             else showError("Impossibile aggiungere l'utente (dati non validi o tessera duplicata?).");
         });
     }
@@ -1014,7 +1075,7 @@ public class ContentManager {
         AddEditUserDialog dlg = new AddEditUserDialog(sel);
         dlg.showAndWait().ifPresent(bean -> {
             bean.setId(sel.getId());
-            if (ui.updateUser(bean)) { aggiornaUtenti(); showInfo("Utente aggiornato."); setStatus("Utente aggiornato."); }
+            if (ui.updateUser(bean)) { showInfo("Utente aggiornato."); setStatus("Utente aggiornato."); }
             else showError("Impossibile aggiornare l'utente (verifica le date).");
         });
     }
@@ -1023,7 +1084,7 @@ public class ContentManager {
         Utente sel = usersTable.getSelectionModel().getSelectedItem();
         if (sel == null) { showError("Seleziona un utente da eliminare."); return; }
         if (!SessionContext.isBibliotecario() && !SessionContext.isAdmin()) { showError(MSG_NON_AUTORIZZATO); return; }
-        if (ui.deleteUser(sel.getId())) { aggiornaUtenti(); showInfo("Utente eliminato."); setStatus("Utente eliminato."); }
+        if (ui.deleteUser(sel.getId())) { showInfo("Utente eliminato."); setStatus("Utente eliminato."); }
         else showError("Impossibile eliminare l'utente.");
     }
 
@@ -1041,7 +1102,7 @@ public class ContentManager {
             String username = pair.getKey();
             String password = pair.getValue();
             boolean ok = saveCredentials(sel.getId(), existingUsername, username, password);
-            if (ok) { aggiornaUtenti(); showInfo("Credenziali salvate."); setStatus("Credenziali salvate."); }
+            if (ok) { showInfo("Credenziali salvate."); setStatus("Credenziali salvate."); }
             else showError("Impossibile salvare credenziali.");
         });
     }
@@ -1062,14 +1123,8 @@ public class ContentManager {
         if (usersFiltered == null) return;
         String stato = (cmbUserFilter != null && cmbUserFilter.getSelectionModel().getSelectedItem() != null)
                 ? cmbUserFilter.getSelectionModel().getSelectedItem() : TUTTI;
-        String q = (txtSearchUsers != null && txtSearchUsers.getText() != null)
-                ? txtSearchUsers.getText().trim().toLowerCase() : "";
-        usersFiltered.setPredicate(makeUserPredicate(q, stato));
-        setStatus(withQuery("Filtro utenti: " + stato, q));
-    }
-
-    private java.util.function.Predicate<Utente> makeUserPredicate(String q, String statoFilter) {
-        return u -> isStatoOk(u, statoFilter) && matchesUserQuery(u, q);
+        usersFiltered.setPredicate(u -> isStatoOk(u, stato));
+        setStatus(withQuery("Filtro utenti: " + stato, queryOf(txtSearchUsers)));
     }
 
     private boolean isStatoOk(Utente u, String statoFilter) {
@@ -1079,30 +1134,24 @@ public class ContentManager {
         return !attivo;
     }
 
-    private boolean matchesUserQuery(Utente u, String q) {
-        if (q == null || q.isBlank()) return true;
-        String s = q.toLowerCase();
-        String tessera = u.getTessera() != null ? String.valueOf(u.getTessera()) : "";
-        String nome = u.getNome() != null ? u.getNome().toLowerCase() : "";
-        String cognome = u.getCognome() != null ? u.getCognome().toLowerCase() : "";
-        String email = u.getEmail() != null ? u.getEmail().toLowerCase() : "";
-        String tel = u.getTelefono() != null ? u.getTelefono().toLowerCase() : "";
-        String att = u.getDataAttivazione() != null ? u.getDataAttivazione().toString() : "";
-        String scad = u.getDataScadenza() != null ? u.getDataScadenza().toString() : "";
-        String stato = (u.getDataScadenza() != null && u.getDataScadenza().isBefore(LocalDate.now())) ? "inattivo" : "attivo";
-        return tessera.contains(s) || nome.contains(s) || cognome.contains(s) || email.contains(s) || tel.contains(s) || att.contains(s) || scad.contains(s) || stato.contains(s);
+    private void showUsersSearch(String q, List<Utente> rows) {
+        int trovati = q.isBlank() ? usersLoader.showFirstPage(rows) : usersLoader.replaceWith(rows);
+        applyUsersPredicate();
+        setStatus(withQuery("Utenti trovati: " + trovati + STATUS_RECORD_SUFFIX, q));
     }
 
     private void aggiornaUtenti() {
-        try {
-            List<Utente> utenti = ui.listUsers();
-            if (usersData == null) usersData = FXCollections.observableArrayList();
-            usersData.setAll(utenti);
-            applyUsersPredicate();
-            setStatus("Utenti aggiornati: " + utenti.size() + STATUS_RECORD_SUFFIX);
-        } catch (Exception e) {
-            showError("Errore nell'aggiornamento degli utenti: " + e.getMessage());
-        }
+        String q = queryOf(txtSearchUsers);
+        setStatus("Caricamento utenti...");
+        refreshes.submit("utenti",
+                () -> q.isBlank() ? usersLoader.fetchFirstPage() : ui.searchUsers(q, SEARCH_LIMIT),
+                rows -> {
+                    if (!q.equals(queryOf(txtSearchUsers))) return;
+                    int caricati = q.isBlank() ? usersLoader.showFirstPage(rows) : usersLoader.replaceWith(rows);
+                    applyUsersPredicate();
+                    setStatus(withQuery("Utenti aggiornati: " + caricati + STATUS_RECORD_SUFFIX, q));
+                },
+                e -> showError("Errore nell'aggiornamento degli utenti: " + e.getMessage()));
     }
 
     public void mostraProfiloUtente() {
@@ -1156,7 +1205,22 @@ public class ContentManager {
 
     private void buildStatusBar() {
         statusLabel = new Label("");
-        statusBar = new HBox(statusLabel);
+        ProgressIndicator busy = new ProgressIndicator();
+        busy.setPrefSize(14, 14);
+        busy.visibleProperty().bind(refreshes.runningProperty().greaterThan(0));
+        busy.managedProperty().bind(busy.visibleProperty());
+        jobProgress = new ProgressBar();
+        jobProgress.setPrefWidth(160);
+        jobProgress.setVisible(false);
+        jobProgress.managedProperty().bind(jobProgress.visibleProperty());
+        jobStatus = new Label();
+        jobStatus.visibleProperty().bind(jobProgress.visibleProperty());
+        jobStatus.managedProperty().bind(jobProgress.visibleProperty());
+        jobCancel = new Button("Annulla");
+        jobCancel.setVisible(false);
+        jobCancel.managedProperty().bind(jobCancel.visibleProperty());
+        statusBar = new HBox(6, busy, jobProgress, jobStatus, jobCancel, statusLabel);
+        statusBar.setAlignment(Pos.CENTER_LEFT);
         statusBar.setPadding(new Insets(4, 8, 4, 8));
         statusBar.getStyleClass().add("status-bar"); // (puoi stilizzarla nel CSS del tema)
     }
@@ -1250,48 +1314,38 @@ public class ContentManager {
         }
     }
 
+    // le esportazioni leggono dal DAO in streaming, fuori dal thread FX, senza passare dai dati delle tabelle
     private void exportCatalogCsv() {
         File f = chooseCsvSaveFile("Esporta catalogo", "catalogo.csv");
         if (f == null) return;
-        try {
-            CsvExporter.exportBooks(catalogData != null ? catalogData : java.util.Collections.emptyList(), f);
-            showInfo("Catalogo esportato in:\n" + f.getAbsolutePath());
-        } catch (Exception ex) {
-            showError("Errore esportazione catalogo: " + ex.getMessage());
-        }
+        avviaLavoro("Esportazione catalogo", true,
+                lavoro -> CsvExporter.exportBooks(ui::scanBooks, f, lavoro::righe),
+                n -> "Catalogo esportato (" + n + " righe) in:\n" + f.getAbsolutePath());
     }
 
     private void exportLoansCsv() {
         File f = chooseCsvSaveFile("Esporta prestiti", "prestiti.csv");
         if (f == null) return;
-        try {
-            CsvExporter.exportLoans(loansData != null ? loansData : java.util.Collections.emptyList(), f);
-            showInfo("Prestiti esportati in:\n" + f.getAbsolutePath());
-        } catch (Exception ex) {
-            showError("Errore esportazione prestiti: " + ex.getMessage());
-        }
+        avviaLavoro("Esportazione prestiti", true,
+                lavoro -> CsvExporter.exportLoans(ui::scanLoans, f, lavoro::righe),
+                n -> "Prestiti esportati (" + n + " righe) in:\n" + f.getAbsolutePath());
     }
 
     private void exportUsersCsv() {
         File f = chooseCsvSaveFile("Esporta utenti", "utenti.csv");
         if (f == null) return;
-        try {
-            CsvExporter.exportUsers(usersData != null ? usersData : java.util.Collections.emptyList(), f);
-            showInfo("Utenti esportati in:\n" + f.getAbsolutePath());
-        } catch (Exception ex) {
-            showError("Errore esportazione utenti: " + ex.getMessage());
-        }
+        avviaLavoro("Esportazione utenti", true,
+                lavoro -> CsvExporter.exportUsers(ui::scanUsers, f, lavoro::righe),
+                n -> "Utenti esportati (" + n + " righe) in:\n" + f.getAbsolutePath());
     }
 
     private void exportMyLoansCsv() {
         File f = chooseCsvSaveFile("Esporta i miei prestiti", "miei_prestiti.csv");
         if (f == null) return;
-        try {
-            CsvExporter.exportLoans(myLoansData != null ? myLoansData : java.util.Collections.emptyList(), f);
-            showInfo("I tuoi prestiti sono stati esportati in:\n" + f.getAbsolutePath());
-        } catch (Exception ex) {
-            showError("Errore esportazione dei tuoi prestiti: " + ex.getMessage());
-        }
+        Integer tess = SessionContext.getTessera();
+        avviaLavoro("Esportazione dei tuoi prestiti", true,
+                lavoro -> CsvExporter.exportLoans(azione -> ui.scanUserLoans(utenteIdDi(tess), azione), f, lavoro::righe),
+                n -> "I tuoi prestiti (" + n + " righe) sono stati esportati in:\n" + f.getAbsolutePath());
     }
 
     private void importCatalogCsv() {
@@ -1299,32 +1353,10 @@ public class ContentManager {
         File f = chooseCsvOpenFile("Importa catalogo (CSV)");
         if (f == null) return;
 
-        int ok = 0;
-        int fail = 0;
-
-        try {
-            java.util.List<it.biblioteca.bean.BookBean> beans = it.biblioteca.util.csv.CsvImporter.importBooks(f);
-            int[] counts = processImportBooks(beans);
-            ok = counts[0];
-            fail = counts[1];
-            aggiornaCatalogoLibri();
-            showInfo("Import catalogo completato.\nSuccessi: " + ok + "\nFalliti: " + fail);
-        } catch (Exception ex) {
-            showError("Errore import catalogo: " + ex.getMessage());
-        }
-    }
-
-    private int[] processImportBooks(java.util.List<it.biblioteca.bean.BookBean> beans) {
-        int ok = 0;
-        int fail = 0;
-        for (it.biblioteca.bean.BookBean b : beans) {
-            try {
-                if (ui.addBook(b)) ok++; else fail++;
-            } catch (Exception _) {
-                fail++;
-            }
-        }
-        return new int[]{ok, fail};
+        // la tabella si ricarica una volta sola, sull'evento IMPORTED finale
+        this.<EsitoBatch>avviaLavoro("Import catalogo", false,
+                lavoro -> ui.importBooks(CsvImportPipeline.books(f, lavoro::avanzamento)),
+                esito -> "Import catalogo completato.\n" + riepilogoImport(esito));
     }
 
     private void importUsersCsv() {
@@ -1332,32 +1364,91 @@ public class ContentManager {
         File f = chooseCsvOpenFile("Importa utenti (CSV)");
         if (f == null) return;
 
-        int ok = 0;
-        int fail = 0;
+        this.<EsitoBatch>avviaLavoro("Import utenti", false,
+                lavoro -> ui.importUsers(CsvImportPipeline.users(f, lavoro::avanzamento)),
+                esito -> "Import utenti completato.\n" + riepilogoImport(esito));
+    }
 
-        try {
-            java.util.List<it.biblioteca.bean.UtenteBean> beans = it.biblioteca.util.csv.CsvImporter.importUsers(f);
-            int[] counts = processImportUsers(beans);
-            ok = counts[0];
-            fail = counts[1];
-            aggiornaUtenti();
-            showInfo("Import utenti completato.\nSuccessi: " + ok + "\nFalliti: " + fail);
-        } catch (Exception ex) {
-            showError("Errore import utenti: " + ex.getMessage());
+    /** Corpo di un import/export in background, con accesso all'avanzamento del {@link Lavoro} che lo esegue. */
+    @FunctionalInterface
+    private interface Corpo<R> {
+        R esegui(Lavoro<R> lavoro) throws Exception;
+    }
+
+    private static final class Lavoro<R> extends Task<R> {
+        private final String titolo;
+        private final Corpo<R> corpo;
+
+        Lavoro(String titolo, Corpo<R> corpo) {
+            this.titolo = titolo;
+            this.corpo = corpo;
+        }
+
+        @Override
+        protected R call() throws Exception {
+            return corpo.esegui(this);
+        }
+
+        void avanzamento(CsvImportPipeline.Avanzamento a) {
+            updateProgress(a.byteLetti(), a.byteTotali());
+            updateMessage(titolo + ": " + a.righeScritte() + " righe");
+        }
+
+        /** Avanzamento senza totale noto; restituisce false se l'utente ha annullato. */
+        boolean righe(long scritte) {
+            updateMessage(titolo + ": " + scritte + " righe");
+            return !isCancelled();
         }
     }
 
-    private int[] processImportUsers(java.util.List<it.biblioteca.bean.UtenteBean> beans) {
-        int ok = 0;
-        int fail = 0;
-        for (it.biblioteca.bean.UtenteBean u : beans) {
-            try {
-                if (ui.addUser(u)) ok++; else fail++;
-            } catch (Exception _) {
-                fail++;
-            }
+    /**
+     * Esegue un import o un export fuori dal thread FX, con l'avanzamento nella barra di stato; uno alla volta.
+     * L'annullamento è cooperativo (nessun interrupt), così il lavoro si ferma tra una riga e l'altra e non
+     * a metà di una scrittura su file o database.
+     */
+    private <R> void avviaLavoro(String titolo, boolean annullabile, Corpo<R> corpo,
+                                 java.util.function.Function<R, String> riepilogo) {
+        if (jobProgress.isVisible()) {
+            showError(titolo + ": c'è già un'operazione in corso.");
+            return;
         }
-        return new int[]{ok, fail};
+        Lavoro<R> task = new Lavoro<>(titolo, corpo);
+        jobProgress.progressProperty().bind(task.progressProperty());
+        jobProgress.setVisible(true);
+        jobStatus.textProperty().bind(task.messageProperty());
+        jobCancel.setVisible(annullabile);
+        jobCancel.setOnAction(e -> task.cancel(false));
+        task.setOnSucceeded(e -> {
+            fineLavoro();
+            showInfo(riepilogo.apply(task.getValue()));
+        });
+        task.setOnFailed(e -> {
+            fineLavoro();
+            showError("Errore " + titolo.toLowerCase() + ": " + task.getException().getMessage());
+        });
+        task.setOnCancelled(e -> {
+            fineLavoro();
+            setStatus(titolo + " annullata.");
+        });
+        background.execute(task);
+    }
+
+    private void fineLavoro() {
+        jobStatus.textProperty().unbind();
+        jobProgress.progressProperty().unbind();
+        jobProgress.setVisible(false);
+        jobCancel.setVisible(false);
+        jobCancel.setOnAction(null);
+    }
+
+    private static String riepilogoImport(EsitoBatch esito) {
+        StringBuilder sb = new StringBuilder()
+                .append("Successi: ").append(esito.inseriti())
+                .append("\nFalliti: ").append(esito.falliti());
+        esito.errori().entrySet().stream().limit(MAX_ERRORI_IMPORT).forEach(e ->
+                sb.append("\n  riga ").append(e.getKey()).append(": ").append(e.getValue()));
+        if (esito.falliti() > MAX_ERRORI_IMPORT) sb.append("\n  …");
+        return sb.toString();
     }
 
     private File chooseCsvSaveFile(String title, String defaultName) {
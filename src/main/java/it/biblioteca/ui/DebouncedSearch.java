@@ -0,0 +1,85 @@
+package it.biblioteca.ui;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.util.Duration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Ricerca "mentre scrivi": raggruppa i tasti con un ritardo, esegue la query su un executor
+ * in background e pubblica sul thread FX solo il risultato dell'ultima richiesta.
+ * Va usata dal thread FX.
+ */
+public class DebouncedSearch<R> {
+
+    private final PauseTransition pause;
+    private final ExecutorService executor;
+    private final Function<String, R> query;
+    private final BiConsumer<String, R> onResult;
+    private final Consumer<Throwable> onError;
+
+    private String pending = "";
+    private long generation;
+    private Future<?> running;
+
+    public DebouncedSearch(Duration delay, ExecutorService executor, Function<String, R> query,
+                           BiConsumer<String, R> onResult, Consumer<Throwable> onError) {
+        this.pause = new PauseTransition(delay);
+        this.executor = executor;
+        this.query = query;
+        this.onResult = onResult;
+        this.onError = onError;
+        pause.setOnFinished(e -> start());
+    }
+
+    /** Registra un nuovo testo: annulla la query in corso e riparte il ritardo. */
+    public void submit(String text) {
+        pending = text == null ? "" : text.trim();
+        cancelRunning();
+        pause.playFromStart();
+    }
+
+    /** Esegue subito la ricerca sul testo indicato, senza attendere il ritardo. */
+    public void runNow(String text) {
+        pending = text == null ? "" : text.trim();
+        pause.stop();
+        cancelRunning();
+        start();
+    }
+
+    public void cancel() {
+        pause.stop();
+        cancelRunning();
+    }
+
+    private void start() {
+        long gen = generation;
+        String q = pending;
+        running = executor.submit(() -> {
+            try {
+                R result = query.apply(q);
+                Platform.runLater(() -> {
+                    if (gen == generation) onResult.accept(q, result);
+                });
+            } catch (RuntimeException e) {
+                Platform.runLater(() -> {
+                    if (gen == generation) onError.accept(e);
+                });
+            }
+        });
+    }
+
+    // Il risultato di una query superata viene scartato anche se il DAO ignora l'interruzione.
+    private void cancelRunning() {
+        generation++;
+        if (running != null) {
+            running.cancel(true);
+            running = null;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package it.biblioteca.ui;
+
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.scene.control.TableView;
+import javafx.scene.control.skin.VirtualFlow;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Riempie una {@link ObservableList} a pagine (keyset) e carica la pagina successiva
+ * quando l'utente scorre la tabella collegata verso il fondo. Le letture avvengono sull'executor indicato.
+ * Le singole modifiche si applicano con {@link #upsert}, {@link #replace} e {@link #remove}, senza ricaricare.
+ */
+public class PagedLoader<T> {
+
+    @FunctionalInterface
+    public interface PageFetcher<T> {
+        List<T> fetch(T after, int limit);
+    }
+
+    private static final double SOGLIA_SCROLL = 0.9;
+
+    private final ObservableList<T> target;
+    private final int pageSize;
+    private final PageFetcher<T> fetcher;
+    private final Function<T, Object> chiave;
+    private final Executor executor;
+    private final Executor fx;
+
+    // Stato toccato solo dal thread FX.
+    private T last;
+    private boolean exhausted;
+    private boolean loading;
+    private long generation;
+    // Chiavi delle righe già in lista toccate dopo l'ultimo caricamento (sostituite, aggiunte, tolte):
+    // se ricompaiono in una pagina successiva non si duplicano e non ritornano.
+    private final Set<Object> modificate = new HashSet<>();
+
+    public PagedLoader(ObservableList<T> target, int pageSize, PageFetcher<T> fetcher,
+                       Function<T, Object> chiave, Executor executor) {
+        this(target, pageSize, fetcher, chiave, executor, Platform::runLater);
+    }
+
+    // fx è dove si applicano le pagine lette: il thread FX, o il thread del test
+    PagedLoader(ObservableList<T> target, int pageSize, PageFetcher<T> fetcher,
+                Function<T, Object> chiave, Executor executor, Executor fx) {
+        this.target = target;
+        this.pageSize = pageSize;
+        this.fetcher = fetcher;
+        this.chiave = chiave;
+        this.executor = executor;
+        this.fx = fx;
+    }
+
+    /** Legge la prima pagina senza toccare la lista: va chiamato fuori dal thread FX. */
+    public List<T> fetchFirstPage() {
+        return fetcher.fetch(null, pageSize);
+    }
+
+    /** Riparte da una prima pagina già letta (vedi {@link #fetchFirstPage()}). */
+    public int showFirstPage(List<T> first) {
+        generation++;
+        loading = false;
+        exhausted = first.size() < pageSize;
+        last = first.isEmpty() ? null : first.getLast();
+        modificate.clear();
+        target.setAll(first);
+        return first.size();
+    }
+
+    /** Mostra un risultato già completo (es. una ricerca): non ci sono altre pagine da caricare. */
+    public int replaceWith(List<T> items) {
+        generation++;
+        loading = false;
+        last = null;
+        exhausted = true;
+        modificate.clear();
+        target.setAll(items);
+        return items.size();
+    }
+
+    /** Sostituisce la riga con la stessa chiave o, se manca, la aggiunge: in testa con {@code atTop}, altrimenti in fondo. */
+    public void upsert(T item, boolean atTop) {
+        if (replace(item)) return;
+        modificate.add(chiave.apply(item));
+        if (atTop) target.add(0, item);
+        else target.add(item);
+    }
+
+    /**
+     * Sostituisce la riga con la stessa chiave. Una riga non ancora caricata resta fuori dalla lista
+     * e arriverà, già aggiornata, con la sua pagina.
+     */
+    public boolean replace(T item) {
+        Object k = chiave.apply(item);
+        int i = indexOf(k);
+        if (i < 0) return false;
+        modificate.add(k);
+        target.set(i, item);
+        return true;
+    }
+
+    public void remove(Object key) {
+        int i = indexOf(key);
+        if (i < 0) return;
+        modificate.add(key);
+        target.remove(i);
+    }
+
+    /** Chiede in background la pagina successiva; una richiesta già in corso non viene duplicata. */
+    public void loadNextPage() {
+        if (exhausted || loading) return;
+        loading = true;
+        long gen = generation;
+        T after = last;
+        executor.execute(() -> {
+            try {
+                List<T> page = fetcher.fetch(after, pageSize);
+                fx.execute(() -> append(gen, page));
+            } catch (RuntimeException e) {
+                fx.execute(() -> {
+                    if (gen == generation) loading = false;
+                });
+            }
+        });
+    }
+
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    public void attach(TableView<?> table) {
+        table.skinProperty().addListener((obs, o, skin) -> Platform.runLater(() -> hookScroll(table)));
+        // Se un filtro lascia visibili poche righe continua a caricare finché la vista non è piena.
+        table.getItems().addListener((ListChangeListener<Object>) c -> {
+            if (!exhausted && table.getItems().size() < pageSize / 2) {
+                Platform.runLater(this::loadNextPage);
+            }
+        });
+    }
+
+    private void hookScroll(TableView<?> table) {
+        if (table.lookup(".virtual-flow") instanceof VirtualFlow<?> flow) {
+            flow.positionProperty().addListener((obs, o, pos) -> {
+                if (pos.doubleValue() >= SOGLIA_SCROLL) loadNextPage();
+            });
+        }
+    }
+
+    // Una pagina richiesta prima di un reload o di una ricerca non va più accodata.
+    private void append(long gen, List<T> page) {
+        if (gen != generation) return;
+        loading = false;
+        if (page.size() < pageSize) exhausted = true;
+        if (!page.isEmpty()) {
+            last = page.getLast();
+            target.addAll(modificate.isEmpty() ? page
+                    : page.stream().filter(t -> !modificate.contains(chiave.apply(t))).toList());
+        }
+    }
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < target.size(); i++) {
+            if (key.equals(chiave.apply(target.get(i)))) return i;
+        }
+        return -1;
+    }
+}
@@ -6,6 +6,8 @@ import it.biblioteca.bean.UtenteBean;
 import it.biblioteca.controller.BookController;
 import it.biblioteca.controller.PrestitoController;
 import it.biblioteca.controller.UtenteController;
+import it.biblioteca.dao.EsitoBatch;
+import it.biblioteca.dao.Ordinamento;
 import it.biblioteca.entity.Book;
 import it.biblioteca.entity.Prestito;
 import it.biblioteca.entity.Utente;
@@ -13,7 +15,9 @@ import it.biblioteca.service.AppContext;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Predicate;
 
 public class UiFacade {
 
@@ -41,10 +45,26 @@ public class UiFacade {
         return bookController.trovaTutti();
     }
 
+    public void scanBooks(Predicate<Book> action) {
+        bookController.scorriTutti(action);
+    }
+
+    public List<Book> listBooksPage(Book after, int limit) {
+        return bookController.trovaPagina(after, limit, Ordinamento.ASC);
+    }
+
+    public List<Book> searchBooks(String query, int limit) {
+        return bookController.cerca(query, limit);
+    }
+
     public boolean addBook(BookBean bean) {
         return bookController.aggiungiLibro(bean);
     }
 
+    public EsitoBatch importBooks(EsitoBatch.Sorgente<BookBean> sorgente) {
+        return bookController.importaLibri(sorgente);
+    }
+
     public boolean updateBook(BookBean bean) {
         return bookController.aggiornaLibro(bean);
     }
@@ -57,10 +77,34 @@ public class UiFacade {
         return prestitoController.trovaTutti();
     }
 
+    public void scanLoans(Predicate<Prestito> action) {
+        prestitoController.scorriTutti(action);
+    }
+
+    public List<Prestito> listLoansPage(Prestito after, int limit) {
+        return prestitoController.trovaPagina(after, limit, Ordinamento.DESC);
+    }
+
+    public List<Prestito> searchLoans(String query, int limit) {
+        return prestitoController.cerca(query, limit);
+    }
+
+    public List<Prestito> listUserLoansPage(Long utenteId, Prestito after, int limit) {
+        return prestitoController.trovaPerUtente(utenteId, after, limit);
+    }
+
+    public void scanUserLoans(Long utenteId, Predicate<Prestito> action) {
+        prestitoController.scorriPerUtente(utenteId, action);
+    }
+
     public List<Prestito> listActiveLoans() {
         return prestitoController.trovaPrestitiAttivi();
     }
 
+    public Map<Long, Integer> activeLoanCountsByBook() {
+        return prestitoController.contaPrestitiAttiviPerLibro();
+    }
+
     public PrestitoController.Esito registerLoan(PrestitoBean bean) {
         return prestitoController.registraPrestito(bean);
     }
@@ -73,10 +117,30 @@ public class UiFacade {
         return utenteController.trovaTutti();
     }
 
+    public void scanUsers(Predicate<Utente> action) {
+        utenteController.scorriTutti(action);
+    }
+
+    public List<Utente> listUsersPage(Utente after, int limit) {
+        return utenteController.trovaPagina(after, limit, Ordinamento.ASC);
+    }
+
+    public List<Utente> searchUsers(String query, int limit) {
+        return utenteController.cerca(query, limit);
+    }
+
+    public Utente findUserByTessera(Integer tessera) {
+        return utenteController.trovaPerTessera(tessera);
+    }
+
     public boolean addUser(UtenteBean bean) {
         return utenteController.aggiungi(bean);
     }
 
+    public EsitoBatch importUsers(EsitoBatch.Sorgente<UtenteBean> sorgente) {
+        return utenteController.importa(sorgente);
+    }
+
     public boolean updateUser(UtenteBean bean) {
         return utenteController.aggiorna(bean);
     }
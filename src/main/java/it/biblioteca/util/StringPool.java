@@ -0,0 +1,93 @@
+package it.biblioteca.util;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deduplica delle stringhe che si ripetono riga dopo riga (autori, editori, snapshot dei prestiti).
+ * <p>
+ * È una cache a indirizzamento diretto di dimensione fissa: ogni stringa ha un solo slot possibile
+ * (dato dal suo hash) e una collisione sostituisce semplicemente la voce precedente. Gli slot tengono
+ * riferimenti deboli, quindi il pool non trattiene stringhe che nessuna entità usa più; la memoria
+ * occupata è limitata dal numero di slot. Nessun lock: una corsa fra due thread costa al massimo una
+ * deduplica mancata.
+ */
+public final class StringPool {
+
+    private static final int SLOT_DEFAULT = 1 << 14;
+    private static final int LUNGHEZZA_MASSIMA = 256;
+
+    private static class Holder {
+        private static final StringPool INSTANCE = new StringPool(SLOT_DEFAULT);
+    }
+
+    public static StringPool getDefault() {
+        return Holder.INSTANCE;
+    }
+
+    private final AtomicReferenceArray<WeakReference<String>> slots;
+    private final int mask;
+    private final LongAdder richieste = new LongAdder();
+    private final LongAdder riusate = new LongAdder();
+    private final LongAdder byteRisparmiati = new LongAdder();
+
+    /** @param slot numero di voci, arrotondato alla potenza di due successiva */
+    public StringPool(int slot) {
+        int n = 16;
+        while (n < slot) n <<= 1;
+        this.slots = new AtomicReferenceArray<>(n);
+        this.mask = n - 1;
+    }
+
+    /** Restituisce un'istanza già vista uguale a {@code s}, oppure {@code s} stessa che diventa quella condivisa. */
+    public String dedup(String s) {
+        if (s == null || s.isEmpty() || s.length() > LUNGHEZZA_MASSIMA) return s;
+        richieste.increment();
+
+        int h = s.hashCode();
+        int i = (h ^ (h >>> 16)) & mask;
+        WeakReference<String> ref = slots.get(i);
+        String esistente = ref != null ? ref.get() : null;
+        if (esistente != null && esistente.equals(s)) {
+            if (esistente != s) {
+                riusate.increment();
+                byteRisparmiati.add(stimaByte(s));
+            }
+            return esistente;
+        }
+        slots.set(i, new WeakReference<>(s));
+        return s;
+    }
+
+    public long richieste() {
+        return richieste.sum();
+    }
+
+    public long riusate() {
+        return riusate.sum();
+    }
+
+    /** Stima dei byte di heap non allocati in modo permanente grazie alle stringhe riusate. */
+    public long byteRisparmiati() {
+        return byteRisparmiati.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "StringPool[" + slots.length() + " slot, richieste=" + richieste() + ", riusate=" + riusate()
+                + ", byte risparmiati=" + byteRisparmiati() + "]";
+    }
+
+    // header String (~24 byte) + header array (~16) + contenuto Latin-1/UTF-16, allineato a 8
+    private static long stimaByte(String s) {
+        int perCarattere = 1;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xFF) {
+                perCarattere = 2;
+                break;
+            }
+        }
+        return 24 + ((16L + (long) s.length() * perCarattere + 7) & ~7L);
+    }
+}
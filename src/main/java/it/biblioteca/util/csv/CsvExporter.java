@@ -8,66 +8,151 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.FileOutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 public final class CsvExporter {
 
+    private static final String[] HEADER_BOOKS = { "ID", "ISBN", "Titolo", "Autore", "Pubblicazione", "CasaEditrice", "Copie" };
+    private static final String[] HEADER_LOANS = { "ID", "Libro", "Utente", "DataPrestito", "DataRestituzione", "LibroId", "UtenteId" };
+    private static final String[] HEADER_USERS = { "ID", "Tessera", "Nome", "Cognome", "Email", "Telefono", "DataAttivazione", "DataScadenza" };
+
+    /** Ogni quante righe scritte si chiama {@link Avanzamento#continua}. */
+    static final int OGNI = 1000;
+
+    /**
+     * Sorgente delle righe da esportare, passate una alla volta senza lista intermedia (es. {@code dao::scorri});
+     * smette di produrre appena l'azione restituisce {@code false}.
+     */
+    @FunctionalInterface
+    public interface Righe<T> {
+        void scorri(Predicate<T> azione);
+    }
+
+    /** Notificato ogni {@value #OGNI} righe, dal thread che esporta; restituendo {@code false} si annulla. */
+    @FunctionalInterface
+    public interface Avanzamento {
+        boolean continua(long righeScritte);
+    }
+
     private CsvExporter() {}
 
     public static void exportBooks(List<Book> books, java.io.File file) throws IOException {
-        try (BufferedWriter w = writer(file)) {
-            String[] header = { "ID", "ISBN", "Titolo", "Autore", "Pubblicazione", "CasaEditrice", "Copie" };
-            writeLine(w, header);
-            for (Book b : books) {
-                String id = b.getId() != null ? String.valueOf(b.getId()) : "";
-                String isbn = nz(b.getIsbn());
-                String titolo = nz(b.getTitolo());
-                String autore = nz(b.getAutore());
-                String pub = b.getDataPubblicazione() != null ? b.getDataPubblicazione().toString() : "";
-                String editore = nz(b.getCasaEditrice());
-                String copie = String.valueOf(b.getCopie());
-                writeLine(w, id, isbn, titolo, autore, pub, editore, copie);
-            }
-        }
+        exportBooks(daLista(books), file, null);
     }
 
     public static void exportLoans(List<Prestito> loans, java.io.File file) throws IOException {
-        try (BufferedWriter w = writer(file)) {
-            String[] header = { "ID", "Libro", "Utente", "DataPrestito", "DataRestituzione", "LibroId", "UtenteId" };
-            writeLine(w, header);
-            for (Prestito p : loans) {
-                String id = p.getId() != null ? String.valueOf(p.getId()) : "";
-                String libro = nz(p.getLibroTitoloSnapshot());
-                String utente = nz(p.getUtente());
-                String dp = toStr(p.getDataPrestito());
-                String dr = toStr(p.getDataRestituzione());
-                String libroId = p.getLibroId() != null ? String.valueOf(p.getLibroId()) : "";
-                String utenteId = p.getUtenteId() != null ? String.valueOf(p.getUtenteId()) : "";
-                writeLine(w, id, libro, utente, dp, dr, libroId, utenteId);
-            }
-        }
+        exportLoans(daLista(loans), file, null);
     }
 
     public static void exportUsers(List<Utente> users, java.io.File file) throws IOException {
-        try (BufferedWriter w = writer(file)) {
-            String[] header = { "ID", "Tessera", "Nome", "Cognome", "Email", "Telefono", "DataAttivazione", "DataScadenza" };
-            writeLine(w, header);
-            for (Utente u : users) {
-                String id = u.getId() != null ? String.valueOf(u.getId()) : "";
-                String tess = u.getTessera() != null ? String.valueOf(u.getTessera()) : "";
-                String nome = nz(u.getNome());
-                String cognome = nz(u.getCognome());
-                String email = nz(u.getEmail());
-                String tel = nz(u.getTelefono());
-                String da = toStr(u.getDataAttivazione());
-                String ds = toStr(u.getDataScadenza());
-                writeLine(w, id, tess, nome, cognome, email, tel, da, ds);
+        exportUsers(daLista(users), file, null);
+    }
+
+    /**
+     * Esporta in streaming. Il file viene scritto accanto alla destinazione e la sostituisce solo a
+     * esportazione completa: se fallisce o viene annullata la destinazione resta com'era.
+     *
+     * @return le righe scritte
+     * @throws CancellationException se {@code avanzamento} ha chiesto di interrompere
+     */
+    public static long exportBooks(Righe<Book> books, java.io.File file, Avanzamento avanzamento) throws IOException {
+        return esporta(file, HEADER_BOOKS, books, avanzamento, b -> new String[] {
+                b.getId() != null ? String.valueOf(b.getId()) : "",
+                nz(b.getIsbn()),
+                nz(b.getTitolo()),
+                nz(b.getAutore()),
+                b.getDataPubblicazione() != null ? b.getDataPubblicazione().toString() : "",
+                nz(b.getCasaEditrice()),
+                String.valueOf(b.getCopie())
+        });
+    }
+
+    public static long exportLoans(Righe<Prestito> loans, java.io.File file, Avanzamento avanzamento) throws IOException {
+        return esporta(file, HEADER_LOANS, loans, avanzamento, p -> new String[] {
+                p.getId() != null ? String.valueOf(p.getId()) : "",
+                nz(p.getLibroTitoloSnapshot()),
+                nz(p.getUtente()),
+                toStr(p.getDataPrestito()),
+                toStr(p.getDataRestituzione()),
+                p.getLibroId() != null ? String.valueOf(p.getLibroId()) : "",
+                p.getUtenteId() != null ? String.valueOf(p.getUtenteId()) : ""
+        });
+    }
+
+    public static long exportUsers(Righe<Utente> users, java.io.File file, Avanzamento avanzamento) throws IOException {
+        return esporta(file, HEADER_USERS, users, avanzamento, u -> new String[] {
+                u.getId() != null ? String.valueOf(u.getId()) : "",
+                u.getTessera() != null ? String.valueOf(u.getTessera()) : "",
+                nz(u.getNome()),
+                nz(u.getCognome()),
+                nz(u.getEmail()),
+                nz(u.getTelefono()),
+                toStr(u.getDataAttivazione()),
+                toStr(u.getDataScadenza())
+        });
+    }
+
+    private static <T> long esporta(java.io.File file, String[] header, Righe<T> righe, Avanzamento avanzamento,
+                                    Function<T, String[]> colonne) throws IOException {
+        Path dest = file.toPath().toAbsolutePath();
+        Path tmp = dest.resolveSibling(dest.getFileName() + ".tmp");
+        long[] scritte = {0};
+        boolean[] annullata = {false};
+        boolean completata = false;
+        try {
+            try (BufferedWriter w = writer(tmp.toFile())) {
+                writeLine(w, header);
+                righe.scorri(t -> {
+                    try {
+                        writeLine(w, colonne.apply(t));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    if (++scritte[0] % OGNI == 0 && avanzamento != null && !avanzamento.continua(scritte[0])) {
+                        annullata[0] = true;
+                        return false;
+                    }
+                    return true;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
             }
+            if (annullata[0]) throw new CancellationException("Esportazione annullata dopo " + scritte[0] + " righe");
+            if (avanzamento != null) avanzamento.continua(scritte[0]);
+            sostituisci(tmp, dest);
+            completata = true;
+            return scritte[0];
+        } finally {
+            if (!completata) Files.deleteIfExists(tmp);
         }
     }
 
+    private static void sostituisci(Path tmp, Path dest) throws IOException {
+        try {
+            Files.move(tmp, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException _) {
+            Files.move(tmp, dest, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static <T> Righe<T> daLista(List<T> lista) {
+        return azione -> {
+            for (T t : lista) {
+                if (!azione.test(t)) return;
+            }
+        };
+    }
+
     private static BufferedWriter writer(java.io.File file) throws IOException {
         return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
     }
@@ -76,20 +161,24 @@ public final class CsvExporter {
 
     private static String toStr(LocalDate d) { return d != null ? d.toString() : ""; }
 
+    // direttamente sul BufferedWriter: niente stringa intermedia per ogni riga
     private static void writeLine(BufferedWriter w, String... values) throws IOException {
-        StringBuilder sb = new StringBuilder();
         for (int i = 0; i < values.length; i++) {
-            if (i > 0) sb.append(';');
-            sb.append(escape(values[i]));
+            if (i > 0) w.write(';');
+            w.write(escape(values[i]));
         }
-        sb.append('\n');
-        w.write(sb.toString());
+        w.write('\n');
     }
 
+    // un solo passaggio sulla stringa; nel caso comune (nessun carattere speciale) la si restituisce così com'è
     private static String escape(String s) {
         if (s == null) return "";
-        boolean needQuotes = s.contains(";") || s.contains(",") || s.contains("\"") || s.contains("\n") || s.contains("\r");
-        String t = s.replace("\"", "\"\"");
-        return needQuotes ? "\"" + t + "\"" : t;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == ';' || c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return "\"" + s.replace("\"", "\"\"") + "\"";
+            }
+        }
+        return s;
     }
 }
\ No newline at end of file
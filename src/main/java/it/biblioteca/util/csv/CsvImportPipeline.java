@@ -0,0 +1,201 @@
+package it.biblioteca.util.csv;
+
+import it.biblioteca.bean.BookBean;
+import it.biblioteca.bean.UtenteBean;
+import it.biblioteca.dao.EsitoBatch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Import CSV in tre stadi per i file molto grandi:
+ * <ol>
+ *   <li>un thread legge il file e lo taglia in blocchi di record interi (mai a metà di un campo tra virgolette);</li>
+ *   <li>i blocchi vengono analizzati e validati in parallelo su un {@link ForkJoinPool};</li>
+ *   <li>il thread chiamante riceve i blocchi nell'ordine del file e li passa, uno per volta, a chi scrive.</li>
+ * </ol>
+ * La coda tra lettura e scrittura è limitata: se la scrittura resta indietro la lettura si ferma, quindi in
+ * memoria ci sono al più qualche blocco per core. Gli errori (validazione e scrittura) sono indicati con la
+ * riga del file su cui inizia il record.
+ */
+public final class CsvImportPipeline {
+
+    static final int RECORD_PER_BLOCCO = 2000;
+
+    /** Stato di avanzamento, notificato dopo ogni blocco scritto (sul thread che scrive). */
+    public record Avanzamento(long righeScritte, long byteLetti, long byteTotali) {
+        public double frazione() {
+            return byteTotali > 0 ? Math.min(1.0, (double) byteLetti / byteTotali) : 1.0;
+        }
+    }
+
+    @FunctionalInterface
+    interface Mapper<T> {
+        T map(String[] record, Map<String, Integer> header, List<String> errori);
+    }
+
+    private record Blocco<T>(List<T> righe, int[] numeriRiga, SortedMap<Integer, String> scarti) {
+    }
+
+    private record InCoda<T>(ForkJoinTask<Blocco<T>> task, long byteLetti) {
+    }
+
+    private CsvImportPipeline() {}
+
+    public static EsitoBatch.Sorgente<BookBean> books(File file, Consumer<Avanzamento> progresso) {
+        return books(file, RECORD_PER_BLOCCO, progresso);
+    }
+
+    /** Come {@link #books(File, Consumer)}, con blocchi di {@code recordPerBlocco} record passati a chi scrive. */
+    public static EsitoBatch.Sorgente<BookBean> books(File file, int recordPerBlocco, Consumer<Avanzamento> progresso) {
+        verificaBlocco(recordPerBlocco);
+        return scrivi -> esegui(file, CsvImporter::toBook, recordPerBlocco, paralleli(), scrivi, progresso);
+    }
+
+    public static EsitoBatch.Sorgente<UtenteBean> users(File file, Consumer<Avanzamento> progresso) {
+        return users(file, RECORD_PER_BLOCCO, progresso);
+    }
+
+    /** Come {@link #users(File, Consumer)}, con blocchi di {@code recordPerBlocco} record passati a chi scrive. */
+    public static EsitoBatch.Sorgente<UtenteBean> users(File file, int recordPerBlocco, Consumer<Avanzamento> progresso) {
+        verificaBlocco(recordPerBlocco);
+        return scrivi -> esegui(file, CsvImporter::toUtente, recordPerBlocco, paralleli(), scrivi, progresso);
+    }
+
+    static <T> EsitoBatch esegui(File file, Mapper<T> mapper, int recordPerBlocco, int paralleli,
+                                 Function<List<T>, EsitoBatch> scrivi, Consumer<Avanzamento> progresso) {
+        try {
+            return pipeline(file, mapper, recordPerBlocco, paralleli, scrivi, progresso, file.length());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Errore import CSV: interrotto", e);
+        }
+    }
+
+    private static <T> EsitoBatch pipeline(File file, Mapper<T> mapper, int recordPerBlocco, int paralleli,
+                                           Function<List<T>, EsitoBatch> scrivi, Consumer<Avanzamento> progresso,
+                                           long totale) throws InterruptedException {
+        BlockingQueue<InCoda<T>> coda = new ArrayBlockingQueue<>(2 * paralleli);
+        Exception[] erroreLettura = new Exception[1];
+        SortedMap<Integer, String> errori = new TreeMap<>();
+        int inseriti = 0;
+        long righe = 0;
+
+        try (ForkJoinPool pool = new ForkJoinPool(paralleli)) {
+            Thread lettore = Thread.ofVirtual().name("csv-import-lettore").start(() -> {
+                try {
+                    leggi(file, mapper, recordPerBlocco, pool, coda);
+                } catch (InterruptedException _) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException | RuntimeException e) {
+                    erroreLettura[0] = e;
+                } finally {
+                    fine(coda);
+                }
+            });
+            try {
+                for (InCoda<T> c = coda.take(); c.task() != null; c = coda.take()) {
+                    Blocco<T> b = c.task().join();
+                    errori.putAll(b.scarti());
+                    if (!b.righe().isEmpty()) {
+                        EsitoBatch esito = scrivi.apply(b.righe());
+                        inseriti += esito.inseriti();
+                        esito.errori().forEach((i, msg) -> errori.put(b.numeriRiga()[i], msg));
+                    }
+                    righe += b.righe().size() + b.scarti().size();
+                    if (progresso != null) progresso.accept(new Avanzamento(righe, c.byteLetti(), totale));
+                }
+            } finally {
+                // se la scrittura fallisce il lettore può essere fermo su una coda piena: lo si sblocca e
+                // lo si aspetta, così il file è chiuso e il pool non riceve altri blocchi
+                lettore.interrupt();
+                coda.clear();
+                lettore.join();
+            }
+        }
+        if (erroreLettura[0] instanceof IOException e) throw new UncheckedIOException(e);
+        if (erroreLettura[0] instanceof RuntimeException e) throw e;
+        return new EsitoBatch(inseriti, errori);
+    }
+
+    private static <T> void leggi(File file, Mapper<T> mapper, int recordPerBlocco, ForkJoinPool pool,
+                                  BlockingQueue<InCoda<T>> coda) throws IOException, InterruptedException {
+        try (FileInputStream in = new FileInputStream(file);
+             CsvReader reader = new CsvReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            FileChannel canale = in.getChannel();
+            String[] r;
+            do {
+                r = reader.next();
+            } while (r != null && CsvImporter.isEmptyRow(r));
+            if (r == null) return;
+            Map<String, Integer> header = CsvImporter.indexHeader(r);
+
+            while (true) {
+                int primaRiga = reader.riga();
+                String testo = reader.blocco(recordPerBlocco);
+                if (testo == null) return;
+                coda.put(new InCoda<>(pool.submit(() -> analizza(testo, primaRiga, header, mapper)), canale.position()));
+            }
+        }
+    }
+
+    private static <T> Blocco<T> analizza(String testo, int primaRiga, Map<String, Integer> header, Mapper<T> mapper)
+            throws IOException {
+        CsvReader reader = new CsvReader(new StringReader(testo));
+        List<T> righe = new ArrayList<>();
+        List<Integer> numeri = new ArrayList<>();
+        SortedMap<Integer, String> scarti = new TreeMap<>();
+        List<String> errori = new ArrayList<>();
+        while (true) {
+            int riga = primaRiga + reader.riga() - 1;
+            String[] r = reader.next();
+            if (r == null) break;
+            if (CsvImporter.isEmptyRow(r)) continue;
+
+            errori.clear();
+            T t = mapper.map(r, header, errori);
+            if (!errori.isEmpty()) scarti.put(riga, String.join(" ", errori));
+            else if (t != null) {
+                righe.add(t);
+                numeri.add(riga);
+            }
+        }
+        return new Blocco<>(righe, numeri.stream().mapToInt(Integer::intValue).toArray(), scarti);
+    }
+
+    // segnale di fine per lo stadio di scrittura; se la coda è piena e nessuno legge più, si rinuncia
+    private static <T> void fine(BlockingQueue<InCoda<T>> coda) {
+        try {
+            coda.put(new InCoda<>(null, 0));
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void verificaBlocco(int recordPerBlocco) {
+        if (recordPerBlocco <= 0) {
+            throw new IllegalArgumentException("Errore import CSV: dimensione del blocco non valida: " + recordPerBlocco);
+        }
+    }
+
+    private static int paralleli() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+}
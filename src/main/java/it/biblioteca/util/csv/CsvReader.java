@@ -0,0 +1,149 @@
+package it.biblioteca.util.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lettore CSV a record: legge dal {@link Reader} solo i caratteri del record corrente, quindi la memoria
+ * non dipende dalla dimensione del file. Separatore {@code ;}, campi tra virgolette con {@code ""} come
+ * virgoletta letterale; dentro le virgolette separatori e a capo fanno parte del campo.
+ */
+final class CsvReader implements Closeable {
+
+    static final int MAX_CARATTERI_RECORD = 1 << 20;
+
+    private final Reader in;
+    private final char[] buf = new char[8192];
+    private int pos;
+    private int lim;
+    private final List<String> campi = new ArrayList<>();
+    private final StringBuilder cur = new StringBuilder();
+    private int riga = 1;
+    private int pendente = -2;
+
+    CsvReader(Reader in) {
+        this.in = in;
+    }
+
+    /** Riga del file su cui inizia il prossimo record (parte da 1). */
+    int riga() {
+        return riga;
+    }
+
+    /** @return i campi del prossimo record, o {@code null} a fine file */
+    String[] next() throws IOException {
+        int ch = leggi();
+        if (ch < 0) return null;
+
+        int inizio = riga;
+        int letti = 0;
+        boolean inQuotes = false;
+        campi.clear();
+        cur.setLength(0);
+        while (ch >= 0) {
+            if (++letti > MAX_CARATTERI_RECORD) {
+                throw new IOException("Errore CSV: record oltre " + MAX_CARATTERI_RECORD
+                        + " caratteri dalla riga " + inizio + " (virgolette non chiuse?)");
+            }
+            if (inQuotes) {
+                if (ch == '"') {
+                    int dopo = leggi();
+                    if (dopo == '"') {
+                        cur.append('"');
+                    } else {
+                        inQuotes = false;
+                        ch = dopo;
+                        continue;
+                    }
+                } else {
+                    if (ch == '\n') riga++;
+                    cur.append((char) ch);
+                }
+            } else if (ch == ';') {
+                campo();
+            } else if (ch == '"') {
+                inQuotes = true;
+            } else if (ch == '\n' || ch == '\r') {
+                if (ch == '\r') {
+                    int dopo = leggi();
+                    if (dopo != '\n') pendente = dopo;
+                }
+                riga++;
+                break;
+            } else {
+                cur.append((char) ch);
+            }
+            ch = leggi();
+        }
+        campo();
+        return campi.toArray(new String[0]);
+    }
+
+    /**
+     * Testo grezzo dei prossimi {@code record} record, così com'è nel file (a capo compresi), o {@code null}
+     * a fine file. Tiene conto delle virgolette solo per non spezzare un campo su più righe: il parsing vero
+     * si fa poi con un altro {@code CsvReader} sul testo restituito, anche su un altro thread.
+     */
+    String blocco(int record) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        boolean inQuotes = false;
+        int letti = 0;
+        int n = 0;
+        int ch;
+        while (n < record && (ch = leggi()) >= 0) {
+            if (++letti > MAX_CARATTERI_RECORD) {
+                throw new IOException("Errore CSV: record oltre " + MAX_CARATTERI_RECORD
+                        + " caratteri prima della riga " + riga + " (virgolette non chiuse?)");
+            }
+            sb.append((char) ch);
+            if (ch == '"') {
+                inQuotes = !inQuotes; // "" dentro un campo cambia stato due volte
+            } else if (ch == '\n') {
+                riga++;
+                if (!inQuotes) {
+                    n++;
+                    letti = 0;
+                }
+            } else if (ch == '\r' && !inQuotes) {
+                int dopo = leggi();
+                if (dopo == '\n') sb.append('\n');
+                else pendente = dopo;
+                riga++;
+                n++;
+                letti = 0;
+            }
+        }
+        return sb.isEmpty() ? null : sb.toString();
+    }
+
+    private void campo() {
+        campi.add(cur.toString());
+        cur.setLength(0);
+    }
+
+    // buffer proprio: Reader.read() carattere per carattere passa ogni volta da un lock
+    private int leggi() throws IOException {
+        if (pendente != -2) {
+            int c = pendente;
+            pendente = -2;
+            return c;
+        }
+        if (pos == lim) {
+            lim = in.read(buf, 0, buf.length);
+            pos = 0;
+            if (lim <= 0) {
+                lim = 0;
+                return -1;
+            }
+        }
+        return buf[pos++];
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
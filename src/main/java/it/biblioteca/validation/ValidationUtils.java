@@ -1,5 +1,6 @@
 package it.biblioteca.validation;
 
+import java.time.DateTimeException;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -9,7 +10,7 @@ public final class ValidationUtils {
     private static final int MAX_EMAIL_LENGTH = 254;
 
     private static final Pattern EMAIL = Pattern.compile(
-            "^(?>[A-Za-z0-9._%+-]++)@(?>[A-Za-z0-9.-]++)\\.(?>[A-Za-z]{2,63})$"
+            "^(?>[A-Za-z0-9._%+-]++)@(?>[A-Za-z0-9-]++\\.)++[A-Za-z]{2,63}$"
     );
 
     private ValidationUtils() {}
@@ -28,6 +29,41 @@ public final class ValidationUtils {
         }
     }
 
+    public static LocalDate parseDate(String value, String fieldName, boolean required, List<String> errors) {
+        String s = value == null ? "" : value.trim();
+        if (s.isEmpty()) {
+            if (required) errors.add(fieldName + " è obbligatoria.");
+            return null;
+        }
+        try {
+            return parseIsoDate(s);
+        } catch (DateTimeException _) {
+            errors.add(fieldName + " non è una data valida (AAAA-MM-GG).");
+            return null;
+        }
+    }
+
+    // AAAA-MM-GG letto a mano: negli import massivi DateTimeFormatter pesa più di tutto il resto della riga
+    private static LocalDate parseIsoDate(String s) {
+        if (s.length() == 10 && s.charAt(4) == '-' && s.charAt(7) == '-') {
+            int anno = digits(s, 0, 4);
+            int mese = digits(s, 5, 7);
+            int giorno = digits(s, 8, 10);
+            if (anno >= 0 && mese >= 0 && giorno >= 0) return LocalDate.of(anno, mese, giorno);
+        }
+        return LocalDate.parse(s);
+    }
+
+    private static int digits(String s, int from, int to) {
+        int v = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
     public static void validateEmailIfPresent(String email, List<String> errors) {
         if (email == null || email.isBlank()) return;
 
@@ -0,0 +1,98 @@
+package it.biblioteca.dao;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PooledConnectionProviderTest {
+
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+    private final AtomicBoolean valid = new AtomicBoolean(true);
+
+    private PooledConnectionProvider pool;
+
+    @BeforeEach
+    void setup() {
+        PooledConnectionProvider.Settings settings = new PooledConnectionProvider.Settings(
+                2, Duration.ofMillis(200), Duration.ofMinutes(5), Duration.ofMinutes(2), 1);
+        pool = new PooledConnectionProvider(this::fakeConnection, settings);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void riusaLaConnessioneRestituita() throws SQLException {
+        try (Connection c = pool.getConnection()) {
+            assertFalse(c.isClosed());
+        }
+        try (Connection c = pool.getConnection()) {
+            assertFalse(c.isClosed());
+        }
+        assertEquals(1, opened.get());
+        assertEquals(1, pool.idleCount());
+        assertEquals(0, pool.activeCount());
+    }
+
+    @Test
+    void attesaMassimaScadutaQuandoIlPoolEPieno() throws SQLException {
+        Connection a = pool.getConnection();
+        Connection b = pool.getConnection();
+        assertThrows(SQLTimeoutException.class, pool::getConnection);
+        a.close();
+        b.close();
+        pool.getConnection().close();
+    }
+
+    @Test
+    void connessioneNonValidaScartataAlPrestito() throws SQLException {
+        pool.getConnection().close();
+        valid.set(false);
+        pool.getConnection().close();
+        assertEquals(2, opened.get());
+        assertEquals(1, closed.get());
+    }
+
+    @Test
+    void invalidateAllChiudeLeConnessioniObsolete() throws SQLException {
+        Connection inUse = pool.getConnection();
+        pool.getConnection().close();
+        pool.invalidateAll();
+        assertEquals(1, closed.get());
+
+        inUse.close();
+        assertEquals(2, closed.get());
+        assertEquals(0, pool.idleCount());
+    }
+
+    private Connection fakeConnection() {
+        opened.incrementAndGet();
+        AtomicBoolean isClosed = new AtomicBoolean(false);
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "close" -> {
+                        if (isClosed.compareAndSet(false, true)) closed.incrementAndGet();
+                        yield null;
+                    }
+                    case "isClosed" -> isClosed.get();
+                    case "isValid" -> valid.get();
+                    case "getAutoCommit" -> true;
+                    default -> null;
+                });
+    }
+}
@@ -0,0 +1,242 @@
+package it.biblioteca.dao.bin;
+
+import it.biblioteca.bean.PrestitoBean;
+import it.biblioteca.dao.EsitoBatch;
+import it.biblioteca.dao.UtenteDAO;
+import it.biblioteca.dao.json.JsonDaoFactory;
+import it.biblioteca.entity.Book;
+import it.biblioteca.entity.Prestito;
+import it.biblioteca.entity.Utente;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryDaoTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void libriPersistitiERiusoDegliSlot() {
+        BinaryBookDAO dao = new BinaryBookDAO(dir);
+        for (int i = 0; i < 255; i++) dao.salvaLibro(libro("isbn-" + i, "Titolo " + i));
+        dao.salvaLibro(libro("isbn-7", "Titolo nuovo"));
+        long dimensione = new File(dir, "books.bin").length();
+
+        // 256 slot iniziali tutti occupati almeno una volta: senza riuso il file raddoppierebbe
+        dao.eliminaLibro(dao.trovaTutti().getFirst().getId());
+        dao.salvaLibro(libro("isbn-255", "Titolo 255"));
+        dao.salvaLibro(libro("isbn-256", "Titolo 256"));
+        assertEquals(dimensione, new File(dir, "books.bin").length(), "Gli slot liberati vengono riusati");
+        dao.close();
+
+        BinaryBookDAO riaperto = new BinaryBookDAO(dir);
+        assertEquals(256, riaperto.trovaTutti().size());
+        assertEquals("Titolo nuovo", riaperto.cerca("nuovo", 5).getFirst().getTitolo());
+        Book nuovo = libro("isbn-nuovo", "Altro");
+        riaperto.salvaLibro(nuovo);
+        assertEquals(259L, nuovo.getId());
+        riaperto.close();
+    }
+
+    @Test
+    void importazioneConIsbnRipetutiRiportaLeRighe() {
+        BinaryBookDAO dao = new BinaryBookDAO(dir);
+        dao.salvaLibro(libro("111", "Alfa"));
+
+        EsitoBatch esito = dao.salvaLibri(List.of(libro("111", "Alfa bis"), libro("222", "Beta"), libro("222", "Beta 2")));
+
+        assertEquals(1, esito.inseriti());
+        assertEquals(List.of(0, 2), List.copyOf(esito.errori().keySet()));
+        assertEquals(List.of("Alfa", "Beta"), dao.trovaTutti().stream().map(Book::getTitolo).toList());
+        dao.close();
+    }
+
+    @Test
+    void prestitoRilettoPerIdDopoInserimentoEChiusura() {
+        BinaryPrestitoDAO dao = new BinaryPrestitoDAO(dir);
+        PrestitoBean bean = new PrestitoBean();
+        bean.setLibroId(3L);
+        bean.setUtenteId(1L);
+        bean.setLibroTitoloSnapshot("Titolo");
+        bean.setDataPrestito(LocalDate.of(2024, 1, 1));
+        assertTrue(dao.inserisci(bean));
+        assertNotNull(bean.getId(), "L'id assegnato torna nel bean");
+
+        assertTrue(dao.chiudiPrestito(bean.getId(), LocalDate.of(2024, 2, 1)));
+        Prestito p = dao.trovaPerId(bean.getId());
+        assertEquals(3L, p.getLibroId());
+        assertEquals(LocalDate.of(2024, 2, 1), p.getDataRestituzione());
+        assertNull(dao.trovaPerId(bean.getId() + 1));
+
+        // un libro salvato con un ISBN già presente prende l'id della riga aggiornata
+        BinaryBookDAO libri = new BinaryBookDAO(dir);
+        Book primo = libro("isbn-1", "Primo");
+        libri.salvaLibro(primo);
+        Book doppione = libro("isbn-1", "Secondo");
+        libri.salvaLibro(doppione);
+        assertEquals(primo.getId(), doppione.getId());
+        dao.close();
+        libri.close();
+    }
+
+    @Test
+    void prestitiFermatiAlleCopieAncheDopoLaRiapertura() {
+        BinaryBookDAO libri = new BinaryBookDAO(dir);
+        Book b = libro("isbn-1", "Titolo");
+        b.setCopie(2);
+        libri.salvaLibro(b);
+        BinaryPrestitoDAO dao = new BinaryPrestitoDAO(dir);
+        dao.collega(libri);
+
+        PrestitoBean primo = prestito(b.getId());
+        assertTrue(dao.inserisciSeDisponibile(primo));
+        assertTrue(dao.inserisciSeDisponibile(prestito(b.getId())));
+        assertFalse(dao.inserisciSeDisponibile(prestito(b.getId())));
+        assertTrue(dao.chiudiPrestito(primo.getId(), LocalDate.of(2024, 2, 1)));
+        dao.close();
+
+        BinaryPrestitoDAO riaperto = new BinaryPrestitoDAO(dir);
+        riaperto.collega(libri);
+        assertEquals(Map.of(b.getId(), 1), riaperto.contaPrestitiAttiviPerLibro());
+        assertTrue(riaperto.inserisciSeDisponibile(prestito(b.getId())));
+        assertFalse(riaperto.inserisciSeDisponibile(prestito(b.getId())));
+        assertFalse(riaperto.inserisciSeDisponibile(prestito(99L)), "Libro inesistente");
+        riaperto.close();
+        libri.close();
+    }
+
+    @Test
+    void prestitiDellUtenteDalPiuRecenteAPagine() {
+        BinaryPrestitoDAO dao = new BinaryPrestitoDAO(dir);
+        for (int giorno : new int[]{3, 1, 3, 2}) {
+            PrestitoBean bean = prestito(1L);
+            bean.setDataPrestito(LocalDate.of(2024, 1, giorno));
+            dao.inserisci(bean);
+        }
+        PrestitoBean altro = prestito(1L);
+        altro.setUtenteId(2L);
+        dao.inserisci(altro);
+
+        List<Prestito> prima = dao.trovaPerUtente(1L, null, 3);
+        assertEquals(List.of(3L, 1L, 4L), prima.stream().map(Prestito::getId).toList());
+        List<Prestito> seconda = dao.trovaPerUtente(1L, prima.getLast(), 3);
+        assertEquals(List.of(2L), seconda.stream().map(Prestito::getId).toList());
+        assertTrue(dao.trovaPerUtente(99L, null, 3).isEmpty());
+        dao.close();
+
+        BinaryUtenteDAO utenti = new BinaryUtenteDAO(dir);
+        Utente u = tessera(77);
+        u.setNome("Anna");
+        assertTrue(utenti.aggiungi(u));
+        assertEquals("Anna", utenti.trovaPerTessera(77).getNome());
+        assertNull(utenti.trovaPerTessera(78));
+        utenti.close();
+    }
+
+    @Test
+    void dopoUnCrashVinceLaCopiaPiuRecente() throws Exception {
+        File f = new File(dir, "prova.bin");
+        BinaryRecordFile file = new BinaryRecordFile(f, 16);
+        file.scrivi(1L, rec -> rec.put("vecchio".getBytes(StandardCharsets.UTF_8)));
+        file.scrivi(1L, rec -> rec.put("nuovo".getBytes(StandardCharsets.UTF_8)));
+        file.close();
+
+        // crash simulato: il vecchio slot non è stato ancora liberato
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.seek(64);
+            raf.write(1);
+        }
+
+        BinaryRecordFile riaperto = new BinaryRecordFile(f, 16);
+        assertEquals(1, riaperto.size());
+        byte[] letto = new byte[5];
+        riaperto.leggi(1L).get(letto);
+        assertEquals("nuovo", new String(letto, StandardCharsets.UTF_8));
+        riaperto.close();
+    }
+
+    @Test
+    void primaAperturaImportaDatiECredenzialiDalJson() {
+        String hashAdmin;
+        try (JsonDaoFactory json = new JsonDaoFactory(dir)) {
+            json.bookDAO().salvaLibro(libro("978-1", "Il nome della rosa"));
+            hashAdmin = json.utenteDAO().findAuthByUsername("admin").orElseThrow().passwordHash();
+        }
+
+        try (BinaryDaoFactory bin = new BinaryDaoFactory(dir)) {
+            assertEquals(1, bin.bookDAO().trovaTutti().size());
+            UtenteDAO utenti = bin.utenteDAO();
+            assertEquals(hashAdmin, utenti.findAuthByUsername("ADMIN").orElseThrow().passwordHash());
+
+            Utente u = new Utente();
+            u.setNome("Anna");
+            u.setCognome("Neri");
+            u.setTessera(4242);
+            assertTrue(utenti.aggiungi(u));
+            assertTrue(utenti.creaCredenziali(u.getId(), "anna", "pw"));
+            assertFalse(utenti.creaCredenziali(u.getId(), "anna2", "pw"));
+            assertFalse(utenti.aggiungi(tessera(4242)));
+        }
+
+        try (BinaryDaoFactory riaperto = new BinaryDaoFactory(dir)) {
+            assertEquals(1, riaperto.bookDAO().trovaTutti().size(), "Nessuna seconda importazione");
+            var anna = riaperto.utenteDAO().findAuthByUsername("anna").orElseThrow();
+            assertEquals(4242, anna.tessera());
+            assertEquals("Anna", riaperto.utenteDAO().trovaPerId(anna.userId()).getNome());
+        }
+    }
+
+    @Test
+    void importazioneInterrottaRipresaAllaRiapertura() {
+        Book lungo = libro("978-1", "x".repeat(500));
+        try (JsonDaoFactory json = new JsonDaoFactory(dir)) {
+            json.bookDAO().salvaLibro(lungo);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> new BinaryDaoFactory(dir));
+        assertTrue(new File(dir, "books.bin").exists(), "Il file parziale resta fino alla prossima apertura");
+
+        try (JsonDaoFactory json = new JsonDaoFactory(dir)) {
+            lungo.setTitolo("Il nome della rosa");
+            json.bookDAO().aggiornaLibro(lungo);
+        }
+        try (BinaryDaoFactory bin = new BinaryDaoFactory(dir)) {
+            assertEquals("Il nome della rosa", bin.bookDAO().trovaTutti().getFirst().getTitolo());
+            assertTrue(bin.utenteDAO().findAuthByUsername("admin").isPresent());
+        }
+        assertFalse(new File(dir, "importazione-json.incompleta").exists());
+    }
+
+    private static PrestitoBean prestito(Long libroId) {
+        PrestitoBean bean = new PrestitoBean();
+        bean.setLibroId(libroId);
+        bean.setUtenteId(1L);
+        return bean;
+    }
+
+    private static Utente tessera(int tessera) {
+        Utente u = new Utente();
+        u.setTessera(tessera);
+        return u;
+    }
+
+    private static Book libro(String isbn, String titolo) {
+        Book b = new Book();
+        b.setIsbn(isbn);
+        b.setTitolo(titolo);
+        b.setAutore("Autore");
+        b.setCasaEditrice("Editore");
+        b.setDataPubblicazione(LocalDate.of(2020, 1, 1));
+        b.setCopie(1);
+        return b;
+    }
+}
@@ -0,0 +1,106 @@
+package it.biblioteca.dao.bin;
+
+import it.biblioteca.dao.DaoFactory;
+import it.biblioteca.dao.json.JsonDaoFactory;
+import it.biblioteca.dao.json.JsonDurability;
+import it.biblioteca.entity.Book;
+import it.biblioteca.entity.Utente;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Confronto fra backend JSON e binario: tempo di apertura, prima lettura completa e latenza delle
+ * letture puntuali ({@code trovaPerId}, {@code findAuthByUsername}).
+ * Non è un test: si lancia a mano, es. {@code java -cp ... it.biblioteca.dao.bin.BinaryStorageBenchmark [record] [giri]}.
+ */
+public final class BinaryStorageBenchmark {
+
+    private static final int LOOKUP = 200_000;
+
+    private BinaryStorageBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        File dir = Files.createTempDirectory("bin-bench").toFile();
+        try (JsonDaoFactory json = new JsonDaoFactory(dir, JsonDurability.groupCommit(Duration.ofMillis(50)))) {
+            for (int i = 0; i < records; i++) {
+                json.bookDAO().salvaLibro(libro(i));
+                Utente u = utente(i);
+                json.utenteDAO().aggiungi(u);
+                json.utenteDAO().creaCredenziali(u.getId(), "utente" + i, "pw" + i);
+            }
+        }
+        new BinaryDaoFactory(dir).close(); // prima apertura: importa dal JSON
+        System.out.printf("%d libri e %d utenti in %s%n", records, records, dir);
+
+        report("json   ", rounds, () -> new JsonDaoFactory(dir));
+        report("binario", rounds, () -> new BinaryDaoFactory(dir));
+    }
+
+    private interface Apri {
+        DaoFactory apri();
+    }
+
+    private static void report(String nome, int rounds, Apri apri) throws Exception {
+        long apertura = Long.MAX_VALUE;
+        long primaLettura = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            System.gc();
+            long t0 = System.nanoTime();
+            DaoFactory f = apri.apri();
+            long t1 = System.nanoTime();
+            f.bookDAO().trovaTutti();
+            long t2 = System.nanoTime();
+            apertura = Math.min(apertura, t1 - t0);
+            primaLettura = Math.min(primaLettura, t2 - t1);
+            ((AutoCloseable) f).close();
+        }
+
+        DaoFactory f = apri.apri();
+        int utenti = f.utenteDAO().trovaTutti().size();
+        double perId = latenza(utenti, id -> f.utenteDAO().trovaPerId(id));
+        double perUsername = latenza(utenti, id -> f.utenteDAO().findAuthByUsername("utente" + (id - 6)));
+        ((AutoCloseable) f).close();
+
+        System.out.printf("%s  apertura %7.1f ms  prima trovaTutti %7.1f ms  trovaPerId %6.0f ns  findAuthByUsername %6.0f ns%n",
+                nome, apertura / 1e6, primaLettura / 1e6, perId, perUsername);
+    }
+
+    private static double latenza(int utenti, Function<Long, Object> lookup) {
+        Random rnd = new Random(42);
+        for (int i = 0; i < LOOKUP; i++) lookup.apply(6L + rnd.nextInt(utenti - 5)); // riscaldamento
+        long t0 = System.nanoTime();
+        for (int i = 0; i < LOOKUP; i++) lookup.apply(6L + rnd.nextInt(utenti - 5));
+        return (System.nanoTime() - t0) / (double) LOOKUP;
+    }
+
+    private static Book libro(int i) {
+        Book b = new Book();
+        b.setIsbn("978-" + i);
+        b.setTitolo("Titolo del libro numero " + i);
+        b.setAutore("Autore " + (i % 997));
+        b.setCasaEditrice("Editore " + (i % 31));
+        b.setDataPubblicazione(LocalDate.of(1950 + i % 70, 1 + i % 12, 1 + i % 28));
+        b.setCopie(1 + i % 5);
+        return b;
+    }
+
+    private static Utente utente(int i) {
+        Utente u = new Utente();
+        u.setTessera(100_000 + i);
+        u.setNome("Nome" + i);
+        u.setCognome("Cognome" + (i % 5000));
+        u.setEmail("utente" + i + "@example.org");
+        u.setDataAttivazione(LocalDate.of(2024, 1, 1));
+        u.setDataScadenza(LocalDate.of(2029, 1, 1));
+        return u;
+    }
+}
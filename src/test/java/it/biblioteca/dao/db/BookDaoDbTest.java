@@ -1,6 +1,8 @@
 package it.biblioteca.dao.db;
 
 import it.biblioteca.dao.BookDAO;
+import it.biblioteca.dao.EsitoBatch;
+import it.biblioteca.dao.Ordinamento;
 import it.biblioteca.entity.Book;
 import it.biblioteca.testutil.TestConnectionProvider;
 import it.biblioteca.testutil.TestDbSetup;
@@ -9,6 +11,7 @@ import org.junit.jupiter.api.Test;
 
 import java.sql.Connection;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -57,4 +60,89 @@ class BookDaoDbTest {
         boolean stillThere = dao.trovaTutti().stream().anyMatch(x -> "978000000002".equals(x.getIsbn()));
         assertFalse(stillThere);
     }
+
+    @Test
+    void paginazioneKeyset_perTitolo() {
+        for (int i = 0; i < 5; i++) {
+            Book b = new Book();
+            b.setIsbn("97800000010" + i);
+            b.setTitolo("Pagina " + (char) ('A' + i));
+            b.setAutore("Autore");
+            b.setCasaEditrice("Editore");
+            b.setDataPubblicazione(LocalDate.of(2020, 1, 1));
+            dao.salvaLibro(b);
+        }
+
+        List<Book> prima = dao.trovaPagina(null, 4, Ordinamento.ASC);
+        assertEquals(4, prima.size());
+        assertEquals("Libro Test", prima.getFirst().getTitolo());
+
+        List<Book> seconda = dao.trovaPagina(prima.getLast(), 4, Ordinamento.ASC);
+        assertEquals(2, seconda.size());
+        assertEquals("Pagina D", seconda.getFirst().getTitolo());
+        assertEquals("Pagina E", seconda.getLast().getTitolo());
+
+        List<Book> desc = dao.trovaPagina(null, 1, Ordinamento.DESC);
+        assertEquals("Pagina E", desc.getFirst().getTitolo());
+    }
+
+    @Test
+    void cerca_fullTextPerPrefissoEFallbackLike() {
+        for (String titolo : List.of("Il nome della rosa", "Rosalind Franklin", "50% di sconto")) {
+            Book b = new Book();
+            b.setIsbn("97888" + Math.abs(titolo.hashCode()));
+            b.setTitolo(titolo);
+            b.setAutore("Autore");
+            b.setCasaEditrice("Editore");
+            b.setDataPubblicazione(LocalDate.of(2020, 1, 1));
+            dao.salvaLibro(b);
+        }
+
+        // "ros" diventa +ros*: prefisso su titolo, autore ed editore
+        assertEquals(List.of("Il nome della rosa", "Rosalind Franklin"), titoli(dao.cerca("ros", 10)));
+        // tutte le parole sono obbligatorie
+        assertEquals(List.of("Il nome della rosa"), titoli(dao.cerca("rosa nome", 10)));
+        // parole sotto i 3 caratteri: LIKE sul prefisso del titolo, con % e _ presi alla lettera
+        assertEquals(List.of("Il nome della rosa"), titoli(dao.cerca("Il", 10)));
+        assertEquals(List.of("50% di sconto"), titoli(dao.cerca("50%", 10)));
+        assertTrue(dao.cerca("5_", 10).isEmpty());
+        // l'ISBN si cerca per prefisso anche dal ramo full-text
+        assertEquals(List.of("Libro Test"), titoli(dao.cerca("978000000001", 10)));
+        assertEquals(1, dao.cerca("ros", 1).size());
+    }
+
+    @Test
+    void salvaLibri_isbnDuplicatoAMetaBlocco() {
+        List<Book> libri = new ArrayList<>();
+        for (String isbn : List.of("978000000201", "978000000202", "978000000001", "978000000204", "978000000201")) {
+            Book b = new Book();
+            b.setIsbn(isbn);
+            b.setTitolo("Batch " + libri.size());
+            b.setAutore("Autore");
+            b.setCasaEditrice("Editore");
+            b.setDataPubblicazione(LocalDate.of(2021, 1, 1));
+            b.setCopie(2);
+            libri.add(b);
+        }
+
+        // la riga 2 ripete l'ISBN del libro seed, la 4 quello della riga 0 dello stesso blocco
+        EsitoBatch esito = dao.salvaLibri(libri);
+
+        assertEquals(3, esito.inseriti());
+        assertEquals(List.of(2, 4), List.copyOf(esito.errori().keySet()));
+        for (int i : List.of(0, 1, 3)) {
+            Book salvato = dao.trovaPerId(libri.get(i).getId());
+            assertNotNull(salvato, "Id generato assegnato alla riga " + i);
+            assertEquals(libri.get(i).getTitolo(), salvato.getTitolo());
+            assertEquals(2, salvato.getCopieDisponibili());
+        }
+        assertNull(libri.get(2).getId());
+        assertNull(libri.get(4).getId());
+        assertEquals(4, dao.trovaTutti().size());
+        assertEquals("Libro Test", dao.cerca("978000000001", 10).getFirst().getTitolo());
+    }
+
+    private static List<String> titoli(List<Book> libri) {
+        return libri.stream().map(Book::getTitolo).toList();
+    }
 }
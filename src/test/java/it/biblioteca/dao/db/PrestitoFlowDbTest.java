@@ -1,6 +1,7 @@
 package it.biblioteca.dao.db;
 
 import it.biblioteca.bean.PrestitoBean;
+import it.biblioteca.dao.Ordinamento;
 import it.biblioteca.dao.PrestitoDAO;
 import it.biblioteca.entity.Prestito;
 import it.biblioteca.testutil.TestConnectionProvider;
@@ -9,8 +10,10 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.sql.Connection;
+import java.sql.Statement;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -51,12 +54,116 @@ class PrestitoFlowDbTest {
         assertNull(p.getDataRestituzione());
 
         assertEquals(1, dao.trovaPrestitiAttivi().size());
+        assertEquals(Map.of(1L, 1), dao.contaPrestitiAttiviPerLibro());
 
         assertTrue(dao.chiudiPrestito(p.getId(), LocalDate.of(2025, 1, 20)));
         List<Prestito> attivi = dao.trovaPrestitiAttivi();
         assertEquals(0, attivi.size());
+        assertTrue(dao.contaPrestitiAttiviPerLibro().isEmpty());
 
         Prestito closed = dao.trovaTutti().getFirst();
         assertEquals(LocalDate.of(2025, 1, 20), closed.getDataRestituzione());
     }
+
+    @Test
+    void registrazioneAtomicaSiFermaAlleCopieDelLibro() {
+        // il libro di prova ha 3 copie
+        for (int i = 0; i < 3; i++) {
+            PrestitoBean bean = new PrestitoBean();
+            bean.setLibroId(1L);
+            bean.setUtenteId(3L);
+            bean.setDataPrestito(LocalDate.of(2025, 1, 10));
+            assertTrue(dao.inserisciSeDisponibile(bean));
+            assertNotNull(bean.getId());
+        }
+        PrestitoBean quarto = new PrestitoBean();
+        quarto.setLibroId(1L);
+        quarto.setUtenteId(3L);
+        quarto.setDataPrestito(LocalDate.of(2025, 1, 10));
+        assertFalse(dao.inserisciSeDisponibile(quarto));
+        assertEquals(Map.of(1L, 3), dao.contaPrestitiAttiviPerLibro());
+
+        quarto.setLibroId(99L);
+        assertFalse(dao.inserisciSeDisponibile(quarto), "Libro inesistente");
+    }
+
+    @Test
+    void copieDisponibiliNellaStessaTransazioneERiconciliate() throws Exception {
+        DbBookDAO libri = new DbBookDAO(cp);
+        PrestitoBean bean = new PrestitoBean();
+        bean.setLibroId(1L);
+        bean.setUtenteId(3L);
+        bean.setDataPrestito(LocalDate.of(2025, 1, 10));
+        assertTrue(dao.inserisci(bean));
+        assertEquals(2, libri.trovaPerId(1L).getCopieDisponibili());
+
+        assertTrue(dao.chiudiPrestito(bean.getId(), LocalDate.of(2025, 1, 20)));
+        assertFalse(dao.chiudiPrestito(bean.getId(), LocalDate.of(2025, 1, 21)), "Già chiuso");
+        assertEquals(3, libri.trovaPerId(1L).getCopieDisponibili());
+
+        // senza data il prestito si chiude oggi, e una seconda chiusura non restituisce un'altra copia
+        PrestitoBean senzaData = new PrestitoBean();
+        senzaData.setLibroId(1L);
+        senzaData.setUtenteId(3L);
+        senzaData.setDataPrestito(LocalDate.of(2025, 2, 1));
+        assertTrue(dao.inserisci(senzaData));
+        assertTrue(dao.chiudiPrestito(senzaData.getId(), null));
+        assertFalse(dao.chiudiPrestito(senzaData.getId(), null));
+        assertEquals(LocalDate.now(), dao.trovaPerId(senzaData.getId()).getDataRestituzione());
+        assertEquals(3, libri.trovaPerId(1L).getCopieDisponibili());
+
+        try (Connection c = cp.getConnection(); Statement st = c.createStatement()) {
+            st.executeUpdate("UPDATE libri SET copie_disponibili = 7 WHERE id = 1");
+        }
+        assertEquals(Map.of(1L, 4), dao.riconciliaCopieDisponibili());
+        assertEquals(3, libri.trovaPerId(1L).getCopieDisponibili());
+        assertTrue(dao.riconciliaCopieDisponibili().isEmpty());
+    }
+
+    @Test
+    void prestitiDellUtenteDalPiuRecenteAPagine() {
+        for (int giorno : new int[]{3, 1, 3, 2}) {
+            PrestitoBean bean = new PrestitoBean();
+            bean.setLibroId(1L);
+            bean.setUtenteId(3L);
+            bean.setDataPrestito(LocalDate.of(2025, 1, giorno));
+            assertTrue(dao.inserisci(bean));
+        }
+        PrestitoBean altro = new PrestitoBean();
+        altro.setLibroId(1L);
+        altro.setUtenteId(2L);
+        altro.setDataPrestito(LocalDate.of(2025, 1, 5));
+        assertTrue(dao.inserisci(altro));
+        long primo = dao.trovaPagina(null, 10, Ordinamento.ASC).getFirst().getId();
+
+        // la tessera 100 è di Mario Rossi, utente 3
+        Long utenteId = new DbUtenteDAO(cp).trovaPerTessera(100).getId();
+        assertEquals(3L, utenteId);
+        List<Prestito> prima = dao.trovaPerUtente(utenteId, null, 3);
+        assertEquals(List.of(primo + 2, primo, primo + 3), ids(prima));
+        assertEquals(List.of(primo + 1), ids(dao.trovaPerUtente(utenteId, prima.getLast(), 3)));
+        assertTrue(dao.trovaPerUtente(99L, null, 3).isEmpty());
+    }
+
+    @Test
+    void cercaPerTitoloUtenteOId() {
+        PrestitoBean bean = new PrestitoBean();
+        bean.setLibroId(1L);
+        bean.setUtenteId(3L);
+        bean.setLibroTitoloSnapshot("Libro Test");
+        bean.setUtenteSnapshot("Mario Rossi");
+        bean.setDataPrestito(LocalDate.of(2025, 1, 10));
+        assertTrue(dao.inserisci(bean));
+
+        assertEquals(List.of(bean.getId()), ids(dao.cerca("ross", 10)));
+        assertEquals(List.of(bean.getId()), ids(dao.cerca("libro mario", 10)));
+        assertTrue(dao.cerca("libro luigi", 10).isEmpty());
+        // id e parole corte passano dal ramo LIKE
+        assertEquals(List.of(bean.getId()), ids(dao.cerca(String.valueOf(bean.getId()), 10)));
+        assertEquals(List.of(bean.getId()), ids(dao.cerca("Li", 10)));
+    }
+
+    private static List<Long> ids(List<Prestito> prestiti) {
+        return prestiti.stream().map(Prestito::getId).toList();
+    }
 }
@@ -0,0 +1,96 @@
+package it.biblioteca.dao.db;
+
+import it.biblioteca.bean.PrestitoBean;
+import it.biblioteca.testutil.TestConnectionProvider;
+import it.biblioteca.testutil.TestDbSetup;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaMigrationsDbTest {
+
+    private TestConnectionProvider cp;
+
+    @BeforeEach
+    void setup() throws Exception {
+        cp = new TestConnectionProvider();
+        try (Connection c = cp.getConnection()) {
+            TestDbSetup.resetSchema(c);
+        }
+    }
+
+    @Test
+    void creaGliIndiciERegistraLaVersione() throws Exception {
+        try (Connection c = cp.getConnection()) {
+            assertEquals(0, SchemaMigrations.versioneCorrente(c));
+        }
+
+        assertEquals(SchemaMigrations.ultimaVersione(), SchemaMigrations.applica(cp));
+        assertEquals(SchemaMigrations.ultimaVersione(), SchemaMigrations.applica(cp), "Una seconda volta non fa nulla");
+
+        try (Connection c = cp.getConnection()) {
+            assertEquals(SchemaMigrations.ultimaVersione(), SchemaMigrations.versioneCorrente(c));
+            assertEquals(SchemaMigrations.ultimaVersione(), conta(c, "SELECT COUNT(*) FROM schema_versione"));
+            assertTrue(haIndice(c, "prestiti", "idx_prestiti_aperti"));
+            assertTrue(haIndice(c, "prestiti", "idx_prestiti_utente_data"));
+            assertTrue(haIndice(c, "utenti", "idx_utenti_nominativo"));
+            assertTrue(haIndice(c, "libri", "idx_libri_titolo"));
+        }
+    }
+
+    @Test
+    void databaseSenzaContatoreRicalcolaLeCopieDisponibili() throws Exception {
+        PrestitoBean bean = new PrestitoBean();
+        bean.setLibroId(1L);
+        bean.setUtenteId(3L);
+        bean.setDataPrestito(LocalDate.of(2025, 1, 10));
+        assertTrue(new DbPrestitoDAO(cp).inserisci(bean));
+        // come un database creato prima del contatore
+        try (Connection c = cp.getConnection(); Statement st = c.createStatement()) {
+            st.execute("ALTER TABLE libri DROP COLUMN copie_disponibili");
+        }
+
+        SchemaMigrations.applica(cp);
+
+        assertEquals(2, new DbBookDAO(cp).trovaPerId(1L).getCopieDisponibili());
+    }
+
+    @Test
+    void databaseSenzaIndiciFullTextTornaACercare() throws Exception {
+        // come un database creato prima della ricerca sul DAO
+        try (Connection c = cp.getConnection(); Statement st = c.createStatement()) {
+            st.execute("ALTER TABLE libri DROP INDEX ft_libri_testo");
+            st.execute("ALTER TABLE utenti DROP INDEX ft_utenti_nominativo");
+            st.execute("ALTER TABLE prestiti DROP INDEX ft_prestiti_snapshot");
+        }
+
+        SchemaMigrations.applica(cp);
+
+        try (Connection c = cp.getConnection()) {
+            assertTrue(haIndice(c, "libri", "ft_libri_testo"));
+            assertTrue(haIndice(c, "utenti", "ft_utenti_nominativo"));
+            assertTrue(haIndice(c, "prestiti", "ft_prestiti_snapshot"));
+        }
+        assertEquals("Libro Test", new DbBookDAO(cp).cerca("libro", 10).getFirst().getTitolo());
+        assertFalse(new DbUtenteDAO(cp).cerca("rossi", 10).isEmpty());
+        assertTrue(new DbPrestitoDAO(cp).cerca("libro", 10).isEmpty());
+    }
+
+    private static boolean haIndice(Connection c, String tabella, String indice) throws SQLException {
+        return conta(c, "SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE()"
+                + " AND table_name = '" + tabella + "' AND index_name = '" + indice + "'") > 0;
+    }
+
+    private static int conta(Connection c, String sql) throws SQLException {
+        try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package it.biblioteca.dao.jdbc;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FullTextSupportTest {
+
+    @Test
+    void paroleObbligatorieEPerPrefisso() {
+        assertEquals("+nome* +della* +rosa*", FullTextSupport.booleanQuery("  Nome, della-ROSA "));
+        assertEquals("+eco*", FullTextSupport.booleanQuery("U. Eco"));
+        assertEquals("+città*", FullTextSupport.booleanQuery("Città"));
+        // gli operatori di BOOLEAN MODE sono separatori, non arrivano alla query
+        assertEquals("+java* +sql*", FullTextSupport.booleanQuery("java -sql \"*\""));
+    }
+
+    @Test
+    void senzaParoleIndicizzabiliSiPassaAlLike() {
+        assertNull(FullTextSupport.booleanQuery(null));
+        assertNull(FullTextSupport.booleanQuery("il re"));
+        assertNull(FullTextSupport.booleanQuery("+* ()"));
+        assertEquals("Il re%", FullTextSupport.likePrefix("  Il re "));
+        assertEquals("50\\%\\_a\\\\%", FullTextSupport.likePrefix("50%_a\\"));
+        assertEquals("%", FullTextSupport.likePrefix(null));
+    }
+
+    @Test
+    void numeroOValoreDiRiserva() {
+        assertEquals(42L, FullTextSupport.asNumberOr(" 42 ", -1L));
+        assertEquals(-1L, FullTextSupport.asNumberOr("42a", -1L));
+        assertEquals(-1L, FullTextSupport.asNumberOr(null, -1L));
+    }
+}
@@ -0,0 +1,106 @@
+package it.biblioteca.dao.json;
+
+import it.biblioteca.dao.EsitoBatch;
+import it.biblioteca.entity.Book;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonBookDaoLogTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void modificheRipristinateDaSnapshotPiuLog() {
+        JsonBookDAO dao = new JsonBookDAO(dir);
+        Book a = libro("111", "Alfa");
+        Book b = libro("222", "Beta");
+        dao.salvaLibro(a);
+        dao.salvaLibro(b);
+        a.setTitolo("Alfa 2");
+        dao.aggiornaLibro(a);
+        dao.eliminaLibro(b.getId());
+
+        assertFalse(new File(dir, "books.json").exists(), "Nessuna riscrittura completa prima della compattazione");
+
+        List<Book> riletti = new JsonBookDAO(dir).trovaTutti();
+        assertEquals(1, riletti.size());
+        assertEquals("Alfa 2", riletti.getFirst().getTitolo());
+    }
+
+    @Test
+    void recordFinaleTroncatoScartato() throws Exception {
+        JsonBookDAO dao = new JsonBookDAO(dir);
+        dao.salvaLibro(libro("111", "Alfa"));
+        File log = new File(dir, "books.log");
+        Files.writeString(log.toPath(), "P 500:{\"id\":9,\"isbn\":\"9", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        JsonBookDAO riaperto = new JsonBookDAO(dir);
+        assertEquals(1, riaperto.trovaTutti().size());
+
+        riaperto.salvaLibro(libro("333", "Gamma"));
+        assertEquals(2, new JsonBookDAO(dir).trovaTutti().size());
+    }
+
+    @Test
+    void erroreDiScritturaRilanciatoECacheInvariata() {
+        JsonBookDAO dao = new JsonBookDAO(dir);
+        assertTrue(new File(dir, "books.log").mkdir(), "Una cartella al posto del log rende fallita ogni scrittura");
+
+        assertThrows(IllegalArgumentException.class, () -> dao.salvaLibro(libro("111", "Alfa")));
+        assertTrue(dao.trovaTutti().isEmpty());
+    }
+
+    @Test
+    void groupCommitConservaLeModificheAllaChiusura() {
+        JsonBookDAO dao = new JsonBookDAO(dir, JsonDurability.groupCommit(Duration.ofSeconds(10)));
+        dao.salvaLibro(libro("111", "Alfa"));
+        dao.close();
+
+        assertEquals(1, new JsonBookDAO(dir).trovaTutti().size());
+    }
+
+    @Test
+    void importazioneConIsbnRipetutiRiportaLeRigheComeIlDb() {
+        JsonBookDAO dao = new JsonBookDAO(dir);
+        dao.salvaLibro(libro("111", "Alfa"));
+        Book esistente = libro("111", "Alfa bis");
+        Book doppio = libro("222", "Beta 2");
+        doppio.setCopie(2);
+
+        // la riga 0 ripete un ISBN già salvato, la 2 quello della riga 1 dello stesso blocco
+        EsitoBatch esito = dao.salvaLibri(List.of(esistente, libro("222", "Beta"), doppio));
+
+        assertEquals(1, esito.inseriti());
+        assertEquals(List.of(0, 2), List.copyOf(esito.errori().keySet()));
+        assertEquals("ISBN 111 già presente", esito.errori().get(0));
+        assertNull(esistente.getId());
+        assertNull(doppio.getId());
+        for (JsonBookDAO d : List.of(dao, new JsonBookDAO(dir))) {
+            List<Book> libri = d.trovaTutti();
+            assertEquals(List.of("Alfa", "Beta"), libri.stream().map(Book::getTitolo).sorted().toList());
+            assertEquals(1, libri.stream().filter(b -> b.getIsbn().equals("222")).findFirst().orElseThrow().getCopie());
+        }
+    }
+
+    private static Book libro(String isbn, String titolo) {
+        Book b = new Book();
+        b.setIsbn(isbn);
+        b.setTitolo(titolo);
+        b.setAutore("Autore");
+        b.setCasaEditrice("Editore");
+        b.setDataPubblicazione(LocalDate.of(2020, 1, 1));
+        b.setCopie(1);
+        return b;
+    }
+}
@@ -0,0 +1,125 @@
+package it.biblioteca.dao.json;
+
+import it.biblioteca.bean.PrestitoBean;
+import it.biblioteca.dao.Ordinamento;
+import it.biblioteca.entity.Book;
+import it.biblioteca.entity.Prestito;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonBookDaoSnapshotTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void stessaVersioneFinchéNonCambiaNulla() {
+        JsonBookDAO dao = new JsonBookDAO(dir);
+        dao.salvaLibro(libro("222", "Beta"));
+        dao.salvaLibro(libro("111", "Alfa"));
+
+        List<Book> prima = dao.trovaTutti();
+        assertSame(prima, dao.trovaTutti());
+        assertEquals(List.of("Alfa", "Beta"), prima.stream().map(Book::getTitolo).toList());
+        assertThrows(UnsupportedOperationException.class, () -> prima.add(new Book()));
+
+        dao.salvaLibro(libro("333", "Gamma"));
+        List<Book> dopo = dao.trovaTutti();
+        assertNotSame(prima, dopo);
+        assertEquals(2, prima.size(), "La versione già letta non cambia");
+        assertEquals(3, dopo.size());
+    }
+
+    @Test
+    void paginazioneSullaVersionePubblicata() {
+        JsonBookDAO dao = new JsonBookDAO(dir);
+        for (String t : List.of("Delta", "Alfa", "Gamma", "Beta")) {
+            dao.salvaLibro(libro(t, t));
+        }
+
+        List<Book> desc = dao.trovaPagina(null, 2, Ordinamento.DESC);
+        assertEquals(List.of("Gamma", "Delta"), desc.stream().map(Book::getTitolo).toList());
+        List<Book> seguito = dao.trovaPagina(desc.getLast(), 10, Ordinamento.DESC);
+        assertEquals(List.of("Beta", "Alfa"), seguito.stream().map(Book::getTitolo).toList());
+    }
+
+    @Test
+    void copieDisponibiliSeguonoIPrestitiESiRiallineano() {
+        Book libro = libro("111", "Alfa");
+        libro.setCopie(2);
+        PrestitoBean primo = new PrestitoBean();
+        try (JsonDaoFactory daos = new JsonDaoFactory(dir)) {
+            daos.bookDAO().salvaLibro(libro);
+            List<Book> prima = daos.bookDAO().trovaTutti();
+            primo.setLibroId(libro.getId());
+            assertTrue(daos.prestitoDAO().inserisciSeDisponibile(primo));
+            PrestitoBean secondo = new PrestitoBean();
+            secondo.setLibroId(libro.getId());
+            assertTrue(daos.prestitoDAO().inserisci(secondo));
+
+            assertEquals(2, prima.getFirst().getCopieDisponibili(), "La versione già letta non cambia");
+            assertEquals(0, daos.bookDAO().trovaTutti().getFirst().getCopieDisponibili());
+            assertTrue(daos.prestitoDAO().chiudiPrestito(secondo.getId(), LocalDate.now()));
+            assertFalse(daos.prestitoDAO().chiudiPrestito(secondo.getId(), LocalDate.now()));
+            assertEquals(1, daos.bookDAO().trovaPerId(libro.getId()).getCopieDisponibili());
+        }
+
+        // alla riapertura il contatore riparte dai prestiti attivi; una copia in più resta disponibile
+        try (JsonDaoFactory daos = new JsonDaoFactory(dir)) {
+            Book riletto = daos.bookDAO().trovaPerId(libro.getId());
+            assertEquals(1, riletto.getCopieDisponibili());
+            riletto.setCopie(3);
+            daos.bookDAO().aggiornaLibro(riletto);
+            assertEquals(2, daos.bookDAO().trovaPerId(libro.getId()).getCopieDisponibili());
+
+            ((JsonBookDAO) daos.bookDAO()).varia(libro.getId(), -5);
+            assertEquals(Map.of(libro.getId(), -5), daos.prestitoDAO().riconciliaCopieDisponibili());
+            assertEquals(Map.of(), daos.prestitoDAO().riconciliaCopieDisponibili());
+            assertEquals(2, daos.bookDAO().trovaTutti().getFirst().getCopieDisponibili());
+        }
+    }
+
+    @Test
+    void prestitiPubblicatiAggiornatiDaChiScrive() {
+        Book libro = libro("111", "Alfa");
+        libro.setCopie(5);
+        try (JsonDaoFactory daos = new JsonDaoFactory(dir)) {
+            daos.bookDAO().salvaLibro(libro);
+            PrestitoBean primo = new PrestitoBean();
+            primo.setLibroId(libro.getId());
+            assertTrue(daos.prestitoDAO().inserisci(primo));
+            List<Prestito> prima = daos.prestitoDAO().trovaTutti();
+
+            PrestitoBean secondo = new PrestitoBean();
+            secondo.setLibroId(libro.getId());
+            assertTrue(daos.prestitoDAO().inserisci(secondo));
+            assertTrue(daos.prestitoDAO().chiudiPrestito(primo.getId(), LocalDate.now()));
+
+            assertEquals(1, prima.size(), "La versione già letta non cambia");
+            assertNull(prima.getFirst().getDataRestituzione());
+            assertEquals(List.of(secondo.getId(), primo.getId()),
+                    daos.prestitoDAO().trovaTutti().stream().map(Prestito::getId).toList());
+            assertEquals(List.of(secondo.getId()),
+                    daos.prestitoDAO().trovaPrestitiAttivi().stream().map(Prestito::getId).toList());
+            assertNotNull(daos.prestitoDAO().trovaPerId(primo.getId()).getDataRestituzione());
+            assertEquals(Map.of(libro.getId(), 1), daos.prestitoDAO().contaPrestitiAttiviPerLibro());
+        }
+    }
+
+    private static Book libro(String isbn, String titolo) {
+        Book b = new Book();
+        b.setIsbn(isbn);
+        b.setTitolo(titolo);
+        b.setAutore("Autore");
+        b.setCasaEditrice("Editore");
+        b.setDataPubblicazione(LocalDate.of(2020, 1, 1));
+        return b;
+    }
+}
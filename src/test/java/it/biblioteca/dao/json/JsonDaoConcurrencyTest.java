@@ -0,0 +1,202 @@
+package it.biblioteca.dao.json;
+
+import it.biblioteca.bean.PrestitoBean;
+import it.biblioteca.dao.Ordinamento;
+import it.biblioteca.entity.Book;
+import it.biblioteca.entity.Utente;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Scrittori e lettori in parallelo: i lettori devono vedere sempre versioni coerenti. */
+class JsonDaoConcurrencyTest {
+
+    private static final int SCRITTORI = 4;
+    private static final int LETTORI = 4;
+    private static final int LIBRI_PER_SCRITTORE = 150;
+
+    @TempDir
+    File dir;
+
+    @Test
+    void libriScrittiInParalleloConLettoriCoerenti() throws Exception {
+        JsonBookDAO dao = new JsonBookDAO(dir, JsonDurability.groupCommit(Duration.ofMillis(20)));
+        Queue<Throwable> errori = new ConcurrentLinkedQueue<>();
+        AtomicBoolean finito = new AtomicBoolean();
+        CountDownLatch via = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(SCRITTORI + LETTORI);
+        List<Future<?>> scrittori = new ArrayList<>();
+        for (int w = 0; w < SCRITTORI; w++) {
+            int scrittore = w;
+            scrittori.add(pool.submit(() -> {
+                via.await();
+                for (int i = 0; i < LIBRI_PER_SCRITTORE; i++) {
+                    Book b = libro(scrittore + "-" + i, "Libro " + scrittore + " " + i);
+                    dao.salvaLibro(b);
+                    if (i % 10 == 0) {
+                        b.setCopie(3);
+                        dao.aggiornaLibro(b);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (int r = 0; r < LETTORI; r++) {
+            pool.submit(() -> {
+                try {
+                    via.await();
+                    int visti = 0;
+                    while (!finito.get()) {
+                        List<Book> tutti = dao.trovaTutti();
+                        assertTrue(tutti.size() >= visti, "Le versioni pubblicate non tornano indietro");
+                        visti = tutti.size();
+                        assertOrdinatiEUnici(tutti);
+                        assertTrue(dao.trovaPagina(null, 20, Ordinamento.DESC).size() <= 20);
+                        for (Book b : dao.cerca("libro", 50)) {
+                            assertTrue(b.getTitolo().startsWith("Libro"));
+                        }
+                    }
+                } catch (Throwable t) {
+                    errori.add(t);
+                }
+            });
+        }
+
+        via.countDown();
+        for (Future<?> f : scrittori) f.get(60, TimeUnit.SECONDS);
+        finito.set(true);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        assertTrue(errori.isEmpty(), () -> "Errori nei lettori: " + errori);
+
+        int attesi = SCRITTORI * LIBRI_PER_SCRITTORE;
+        assertEquals(attesi, dao.trovaTutti().size());
+        dao.close();
+
+        List<Book> riletti = new JsonBookDAO(dir).trovaTutti();
+        assertEquals(attesi, riletti.size());
+        assertEquals(attesi / 10, riletti.stream().filter(b -> b.getCopie() == 3).count());
+    }
+
+    @Test
+    void autenticazioneSempreDisponibileDuranteLeScritture() throws Exception {
+        JsonUtenteDAO dao = new JsonUtenteDAO(dir, JsonDurability.groupCommit(Duration.ofMillis(20)));
+        Queue<Throwable> errori = new ConcurrentLinkedQueue<>();
+        AtomicBoolean finito = new AtomicBoolean();
+
+        ExecutorService pool = Executors.newFixedThreadPool(1 + LETTORI);
+        Future<?> scrittore = pool.submit(() -> {
+            for (int i = 0; i < 300; i++) {
+                Utente u = new Utente();
+                u.setTessera(1000 + i);
+                u.setNome("Nome" + i);
+                u.setCognome("Cognome" + i);
+                assertTrue(dao.aggiungi(u));
+                assertTrue(dao.creaCredenziali(u.getId(), "utente" + i, "pw"));
+                assertTrue(dao.aggiornaCredenziali(1L, "admin", "admin"));
+            }
+            return null;
+        });
+        for (int r = 0; r < LETTORI; r++) {
+            pool.submit(() -> {
+                try {
+                    while (!finito.get()) {
+                        var admin = dao.findAuthByUsername("admin");
+                        assertTrue(admin.isPresent(), "Le credenziali non spariscono mai durante un aggiornamento");
+                        assertEquals(1L, admin.get().userId());
+                        assertTrue(dao.trovaTutti().size() >= 5);
+                    }
+                } catch (Throwable t) {
+                    errori.add(t);
+                }
+            });
+        }
+
+        scrittore.get(60, TimeUnit.SECONDS);
+        finito.set(true);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        assertTrue(errori.isEmpty(), () -> "Errori nei lettori: " + errori);
+        dao.close();
+
+        JsonUtenteDAO riaperto = new JsonUtenteDAO(dir);
+        assertEquals(305, riaperto.trovaTutti().size());
+        assertTrue(riaperto.findAuthByUsername("utente299").isPresent());
+    }
+
+    @Test
+    void sportelliInParalleloNonPrestanoPiuCopieDiQuanteCeNeSono() throws Exception {
+        JsonBookDAO libri = new JsonBookDAO(dir);
+        for (int i = 1; i <= 5; i++) {
+            Book b = libro("isbn-" + i, "Libro " + i);
+            b.setCopie(3);
+            libri.salvaLibro(b);
+        }
+        JsonPrestitoDAO dao = new JsonPrestitoDAO(dir, JsonDurability.groupCommit(Duration.ofMillis(20)));
+        dao.collega(libri);
+        CountDownLatch via = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(SCRITTORI * 2);
+        List<Future<Integer>> sportelli = new ArrayList<>();
+        for (int s = 0; s < SCRITTORI * 2; s++) {
+            sportelli.add(pool.submit(() -> {
+                via.await();
+                int prestati = 0;
+                for (int i = 0; i < 50; i++) {
+                    PrestitoBean bean = new PrestitoBean();
+                    bean.setLibroId((long) (i % 5) + 1);
+                    bean.setUtenteId(1L);
+                    if (dao.inserisciSeDisponibile(bean)) prestati++;
+                }
+                return prestati;
+            }));
+        }
+        via.countDown();
+        int totale = 0;
+        for (Future<Integer> f : sportelli) totale += f.get(30, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertEquals(15, totale);
+        assertEquals(Map.of(1L, 3, 2L, 3, 3L, 3, 4L, 3, 5L, 3), dao.contaPrestitiAttiviPerLibro());
+        dao.close();
+        libri.close();
+    }
+
+    private static void assertOrdinatiEUnici(List<Book> libri) {
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < libri.size(); i++) {
+            assertTrue(ids.add(libri.get(i).getId()), "Id duplicato in una versione pubblicata");
+            if (i > 0) {
+                assertTrue(libri.get(i - 1).getTitolo().compareToIgnoreCase(libri.get(i).getTitolo()) <= 0);
+            }
+        }
+    }
+
+    private static Book libro(String isbn, String titolo) {
+        Book b = new Book();
+        b.setIsbn(isbn);
+        b.setTitolo(titolo);
+        b.setAutore("Autore");
+        b.setCasaEditrice("Editore");
+        b.setDataPubblicazione(LocalDate.of(2020, 1, 1));
+        return b;
+    }
+}
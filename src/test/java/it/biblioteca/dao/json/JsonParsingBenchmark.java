@@ -0,0 +1,198 @@
+package it.biblioteca.dao.json;
+
+import it.biblioteca.entity.Book;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Confronto fra il lettore a passata singola ({@link JsonReader}) e il parsing precedente
+ * (split in sottostringhe + {@code indexOf} per campo) su un books.json di 100k record.
+ * Non è un test: si lancia a mano, es. {@code java -cp ... it.biblioteca.dao.json.JsonParsingBenchmark [record] [giri]}.
+ */
+public final class JsonParsingBenchmark {
+
+    private JsonParsingBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        File file = File.createTempFile("books-bench", ".json");
+        file.deleteOnExit();
+        Files.writeString(file.toPath(), generate(records), StandardCharsets.UTF_8);
+        System.out.printf("%d record, %.1f MB%n", records, file.length() / 1e6);
+
+        for (int i = 0; i < 3; i++) {
+            streaming(file);
+            legacy(file);
+        }
+        report("streaming", rounds, () -> streaming(file));
+        report("legacy   ", rounds, () -> legacy(file));
+    }
+
+    private interface Run {
+        int run() throws IOException;
+    }
+
+    private static void report(String name, int rounds, Run run) throws IOException {
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        int n = 0;
+        for (int i = 0; i < rounds; i++) {
+            System.gc();
+            long t0 = System.nanoTime();
+            n = run.run();
+            long t = System.nanoTime() - t0;
+            best = Math.min(best, t);
+            total += t;
+        }
+        System.out.printf("%s  media %7.1f ms  migliore %7.1f ms  (%d libri)%n",
+                name, total / 1e6 / rounds, best / 1e6, n);
+    }
+
+    private static int streaming(File file) throws IOException {
+        try (Reader in = new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8)) {
+            List<Book> books = new JsonReader(in).readArray(Book::new, (b, campo, v) -> {
+                switch (campo) {
+                    case "id" -> b.setId(JsonStorageSupport.parseLong(v));
+                    case "isbn" -> b.setIsbn(v);
+                    case "titolo" -> b.setTitolo(v);
+                    case "autore" -> b.setAutore(v);
+                    case "dataPubblicazione" -> b.setDataPubblicazione(JsonStorageSupport.parseDate(v));
+                    case "casaEditrice" -> b.setCasaEditrice(v);
+                    case "copie" -> b.setCopie(Integer.parseInt(v));
+                    default -> {
+                        // ignorato
+                    }
+                }
+            });
+            return books.size();
+        }
+    }
+
+    private static String generate(int n) {
+        StringBuilder sb = new StringBuilder(n * 200);
+        sb.append("[\n");
+        for (int i = 1; i <= n; i++) {
+            Book b = new Book();
+            b.setId((long) i);
+            b.setIsbn(String.format("978%010d", i));
+            b.setTitolo("Titolo del libro numero " + i);
+            b.setAutore("Autore \"" + (i % 977) + "\"");
+            b.setDataPubblicazione(LocalDate.of(1900 + i % 120, 1 + i % 12, 1 + i % 28));
+            b.setCasaEditrice("Editore " + (i % 131));
+            b.setCopie(1 + i % 5);
+            sb.append("  {\"id\":").append(b.getId())
+                    .append(",\"isbn\":").append(JsonStorageSupport.quote(b.getIsbn()))
+                    .append(",\"titolo\":").append(JsonStorageSupport.quote(b.getTitolo()))
+                    .append(",\"autore\":").append(JsonStorageSupport.quote(b.getAutore()))
+                    .append(",\"dataPubblicazione\":").append(JsonStorageSupport.quote(b.getDataPubblicazione().toString()))
+                    .append(",\"casaEditrice\":").append(JsonStorageSupport.quote(b.getCasaEditrice()))
+                    .append(",\"copie\":").append(b.getCopie())
+                    .append('}').append(i < n ? ",\n" : "\n");
+        }
+        return sb.append("]\n").toString();
+    }
+
+    // ---- parsing precedente, copiato qui solo come termine di paragone ----
+
+    private static int legacy(File file) throws IOException {
+        String json = Files.readString(file.toPath(), StandardCharsets.UTF_8).trim();
+        List<Book> books = new ArrayList<>();
+        for (String obj : splitTopLevelObjects(json)) {
+            Book b = new Book();
+            String id = extractRawValue(obj, "id");
+            if (id != null && !id.isEmpty() && !"null".equals(id)) b.setId(Long.valueOf(id));
+            b.setIsbn(extractRawValue(obj, "isbn"));
+            b.setTitolo(extractRawValue(obj, "titolo"));
+            b.setAutore(extractRawValue(obj, "autore"));
+            b.setDataPubblicazione(JsonStorageSupport.parseDate(extractRawValue(obj, "dataPubblicazione")));
+            b.setCasaEditrice(extractRawValue(obj, "casaEditrice"));
+            String copie = extractRawValue(obj, "copie");
+            if (copie != null && !copie.isEmpty() && !"null".equals(copie)) b.setCopie(Integer.valueOf(copie));
+            books.add(b);
+        }
+        return books.size();
+    }
+
+    private static List<String> splitTopLevelObjects(String jsonArray) {
+        List<String> objs = new ArrayList<>();
+        String trimmed = jsonArray.trim();
+        if (trimmed.length() < 2 || "[]".equals(trimmed)) return objs;
+        if (trimmed.charAt(0) == '[' && trimmed.charAt(trimmed.length() - 1) == ']') {
+            trimmed = trimmed.substring(1, trimmed.length() - 1).trim();
+        }
+        int i = 0;
+        while (i < trimmed.length()) {
+            if (trimmed.charAt(i) == '{') {
+                int end = findObjectEnd(trimmed, i);
+                if (end < 0) break;
+                objs.add(trimmed.substring(i, end + 1).trim());
+                i = end + 1;
+            } else {
+                i++;
+            }
+        }
+        return objs;
+    }
+
+    private static String extractRawValue(String obj, String field) {
+        String key = "\"" + field + "\"";
+        int k = obj.indexOf(key);
+        if (k < 0) return null;
+        int colon = obj.indexOf(':', k + key.length());
+        if (colon < 0) return null;
+        int v = colon + 1;
+        while (v < obj.length() && Character.isWhitespace(obj.charAt(v))) v++;
+        if (v >= obj.length()) return null;
+        if (obj.charAt(v) == '"') {
+            StringBuilder sb = new StringBuilder(32);
+            boolean esc = false;
+            for (int i = v + 1; i < obj.length(); i++) {
+                char c = obj.charAt(i);
+                if (esc) {
+                    sb.append(c);
+                    esc = false;
+                } else if (c == '\\') {
+                    esc = true;
+                } else if (c == '"') {
+                    break;
+                } else {
+                    sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
+        int end = v;
+        while (end < obj.length() && obj.charAt(end) != ',' && obj.charAt(end) != '}') end++;
+        return obj.substring(v, end).trim();
+    }
+
+    private static int findObjectEnd(String s, int start) {
+        int depth = 1;
+        boolean inStr = false;
+        boolean esc = false;
+        for (int i = start + 1; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (inStr) {
+                if (esc) esc = false;
+                else if (ch == '\\') esc = true;
+                else if (ch == '"') inStr = false;
+                continue;
+            }
+            if (ch == '"') inStr = true;
+            else if (ch == '{') depth++;
+            else if (ch == '}' && --depth == 0) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,57 @@
+package it.biblioteca.dao.json;
+
+import it.biblioteca.entity.Utente;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonUtenteDaoIndexTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void tesseraEUsernameUnivoci() {
+        JsonUtenteDAO dao = new JsonUtenteDAO(dir);
+        Utente u = utente(500, "Anna");
+        assertTrue(dao.aggiungi(u));
+        assertFalse(dao.aggiungi(utente(500, "Bruno")), "Tessera già assegnata");
+
+        assertTrue(dao.creaCredenziali(u.getId(), "anna", "pw"));
+        Utente altro = utente(501, "Carla");
+        assertTrue(dao.aggiungi(altro));
+        assertFalse(dao.creaCredenziali(altro.getId(), "ANNA", "pw"), "Username già in uso");
+        assertTrue(dao.aggiornaCredenziali(u.getId(), "Anna", "pw2"), "Lo stesso utente può cambiare maiuscole");
+    }
+
+    @Test
+    void indiciAllineatiDopoModificheERiapertura() {
+        JsonUtenteDAO dao = new JsonUtenteDAO(dir);
+        Utente u = utente(600, "Dario");
+        dao.aggiungi(u);
+        dao.creaCredenziali(u.getId(), "dario", "pw");
+        dao.aggiornaCredenziali(u.getId(), "dario2", "pw");
+
+        JsonUtenteDAO riaperto = new JsonUtenteDAO(dir);
+        assertTrue(riaperto.findAuthByUsername("dario").isEmpty());
+        assertEquals(600, riaperto.findAuthByUsername("DARIO2").orElseThrow().tessera());
+
+        assertEquals("Dario", riaperto.trovaPerTessera(600).getNome());
+
+        assertTrue(riaperto.elimina(u.getId()));
+        assertTrue(riaperto.findAuthByUsername("dario2").isEmpty());
+        assertNull(riaperto.trovaPerTessera(600));
+        assertTrue(riaperto.aggiungi(utente(600, "Elena")), "La tessera si libera con l'eliminazione");
+    }
+
+    private static Utente utente(int tessera, String nome) {
+        Utente u = new Utente();
+        u.setTessera(tessera);
+        u.setNome(nome);
+        u.setCognome("Prova");
+        return u;
+    }
+}
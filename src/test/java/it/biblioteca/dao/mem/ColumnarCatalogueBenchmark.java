@@ -0,0 +1,90 @@
+package it.biblioteca.dao.mem;
+
+import it.biblioteca.dao.BookDAO;
+import it.biblioteca.dao.Ordinamento;
+import it.biblioteca.entity.Book;
+
+import java.lang.ref.Reference;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Heap occupato da un catalogo di libri tenuto come {@code List<Book>} rispetto a {@link ColumnarCatalogue},
+ * più la latenza di pagina e ricerca sul catalogo a colonne.
+ * Non è un test: si lancia a mano, es. {@code java -Xmx4g -cp ... it.biblioteca.dao.mem.ColumnarCatalogueBenchmark [libri]}.
+ */
+public final class ColumnarCatalogueBenchmark {
+
+    private ColumnarCatalogueBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int libri = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        long base = heapUsato();
+        List<Book> oggetti = new ArrayList<>(libri);
+        for (int i = 0; i < libri; i++) oggetti.add(libro(i));
+        long conOggetti = heapUsato() - base;
+        Reference.reachabilityFence(oggetti);
+        System.out.printf("List<Book>         %7.1f MB%n", conOggetti / 1e6);
+        oggetti = null;
+
+        base = heapUsato();
+        ColumnarCatalogue c = ColumnarCatalogue.load(new Generatore(libri));
+        long colonnare = heapUsato() - base;
+        Reference.reachabilityFence(c);
+        System.out.printf("ColumnarCatalogue  %7.1f MB  (%.0f%%)%n", colonnare / 1e6, 100.0 * colonnare / conOggetti);
+
+        misura("pagina 50 a metà", () -> c.page(libro(libri / 2), 50, Ordinamento.ASC).size());
+        misura("ricerca autore  ", () -> c.search("autore 17", 50).size());
+        misura("ricerca rara    ", () -> c.search("titolo 0999999", 50).size());
+    }
+
+    private static void misura(String nome, java.util.function.IntSupplier op) {
+        for (int i = 0; i < 5; i++) op.getAsInt();
+        long best = Long.MAX_VALUE;
+        int n = 0;
+        for (int i = 0; i < 10; i++) {
+            long t0 = System.nanoTime();
+            n = op.getAsInt();
+            best = Math.min(best, System.nanoTime() - t0);
+        }
+        System.out.printf("%s  %9.3f ms  (%d risultati)%n", nome, best / 1e6, n);
+    }
+
+    private static long heapUsato() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static Book libro(int i) {
+        Book b = new Book();
+        b.setId(i + 1L);
+        b.setIsbn("978-" + (1_000_000_000L + i));
+        b.setTitolo(String.format("Titolo %07d", i));
+        b.setAutore(new String("Autore " + (i % 20_000))); // stringhe duplicate come se lette da file o DB
+        b.setCasaEditrice(new String("Editore " + (i % 300)));
+        b.setDataPubblicazione(LocalDate.of(1900 + i % 120, 1 + i % 12, 1 + i % 28));
+        b.setCopie(1 + i % 4);
+        return b;
+    }
+
+    /** DAO che genera le pagine al volo, così nel caricamento non esiste mai la lista completa. */
+    private record Generatore(int libri) implements BookDAO {
+        @Override
+        public List<Book> trovaPagina(Book dopo, int limite, Ordinamento ordine) {
+            int da = dopo == null ? 0 : dopo.getId().intValue();
+            List<Book> out = new ArrayList<>();
+            for (int i = da; i < Math.min(libri, da + limite); i++) out.add(libro(i));
+            return out;
+        }
+
+        @Override public void salvaLibro(Book book) { throw new UnsupportedOperationException(); }
+        @Override public void aggiornaLibro(Book book) { throw new UnsupportedOperationException(); }
+        @Override public void eliminaLibro(Long id) { throw new UnsupportedOperationException(); }
+        @Override public List<Book> trovaTutti() { throw new UnsupportedOperationException(); }
+        @Override public List<Book> cerca(String testo, int limite) { throw new UnsupportedOperationException(); }
+    }
+}
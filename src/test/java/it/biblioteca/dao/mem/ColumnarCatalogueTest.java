@@ -0,0 +1,93 @@
+package it.biblioteca.dao.mem;
+
+import it.biblioteca.dao.Ordinamento;
+import it.biblioteca.dao.json.JsonBookDAO;
+import it.biblioteca.entity.Book;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Il catalogo a colonne deve restituire gli stessi libri, nello stesso ordine, del DAO da cui è caricato. */
+class ColumnarCatalogueTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void pagineERicercheComeIlDao() {
+        JsonBookDAO dao = new JsonBookDAO(dir);
+        for (int i = 0; i < 2500; i++) {
+            dao.salvaLibro(libro("isbn-" + i, (i % 7 == 0 ? "il " : "Il ") + "Titolo " + (i % 900),
+                    "Autore " + (i % 40), i % 3 == 0 ? null : LocalDate.of(1990 + i % 30, 1, 1)));
+        }
+        ColumnarCatalogue c = ColumnarCatalogue.load(dao);
+
+        assertEquals(2500, c.size());
+        assertSameBooks(dao.trovaTutti(), c.all());
+        for (Ordinamento o : Ordinamento.values()) {
+            Book dopo = null;
+            for (int p = 0; p < 4; p++) {
+                List<Book> attesa = dao.trovaPagina(dopo, 333, o);
+                assertSameBooks(attesa, c.page(dopo, 333, o));
+                dopo = attesa.getLast();
+            }
+        }
+        for (String q : List.of("autore 1", "tit 12", "isbn 77", "inesistente", "")) {
+            assertSameBooks(dao.cerca(q, 50), c.search(q, 50));
+        }
+    }
+
+    @Test
+    void aggiornamentiMantengonoOrdinamentoEIsbn() {
+        JsonBookDAO dao = new JsonBookDAO(dir);
+        dao.salvaLibro(libro("a", "Bravo", "X", null));
+        dao.salvaLibro(libro("b", "Charlie", "Y", null));
+        ColumnarCatalogue c = ColumnarCatalogue.load(dao);
+        List<Book> prima = c.all();
+
+        Book alfa = libro("c", "Alfa", "Z", LocalDate.of(2001, 2, 3));
+        alfa.setId(10L);
+        c.put(alfa);
+        Book rinominato = libro("a", "Delta", "X", null);
+        rinominato.setId(99L); // stesso ISBN: aggiorna la riga esistente e ne mantiene l'id
+        c.put(rinominato);
+        c.remove(2L);
+
+        assertEquals(List.of("Alfa", "Delta"), c.all().stream().map(Book::getTitolo).toList());
+        assertEquals(1L, c.all().get(1).getId());
+        assertEquals(LocalDate.of(2001, 2, 3), c.search("alfa", 5).getFirst().getDataPubblicazione());
+        assertEquals(2, prima.size(), "Le viste già restituite non cambiano dimensione");
+        assertEquals(2L, prima.get(1).getId());
+    }
+
+    private static void assertSameBooks(List<Book> attesi, List<Book> trovati) {
+        assertEquals(attesi.size(), trovati.size());
+        List<String> a = new ArrayList<>();
+        List<String> t = new ArrayList<>();
+        for (Book b : attesi) a.add(descrivi(b));
+        for (Book b : trovati) t.add(descrivi(b));
+        assertEquals(a, t);
+    }
+
+    private static String descrivi(Book b) {
+        return b.getId() + "|" + b.getIsbn() + "|" + b.getTitolo() + "|" + b.getAutore() + "|"
+                + b.getCasaEditrice() + "|" + b.getDataPubblicazione() + "|" + b.getCopie();
+    }
+
+    private static Book libro(String isbn, String titolo, String autore, LocalDate data) {
+        Book b = new Book();
+        b.setIsbn(isbn);
+        b.setTitolo(titolo);
+        b.setAutore(autore);
+        b.setCasaEditrice("Editore");
+        b.setDataPubblicazione(data);
+        b.setCopie(2);
+        return b;
+    }
+}
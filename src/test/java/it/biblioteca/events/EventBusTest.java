@@ -0,0 +1,82 @@
+package it.biblioteca.events;
+
+import it.biblioteca.events.events.BookChanged;
+import it.biblioteca.events.events.UtenteChanged;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventBusTest {
+
+    @Test
+    void consegnaPerTipoESupertipo() {
+        EventBus bus = new EventBus(Runnable::run);
+        List<String> ricevuti = new ArrayList<>();
+        bus.subscribe(BookChanged.class, e -> ricevuti.add("libro " + e.bookId));
+        bus.subscribe(AppEvent.class, e -> ricevuti.add("evento " + e.getClass().getSimpleName()));
+        bus.subscribe(UtenteChanged.class, e -> { throw new IllegalStateException("guasto"); });
+
+        bus.publish(new BookChanged(BookChanged.Action.ADDED, 7L));
+        bus.publish(new UtenteChanged(UtenteChanged.Action.ADDED, 1L));
+
+        assertEquals(List.of("libro 7", "evento BookChanged", "evento UtenteChanged"), ricevuti);
+        EventBus.Statistiche utenti = bus.statistiche().get(UtenteChanged.class);
+        assertEquals(1, utenti.pubblicati());
+        assertEquals(2, utenti.consegnati());
+        assertEquals(1, utenti.errori());
+    }
+
+    @Test
+    @Timeout(10)
+    void rafficaAccorpataInPocheConsegne() throws InterruptedException {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            EventBus bus = new EventBus(executor);
+            List<List<BookChanged>> chiamate = new ArrayList<>();
+            List<Long> inOrdine = new ArrayList<>();
+            CountDownLatch tutti = new CountDownLatch(10_000);
+            CountDownLatch singoli = new CountDownLatch(10_000);
+            bus.subscribeCoalesced(BookChanged.class, Duration.ofMillis(500), eventi -> {
+                synchronized (chiamate) {
+                    chiamate.add(eventi);
+                }
+                for (int i = 0; i < eventi.size(); i++) tutti.countDown();
+            });
+            bus.subscribe(BookChanged.class, e -> {
+                inOrdine.add(e.bookId); // mai chiamato in parallelo con se stesso
+                singoli.countDown();
+            });
+
+            for (long i = 0; i < 10_000; i++) bus.publish(new BookChanged(BookChanged.Action.UPDATED, i));
+
+            // su una macchina lenta la raffica può scavalcare la finestra: conta l'ordine, non il numero esatto
+            assertTrue(tutti.await(5, TimeUnit.SECONDS));
+            int consegne;
+            synchronized (chiamate) {
+                consegne = chiamate.size();
+                assertTrue(consegne <= 3, "Troppe consegne per una raffica: " + consegne);
+                List<Long> accorpati = chiamate.stream().flatMap(List::stream).map(e -> e.bookId).toList();
+                assertEquals(10_000, accorpati.size());
+                for (int i = 0; i < accorpati.size(); i++) assertEquals(i, accorpati.get(i));
+            }
+            assertTrue(singoli.await(5, TimeUnit.SECONDS));
+            assertEquals(10_000, inOrdine.size());
+            for (int i = 0; i < inOrdine.size(); i++) assertEquals(i, inOrdine.get(i));
+
+            // le metriche si aggiornano appena dopo il ritorno del consumer
+            EventBus.Statistiche s;
+            while ((s = bus.statistiche().get(BookChanged.class)).consegnati() < 20_000) Thread.sleep(10);
+            assertEquals(10_000, s.pubblicati());
+            assertEquals(10_000 + consegne, s.chiamate());
+            assertTrue(s.latenzaMassimaMs() >= 500, "La finestra conta nella latenza: " + s);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package it.biblioteca.service;
+
+import it.biblioteca.bean.PrestitoBean;
+import it.biblioteca.controller.PrestitoController;
+import it.biblioteca.dao.DaoFactory;
+import it.biblioteca.dao.PooledConnectionProvider;
+import it.biblioteca.dao.bin.BinaryDaoFactory;
+import it.biblioteca.dao.db.DbDaoFactory;
+import it.biblioteca.dao.json.JsonDaoFactory;
+import it.biblioteca.entity.Book;
+import it.biblioteca.entity.Utente;
+import it.biblioteca.testutil.TestConnectionProvider;
+import it.biblioteca.testutil.TestDbSetup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Molti sportelli che registrano prestiti nello stesso momento su pochi libri con poche copie.
+ * Misura i prestiti al secondo e controlla che nessun libro finisca con più prestiti attivi che copie.
+ * Non è un test: si lancia a mano, es.
+ * {@code java -cp ... it.biblioteca.service.PrestitiConcorrentiBenchmark [json|bin|db] [sportelli] [tentativi]};
+ * con {@code db} serve il MariaDB dei test (vedi {@link TestConnectionProvider}), il cui schema viene ricreato.
+ */
+public final class PrestitiConcorrentiBenchmark {
+
+    private static final int LIBRI = 50;
+    private static final int COPIE = 3;
+
+    private PrestitiConcorrentiBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String backend = args.length > 0 ? args[0] : "json";
+        int sportelli = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int tentativi = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        try (AutoCloseable factory = apri(backend)) {
+            DaoFactory daos = (DaoFactory) factory;
+            List<Long> libri = new ArrayList<>();
+            for (int i = 0; i < LIBRI; i++) {
+                Book b = new Book();
+                b.setIsbn("bench-" + i);
+                b.setTitolo("Titolo " + i);
+                b.setAutore("Autore");
+                b.setCasaEditrice("Editore");
+                b.setDataPubblicazione(LocalDate.of(2020, 1, 1));
+                b.setCopie(COPIE);
+                daos.bookDAO().salvaLibro(b);
+                libri.add(b.getId());
+            }
+            Utente u = new Utente();
+            u.setTessera(900_000 + ThreadLocalRandom.current().nextInt(100_000));
+            u.setNome("Sportello");
+            u.setCognome("Prova");
+            daos.utenteDAO().aggiungi(u);
+
+            PrestitoService service = new PrestitoService(daos.prestitoDAO(), daos.bookDAO(), daos.utenteDAO());
+            LongAdder ok = new LongAdder();
+            LongAdder esaurite = new LongAdder();
+            LongAdder errori = new LongAdder();
+            CountDownLatch via = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for (int s = 0; s < sportelli; s++) {
+                threads.add(Thread.ofPlatform().start(() -> {
+                    try {
+                        via.await();
+                    } catch (InterruptedException _) {
+                        return;
+                    }
+                    for (int t = 0; t < tentativi; t++) {
+                        PrestitoBean bean = new PrestitoBean();
+                        bean.setLibroId(libri.get(ThreadLocalRandom.current().nextInt(libri.size())));
+                        bean.setUtenteId(u.getId());
+                        bean.setDataPrestito(LocalDate.now());
+                        PrestitoController.Esito esito = service.registerLoan(bean);
+                        if (esito == PrestitoController.Esito.OK) ok.increment();
+                        else if (esito == PrestitoController.Esito.NESSUNA_COPIA) esaurite.increment();
+                        else errori.increment();
+                    }
+                }));
+            }
+
+            long t0 = System.nanoTime();
+            via.countDown();
+            for (Thread t : threads) t.join();
+            double secondi = (System.nanoTime() - t0) / 1e9;
+
+            Map<Long, Integer> attivi = daos.prestitoDAO().contaPrestitiAttiviPerLibro();
+            long oltre = libri.stream().filter(id -> attivi.getOrDefault(id, 0) > COPIE).count();
+            System.out.printf("%s, %d sportelli x %d tentativi: %.0f registrazioni/s%n",
+                    backend, sportelli, tentativi, sportelli * tentativi / secondi);
+            System.out.printf("prestiti %d (attesi %d), copie esaurite %d, errori %d, libri con più prestiti che copie: %d%n",
+                    ok.sum(), LIBRI * COPIE, esaurite.sum(), errori.sum(), oltre);
+        }
+    }
+
+    private static AutoCloseable apri(String backend) throws Exception {
+        return switch (backend) {
+            case "db" -> {
+                TestConnectionProvider cp = new TestConnectionProvider();
+                try (Connection c = cp.getConnection()) {
+                    TestDbSetup.resetSchema(c);
+                }
+                yield new DbDaoFactory(new PooledConnectionProvider(cp));
+            }
+            case "bin" -> new BinaryDaoFactory(cartella());
+            default -> new JsonDaoFactory(cartella());
+        };
+    }
+
+    private static File cartella() throws Exception {
+        File dir = Files.createTempDirectory("prestiti-bench").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+}
@@ -16,6 +16,7 @@ public final class TestDbSetup {
             st.execute("DROP TABLE IF EXISTS credenziali");
             st.execute("DROP TABLE IF EXISTS libri");
             st.execute("DROP TABLE IF EXISTS utenti");
+            st.execute("DROP TABLE IF EXISTS schema_versione");
 
             st.execute("""
                 CREATE TABLE utenti (
@@ -26,7 +27,8 @@ public final class TestDbSetup {
                   email VARCHAR(150),
                   telefono VARCHAR(50),
                   data_attivazione DATE NULL,
-                  data_scadenza DATE NULL
+                  data_scadenza DATE NULL,
+                  FULLTEXT KEY ft_utenti_nominativo (nome, cognome, email)
                 )
             """);
 
@@ -39,7 +41,9 @@ public final class TestDbSetup {
                   data_pubblicazione DATE NOT NULL,
                   casa_editrice VARCHAR(100) NOT NULL,
                   attivo TINYINT(1) NOT NULL DEFAULT 1,
-                  copie INT NOT NULL DEFAULT 1
+                  copie INT NOT NULL DEFAULT 1,
+                  copie_disponibili INT NOT NULL DEFAULT 1,
+                  FULLTEXT KEY ft_libri_testo (titolo, autore, casa_editrice)
                 )
             """);
 
@@ -57,6 +61,7 @@ public final class TestDbSetup {
                   utente_nome_snapshot VARCHAR(100),
                   utente_cognome_snapshot VARCHAR(100),
                   utente_snapshot TEXT NULL,
+                  FULLTEXT KEY ft_prestiti_snapshot (libro_titolo_snapshot, utente_descrizione),
                   CONSTRAINT fk_prestiti_libro FOREIGN KEY (libro_id) REFERENCES libri(id) ON DELETE SET NULL ON UPDATE CASCADE,
                   CONSTRAINT fk_prestiti_utente FOREIGN KEY (utente_id) REFERENCES utenti(id) ON DELETE SET NULL ON UPDATE CASCADE
                 )
@@ -92,8 +97,8 @@ public final class TestDbSetup {
             st.execute("INSERT INTO credenziali (utente_id, username, password_hash, role) VALUES (3,'mario',SHA2('mario',256),'UTENTE')");
 
             st.execute("""
-                INSERT INTO libri (isbn,titolo,autore,data_pubblicazione,casa_editrice,attivo,copie)
-                VALUES ('978000000001','Libro Test','Autore Test', CURDATE(),'Editore Test',1,3)
+                INSERT INTO libri (isbn,titolo,autore,data_pubblicazione,casa_editrice,attivo,copie,copie_disponibili)
+                VALUES ('978000000001','Libro Test','Autore Test', CURDATE(),'Editore Test',1,3,3)
             """);
 
             st.execute("SET FOREIGN_KEY_CHECKS=1");
@@ -0,0 +1,75 @@
+package it.biblioteca.ui;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PagedLoaderTest {
+
+    private record Riga(long id, String testo) {}
+
+    private final List<Riga> tabella = new ArrayList<>();
+    private final ObservableList<Riga> lista = FXCollections.observableArrayList();
+    // pagine lette e applicate subito, sul thread del test
+    private final PagedLoader<Riga> loader = new PagedLoader<>(lista, 3,
+            (dopo, limite) -> tabella.stream().filter(r -> dopo == null || r.id() > dopo.id()).limit(limite).toList(),
+            Riga::id, Runnable::run, Runnable::run);
+
+    @Test
+    void rigaNonAncoraCaricataArrivaAggiornataConLaSuaPagina() {
+        for (long i = 1; i <= 7; i++) tabella.add(new Riga(i, "v" + i));
+        loader.showFirstPage(loader.fetchFirstPage());
+        assertEquals(List.of(1L, 2L, 3L), ids());
+
+        // es. un prestito sul libro 5, che sta nella seconda pagina
+        tabella.set(4, new Riga(5, "v5 aggiornato"));
+        assertFalse(loader.replace(new Riga(5, "v5 aggiornato")));
+        assertEquals(List.of(1L, 2L, 3L), ids());
+
+        loader.loadNextPage();
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), ids());
+        assertEquals("v5 aggiornato", lista.get(4).testo());
+    }
+
+    @Test
+    void modificheSulleRigheCaricateNonSiDuplicanoNeRitornano() {
+        for (long i = 1; i <= 7; i++) tabella.add(new Riga(i, "v" + i));
+        loader.showFirstPage(loader.fetchFirstPage());
+
+        assertTrue(loader.replace(new Riga(2, "v2 nuovo")));
+        assertEquals("v2 nuovo", lista.get(1).testo());
+        // una riga nuova aggiunta in testa che sta anche nella pagina successiva
+        loader.upsert(new Riga(4, "v4"), true);
+        loader.upsert(new Riga(1, "v1 nuovo"), false);
+        assertEquals(List.of(4L, 1L, 2L, 3L), ids());
+        assertEquals("v1 nuovo", lista.get(1).testo());
+        // la seconda pagina non ripete la 4; una riga tolta esce dalla lista, una chiave assente non fa nulla
+        loader.loadNextPage();
+        loader.remove(6L);
+        assertEquals(List.of(4L, 1L, 2L, 3L, 5L), ids());
+        loader.remove(99L);
+
+        loader.loadNextPage();
+        assertEquals(List.of(4L, 1L, 2L, 3L, 5L, 7L), ids());
+        assertTrue(loader.isExhausted());
+    }
+
+    @Test
+    void unaNuovaPrimaPaginaAzzeraLeModifiche() {
+        for (long i = 1; i <= 4; i++) tabella.add(new Riga(i, "v" + i));
+        loader.showFirstPage(loader.fetchFirstPage());
+        loader.remove(3L);
+        loader.showFirstPage(loader.fetchFirstPage());
+        loader.loadNextPage();
+        assertEquals(List.of(1L, 2L, 3L, 4L), ids());
+    }
+
+    private List<Long> ids() {
+        return lista.stream().map(Riga::id).toList();
+    }
+}
@@ -0,0 +1,63 @@
+package it.biblioteca.util;
+
+import it.biblioteca.bean.PrestitoBean;
+import it.biblioteca.dao.json.JsonPrestitoDAO;
+import it.biblioteca.entity.Prestito;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StringPoolTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void stringheUgualiDiventanoLaStessaIstanza() {
+        StringPool pool = new StringPool(64);
+        String a = pool.dedup(new String("Umberto Eco"));
+        String b = pool.dedup(new String("Umberto Eco"));
+
+        assertSame(a, b);
+        assertEquals(2, pool.richieste());
+        assertEquals(1, pool.riusate());
+        assertTrue(pool.byteRisparmiati() >= 40 + "Umberto Eco".length());
+        assertNull(pool.dedup(null));
+        String lunga = "x".repeat(1000);
+        assertSame(lunga, pool.dedup(lunga));
+    }
+
+    @Test
+    void collisioniSostituisconoSenzaCrescere() {
+        StringPool pool = new StringPool(16);
+        for (int i = 0; i < 10_000; i++) {
+            String s = "autore " + i;
+            assertEquals(s, pool.dedup(s));
+        }
+        assertTrue(pool.toString().contains("16 slot"));
+    }
+
+    @Test
+    void snapshotDeiPrestitiRilettiCondivisi() {
+        JsonPrestitoDAO dao = new JsonPrestitoDAO(dir);
+        for (int i = 0; i < 20; i++) {
+            PrestitoBean bean = new PrestitoBean();
+            bean.setLibroId(1L);
+            bean.setUtenteId(1L);
+            bean.setUtenteSnapshot("Mario Rossi");
+            bean.setLibroTitoloSnapshot("Il nome della rosa");
+            dao.inserisci(bean);
+        }
+
+        List<Prestito> riletti = new JsonPrestitoDAO(dir).trovaTutti();
+        assertEquals(20, riletti.size());
+        for (Prestito p : riletti) {
+            assertSame(riletti.getFirst().getUtente(), p.getUtente());
+            assertSame(riletti.getFirst().getLibroTitoloSnapshot(), p.getLibroTitoloSnapshot());
+        }
+    }
+}
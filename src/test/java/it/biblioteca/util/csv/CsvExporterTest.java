@@ -0,0 +1,80 @@
+package it.biblioteca.util.csv;
+
+import it.biblioteca.bean.PrestitoBean;
+import it.biblioteca.dao.bin.BinaryBookDAO;
+import it.biblioteca.dao.json.JsonPrestitoDAO;
+import it.biblioteca.entity.Book;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvExporterTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void prestitiEsportatiDalDaoInStreaming() throws IOException {
+        JsonPrestitoDAO dao = new JsonPrestitoDAO(dir);
+        for (int i = 0; i < 2500; i++) {
+            PrestitoBean bean = new PrestitoBean();
+            bean.setLibroId((long) i);
+            bean.setUtenteId(1L);
+            bean.setUtenteSnapshot("Rossi; Mario");
+            bean.setLibroTitoloSnapshot("Titolo " + i);
+            bean.setDataPrestito(LocalDate.of(2024, 1, 1));
+            dao.inserisci(bean);
+        }
+        File f = new File(dir, "prestiti.csv");
+        List<Long> avanzamento = new ArrayList<>();
+
+        long n = CsvExporter.exportLoans(dao::scorri, f, righe -> avanzamento.add(righe));
+
+        assertEquals(2500, n);
+        assertEquals(List.of(1000L, 2000L, 2500L), avanzamento);
+        List<String> righe = Files.readAllLines(f.toPath(), StandardCharsets.UTF_8);
+        assertEquals(2501, righe.size());
+        assertTrue(righe.get(1).contains("\"Rossi; Mario\""));
+        assertFalse(new File(dir, "prestiti.csv.tmp").exists());
+    }
+
+    @Test
+    void annullamentoLasciaIlFileDiPrima() throws IOException {
+        BinaryBookDAO dao = new BinaryBookDAO(dir);
+        for (int i = 0; i < 2500; i++) dao.salvaLibro(libro(i));
+        File f = new File(dir, "catalogo.csv");
+        Files.writeString(f.toPath(), "vecchio", StandardCharsets.UTF_8);
+
+        assertThrows(CancellationException.class, () -> CsvExporter.exportBooks(dao::scorri, f, righe -> righe < 2000));
+
+        assertEquals("vecchio", Files.readString(f.toPath()));
+        assertFalse(new File(dir, "catalogo.csv.tmp").exists());
+
+        // lo scorrimento a pagine predefinito vede ogni libro una volta, nell'ordine di trovaPagina
+        List<Long> visti = new ArrayList<>();
+        dao.scorri(b -> visti.add(b.getId()));
+        assertEquals(2500, visti.stream().distinct().count());
+        assertEquals(dao.trovaTutti().stream().map(Book::getId).toList(), visti);
+    }
+
+    private static Book libro(int i) {
+        Book b = new Book();
+        b.setIsbn("isbn-" + i);
+        b.setTitolo("Titolo " + (i % 700));
+        b.setAutore("Autore");
+        b.setCasaEditrice("Editore");
+        b.setDataPubblicazione(LocalDate.of(2020, 1, 1));
+        b.setCopie(1);
+        return b;
+    }
+}
@@ -0,0 +1,50 @@
+package it.biblioteca.util.csv;
+
+import it.biblioteca.dao.EsitoBatch;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.TreeMap;
+
+/**
+ * Tempo di analisi e validazione di un CSV di libri, su un thread e con la pipeline parallela.
+ * La scrittura è un no-op, così si misura solo il lavoro CPU dell'import.
+ * Non è un test: si lancia a mano, es. {@code java -cp ... it.biblioteca.util.csv.CsvImportBenchmark [righe]}.
+ */
+public final class CsvImportBenchmark {
+
+    private CsvImportBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int righe = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        File f = File.createTempFile("libri", ".csv");
+        f.deleteOnExit();
+        try (BufferedWriter w = Files.newBufferedWriter(f.toPath(), StandardCharsets.UTF_8)) {
+            w.write("ISBN;Titolo;Autore;Pubblicazione;CasaEditrice;Copie\n");
+            for (int i = 0; i < righe; i++) {
+                w.write("978-" + (1_000_000_000L + i) + ";\"Titolo; numero " + i + "\";Autore " + (i % 20_000)
+                        + ";" + (1900 + i % 120) + "-0" + (1 + i % 9) + "-1" + (i % 9) + ";Editore " + (i % 300)
+                        + ";" + (1 + i % 4) + "\n");
+            }
+        }
+        System.out.printf("%d righe, %.1f MB%n", righe, f.length() / 1e6);
+
+        int core = Runtime.getRuntime().availableProcessors();
+        for (int giro = 0; giro < 3; giro++) {
+            misura("1 thread ", f, 1);
+            misura(core + " thread", f, core);
+        }
+    }
+
+    private static void misura(String nome, File f, int paralleli) {
+        long t0 = System.nanoTime();
+        EsitoBatch esito = CsvImportPipeline.esegui(f, CsvImporter::toBook, CsvImportPipeline.RECORD_PER_BLOCCO,
+                paralleli, blocco -> new EsitoBatch(blocco.size(), new TreeMap<>()), null);
+        System.out.printf("%s  %7.0f ms  (%d righe, %d scartate)%n", nome, (System.nanoTime() - t0) / 1e6,
+                esito.inseriti(), esito.falliti());
+    }
+}
@@ -0,0 +1,124 @@
+package it.biblioteca.util.csv;
+
+import it.biblioteca.bean.BookBean;
+import it.biblioteca.bean.UtenteBean;
+import it.biblioteca.dao.EsitoBatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvImportPipelineTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void blocchiInOrdineConErroriPerRiga() throws IOException {
+        StringBuilder csv = new StringBuilder("ISBN;Titolo;Copie\n");
+        for (int i = 0; i < 5000; i++) {
+            if (i == 10) csv.append("isbn-10;\"Titolo\nsu due righe\";1\n");
+            else if (i % 1000 == 999) csv.append("isbn-").append(i).append(";Titolo;tante\n");
+            else csv.append("isbn-").append(i).append(";Titolo ").append(i).append(";2\n");
+        }
+        File f = scrivi(csv);
+
+        List<String> scritti = new ArrayList<>();
+        Map<String, String> titoli = new HashMap<>();
+        List<Double> avanzamento = new ArrayList<>();
+        EsitoBatch esito = CsvImportPipeline.esegui(f, CsvImporter::toBook, 64, 4, blocco -> {
+            TreeMap<Integer, String> errori = new TreeMap<>();
+            for (int i = 0; i < blocco.size(); i++) {
+                if (blocco.get(i).getIsbn().equals("isbn-2500")) errori.put(i, "ISBN già presente");
+                else scritti.add(blocco.get(i).getIsbn());
+                titoli.put(blocco.get(i).getIsbn(), blocco.get(i).getTitolo());
+            }
+            return new EsitoBatch(blocco.size() - errori.size(), errori);
+        }, a -> avanzamento.add(a.frazione()));
+
+        assertEquals(4994, esito.inseriti());
+        assertEquals(4994, scritti.size());
+        for (int i = 1; i < scritti.size(); i++) {
+            assertTrue(numero(scritti.get(i - 1)) < numero(scritti.get(i)), "Ordine del file: " + scritti.get(i));
+        }
+        assertEquals("Titolo\nsu due righe", titoli.get("isbn-10"));
+        // intestazione alla riga 1, il record 10 occupa le righe 12-13: da lì in poi la riga è i + 3
+        assertEquals(List.of(1002, 2002, 2503, 3002, 4002, 5002), List.copyOf(esito.errori().keySet()));
+        assertEquals("ISBN già presente", esito.errori().get(2503));
+        assertEquals("Copie deve essere numerico.", esito.errori().get(1002));
+        assertEquals(1.0, avanzamento.getLast());
+    }
+
+    @Test
+    void utentiValidati() throws IOException {
+        File f = scrivi("Tessera;Nome;Email;DataAttivazione;DataScadenza\n"
+                + "1;Anna;anna@example.org;2024-01-01;2025-01-01\n"
+                + ";Senza tessera;;;\n"
+                + "3;Bruno;non-una-email;2024-01-01;2023-01-01\n"
+                + "4;Carla;;ieri;\n");
+        List<UtenteBean> scritti = new ArrayList<>();
+
+        EsitoBatch esito = CsvImportPipeline.users(f, null).scriviTutto(blocco -> {
+            scritti.addAll(blocco);
+            return new EsitoBatch(blocco.size(), new TreeMap<>());
+        });
+
+        assertEquals(1, esito.inseriti());
+        assertEquals(List.of("Anna"), scritti.stream().map(UtenteBean::getNome).toList());
+        assertEquals(List.of(3, 4, 5), List.copyOf(esito.errori().keySet()));
+        assertTrue(esito.errori().get(4).contains("Email non valida."));
+        assertTrue(esito.errori().get(4).contains("Data scadenza non può essere precedente"));
+    }
+
+    @Test
+    void dimensioneDelBloccoConfigurabile() throws IOException {
+        File f = scrivi("ISBN;Titolo\n111;Alfa\n222;Beta\n333;Gamma\n444;Delta\n555;Epsilon\n");
+        List<Integer> blocchi = new ArrayList<>();
+
+        EsitoBatch esito = CsvImportPipeline.books(f, 2, null).scriviTutto(blocco -> {
+            blocchi.add(blocco.size());
+            return new EsitoBatch(blocco.size(), new TreeMap<>());
+        });
+
+        assertEquals(5, esito.inseriti());
+        assertEquals(List.of(2, 2, 1), blocchi);
+        assertThrows(IllegalArgumentException.class, () -> CsvImportPipeline.users(f, 0, null));
+    }
+
+    @Test
+    @Timeout(10)
+    void erroreDiScritturaFermaLaLettura() throws IOException {
+        StringBuilder csv = new StringBuilder("ISBN;Titolo\n");
+        for (int i = 0; i < 100_000; i++) csv.append("isbn-").append(i).append(";Titolo\n");
+        File f = scrivi(csv);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> CsvImportPipeline.esegui(f, CsvImporter::toBook, 100, 2, (List<BookBean> blocco) -> {
+                    throw new IllegalStateException("disco pieno");
+                }, null));
+
+        assertEquals("disco pieno", e.getMessage());
+        assertTrue(f.delete(), "Il file non deve restare aperto");
+    }
+
+    private File scrivi(CharSequence csv) throws IOException {
+        File f = new File(dir, "import.csv");
+        Files.writeString(f.toPath(), csv, StandardCharsets.UTF_8);
+        return f;
+    }
+
+    private static int numero(String isbn) {
+        return Integer.parseInt(isbn.substring("isbn-".length()));
+    }
+}
@@ -0,0 +1,63 @@
+package it.biblioteca.util.csv;
+
+import it.biblioteca.bean.BookBean;
+import it.biblioteca.dao.EsitoBatch;
+import it.biblioteca.entity.Book;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvImporterTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void campiTraVirgoletteSuPiuRighe() throws IOException {
+        CsvReader r = new CsvReader(new StringReader("a;\"b;\r\n\"\"c\"\"\";d\r\n\r\ne\n\"f\""));
+
+        assertArrayEquals(new String[]{"a", "b;\r\n\"c\"", "d"}, r.next());
+        assertEquals(3, r.riga());
+        assertArrayEquals(new String[]{""}, r.next());
+        assertArrayEquals(new String[]{"e"}, r.next());
+        assertArrayEquals(new String[]{"f"}, r.next());
+        assertNull(r.next());
+    }
+
+    @Test
+    void esportazioneReimportata() throws IOException {
+        Book b = new Book();
+        b.setId(1L);
+        b.setIsbn("978-1");
+        b.setTitolo("Titolo; con \"virgolette\"\ne a capo");
+        b.setAutore("Autore");
+        b.setCasaEditrice("Editore");
+        b.setDataPubblicazione(LocalDate.of(2001, 2, 3));
+        b.setCopie(4);
+        File f = new File(dir, "libri.csv");
+        CsvExporter.exportBooks(List.of(b, b), f);
+
+        List<BookBean> letti = new ArrayList<>();
+        EsitoBatch esito = CsvImportPipeline.books(f, null).scriviTutto(blocco -> {
+            letti.addAll(blocco);
+            return new EsitoBatch(blocco.size(), new TreeMap<>());
+        });
+
+        assertEquals(Map.of(), esito.errori());
+
+        assertEquals(2, letti.size());
+        assertEquals(b.getTitolo(), letti.getFirst().getTitolo());
+        assertEquals(LocalDate.of(2001, 2, 3), letti.getFirst().getDataPubblicazione());
+        assertEquals(4, letti.getFirst().getCopie());
+    }
+}